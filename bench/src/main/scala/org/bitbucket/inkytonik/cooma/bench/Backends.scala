@@ -0,0 +1,176 @@
+/*
+ * This file is part of Cooma.
+ *
+ * Copyright (C) 2019-2023 Anthony M Sloane, Macquarie University.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.bitbucket.inkytonik.cooma.bench
+
+import java.io.ByteArrayOutputStream
+import java.nio.charset.StandardCharsets
+import java.nio.file.{Files, Path}
+
+import org.bitbucket.inkytonik.cooma.CoomaParserSyntax.Program
+import org.bitbucket.inkytonik.cooma.backend.ReferenceBackend
+import org.bitbucket.inkytonik.cooma.truffle.TruffleCompiler
+import org.bitbucket.inkytonik.cooma.{
+  Compiler,
+  Config,
+  CoomaConstants,
+  CoomaException,
+  ReferenceDriver
+}
+import org.bitbucket.inkytonik.kiama.util.StringSource
+import org.graalvm.polyglot.Context
+
+/** A program that has been prepared to run on one of the backends, so that
+  * the benchmarks only measure the running of it.
+  */
+trait Runner {
+  def run(): AnyRef
+  def close(): Unit
+}
+
+/** The backends that are benchmarked and the ways that the benchmarks drive
+  * them. The prelude is found at `prelude/prelude.cooma` relative to the
+  * working directory, unless the `cooma.prelude` property says otherwise.
+  */
+object Backends {
+
+  val preludePath: String =
+    sys.props.getOrElse("cooma.prelude", "prelude/prelude.cooma")
+
+  val options: Seq[String] =
+    Seq("--Koutput", "string", "--preludePath", preludePath)
+
+  def config(args: Seq[String]): Config = {
+    val config = new Config(options ++ args)
+    config.verify()
+    config
+  }
+
+  /** Parse and check `program` with the frontend, returning the driver that
+    * holds its positions and analyser.
+    */
+  def frontend(
+      program: String,
+      config: Config
+  ): (ReferenceDriver, StringSource, Program) = {
+    val driver = new ReferenceDriver
+    val source = StringSource(program, "bench.cooma")
+    driver.makeast(source, config) match {
+      case Left(prog) =>
+        (driver, source, prog)
+      case Right(messages) =>
+        CoomaException.errInterp(
+          "bench",
+          s"can't compile benchmark: ${messages.map(_.label).mkString(", ")}"
+        )
+    }
+  }
+
+  /** Run `program` through the whole frontend and the compiler of
+    * `backend`, returning the compiled term.
+    */
+  def compile(backend: String, program: String): AnyRef = {
+    val config = Backends.config(Seq("bench.cooma"))
+    val (driver, source, prog) = frontend(program, config)
+    val analyser = driver.getAnalyser(source)
+    backend match {
+      case "Reference" =>
+        val system = new ReferenceBackend(driver, source, config) with Compiler
+        system.compileCommand(prog, driver.positions, analyser, config)
+      case _ =>
+        new TruffleCompiler(config, analyser)
+          .compileCommand(prog, driver.positions, source)
+    }
+  }
+
+  /** Load the dynamic prelude from scratch on `backend`. */
+  def loadPrelude(backend: String): AnyRef =
+    backend match {
+      case "Reference" =>
+        val config = Backends.config(Seq())
+        new ReferenceBackend(new ReferenceDriver, StringSource(""), config)
+          .preludeDynamicEnv(config)
+      case _ =>
+        val context = truffleContext(Seq())
+        try context.eval(CoomaConstants.ID, "{}")
+        finally context.close()
+    }
+
+  def runner(backend: String, program: String): Runner =
+    backend match {
+      case "Reference" =>
+        new ReferenceRunner(program)
+      case _ =>
+        new TruffleRunner(program)
+    }
+
+  def truffleContext(args: Seq[String]): Context =
+    Context
+      .newBuilder(CoomaConstants.ID)
+      .out(new ByteArrayOutputStream)
+      .arguments(CoomaConstants.ID, (options ++ args).toArray)
+      .build()
+
+  /** Run a program on the reference backend. The program is compiled and
+    * the prelude is loaded once, so each run only interprets the term.
+    */
+  class ReferenceRunner(program: String) extends Runner {
+
+    val config = Backends.config(Seq("bench.cooma"))
+    val (driver, source, prog) = frontend(program, config)
+    val system = new ReferenceBackend(driver, source, config) with Compiler
+    val term =
+      system.compileCommand(
+        prog,
+        driver.positions,
+        driver.getAnalyser(source),
+        config
+      )
+    val env =
+      system.preludeDynamicEnv(config) match {
+        case Right(env) =>
+          env
+        case Left(msg) =>
+          CoomaException.errPrelude(msg)
+      }
+
+    def run(): AnyRef =
+      system.interpret(term, env, Seq(), config) match {
+        case Right(result) =>
+          result.value
+        case Left(msg) =>
+          CoomaException.errInterp("bench", msg)
+      }
+
+    def close(): Unit = {}
+
+  }
+
+  /** Run a program on the Truffle backend. The program is run from a file in
+    * a context that lives as long as the runner, so the compiled program is
+    * reused and each run only executes it.
+    */
+  class TruffleRunner(program: String) extends Runner {
+
+    val file: Path = Files.createTempFile("bench", ".cooma")
+    Files.write(file, program.getBytes(StandardCharsets.UTF_8))
+    val context = truffleContext(Seq(file.toString))
+
+    def run(): AnyRef =
+      context.eval(CoomaConstants.ID, "")
+
+    def close(): Unit = {
+      context.close()
+      Files.delete(file)
+    }
+
+  }
+
+}
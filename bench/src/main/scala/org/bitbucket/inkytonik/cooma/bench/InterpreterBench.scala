@@ -0,0 +1,58 @@
+/*
+ * This file is part of Cooma.
+ *
+ * Copyright (C) 2019-2023 Anthony M Sloane, Macquarie University.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.bitbucket.inkytonik.cooma.bench
+
+import java.util.concurrent.TimeUnit
+
+import org.openjdk.jmh.annotations._
+
+/** Interpreter throughput on programs that have already been compiled and
+  * whose prelude has already been loaded.
+  */
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 10, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+class InterpreterBench {
+
+  @Param(Array("Reference", "Truffle"))
+  var backend: String = _
+
+  @Param(
+    Array(
+      "fib",
+      "ackermann",
+      "recSelect",
+      "variantMatch",
+      "vecBuild",
+      "strConcat",
+      "equal"
+    )
+  )
+  var program: String = _
+
+  var runner: Runner = _
+
+  @Setup
+  def setup(): Unit =
+    runner = Backends.runner(backend, Programs.programs(program))
+
+  @TearDown
+  def tearDown(): Unit =
+    runner.close()
+
+  @Benchmark
+  def run(): AnyRef =
+    runner.run()
+
+}
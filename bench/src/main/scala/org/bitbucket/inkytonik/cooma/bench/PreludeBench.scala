@@ -0,0 +1,35 @@
+/*
+ * This file is part of Cooma.
+ *
+ * Copyright (C) 2019-2023 Anthony M Sloane, Macquarie University.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.bitbucket.inkytonik.cooma.bench
+
+import java.util.concurrent.TimeUnit
+
+import org.openjdk.jmh.annotations._
+
+/** Loading the dynamic prelude from scratch. On the Truffle backend this
+  * includes making a new context.
+  */
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+class PreludeBench {
+
+  @Param(Array("Reference", "Truffle"))
+  var backend: String = _
+
+  @Benchmark
+  def load(): AnyRef =
+    Backends.loadPrelude(backend)
+
+}
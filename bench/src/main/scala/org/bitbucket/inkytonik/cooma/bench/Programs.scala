@@ -0,0 +1,99 @@
+/*
+ * This file is part of Cooma.
+ *
+ * Copyright (C) 2019-2023 Anthony M Sloane, Macquarie University.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.bitbucket.inkytonik.cooma.bench
+
+/** The Cooma programs that the interpreter benchmarks run. Each one is a
+  * small kernel that exercises one part of the language, sized so that an
+  * invocation takes a few milliseconds on the reference backend.
+  */
+object Programs {
+
+  val fib: String =
+    """{
+      |    def fib (n : Int) Int =
+      |        if Ints.lt(n, 2) then n
+      |        else Ints.add(fib(Ints.sub(n, 1)), fib(Ints.sub(n, 2)))
+      |    fib(20)
+      |}""".stripMargin
+
+  val ackermann: String =
+    """{
+      |    def ack (m : Int, n : Int) Int =
+      |        if equal(Int, m, 0) then Ints.add(n, 1)
+      |        else if equal(Int, n, 0) then ack(Ints.sub(m, 1), 1)
+      |        else ack(Ints.sub(m, 1), ack(m, Ints.sub(n, 1)))
+      |    ack(2, 200)
+      |}""".stripMargin
+
+  val recSelect: String =
+    """{
+      |    def loop (r : {a : Int, b : Int, c : Int}, i : Int, n : Int) Int =
+      |        if equal(Int, i, 0) then n
+      |        else loop(r, Ints.sub(i, 1), Ints.add(n, Ints.add(r.a, r.c)))
+      |    loop({a = 1, b = 2, c = 3}, 10000, 0)
+      |}""".stripMargin
+
+  val variantMatch: String =
+    """{
+      |    def step (v : <<Even : Int, Odd : Int>>) <<Even : Int, Odd : Int>> =
+      |        v match {
+      |            case Even(n) => <<Odd = Ints.add(n, 1)>>
+      |            case Odd(n) => <<Even = Ints.add(n, 1)>>
+      |        }
+      |    def loop (v : <<Even : Int, Odd : Int>>, i : Int) Int =
+      |        if equal(Int, i, 0) then
+      |            v match {
+      |                case Even(n) => n
+      |                case Odd(n) => n
+      |            }
+      |        else loop(step(v), Ints.sub(i, 1))
+      |    loop(<<Even = 0>>, 10000)
+      |}""".stripMargin
+
+  val vecBuild: String =
+    """{
+      |    def build (v : Vector(Int), i : Int) Vector(Int) =
+      |        if equal(Int, i, 0) then v
+      |        else build(Vectors.append(Int, v, i), Ints.sub(i, 1))
+      |    Vectors.length(Int, build([0], 1000))
+      |}""".stripMargin
+
+  val strConcat: String =
+    """{
+      |    def build (s : String, i : Int) String =
+      |        if equal(Int, i, 0) then s
+      |        else build(Strings.concat(s, "x"), Ints.sub(i, 1))
+      |    Strings.length(build("", 1000))
+      |}""".stripMargin
+
+  val equal: String =
+    """{
+      |    type R = {a : Int, b : String, c : Vector(Int)}
+      |    val r : R = {a = 1, b = "two", c = [3, 4, 5]}
+      |    def loop (s : R, i : Int, n : Int) Int =
+      |        if equal(Int, i, 0) then n
+      |        else if equal(R, r, s) then loop(s, Ints.sub(i, 1), Ints.add(n, 1))
+      |        else loop(s, Ints.sub(i, 1), n)
+      |    loop({a = 1, b = "two", c = [3, 4, 5]}, 10000, 0)
+      |}""".stripMargin
+
+  val programs: Map[String, String] =
+    Map(
+      "fib" -> fib,
+      "ackermann" -> ackermann,
+      "recSelect" -> recSelect,
+      "variantMatch" -> variantMatch,
+      "vecBuild" -> vecBuild,
+      "strConcat" -> strConcat,
+      "equal" -> equal
+    )
+
+}
@@ -10,45 +10,28 @@
 
 package org.bitbucket.inkytonik.cooma
 
-trait Backend extends Primitives {
+trait Backend extends Primitives with IRBuilder {
 
   import java.io.Writer
-  import org.bitbucket.inkytonik.cooma.CoomaParserSyntax._
-
-  type Term
-  def appC(c: Cont, x: String): Term
-  def appF(f: String, k: String, x: String): Term
-  def casV(x: String, cs: Vector[CaseTerm]): Term
-  def letC(k: String, x: String, t: Term, body: Term): Term
-  def letF(ds: Vector[DefTerm], body: Term): Term
-  def letV(x: String, v: Value, body: Term): Term
-
-  type Cont
-  def haltC(): Cont
-  def idnC(k: String): Cont
-
-  type CaseTerm
-  def caseTerm(c: String, k: String): CaseTerm
-
-  type DefTerm
-  def defTerm(f: String, k: String, x: String, body: Term): DefTerm
-
-  type Value
-  def funV(k: String, x: String, body: Term): Value
-  def intV(i: BigInt): Value
-  def prmV(p: Primitive, xs: Vector[String]): Value
-  def recV(fs: Vector[FldV]): Value
-  def strV(s: String): Value
-  def varV(f: FldV): Value
-  def vecV(e: Vector[String]): Value
-
-  type FldV
-  def fldV(f: String, x: String): FldV
 
   type ValueR
+
+  /** Strings hold their raw text, which is only escaped when it is shown.
+    * `strR` and `isStrR` work with flat text, while `ropeR` and `isRopeR` let
+    * primitives such as concatenation avoid flattening it.
+    */
   def strR(str: String): ValueR
+  def ropeR(rope: Rope): ValueR
   def varR(c: String, v: ValueR): ValueR
   def intR(num: BigInt): ValueR
+
+  /** Integers that fit in a Long have a representation that doesn't need a
+    * BigInt, so that arithmetic on them can avoid allocating.
+    */
+  def smallIntR(num: Long): ValueR
+  def isSmallIntR(value: ValueR): Boolean
+  def getSmallInt(value: ValueR): Long
+
   def clsR(f: String, x: String, env: Env, e: Term): ValueR
   def recR(fields: Vector[FldR]): ValueR
   def vecR(elems: Vector[ValueR]): ValueR
@@ -58,6 +41,7 @@ trait Backend extends Primitives {
   val trueR: ValueR = varR("True", uniR)
 
   def isStrR(value: ValueR): Option[String]
+  def isRopeR(value: ValueR): Option[Rope]
   def isIntR(value: ValueR): Option[BigInt]
   def isRecR(value: ValueR): Option[Vector[FldR]]
   def isVarR(value: ValueR): Option[(String, ValueR)]
@@ -0,0 +1,132 @@
+/*
+ * This file is part of Cooma.
+ *
+ * Copyright (C) 2019-2023 Anthony M Sloane, Macquarie University.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.bitbucket.inkytonik.cooma
+
+import java.nio.ByteBuffer
+import java.nio.charset.StandardCharsets
+import java.nio.file.{Files, Path, Paths, StandardCopyOption}
+import java.security.MessageDigest
+import org.bitbucket.inkytonik.cooma.CoomaParserSyntax.Term
+import org.bitbucket.inkytonik.kiama.util.Source
+import scala.util.Try
+
+/** A cache of the IR of programs on disk, so that a program that hasn't
+  * changed can be run without parsing, checking and compiling it again. Each
+  * entry is named by a hash of everything that the IR depends on: the text
+  * of the program, the static prelude, the options that change compilation
+  * and the version of Cooma. Entries are never invalidated, since a change
+  * to any of those gives a different name. Recently used entries are also
+  * kept in memory, which saves reading them again in a long-lived process
+  * such as the daemon.
+  */
+object CompileCache {
+
+  /** The number of entries that are kept in memory. */
+  val memoryEntries = 256
+
+  private val memory =
+    java.util.Collections.synchronizedMap(
+      new java.util.LinkedHashMap[Path, Term](16, 0.75f, true) {
+        override def removeEldestEntry(
+            eldest: java.util.Map.Entry[Path, Term]
+        ): Boolean =
+          size > memoryEntries
+      }
+    )
+
+  /** Whether the IR of a program can come from the cache. Options that need
+    * the results of the frontend, such as printing the program's type, turn
+    * the cache off.
+    */
+  def canCache(config: Config): Boolean =
+    config.cacheDir.isSupplied && !config.server() &&
+      !config.compilePrelude() && !config.coomaASTPrint() &&
+      !config.desugaredASTPrint() && !config.typePrint() && !config.usage()
+
+  def key(source: Source, config: Config): String = {
+    val digest = MessageDigest.getInstance("SHA-256")
+
+    def add(s: String): Unit = {
+      val bytes = s.getBytes(StandardCharsets.UTF_8)
+      digest.update(ByteBuffer.allocate(4).putInt(bytes.length).array)
+      digest.update(bytes)
+    }
+
+    add(BuildInfo.version)
+    add(IRFormat.version.toString)
+    add(config.optimise().toString)
+    add(staticPrelude(config))
+    add(source.content)
+    digest.digest.map(b => f"${b & 0xff}%02x").mkString
+  }
+
+  /** The text of the static prelude, which is all of the prelude that the
+    * IR of a program depends on.
+    */
+  def staticPrelude(config: Config): String =
+    if (config.noPrelude())
+      ""
+    else {
+      val path = s"${config.preludePath()}.static"
+      if (Files.isRegularFile(Paths.get(path)))
+        new String(Files.readAllBytes(Paths.get(path)), StandardCharsets.UTF_8)
+      else
+        Option(getClass.getClassLoader.getResourceAsStream(path))
+          .map { stream =>
+            try {
+              scala.io.Source.fromInputStream(stream, "UTF-8").mkString
+            } finally {
+              stream.close()
+            }
+          }
+          .getOrElse("")
+    }
+
+  def entry(key: String, config: Config): Path =
+    Paths.get(config.cacheDir(), s"$key.ir")
+
+  /** The cached IR of `source`, if there is any. */
+  def load(source: Source, config: Config): Option[Term] =
+    Try {
+      val path = entry(key(source, config), config)
+      Option(memory.get(path)).orElse(
+        if (Files.isRegularFile(path)) {
+          val bytes = Files.readAllBytes(path)
+          val term = IRFormat.fromBytes(ByteBuffer.wrap(bytes))
+          memory.put(path, term)
+          Some(term)
+        } else
+          None
+      )
+    }.toOption.flatten
+
+  /** Cache `term` as the IR of `source`. The entry is written to a temporary
+    * file and moved into place, so concurrent runs never see part of one. A
+    * cache that can't be written is ignored, since it only saves time.
+    */
+  def store(source: Source, config: Config, term: Term): Unit = {
+    Try {
+      val path = entry(key(source, config), config)
+      memory.put(path, term)
+      Files.createDirectories(path.getParent)
+      val temp = Files.createTempFile(path.getParent, "cooma", ".tmp")
+      Files.write(temp, IRFormat.toBytes(term))
+      Files.move(
+        temp,
+        path,
+        StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE
+      )
+    }
+    ()
+  }
+
+}
@@ -14,7 +14,7 @@ import org.bitbucket.inkytonik.cooma.primitive.database.Metadata
 
 trait Compiler {
 
-  self: Backend =>
+  self: IRBuilder =>
 
   import org.bitbucket.inkytonik.cooma.CoomaParserSyntax.Program
   import org.bitbucket.inkytonik.cooma.Util.resetFresh
@@ -40,6 +40,40 @@ trait Compiler {
     compiler.compileHalt(prog.expression)
   }
 
+  /** Compile a program as a command, optimising the IR if that is enabled
+    * by `config`. The optimiser works on the syntax representation of the IR,
+    * so the result is rebuilt in this compiler's representation afterwards.
+    */
+  def compileCommand(
+      prog: Program,
+      positions: Positions,
+      analyser: SemanticAnalyser,
+      config: Config
+  ): Term =
+    if (config.optimise())
+      fromIR(
+        Optimiser.optimise(
+          SyntaxCompiler.compileCommand(prog, positions, analyser)
+        )
+      )
+    else
+      compileCommand(prog, positions, analyser)
+
+  def compileStandalone(
+      prog: Program,
+      positions: Positions,
+      analyser: SemanticAnalyser,
+      config: Config
+  ): Term =
+    if (config.optimise())
+      fromIR(
+        Optimiser.optimise(
+          SyntaxCompiler.compileStandalone(prog, positions, analyser)
+        )
+      )
+    else
+      compileStandalone(prog, positions, analyser)
+
   class CompilerCore(positions: Positions, analyser: SemanticAnalyser) {
 
     import org.bitbucket.inkytonik.cooma.CoomaParserSyntax.{
@@ -451,6 +485,7 @@ trait Compiler {
         cs: Vector[Case],
         kappa: String => Term
     ): Term = {
+      registerTags(e, cs)
       val cks = cs.map(c => (c, fresh("k")))
       val caseTerms =
         cks.map { case (c, k) =>
@@ -466,6 +501,21 @@ trait Compiler {
       )
     }
 
+    /** Make sure that the constructors of the variant type of `e` have tags
+      * and, since they are new together, that those tags are adjacent. Uses
+      * the constructors of the cases `cs` if the variant type is not known.
+      */
+    def registerTags(e: Expression, cs: Vector[Case]): Unit = {
+      val constructors =
+        analyser.tipe(e) match {
+          case Some(VarT(fields)) =>
+            fields.map(_.identifier)
+          case _ =>
+            cs.map(_.identifier)
+        }
+      constructors.foreach(ConstructorTags.tagOf)
+    }
+
     def compileRec(
         fields: Vector[Field],
         kappa: Vector[FldV] => Term
@@ -657,6 +707,7 @@ trait Compiler {
         cs: Vector[Case],
         k: String
     ): Term = {
+      registerTags(e, cs)
       val cks = cs.map(c => (c, fresh("k")))
       val caseTerms =
         cks.map { case (c, k) =>
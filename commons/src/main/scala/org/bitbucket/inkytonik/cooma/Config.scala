@@ -10,6 +10,8 @@
 
 package org.bitbucket.inkytonik.cooma
 
+import java.io.InputStream
+
 import org.bitbucket.inkytonik.kiama.util.REPLConfig
 
 class Config(args: Seq[String]) extends REPLConfig(args) {
@@ -18,6 +20,21 @@ class Config(args: Seq[String]) extends REPLConfig(args) {
 
   banner("Options:\n")
 
+  lazy val cacheDir = opt[String](
+    "cacheDir",
+    short = 'c',
+    descr =
+      "Keep the compiled IR of programs in the given directory and reuse it while they are unchanged"
+  )
+
+  lazy val client = opt[Boolean](
+    "client",
+    noshort = true,
+    descr =
+      "Send this run to a running daemon instead of running it here (default: false)",
+    default = Some(false)
+  )
+
   lazy val coomaASTPrint = opt[Boolean](
     "coomaASTPrint",
     short = 'C',
@@ -25,6 +42,21 @@ class Config(args: Seq[String]) extends REPLConfig(args) {
     default = Some(false)
   )
 
+  lazy val daemon = opt[Boolean](
+    "daemon",
+    short = 'd',
+    descr =
+      "Run as a daemon that serves runs sent by clients on the daemon port (default: false)",
+    default = Some(false)
+  )
+
+  lazy val daemonPort = opt[Int](
+    "daemonPort",
+    noshort = true,
+    descr = "The local port of the daemon (default: 7327)",
+    default = Some(7327)
+  )
+
   lazy val desugaredASTPrint = opt[Boolean](
     "desugaredASTPrint",
     short = 'D',
@@ -53,6 +85,13 @@ class Config(args: Seq[String]) extends REPLConfig(args) {
     default = Some(false)
   )
 
+  lazy val optimise = opt[Boolean](
+    "optimise",
+    short = 'O',
+    descr = "Optimise the intermediate representation (default: false)",
+    default = Some(false)
+  )
+
   lazy val preludePath = opt[String](
     "preludePath",
     short = 'p',
@@ -74,6 +113,13 @@ class Config(args: Seq[String]) extends REPLConfig(args) {
     default = Some(false)
   )
 
+  lazy val profile = opt[String](
+    "profile",
+    short = 'F',
+    descr =
+      "Profile the reference interpreter, writing collapsed stacks to the given file and printing a summary"
+  )
+
   lazy val resultPrint = opt[Boolean](
     "resultPrint",
     short = 'r',
@@ -84,10 +130,18 @@ class Config(args: Seq[String]) extends REPLConfig(args) {
   lazy val trace = opt[Boolean](
     "trace",
     short = 'T',
-    descr = "Trace the IR execution (default: false)",
+    descr =
+      "Trace the IR execution, printing the states of only the most recent steps once it ends or fails, not as it runs (default: false)",
     default = Some(false)
   )
 
+  lazy val traceFile = opt[String](
+    "traceFile",
+    short = 'L',
+    descr =
+      "Trace the IR execution, writing a binary log of the most recent steps to the given file once it ends or fails"
+  )
+
   lazy val typePrint = opt[Boolean](
     "typePrint",
     short = 't',
@@ -102,6 +156,10 @@ class Config(args: Seq[String]) extends REPLConfig(args) {
     default = Some(false)
   )
 
+  /** The standard input of the run, which is read by console readers. */
+  def input: InputStream =
+    System.in
+
   override def hashCode: Int = args.hashCode
 
   override def equals(o: Any): Boolean =
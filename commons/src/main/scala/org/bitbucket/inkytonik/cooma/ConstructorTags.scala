@@ -0,0 +1,49 @@
+/*
+ * This file is part of Cooma.
+ *
+ * Copyright (C) 2019-2023 Anthony M Sloane, Macquarie University.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.bitbucket.inkytonik.cooma
+
+/** Integer tags for variant constructors. A constructor gets the next tag
+  * the first time that it is seen. The compiler registers the constructors
+  * of the variant type of each match together, so the tags of the cases of a
+  * match are close together and a backend can dispatch on them by indexing
+  * an array. Tags are global so that the site that makes a variant and the
+  * site that matches it agree, whatever the variant types at those sites.
+  */
+object ConstructorTags {
+
+  import java.util.concurrent.ConcurrentHashMap
+  import java.util.concurrent.atomic.AtomicInteger
+
+  private val tags = new ConcurrentHashMap[String, Integer]
+  private val next = new AtomicInteger
+
+  def tagOf(c: String): Int =
+    tags.computeIfAbsent(c, _ => Int.box(next.getAndIncrement()))
+
+  /** A dispatch table for cases on constructors `cs` with results `ks`. The
+    * result for tag `t` is at index `t - base` of the table, where `base` is
+    * the smallest tag of the constructors, and is null if the constructor
+    * with that tag has no case.
+    */
+  def table[T >: Null](cs: Seq[String], ks: Seq[T])(implicit
+      tag: scala.reflect.ClassTag[T]
+  ): (Int, Array[T]) = {
+    val ts = cs.map(tagOf)
+    val base = if (ts.isEmpty) 0 else ts.min
+    val size = if (ts.isEmpty) 0 else ts.max - base + 1
+    val table = new Array[T](size)
+    for ((t, k) <- ts.zip(ks))
+      if (table(t - base) == null)
+        table(t - base) = k
+    (base, table)
+  }
+
+}
@@ -64,15 +64,41 @@ abstract class Driver
   override def compileSource(source: Source, config: Config): Unit = {
     sources(source.name) = source
     clearSyntacticMessages(source, config)
-    makeast(source, config) match {
-      case Left(ast) =>
-        process(source, ast, config)
-      case Right(messages) =>
-        clearSemanticMessages(source, config)
-        report(source, messages, config)
-    }
+    val cached =
+      if (CompileCache.canCache(config))
+        CompileCache.load(source, config)
+      else
+        None
+    if (!cached.exists(processIR(source, _, config)))
+      makeast(source, config) match {
+        case Left(ast) =>
+          process(source, ast, config)
+        case Right(messages) =>
+          clearSemanticMessages(source, config)
+          report(source, messages, config)
+      }
   }
 
+  /** Run a program whose IR came from the compile cache, returning false if
+    * this driver can't run IR, in which case the program is compiled as
+    * usual. Drivers that can run IR should call `cacheIR` once they have
+    * compiled a program.
+    */
+  def processIR(
+      source: Source,
+      term: CoomaParserSyntax.Term,
+      config: Config
+  ): Boolean =
+    false
+
+  def cacheIR(
+      source: Source,
+      term: CoomaParserSyntax.Term,
+      config: Config
+  ): Unit =
+    if (CompileCache.canCache(config))
+      CompileCache.store(source, config, term)
+
   override def makeast(
       source: Source,
       config: Config
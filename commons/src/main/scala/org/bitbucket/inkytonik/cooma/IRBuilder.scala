@@ -0,0 +1,129 @@
+/*
+ * This file is part of Cooma.
+ *
+ * Copyright (C) 2019-2023 Anthony M Sloane, Macquarie University.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.bitbucket.inkytonik.cooma
+
+/** Constructors for a representation of the IR. The compiler builds terms
+  * using just these, so each backend can choose its own representation.
+  */
+trait IRBuilder {
+
+  import org.bitbucket.inkytonik.cooma.CoomaParserSyntax.{
+    AppC,
+    AppF,
+    CasV,
+    FunV,
+    HaltC,
+    IdnC,
+    IntV,
+    LetC,
+    LetF,
+    LetV,
+    PrmV,
+    RecV,
+    StrV,
+    VarV,
+    Primitive,
+    VecV
+  }
+  import org.bitbucket.inkytonik.kiama.util.Positions
+
+  type Term
+  def appC(c: Cont, x: String): Term
+  def appF(f: String, k: String, x: String): Term
+  def casV(x: String, cs: Vector[CaseTerm]): Term
+  def letC(k: String, x: String, t: Term, body: Term): Term
+  def letF(ds: Vector[DefTerm], body: Term): Term
+  def letV(x: String, v: Value, body: Term): Term
+
+  type Cont
+  def haltC(): Cont
+  def idnC(k: String): Cont
+
+  type CaseTerm
+  def caseTerm(c: String, k: String): CaseTerm
+
+  type DefTerm
+  def defTerm(f: String, k: String, x: String, body: Term): DefTerm
+
+  type Value
+  def funV(k: String, x: String, body: Term): Value
+  def intV(i: BigInt): Value
+  def prmV(p: Primitive, xs: Vector[String]): Value
+  def recV(fs: Vector[FldV]): Value
+  def strV(s: String): Value
+  def varV(f: FldV): Value
+  def vecV(e: Vector[String]): Value
+
+  type FldV
+  def fldV(f: String, x: String): FldV
+
+  /** Build this representation of an IR term that is held as syntax. */
+  def fromIR(term: CoomaParserSyntax.Term): Term =
+    fromIR(term, new Positions)
+
+  /** Build this representation of an IR term that is held as syntax. Each
+    * term that is built gets the position that `positions` records for the
+    * syntax that it is built from.
+    */
+  def fromIR(term: CoomaParserSyntax.Term, positions: Positions): Term =
+    positions.dupPos(
+      term,
+      term match {
+        case AppC(HaltC(), x) =>
+          appC(haltC(), x)
+        case AppC(IdnC(k), x) =>
+          appC(idnC(k), x)
+        case AppF(f, k, x) =>
+          appF(f, k, x)
+        case CasV(x, cs) =>
+          casV(
+            x,
+            cs.map { case CoomaParserSyntax.CaseTerm(c, k) => caseTerm(c, k) }
+          )
+        case LetC(k, x, t, body) =>
+          letC(k, x, fromIR(t, positions), fromIR(body, positions))
+        case LetF(ds, body) =>
+          letF(
+            ds.map { case CoomaParserSyntax.DefTerm(f, k, x, t) =>
+              defTerm(f, k, x, fromIR(t, positions))
+            },
+            fromIR(body, positions)
+          )
+        case LetV(x, v, body) =>
+          letV(x, fromIRValue(v, positions), fromIR(body, positions))
+      }
+    )
+
+  def fromIRValue(value: CoomaParserSyntax.Value): Value =
+    fromIRValue(value, new Positions)
+
+  def fromIRValue(
+      value: CoomaParserSyntax.Value,
+      positions: Positions
+  ): Value =
+    value match {
+      case FunV(k, x, t) =>
+        funV(k, x, fromIR(t, positions))
+      case IntV(i) =>
+        intV(i)
+      case PrmV(p, xs) =>
+        prmV(p, xs)
+      case RecV(fs) =>
+        recV(fs.map { case CoomaParserSyntax.FldV(f, x) => fldV(f, x) })
+      case StrV(s) =>
+        strV(s)
+      case VarV(CoomaParserSyntax.FldV(c, x)) =>
+        varV(fldV(c, x))
+      case VecV(es) =>
+        vecV(es)
+    }
+
+}
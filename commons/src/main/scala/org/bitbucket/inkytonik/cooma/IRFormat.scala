@@ -0,0 +1,421 @@
+/*
+ * This file is part of Cooma.
+ *
+ * Copyright (C) 2019-2023 Anthony M Sloane, Macquarie University.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.bitbucket.inkytonik.cooma
+
+import java.nio.ByteBuffer
+import org.bitbucket.inkytonik.cooma.CoomaParserSyntax._
+import scala.collection.mutable
+
+/** The binary format of the IR. Each term and value is written as a tag
+  * followed by its parts. Names are interned: the first use of a name writes
+  * it and later uses refer to it by number. Primitives are written as a tag
+  * followed by their fields, and user primitives by their index in a fixed
+  * table, so reading only ever makes the primitives that are listed here.
+  * The body of a let is written after the let instead of inside it, so the
+  * long chains of lets that programs compile to are read and written
+  * without recursion.
+  */
+object IRFormat {
+
+  val magic = 0x43495246
+  val version = 2
+
+  // Term tags
+  val haltTag = 0
+  val appCTag = 1
+  val appFTag = 2
+  val casVTag = 3
+  val letCTag = 4
+  val letFTag = 5
+  val letVTag = 6
+
+  // Value tags
+  val funVTag = 0
+  val intVTag = 1
+  val prmVTag = 2
+  val recVTag = 3
+  val strVTag = 4
+  val varVTag = 5
+  val vecVTag = 6
+
+  // Primitive tags
+  val argumentTag = 0
+  val argumentCheckTag = 1
+  val capabilityTag = 2
+  val dbTableAllTag = 3
+  val dbTableDeleteTag = 4
+  val dbTableGetByIdTag = 5
+  val dbTableInsertTag = 6
+  val dbTableUpdateTag = 7
+  val folderReaderReadTag = 8
+  val folderRunnerRunTag = 9
+  val folderWriterWriteTag = 10
+  val httpClientTag = 11
+  val httpServerTag = 12
+  val readerReadTag = 13
+  val recConcatTag = 14
+  val recSelectTag = 15
+  val runnerRunTag = 16
+  val writerWriteTag = 17
+  val userTag = 18
+
+  /** The user primitives, each of which is written as its index here. */
+  val userPrimitives: Vector[() => UserPrimitive] =
+    Vector(
+      () => EqualP(),
+      () => IntAbsP(),
+      () => IntAddP(),
+      () => IntDivP(),
+      () => IntGteP(),
+      () => IntGtP(),
+      () => IntLteP(),
+      () => IntLtP(),
+      () => IntModP(),
+      () => IntMulP(),
+      () => IntPowP(),
+      () => IntSubP(),
+      () => StrConcatP(),
+      () => StrGteP(),
+      () => StrGtP(),
+      () => StrLengthP(),
+      () => StrLteP(),
+      () => StrLtP(),
+      () => StrSubstrP(),
+      () => VecAppendP(),
+      () => VecConcatP(),
+      () => VecGetP(),
+      () => VecLengthP(),
+      () => VecPrependP(),
+      () => VecPutP()
+    )
+
+  val userIndices: Map[Class[_], Int] =
+    userPrimitives.map(_().getClass).zipWithIndex.toMap
+
+  def toBytes(term: Term): Array[Byte] = {
+    val writer = new SnapshotWriter
+    writer.int(magic)
+    writer.int(version)
+    write(writer, term)
+    writer.toByteArray
+  }
+
+  def fromBytes(buffer: ByteBuffer): Term = {
+    val reader = new SnapshotReader(buffer)
+    if ((reader.int() != magic) || (reader.int() != version))
+      CoomaException.errInterp("IR", "not a Cooma IR file of this version")
+    read(reader)
+  }
+
+  def write(writer: SnapshotWriter, term: Term): Unit = {
+
+    val names = new mutable.HashMap[String, Int]
+
+    def name(x: String): Unit =
+      names.get(x) match {
+        case Some(i) =>
+          writer.nat(i + 1)
+        case None =>
+          writer.nat(0)
+          writer.string(x)
+          names(x) = names.size
+      }
+
+    def writeTerm(term: Term): Unit = {
+      var t = term
+      while (t != null)
+        t match {
+          case AppC(HaltC(), x) =>
+            writer.nat(haltTag)
+            name(x)
+            t = null
+          case AppC(IdnC(k), x) =>
+            writer.nat(appCTag)
+            name(k)
+            name(x)
+            t = null
+          case AppF(f, k, x) =>
+            writer.nat(appFTag)
+            name(f)
+            name(k)
+            name(x)
+            t = null
+          case CasV(x, cs) =>
+            writer.nat(casVTag)
+            name(x)
+            writer.nat(cs.length)
+            for (CaseTerm(c, k) <- cs) {
+              name(c)
+              name(k)
+            }
+            t = null
+          case LetC(k, x, t1, body) =>
+            writer.nat(letCTag)
+            name(k)
+            name(x)
+            writeTerm(t1)
+            t = body
+          case LetF(ds, body) =>
+            writer.nat(letFTag)
+            writer.nat(ds.length)
+            for (DefTerm(f, k, x, t1) <- ds) {
+              name(f)
+              name(k)
+              name(x)
+              writeTerm(t1)
+            }
+            t = body
+          case LetV(x, v, body) =>
+            writer.nat(letVTag)
+            name(x)
+            writeValue(v)
+            t = body
+        }
+    }
+
+    def writeValue(value: Value): Unit =
+      value match {
+        case FunV(k, x, t) =>
+          writer.nat(funVTag)
+          name(k)
+          name(x)
+          writeTerm(t)
+        case IntV(i) =>
+          writer.nat(intVTag)
+          writer.string(i.toString)
+        case PrmV(p, xs) =>
+          writer.nat(prmVTag)
+          writePrimitive(p)
+          writer.nat(xs.length)
+          xs.foreach(name)
+        case RecV(fs) =>
+          writer.nat(recVTag)
+          writer.nat(fs.length)
+          for (FldV(f, x) <- fs) {
+            name(f)
+            name(x)
+          }
+        case StrV(s) =>
+          writer.nat(strVTag)
+          writer.string(s)
+        case VarV(FldV(c, x)) =>
+          writer.nat(varVTag)
+          name(c)
+          name(x)
+        case VecV(xs) =>
+          writer.nat(vecVTag)
+          writer.nat(xs.length)
+          xs.foreach(name)
+      }
+
+    def writePrimitive(p: Primitive): Unit =
+      p match {
+        case ArgumentP(i) =>
+          writer.nat(argumentTag)
+          writer.int(i)
+        case ArgumentCheckP(i) =>
+          writer.nat(argumentCheckTag)
+          writer.int(i)
+        case CapabilityP(cap) =>
+          writer.nat(capabilityTag)
+          writer.string(cap)
+        case DbTableAllP(i, table) =>
+          writer.nat(dbTableAllTag)
+          writer.int(i)
+          writer.string(table)
+        case DbTableDeleteP(i, table) =>
+          writer.nat(dbTableDeleteTag)
+          writer.int(i)
+          writer.string(table)
+        case DbTableGetByIdP(i, table) =>
+          writer.nat(dbTableGetByIdTag)
+          writer.int(i)
+          writer.string(table)
+        case DbTableInsertP(i, table) =>
+          writer.nat(dbTableInsertTag)
+          writer.int(i)
+          writer.string(table)
+        case DbTableUpdateP(i, table) =>
+          writer.nat(dbTableUpdateTag)
+          writer.int(i)
+          writer.string(table)
+        case FolderReaderReadP(filename) =>
+          writer.nat(folderReaderReadTag)
+          writer.string(filename)
+        case FolderRunnerRunP(filename) =>
+          writer.nat(folderRunnerRunTag)
+          writer.string(filename)
+        case FolderWriterWriteP(filename) =>
+          writer.nat(folderWriterWriteTag)
+          writer.string(filename)
+        case HttpClientP(method, url) =>
+          writer.nat(httpClientTag)
+          writer.string(method)
+          writer.string(url)
+        case HttpServerP(port) =>
+          writer.nat(httpServerTag)
+          writer.int(port)
+        case ReaderReadP(filename) =>
+          writer.nat(readerReadTag)
+          writer.string(filename)
+        case RecConcatP() =>
+          writer.nat(recConcatTag)
+        case RecSelectP() =>
+          writer.nat(recSelectTag)
+        case RunnerRunP(filename) =>
+          writer.nat(runnerRunTag)
+          writer.string(filename)
+        case WriterWriteP(filename) =>
+          writer.nat(writerWriteTag)
+          writer.string(filename)
+        case UserP(u) =>
+          writer.nat(userTag)
+          writer.nat(userIndices(u.getClass))
+      }
+
+    writeTerm(term)
+  }
+
+  def read(reader: SnapshotReader): Term = {
+
+    val names = new mutable.ArrayBuffer[String]
+
+    def name(): String =
+      reader.nat() match {
+        case 0 =>
+          val x = reader.string()
+          names += x
+          x
+        case i =>
+          names(i - 1)
+      }
+
+    def nameList(n: Int): Vector[String] =
+      Vector.fill(n)(name())
+
+    def readTerm(): Term = {
+      val lets = new mutable.ArrayBuffer[Term => Term]
+      var result: Term = null
+      while (result == null)
+        reader.nat() match {
+          case `haltTag` =>
+            result = AppC(HaltC(), name())
+          case `appCTag` =>
+            val k = name()
+            result = AppC(IdnC(k), name())
+          case `appFTag` =>
+            val f = name()
+            val k = name()
+            result = AppF(f, k, name())
+          case `casVTag` =>
+            val x = name()
+            val n = reader.nat()
+            result = CasV(x, Vector.fill(n)(CaseTerm(name(), name())))
+          case `letCTag` =>
+            val k = name()
+            val x = name()
+            val t = readTerm()
+            lets += (LetC(k, x, t, _))
+          case `letFTag` =>
+            val n = reader.nat()
+            val ds = Vector.fill(n)(DefTerm(name(), name(), name(), readTerm()))
+            lets += (LetF(ds, _))
+          case `letVTag` =>
+            val x = name()
+            val v = readValue()
+            lets += (LetV(x, v, _))
+          case tag =>
+            CoomaException.errInterp("IR", s"unknown term tag $tag")
+        }
+      lets.foldRight(result)((let, body) => let(body))
+    }
+
+    def readValue(): Value =
+      reader.nat() match {
+        case `funVTag` =>
+          val k = name()
+          val x = name()
+          FunV(k, x, readTerm())
+        case `intVTag` =>
+          IntV(BigInt(reader.string()))
+        case `prmVTag` =>
+          val p = readPrimitive()
+          PrmV(p, nameList(reader.nat()))
+        case `recVTag` =>
+          RecV(Vector.fill(reader.nat())(FldV(name(), name())))
+        case `strVTag` =>
+          StrV(reader.string())
+        case `varVTag` =>
+          VarV(FldV(name(), name()))
+        case `vecVTag` =>
+          VecV(nameList(reader.nat()))
+        case tag =>
+          CoomaException.errInterp("IR", s"unknown value tag $tag")
+      }
+
+    def readPrimitive(): Primitive =
+      reader.nat() match {
+        case `argumentTag` =>
+          ArgumentP(reader.int())
+        case `argumentCheckTag` =>
+          ArgumentCheckP(reader.int())
+        case `capabilityTag` =>
+          CapabilityP(reader.string())
+        case `dbTableAllTag` =>
+          val i = reader.int()
+          DbTableAllP(i, reader.string())
+        case `dbTableDeleteTag` =>
+          val i = reader.int()
+          DbTableDeleteP(i, reader.string())
+        case `dbTableGetByIdTag` =>
+          val i = reader.int()
+          DbTableGetByIdP(i, reader.string())
+        case `dbTableInsertTag` =>
+          val i = reader.int()
+          DbTableInsertP(i, reader.string())
+        case `dbTableUpdateTag` =>
+          val i = reader.int()
+          DbTableUpdateP(i, reader.string())
+        case `folderReaderReadTag` =>
+          FolderReaderReadP(reader.string())
+        case `folderRunnerRunTag` =>
+          FolderRunnerRunP(reader.string())
+        case `folderWriterWriteTag` =>
+          FolderWriterWriteP(reader.string())
+        case `httpClientTag` =>
+          val method = reader.string()
+          HttpClientP(method, reader.string())
+        case `httpServerTag` =>
+          HttpServerP(reader.int())
+        case `readerReadTag` =>
+          ReaderReadP(reader.string())
+        case `recConcatTag` =>
+          RecConcatP()
+        case `recSelectTag` =>
+          RecSelectP()
+        case `runnerRunTag` =>
+          RunnerRunP(reader.string())
+        case `writerWriteTag` =>
+          WriterWriteP(reader.string())
+        case `userTag` =>
+          val i = reader.nat()
+          if (i < userPrimitives.length)
+            UserP(userPrimitives(i)())
+          else
+            CoomaException.errInterp("IR", s"unknown user primitive $i")
+        case tag =>
+          CoomaException.errInterp("IR", s"unknown primitive tag $tag")
+      }
+
+    readTerm()
+  }
+
+}
@@ -0,0 +1,562 @@
+/*
+ * This file is part of Cooma.
+ *
+ * Copyright (C) 2019-2023 Anthony M Sloane, Macquarie University.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.bitbucket.inkytonik.cooma
+
+/** Shrinking reductions over the backend-neutral IR. Each reduction makes
+  * the term smaller, so they are applied in rounds until nothing changes:
+  *
+  *   - dead `letv`, `letc` and `letf` bindings are removed,
+  *   - continuations that are applied exactly once are inlined,
+  *   - continuations and functions that just pass their parameter on are
+  *     replaced by the thing that they pass it to (eta-reduction),
+  *   - functions that are only called and are either called once or are
+  *     small are inlined at their call sites,
+  *   - integer and string primitives whose operands are literals are folded,
+  *     and cases on variants whose constructor is known are selected.
+  *
+  * The reductions rely on every variable being bound at most once and on no
+  * binding shadowing a free variable, so the term is first renamed to make
+  * that so.
+  */
+object Optimiser {
+
+  import org.bitbucket.inkytonik.cooma.CoomaParserSyntax._
+  import org.bitbucket.inkytonik.cooma.Util.{escape, fresh, unescape}
+  import scala.collection.mutable
+
+  /** Functions whose bodies have at most this many nodes are inlined at all
+    * of their call sites.
+    */
+  val inlineLimit = 8
+
+  /** Powers are only folded if the exponent is at most this large, so that
+    * folding doesn't put huge literals into the IR.
+    */
+  val maxFoldedPower = 64
+
+  /** Maximum number of rounds of reductions. */
+  val maxRounds = 10
+
+  /** Counts of the reductions that were performed and the term sizes before
+    * and after.
+    */
+  case class Stats(
+      nodesBefore: Int,
+      nodesAfter: Int,
+      reductions: Map[String, Int]
+  ) {
+    def removed: Int = nodesBefore - nodesAfter
+  }
+
+  def optimise(term: Term): Term =
+    shrink(term)._1
+
+  def shrink(term: Term): (Term, Stats) = {
+    val counts = mutable.Map[String, Int]().withDefaultValue(0)
+    val before = size(term)
+
+    def loop(term: Term, round: Int): Term =
+      if (round == maxRounds)
+        term
+      else {
+        val reduced = new Reducer(term, counts).reduce(term)
+        if (reduced == term) term else loop(reduced, round + 1)
+      }
+
+    val result = loop(uniquify(term), 0)
+    (result, Stats(before, size(result), counts.toMap))
+  }
+
+  // Sizes
+
+  def size(term: Term): Int =
+    term match {
+      case AppC(_, _) | AppF(_, _, _) | CasV(_, _) =>
+        1
+      case LetC(_, _, t1, t2) =>
+        1 + size(t1) + size(t2)
+      case LetF(ds, t) =>
+        1 + ds.map { case DefTerm(_, _, _, body) => size(body) }.sum + size(t)
+      case LetV(_, v, t) =>
+        1 + size(v) + size(t)
+    }
+
+  def size(value: Value): Int =
+    value match {
+      case FunV(_, _, t) => 1 + size(t)
+      case _             => 1
+    }
+
+  // Variables
+
+  /** The operands of a primitive that are variables. The field name operand
+    * of a record selection is not.
+    */
+  def primVars(p: Primitive, xs: Vector[String]): Vector[String] =
+    p match {
+      case RecSelectP() => xs.take(1)
+      case _            => xs
+    }
+
+  /** Apply `f` to every variable use in `term`. */
+  def foreachUse(term: Term)(f: String => Unit): Unit = {
+
+    def aux(term: Term): Unit =
+      term match {
+        case AppC(HaltC(), x) =>
+          f(x)
+        case AppC(IdnC(k), x) =>
+          f(k)
+          f(x)
+        case AppF(g, k, x) =>
+          f(g)
+          f(k)
+          f(x)
+        case CasV(x, cs) =>
+          f(x)
+          cs.foreach { case CaseTerm(_, k) => f(k) }
+        case LetC(_, _, t1, t2) =>
+          aux(t1)
+          aux(t2)
+        case LetF(ds, t) =>
+          ds.foreach { case DefTerm(_, _, _, body) => aux(body) }
+          aux(t)
+        case LetV(_, v, t) =>
+          auxValue(v)
+          aux(t)
+      }
+
+    def auxValue(value: Value): Unit =
+      value match {
+        case FunV(_, _, t)        => aux(t)
+        case PrmV(p, xs)          => primVars(p, xs).foreach(f)
+        case RecV(fs)             => fs.foreach { case FldV(_, x) => f(x) }
+        case VarV(FldV(_, x))     => f(x)
+        case VecV(xs)             => xs.foreach(f)
+        case IntV(_) | StrV(_)    => ()
+      }
+
+    aux(term)
+  }
+
+  def freeVars(term: Term): Set[String] = {
+    val bound = mutable.Set[String]()
+    val used = mutable.Set[String]()
+    foreachBinder(term)(bound += _)
+    foreachUse(term)(used += _)
+    (used --= bound).toSet
+  }
+
+  /** Apply `f` to every name bound in `term`. */
+  def foreachBinder(term: Term)(f: String => Unit): Unit = {
+
+    def aux(term: Term): Unit =
+      term match {
+        case AppC(_, _) | AppF(_, _, _) | CasV(_, _) =>
+          ()
+        case LetC(k, x, t1, t2) =>
+          f(k)
+          f(x)
+          aux(t1)
+          aux(t2)
+        case LetF(ds, t) =>
+          ds.foreach { case DefTerm(g, k, x, body) =>
+            f(g)
+            f(k)
+            f(x)
+            aux(body)
+          }
+          aux(t)
+        case LetV(x, FunV(k, y, body), t) =>
+          f(x)
+          f(k)
+          f(y)
+          aux(body)
+          aux(t)
+        case LetV(x, _, t) =>
+          f(x)
+          aux(t)
+      }
+
+    aux(term)
+  }
+
+  // Renaming
+
+  /** Rename `term` so that no name is bound more than once and no binding
+    * has the name of a free variable. The first binding of a name keeps it.
+    */
+  def uniquify(term: Term): Term = {
+    val seen = mutable.Set[String]() ++ freeVars(term)
+    rename(term, Map(), x => if (seen.add(x)) x else fresh(base(x)))
+  }
+
+  /** Make a copy of `term` with fresh names for all of its bindings and with
+    * the free variables renamed by `subst`.
+    */
+  def freshen(term: Term, subst: Map[String, String]): Term =
+    rename(term, subst, x => fresh(base(x)))
+
+  def base(x: String): String =
+    x.dropWhile(_ == '$').takeWhile(!_.isDigit) match {
+      case "" => "x"
+      case b  => b
+    }
+
+  /** Rename `term`, mapping each binding to the name given by `bind` and each
+    * use by `subst` extended with the new names of the bindings in scope.
+    */
+  def rename(
+      term: Term,
+      subst: Map[String, String],
+      bind: String => String
+  ): Term = {
+
+    def use(s: Map[String, String], x: String): String =
+      s.getOrElse(x, x)
+
+    def aux(term: Term, s: Map[String, String]): Term =
+      term match {
+        case AppC(HaltC(), x) =>
+          AppC(HaltC(), use(s, x))
+        case AppC(IdnC(k), x) =>
+          AppC(IdnC(use(s, k)), use(s, x))
+        case AppF(f, k, x) =>
+          AppF(use(s, f), use(s, k), use(s, x))
+        case CasV(x, cs) =>
+          CasV(
+            use(s, x),
+            cs.map { case CaseTerm(c, k) => CaseTerm(c, use(s, k)) }
+          )
+        case LetC(k, x, t1, t2) =>
+          val x1 = bind(x)
+          val t11 = aux(t1, s + (x -> x1))
+          val k1 = bind(k)
+          LetC(k1, x1, t11, aux(t2, s + (k -> k1)))
+        case LetF(ds, t) =>
+          val fs = ds.map { case DefTerm(f, _, _, _) => f -> bind(f) }
+          val s1 = s ++ fs
+          val ds1 =
+            ds.zip(fs).map { case (DefTerm(_, k, x, body), (_, f1)) =>
+              val k1 = bind(k)
+              val x1 = bind(x)
+              DefTerm(f1, k1, x1, aux(body, s1 + (k -> k1) + (x -> x1)))
+            }
+          LetF(ds1, aux(t, s1))
+        case LetV(x, v, t) =>
+          val v1 = auxValue(v, s)
+          val x1 = bind(x)
+          LetV(x1, v1, aux(t, s + (x -> x1)))
+      }
+
+    def auxValue(value: Value, s: Map[String, String]): Value =
+      value match {
+        case FunV(k, x, t) =>
+          val k1 = bind(k)
+          val x1 = bind(x)
+          FunV(k1, x1, aux(t, s + (k -> k1) + (x -> x1)))
+        case _ =>
+          substValue(value, s)
+      }
+
+    aux(term, subst)
+  }
+
+  /** Rename the variables used by a value that binds nothing. */
+  def substValue(value: Value, s: Map[String, String]): Value = {
+
+    def use(x: String): String =
+      s.getOrElse(x, x)
+
+    value match {
+      case PrmV(RecSelectP(), Vector(r, f)) =>
+        PrmV(RecSelectP(), Vector(use(r), f))
+      case PrmV(p, xs) =>
+        PrmV(p, xs.map(use))
+      case RecV(fs) =>
+        RecV(fs.map { case FldV(f, x) => FldV(f, use(x)) })
+      case VarV(FldV(c, x)) =>
+        VarV(FldV(c, use(x)))
+      case VecV(xs) =>
+        VecV(xs.map(use))
+      case FunV(_, _, _) | IntV(_) | StrV(_) =>
+        value
+    }
+  }
+
+  // Purity
+
+  /** Whether evaluating `value` can be omitted if its result is not used. The
+    * primitives that are included can't fail on well-typed operands and have
+    * no other effects.
+    */
+  def isPure(value: Value): Boolean =
+    value match {
+      case PrmV(RecConcatP() | RecSelectP(), _) =>
+        true
+      case PrmV(UserP(p), _) =>
+        p match {
+          case IntAbsP() | IntAddP() | IntGtP() | IntGteP() | IntLtP() |
+              IntLteP() | IntMulP() | IntSubP() | StrConcatP() | StrGtP() |
+              StrGteP() | StrLengthP() | StrLtP() | StrLteP() | VecAppendP() |
+              VecConcatP() | VecLengthP() | VecPrependP() =>
+            true
+          case _ =>
+            false
+        }
+      case PrmV(_, _) =>
+        false
+      case _ =>
+        true
+    }
+
+  // Folding
+
+  /** The result of applying `p` to literal operands `vs`, if it can be found
+    * at compile time and can't fail. The result is either a literal or a
+    * Boolean. The operations are those of the primitives at run time.
+    */
+  def foldPrim(
+      p: UserPrimitive,
+      vs: Vector[Value]
+  ): Option[Either[Value, Boolean]] =
+    (p, vs) match {
+      case (IntAbsP(), Vector(IntV(i))) =>
+        Some(Left(IntV(i.abs)))
+      case (IntAddP(), Vector(IntV(i), IntV(j))) =>
+        Some(Left(IntV(i + j)))
+      case (IntDivP(), Vector(IntV(i), IntV(j))) if j != 0 =>
+        Some(Left(IntV(i / j)))
+      case (IntModP(), Vector(IntV(i), IntV(j))) if j != 0 =>
+        Some(Left(IntV(i % j)))
+      case (IntMulP(), Vector(IntV(i), IntV(j))) =>
+        Some(Left(IntV(i * j)))
+      case (IntPowP(), Vector(IntV(i), IntV(j)))
+          if (j >= 0) && (j <= maxFoldedPower) =>
+        Some(Left(IntV(i.pow(j.toInt))))
+      case (IntSubP(), Vector(IntV(i), IntV(j))) =>
+        Some(Left(IntV(i - j)))
+      case (IntGtP(), Vector(IntV(i), IntV(j))) =>
+        Some(Right(i > j))
+      case (IntGteP(), Vector(IntV(i), IntV(j))) =>
+        Some(Right(i >= j))
+      case (IntLtP(), Vector(IntV(i), IntV(j))) =>
+        Some(Right(i < j))
+      case (IntLteP(), Vector(IntV(i), IntV(j))) =>
+        Some(Right(i <= j))
+      case (StrConcatP(), Vector(StrV(x), StrV(y))) =>
+        Some(Left(StrV(escape(unescape(x) + unescape(y)))))
+      case (StrLengthP(), Vector(StrV(x))) =>
+        Some(Left(IntV(unescape(x).length)))
+      case (StrSubstrP(), Vector(StrV(x), IntV(i)))
+          if (i >= 0) && (i <= unescape(x).length) =>
+        Some(Left(StrV(escape(unescape(x).substring(i.toInt)))))
+      case (StrGtP(), Vector(StrV(x), StrV(y))) =>
+        Some(Right(unescape(x) > unescape(y)))
+      case (StrGteP(), Vector(StrV(x), StrV(y))) =>
+        Some(Right(unescape(x) >= unescape(y)))
+      case (StrLtP(), Vector(StrV(x), StrV(y))) =>
+        Some(Right(unescape(x) < unescape(y)))
+      case (StrLteP(), Vector(StrV(x), StrV(y))) =>
+        Some(Right(unescape(x) <= unescape(y)))
+      case _ =>
+        None
+    }
+
+  /** One round of reductions over a term whose bindings are unique. The use
+    * counts are taken from the term at the start of the round. A binding that
+    * is being inlined is no longer in the term, so nothing can be redirected
+    * to it by eta-reduction.
+    */
+  class Reducer(term: Term, counts: mutable.Map[String, Int]) {
+
+    val uses = mutable.Map[String, Int]().withDefaultValue(0)
+    val applications = mutable.Map[String, Int]().withDefaultValue(0)
+    val calls = mutable.Map[String, Int]().withDefaultValue(0)
+
+    foreachUse(term)(uses(_) += 1)
+    countApplications(term)
+
+    def countApplications(term: Term): Unit =
+      term match {
+        case AppC(IdnC(k), _) =>
+          applications(k) += 1
+        case AppF(f, _, _) =>
+          calls(f) += 1
+        case LetC(_, _, t1, t2) =>
+          countApplications(t1)
+          countApplications(t2)
+        case LetF(ds, t) =>
+          ds.foreach { case DefTerm(_, _, _, body) => countApplications(body) }
+          countApplications(t)
+        case LetV(_, FunV(_, _, body), t) =>
+          countApplications(body)
+          countApplications(t)
+        case LetV(_, _, t) =>
+          countApplications(t)
+        case _ =>
+          ()
+      }
+
+    def count(reduction: String): Unit =
+      counts(reduction) += 1
+
+    /** Variables that are bound to literals or variants, with their values. */
+    val known = mutable.Map[String, Value]()
+
+    /** Continuations to be inlined at their single application. */
+    val conts = mutable.Map[String, (String, Term)]()
+
+    /** Functions to be inlined at their calls, and whether there is only one
+      * call, in which case the body doesn't need to be copied.
+      */
+    val funs = mutable.Map[String, (String, String, Term, Boolean)]()
+
+    def reduce(term: Term): Term =
+      reduce(term, Map())
+
+    def reduce(term: Term, s: Map[String, String]): Term = {
+
+      def use(x: String): String =
+        s.getOrElse(x, x)
+
+      term match {
+        case AppC(HaltC(), x) =>
+          AppC(HaltC(), use(x))
+
+        case AppC(IdnC(k), x) =>
+          conts.remove(k) match {
+            case Some((y, body)) =>
+              count("continuation inlined")
+              reduce(body, s + (y -> use(x)))
+            case None =>
+              AppC(IdnC(use(k)), use(x))
+          }
+
+        case AppF(f, k, x) =>
+          funs.get(f) match {
+            case Some((j, y, body, true)) =>
+              count("function inlined")
+              rename(body, Map(j -> use(k), y -> use(x)), identity)
+            case Some((j, y, body, false)) =>
+              count("function inlined")
+              freshen(body, Map(j -> use(k), y -> use(x)))
+            case None =>
+              AppF(use(f), use(k), use(x))
+          }
+
+        case CasV(x, cs) =>
+          val cs1 = cs.map { case CaseTerm(c, k) => CaseTerm(c, use(k)) }
+          val selected =
+            known.get(use(x)) match {
+              case Some(VarV(FldV(c, y))) =>
+                cs1.collectFirst {
+                  case CaseTerm(d, k) if d == c => AppC(IdnC(k), y)
+                }
+              case _ =>
+                None
+            }
+          selected match {
+            case Some(app) =>
+              count("known case")
+              app
+            case None =>
+              CasV(use(x), cs1)
+          }
+
+        case LetC(k, _, _, t2) if uses(k) == 0 =>
+          count("dead letc")
+          reduce(t2, s)
+
+        case LetC(k, x, AppC(IdnC(j), y), t2)
+            if (x == y) && (j != x) && !conts.contains(j) =>
+          count("continuation eta")
+          reduce(t2, s + (k -> use(j)))
+
+        case LetC(k, x, t1, t2) if (uses(k) == 1) && (applications(k) == 1) =>
+          conts(k) = (x, t1)
+          reduce(t2, s)
+
+        case LetC(k, x, t1, t2) =>
+          LetC(k, x, reduce(t1, s), reduce(t2, s))
+
+        case LetF(ds, t) if ds.forall { case DefTerm(f, _, _, _) =>
+              !freeVars(t)(f)
+            } =>
+          count("dead letf")
+          reduce(t, s)
+
+        case LetF(ds, t) =>
+          LetF(
+            ds.map { case DefTerm(f, k, x, body) =>
+              DefTerm(f, k, x, reduce(body, s))
+            },
+            reduce(t, s)
+          )
+
+        case LetV(x, v, t) if (uses(x) == 0) && isPure(v) =>
+          count("dead letv")
+          reduce(t, s)
+
+        case LetV(x, FunV(k, y, AppF(g, j, z)), t)
+            if (j == k) && (z == y) && (g != y) && !funs.contains(g) =>
+          count("function eta")
+          reduce(t, s + (x -> use(g)))
+
+        case LetV(x, FunV(k, y, body), t)
+            if (calls(x) == uses(x)) &&
+              ((uses(x) == 1) || (size(body) <= inlineLimit)) =>
+          funs(x) = (k, y, reduce(body, s), uses(x) == 1)
+          reduce(t, s)
+
+        case LetV(x, v, t) =>
+          val v1 = reduceValue(v, s)
+          fold(v1) match {
+            case Some(Left(c)) =>
+              count("constant folded")
+              known(x) = c
+              LetV(x, c, reduce(t, s))
+            case Some(Right(b)) =>
+              count("constant folded")
+              val u = fresh("u")
+              known(x) = VarV(FldV(if (b) "True" else "False", u))
+              LetV(u, RecV(Vector()), LetV(x, known(x), reduce(t, s)))
+            case None =>
+              v1 match {
+                case IntV(_) | StrV(_) | VarV(_) =>
+                  known(x) = v1
+                case _ =>
+                  ()
+              }
+              LetV(x, v1, reduce(t, s))
+          }
+      }
+    }
+
+    def fold(value: Value): Option[Either[Value, Boolean]] =
+      value match {
+        case PrmV(UserP(p), xs) if xs.forall(known.contains) =>
+          foldPrim(p, xs.map(known))
+        case _ =>
+          None
+      }
+
+    def reduceValue(value: Value, s: Map[String, String]): Value =
+      value match {
+        case FunV(k, x, t) =>
+          FunV(k, x, reduce(t, s))
+        case _ =>
+          substValue(value, s)
+      }
+
+  }
+
+}
@@ -0,0 +1,133 @@
+/*
+ * This file is part of Cooma.
+ *
+ * Copyright (C) 2019-2023 Anthony M Sloane, Macquarie University.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.bitbucket.inkytonik.cooma
+
+import java.io.{ByteArrayOutputStream, File}
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.{Files, Paths, StandardOpenOption}
+import java.util.concurrent.ConcurrentHashMap
+import org.bitbucket.inkytonik.cooma.CoomaParserSyntax.{
+  StaticPreludeEntry,
+  Term
+}
+import scala.util.Try
+
+/** A snapshot of the prelude, which is written with the static and dynamic
+  * prelude files when the prelude is compiled. It holds the static entries,
+  * the IR of the prelude and `env`, the environment that the reference
+  * backend makes by running the IR. Runs that find a snapshot use it instead
+  * of parsing the prelude files and running the prelude.
+  */
+case class PreludeSnapshot(
+    entries: Vector[StaticPreludeEntry],
+    term: Term,
+    env: ByteBuffer
+)
+
+object PreludeSnapshot {
+
+  val magic = 0x43534e50
+  val version = 4
+
+  def write(
+      filename: String,
+      entries: Vector[StaticPreludeEntry],
+      term: Term,
+      env: Array[Byte]
+  ): Unit = {
+    val writer = new SnapshotWriter
+    writer.int(magic)
+    writer.int(version)
+    writer.string(BuildInfo.version)
+    StaticFormat.write(writer, entries)
+    IRFormat.write(writer, term)
+    writer.block(env)
+    Files.write(Paths.get(filename), writer.toByteArray)
+  }
+
+  /** Snapshots that have been loaded, by path, with the modification time of
+    * the file that each was loaded from. Both the frontend and the backend
+    * use the snapshot, so this keeps it to one read per run.
+    */
+  private val loaded =
+    new ConcurrentHashMap[String, (Long, Option[PreludeSnapshot])]
+
+  /** Load the snapshot of the prelude at `preludePath`, which is a file or
+    * a resource. None if there is no snapshot, it is older than the prelude
+    * files next to it or it was written by another version of Cooma, in
+    * which case the prelude files should be used. The environment of the
+    * snapshot is shared, so it should be read through a duplicate.
+    */
+  def load(preludePath: String): Option[PreludeSnapshot] = {
+    val path = s"$preludePath.snapshot"
+    val file = new File(path)
+    val stamp = if (file.isFile) file.lastModified else 0L
+    val cached = loaded.get(path)
+    if ((cached != null) && (cached._1 == stamp))
+      cached._2
+    else {
+      val snapshot =
+        if (isStale(file, preludePath)) None
+        else read(file, path).flatMap(decode)
+      loaded.put(path, (stamp, snapshot))
+      snapshot
+    }
+  }
+
+  def isStale(file: File, preludePath: String): Boolean =
+    file.isFile && Seq("static", "dynamic").exists { suffix =>
+      new File(s"$preludePath.$suffix").lastModified > file.lastModified
+    }
+
+  /** Map the snapshot file into memory, or read it from a resource. */
+  def read(file: File, path: String): Option[ByteBuffer] =
+    if (file.isFile) {
+      val channel = FileChannel.open(file.toPath, StandardOpenOption.READ)
+      try {
+        Some(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size))
+      } finally {
+        channel.close()
+      }
+    } else {
+      val stream = getClass.getClassLoader.getResourceAsStream(path)
+      if (stream == null)
+        None
+      else
+        try {
+          val bytes = new ByteArrayOutputStream
+          val buffer = new Array[Byte](1 << 16)
+          var n = stream.read(buffer)
+          while (n >= 0) {
+            bytes.write(buffer, 0, n)
+            n = stream.read(buffer)
+          }
+          Some(ByteBuffer.wrap(bytes.toByteArray))
+        } finally {
+          stream.close()
+        }
+    }
+
+  def decode(buffer: ByteBuffer): Option[PreludeSnapshot] =
+    Try {
+      val reader = new SnapshotReader(buffer)
+      if (
+        (reader.int() == magic) && (reader.int() == version) &&
+        (reader.string() == BuildInfo.version)
+      ) {
+        val entries = StaticFormat.read(reader)
+        val term = IRFormat.read(reader)
+        Some(PreludeSnapshot(entries, term, reader.block()))
+      } else
+        None
+    }.toOption.flatten
+
+}
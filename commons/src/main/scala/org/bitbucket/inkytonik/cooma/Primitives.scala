@@ -54,9 +54,42 @@ object Primitives {
   def primName(prim: Product): String =
     prim.productPrefix.dropRight(1)
 
+  // Long versions of the integer operations, which throw ArithmeticException
+  // if the result doesn't fit in a Long, in which case the BigInt versions
+  // are used instead
+
+  def absExact(i: Long): Long =
+    if (i == Long.MinValue)
+      throw new ArithmeticException("long overflow")
+    else
+      Math.abs(i)
+
+  def divExact(l: Long, r: Long): Long =
+    if ((l == Long.MinValue) && (r == -1))
+      throw new ArithmeticException("long overflow")
+    else
+      l / r
+
+  def powExact(l: Long, r: Long): Long = {
+    @tailrec
+    def aux(result: Long, n: Long): Long =
+      if (n == 0) result else aux(Math.multiplyExact(result, l), n - 1)
+    if (r >= 64) {
+      if ((l == 0) || (l == 1)) l
+      else if (l == -1) (if (r % 2 == 0) 1L else -1L)
+      else throw new ArithmeticException("long overflow")
+    } else
+      aux(1, r)
+  }
+
   def primFunName(prim: UserPrimitive): String =
     primName(prim).drop(3).toLowerCase()
 
+  // Seed for the hashes of records, so that a record and a vector of the
+  // same field hashes don't collide
+
+  val recordSeed = 0x5ec0da7a
+
 }
 
 trait Primitives extends Database with FileIo with HttpServer {
@@ -70,23 +103,60 @@ trait Primitives extends Database with FileIo with HttpServer {
   import org.bitbucket.inkytonik.cooma.CoomaException._
   import org.bitbucket.inkytonik.cooma.PrettyPrinter.show
   import org.bitbucket.inkytonik.cooma.PrimitiveUtils.readReaderContents
-  import org.bitbucket.inkytonik.cooma.Primitives.primName
-  import org.bitbucket.inkytonik.cooma.Util.{escape, fresh, unescape}
+  import org.bitbucket.inkytonik.cooma.Primitives.{
+    absExact,
+    divExact,
+    powExact,
+    primName,
+    recordSeed
+  }
+  import org.bitbucket.inkytonik.cooma.Util.fresh
+  import scala.util.hashing.MurmurHash3.{mix, orderedHash, unorderedHash}
   import scalaj.http.Http
 
+  /** Evaluate a primitive whose operands are given by name. The operands are
+    * looked up in `rho`, except for the field name of a record selection which
+    * is passed through as a string value.
+    */
   def evalPrim(
       p: Primitive,
       rho: Env,
       xs: Seq[String],
       args: Seq[String]
   ): ValueR = {
+    checkPrimArity(p, xs)
+    run(p, rho, xs.indices.map(i => primOperand(p, rho, i, xs(i))), args)
+  }
+
+  /** Evaluate a primitive whose operand values have already been found, as
+    * done by backends that resolve variables before execution. `xs` are the
+    * operand names, which are only used for error reporting.
+    */
+  def evalPrim(
+      p: Primitive,
+      rho: Env,
+      xs: Seq[String],
+      vs: Seq[ValueR],
+      args: Seq[String]
+  ): ValueR = {
+    checkPrimArity(p, xs)
+    run(p, rho, vs, args)
+  }
+
+  def checkPrimArity(p: Primitive, xs: Seq[String]): Unit = {
     val nArgs = numArgs(p)
-    if (xs.length == nArgs)
-      run(p, rho, xs, args)
-    else
+    if (xs.length != nArgs)
       errPrim(show(p), s"expected $nArgs arg(s), got $xs")
   }
 
+  def primOperand(p: Primitive, rho: Env, i: Int, x: String): ValueR =
+    p match {
+      case RecSelectP() if i == 1 =>
+        strR(x)
+      case _ =>
+        lookupR(rho, x)
+    }
+
   def numArgs(p: Primitive): Int =
     p match {
       case ArgumentP(_) | ArgumentCheckP(_) =>
@@ -116,20 +186,28 @@ trait Primitives extends Database with FileIo with HttpServer {
         }
     }
 
-  def getStrParam(prim: UserPrimitive, rho: Env, x: String): String =
-    isStrR(lookupR(rho, x)) match {
+  def getStrParam(prim: UserPrimitive, value: ValueR): String =
+    isStrR(value) match {
       case Some(v) =>
         v
       case _ =>
-        errPrim(primName(prim), s"can't find string operand $x")
+        errPrim(primName(prim), s"can't find string operand $value")
     }
 
-  def getIntParam(prim: UserPrimitive, rho: Env, x: String): BigInt =
-    isIntR(lookupR(rho, x)) match {
+  def getRopeParam(prim: UserPrimitive, value: ValueR): Rope =
+    isRopeR(value) match {
       case Some(v) =>
         v
       case _ =>
-        errPrim(primName(prim), s"can't find integer operand $x")
+        errPrim(primName(prim), s"can't find string operand $value")
+    }
+
+  def getIntParam(prim: UserPrimitive, value: ValueR): BigInt =
+    isIntR(value) match {
+      case Some(v) =>
+        v
+      case _ =>
+        errPrim(primName(prim), s"can't find integer operand $value")
     }
 
   /** @param prim
@@ -137,7 +215,7 @@ trait Primitives extends Database with FileIo with HttpServer {
     * @param rho
     *   the environment
     * @param xs
-    *   primitive arguments
+    *   primitive operand values
     * @param args
     *   command-line arguments
     * @return
@@ -146,7 +224,7 @@ trait Primitives extends Database with FileIo with HttpServer {
   def run(
       prim: Primitive,
       rho: Env,
-      xs: Seq[String],
+      xs: Seq[ValueR],
       args: Seq[String]
   ): ValueR =
     prim match {
@@ -157,34 +235,34 @@ trait Primitives extends Database with FileIo with HttpServer {
         argumentCheck(i, args)
 
       case CapabilityP(cap) =>
-        capability(cap, rho, xs(0))
+        capability(cap, xs(0))
 
       case DbTableAllP(index, tablename) =>
         dbAll(index, tablename)
 
       case DbTableDeleteP(index, tablename) =>
-        dbDelete(index, tablename, lookupR(rho, xs(0)))
+        dbDelete(index, tablename, xs(0))
 
       case DbTableGetByIdP(index, tablename) =>
-        dbGetById(index, tablename, lookupR(rho, xs(0)))
+        dbGetById(index, tablename, xs(0))
 
       case DbTableInsertP(index, tablename) =>
-        dbInsert(index, tablename, lookupR(rho, xs(0)))
+        dbInsert(index, tablename, xs(0))
 
       case DbTableUpdateP(index, tablename) =>
-        dbUpdate(index, tablename, lookupR(rho, xs(0)))
+        dbUpdate(index, tablename, xs(0))
 
       case FolderReaderReadP(filename) =>
-        folderReaderRead(prim, rho, filename, xs(0))
+        folderReaderRead(prim, filename, xs(0))
 
       case FolderRunnerRunP(filename) =>
-        folderRunnerRun(prim, rho, filename, xs(0), xs(1))
+        folderRunnerRun(prim, filename, xs(0), xs(1))
 
       case FolderWriterWriteP(filename) =>
-        folderWriterWrite(prim, rho, filename, xs(0), xs(1))
+        folderWriterWrite(prim, filename, xs(0), xs(1))
 
       case HttpClientP(method, url) =>
-        httpClient(prim, rho, method, url, xs(0))
+        httpClient(prim, method, url, xs(0))
 
       case HttpServerP(port) =>
         httpServer(prim, rho, port, xs(0))
@@ -193,69 +271,74 @@ trait Primitives extends Database with FileIo with HttpServer {
         readerRead(prim, filename)
 
       case RunnerRunP(filename) =>
-        runnerRun(prim, filename, rho, xs(0))
+        runnerRun(prim, filename, xs(0))
 
       case RecConcatP() =>
-        recConcat(prim, rho, xs(0), xs(1))
+        recConcat(prim, xs(0), xs(1))
 
       case RecSelectP() =>
-        recSelect(prim, rho, xs(0), xs(1))
+        isStrR(xs(1)) match {
+          case Some(f) =>
+            recSelect(prim, xs(0), f)
+          case None =>
+            errPrim(primName(prim), s"field name expected, got ${xs(1)}")
+        }
 
       case WriterWriteP(filename) =>
-        writerWrite(prim, filename, rho, xs(0))
+        writerWrite(prim, filename, xs(0))
 
       case UserP(prim) =>
         prim match {
           case EqualP() =>
-            equal(prim, rho, xs(1), xs(2))
+            equal(prim, xs(1), xs(2))
           case IntAbsP() =>
-            intUnPrim(prim, rho, xs(0), _.abs)
+            intUnPrim(prim, xs(0), _.abs, absExact)
           case IntAddP() =>
-            intBinPrim(prim, rho, xs(0), xs(1), _ + _)
+            intBinPrim(prim, xs(0), xs(1), _ + _, Math.addExact(_, _))
           case IntDivP() =>
-            intDiv(prim, rho, xs(0), xs(1), _ / _)
+            intDiv(prim, xs(0), xs(1), _ / _, divExact)
           case IntGtP() =>
-            intRelPrim(prim, rho, xs(0), xs(1), _ > _)
+            intRelPrim(prim, xs(0), xs(1), _ > _, _ > _)
           case IntGteP() =>
-            intRelPrim(prim, rho, xs(0), xs(1), _ >= _)
+            intRelPrim(prim, xs(0), xs(1), _ >= _, _ >= _)
           case IntLtP() =>
-            intRelPrim(prim, rho, xs(0), xs(1), _ < _)
+            intRelPrim(prim, xs(0), xs(1), _ < _, _ < _)
           case IntLteP() =>
-            intRelPrim(prim, rho, xs(0), xs(1), _ <= _)
+            intRelPrim(prim, xs(0), xs(1), _ <= _, _ <= _)
           case IntModP() =>
-            intDiv(prim, rho, xs(0), xs(1), _ % _)
+            intDiv(prim, xs(0), xs(1), _ % _, _ % _)
           case IntMulP() =>
-            intBinPrim(prim, rho, xs(0), xs(1), _ * _)
+            intBinPrim(prim, xs(0), xs(1), _ * _, Math.multiplyExact(_, _))
           case IntPowP() =>
-            intPow(prim, rho, xs(0), xs(1))
+            intPow(prim, xs(0), xs(1))
           case IntSubP() =>
-            intBinPrim(prim, rho, xs(0), xs(1), _ - _)
+            intBinPrim(prim, xs(0), xs(1), _ - _, Math.subtractExact(_, _))
           case StrConcatP() =>
-            strConcat(prim, rho, xs(0), xs(1))
+            strConcat(prim, xs(0), xs(1))
           case StrGtP() =>
-            strRelPrim(prim, rho, xs(0), xs(1), _ > _)
+            strRelPrim(prim, xs(0), xs(1), _ > _)
           case StrGteP() =>
-            strRelPrim(prim, rho, xs(0), xs(1), _ >= _)
+            strRelPrim(prim, xs(0), xs(1), _ >= _)
           case StrLengthP() =>
-            strLength(prim, rho, xs(0))
+            strLength(prim, xs(0))
           case StrLtP() =>
-            strRelPrim(prim, rho, xs(0), xs(1), _ < _)
+            strRelPrim(prim, xs(0), xs(1), _ < _)
           case StrLteP() =>
-            strRelPrim(prim, rho, xs(0), xs(1), _ <= _)
+            strRelPrim(prim, xs(0), xs(1), _ <= _)
           case StrSubstrP() =>
-            strSubstr(prim, rho, xs(0), xs(1))
+            strSubstr(prim, xs(0), xs(1))
           case VecAppendP() =>
-            vecAppend(prim, rho, xs(1), xs(2))
+            vecAppend(prim, xs(1), xs(2))
           case VecConcatP() =>
-            vecConcat(prim, rho, xs(1), xs(2))
+            vecConcat(prim, xs(1), xs(2))
           case VecGetP() =>
-            vecGet(prim, rho, xs(1), xs(2))
+            vecGet(prim, xs(1), xs(2))
           case VecLengthP() =>
-            vecLength(prim, rho, xs(1))
+            vecLength(prim, xs(1))
           case VecPrependP() =>
-            vecPrepend(prim, rho, xs(1), xs(2))
+            vecPrepend(prim, xs(1), xs(2))
           case VecPutP() =>
-            vecPut(prim, rho, xs(1), xs(2), xs(3))
+            vecPut(prim, xs(1), xs(2), xs(3))
         }
     }
 
@@ -276,14 +359,12 @@ trait Primitives extends Database with FileIo with HttpServer {
 
   /** @param cap
     *   the capability specifier
-    * @param rho
-    *   the environment
-    * @param x
+    * @param value
     *   the command-line argument to be passed to the capability constructor
     * @return
     *   the capability object
     */
-  def capability(cap: String, rho: Env, x: String): ValueR = {
+  def capability(cap: String, value: ValueR): ValueR = {
 
     def makeCapability(pairs: Vector[(String, Primitive, Int)]): ValueR =
       recR(pairs.map { case (fieldName, primitive, numArgs) =>
@@ -313,7 +394,6 @@ trait Primitives extends Database with FileIo with HttpServer {
         )
       })
 
-    val value = lookupR(rho, x)
     val argument = isStrR(value) match {
       case Some(s) => s
       case None    => errCap(cap, s"got non-String argument $value")
@@ -370,70 +450,133 @@ trait Primitives extends Database with FileIo with HttpServer {
     }
   }
 
-  def equal(prim: UserPrimitive, rho: Env, l: String, r: String): ValueR = {
-
-    def sameFields(l: Vector[FldR], r: Vector[FldR]): Boolean =
-      l.map(getFieldName).toSet == r.map(getFieldName).toSet
-
-    def getField(f: String, r: Vector[FldR]): Option[FldR] =
-      r.find(getFieldName(_) == f)
+  def equal(prim: UserPrimitive, l: ValueR, r: ValueR): ValueR =
+    if (equalR(l, r))
+      trueR
+    else
+      falseR
 
-    def equalValues(lvalue: ValueR, rvalue: ValueR): Boolean = {
-      (isIntR(lvalue), isIntR(rvalue)) match {
+  /** Deep equality of values. Records are equal if they have the same fields
+    * with equal values, whatever the order of the fields. Closures are never
+    * equal, so neither are values that contain them, even to themselves.
+    * Compound values are compared by identity and then by structural hash
+    * before their components are compared, so values that differ are
+    * usually told apart without looking inside them.
+    */
+  def equalR(l: ValueR, r: ValueR): Boolean =
+    if (isSmallIntR(l) && isSmallIntR(r))
+      getSmallInt(l) == getSmallInt(r)
+    else
+      (isIntR(l), isIntR(r)) match {
         case (Some(li), Some(ri)) =>
           li == ri
-        case _ =>
-          (isStrR(lvalue), isStrR(rvalue)) match {
+        case (None, None) =>
+          (isRopeR(l), isRopeR(r)) match {
             case (Some(ls), Some(rs)) =>
               ls == rs
+            case (None, None) =>
+              equalCompound(l, r)
             case _ =>
-              (isRecR(lvalue), isRecR(rvalue)) match {
-                case (Some(lfs), Some(rfs)) =>
-                  if (sameFields(lfs, rfs))
-                    lfs.forall(lfld => {
-                      val f = getFieldName(lfld)
-                      getField(f, rfs) match {
-                        case Some(rfld) =>
-                          equalValues(getFieldValue(lfld), getFieldValue(rfld))
-                        case None =>
-                          errPrim(
-                            primName(prim),
-                            s"can't find field $f in $rfs"
-                          )
-                      }
-                    })
-                  else
-                    false
-                case _ =>
-                  (isVarR(lvalue), isVarR(rvalue)) match {
-                    case (Some((lc, lv)), Some((rc, rv))) =>
-                      (lc == rc) && equalValues(lv, rv)
-                    case _ =>
-                      (isVecR(lvalue), isVecR(rvalue)) match {
-                        case (Some(lv), Some(rv)) =>
-                          lv.corresponds(rv)(equalValues)
-                        case _ =>
-                          false
-                      }
-                  }
-              }
+              false
           }
+        case _ =>
+          false
       }
-    }
 
-    if (equalValues(lookupR(rho, l), lookupR(rho, r)))
-      trueR
-    else
-      falseR
+  def equalCompound(l: ValueR, r: ValueR): Boolean = {
+
+    def same: Boolean =
+      (l.asInstanceOf[AnyRef] eq r.asInstanceOf[AnyRef]) && closureFree(l)
+
+    def sameHash: Boolean =
+      hashR(l) == hashR(r)
+
+    (isRecR(l), isRecR(r)) match {
+      case (Some(lfs), Some(rfs)) =>
+        same || (sameHash && equalFields(lfs, rfs))
+      case (None, None) =>
+        (isVarR(l), isVarR(r)) match {
+          case (Some((lc, lv)), Some((rc, rv))) =>
+            same || ((lc == rc) && sameHash && equalR(lv, rv))
+          case (None, None) =>
+            (isVecR(l), isVecR(r)) match {
+              case (Some(lv), Some(rv)) =>
+                same || ((lv.length == rv.length) && sameHash &&
+                  lv.corresponds(rv)(equalR))
+              case _ =>
+                false
+            }
+          case _ =>
+            false
+        }
+      case _ =>
+        false
+    }
   }
 
-  def folderFile(
-      prim: Primitive,
-      rho: Env,
-      root: String,
-      suffixIdn: String
-  ): File = {
-    val suffix = lookupR(rho, suffixIdn)
+  /** Whether `value` contains no closures. A value that is compared with
+    * itself only needs this walk, not a comparison of its components.
+    */
+  def closureFree(value: ValueR): Boolean =
+    isSmallIntR(value) || isIntR(value).isDefined ||
+      isRopeR(value).isDefined || {
+        isRecR(value) match {
+          case Some(fs) =>
+            fs.forall(f => closureFree(getFieldValue(f)))
+          case None =>
+            isVarR(value) match {
+              case Some((_, v)) =>
+                closureFree(v)
+              case None =>
+                isVecR(value).exists(_.forall(closureFree))
+            }
+        }
+      }
+
+  /** Records are usually built with their fields in the same order, so the
+    * fields are first compared pairwise. They are only looked up by name if
+    * the field names don't line up.
+    */
+  def equalFields(lfs: Vector[FldR], rfs: Vector[FldR]): Boolean =
+    (lfs.length == rfs.length) && {
+      if (lfs.corresponds(rfs)(getFieldName(_) == getFieldName(_)))
+        lfs.corresponds(rfs)((lf, rf) =>
+          equalR(getFieldValue(lf), getFieldValue(rf))
+        )
+      else {
+        val rvs = rfs.map(f => (getFieldName(f), getFieldValue(f))).toMap
+        (rvs.size == lfs.length) && lfs.forall { lf =>
+          rvs.get(getFieldName(lf)).exists(equalR(getFieldValue(lf), _))
+        }
+      }
+    }
+
+  /** A structural hash of a value that agrees with `equalR`, so equal values
+    * have the same hash. Record fields are combined whatever their order.
+    * Backends can override this method to cache hashes on their values.
+    */
+  def hashR(value: ValueR): Int =
+    if (isSmallIntR(value))
+      getSmallInt(value).##
+    else
+      isIntR(value)
+        .map(_.##)
+        .orElse(isRopeR(value).map(_.hashCode))
+        .orElse(isRecR(value).map { fields =>
+          unorderedHash(
+            fields.map(f =>
+              mix(getFieldName(f).hashCode, hashR(getFieldValue(f)))
+            ),
+            recordSeed
+          )
+        })
+        .orElse(isVarR(value).map { case (c, v) =>
+          mix(c.hashCode, hashR(v))
+        })
+        .orElse(isVecR(value).map(elems => orderedHash(elems.map(hashR))))
+        .getOrElse(System.identityHashCode(value))
+
+  def folderFile(prim: Primitive, root: String, suffix: ValueR): File = {
     val filename =
       isStrR(suffix)
         .map(suffix => s"$root/$suffix")
@@ -445,11 +588,10 @@ trait Primitives extends Database with FileIo with HttpServer {
 
   def folderReaderRead(
       prim: Primitive,
-      rho: Env,
       root: String,
-      suffixIdn: String
+      suffix: ValueR
   ): ValueR = {
-    val file = folderFile(prim, rho, root, suffixIdn)
+    val file = folderFile(prim, root, suffix)
     val in = new BufferedReader(new FileReader(file))
     Try(readReaderContents(in)) match {
       case Success(value)          => varR("Right", strR(value))
@@ -460,13 +602,12 @@ trait Primitives extends Database with FileIo with HttpServer {
 
   def folderRunnerRun(
       prim: Primitive,
-      rho: Env,
       root: String,
-      suffixIdn: String,
-      x: String
+      suffix: ValueR,
+      x: ValueR
   ): ValueR = {
-    val filename = folderFile(prim, rho, root, suffixIdn).getPath
-    Try(runnerRun(prim, filename, rho, x)) match {
+    val filename = folderFile(prim, root, suffix).getPath
+    Try(runnerRun(prim, filename, x)) match {
       case Success(rr) =>
         varR("Right", rr)
       case Failure(e: IOException) =>
@@ -478,16 +619,13 @@ trait Primitives extends Database with FileIo with HttpServer {
 
   def folderWriterWrite(
       prim: Primitive,
-      rho: Env,
       root: String,
-      suffixIdn: String,
-      x: String
+      suffix: ValueR,
+      x: ValueR
   ): ValueR = {
-    val file = folderFile(prim, rho, root, suffixIdn)
-    val text = {
-      val text = lookupR(rho, x)
-      isStrR(text).getOrElse(errCap(primName(prim), s"can't write $text"))
-    }
+    val file = folderFile(prim, root, suffix)
+    val text =
+      isStrR(x).getOrElse(errCap(primName(prim), s"can't write $x"))
     val out = new BufferedWriter(new FileWriter(file))
     Try(out.write(text)) match {
       case Success(()) =>
@@ -502,12 +640,11 @@ trait Primitives extends Database with FileIo with HttpServer {
 
   def httpClient(
       prim: Primitive,
-      rho: Env,
       methodName: String,
       url: String,
-      x: String
+      x: ValueR
   ): ValueR =
-    isStrR(lookupR(rho, x)) match {
+    isStrR(x) match {
       case Some(suffix) =>
         Try(Http(url + suffix).method(methodName).asString) match {
           case Success(response) =>
@@ -533,9 +670,9 @@ trait Primitives extends Database with FileIo with HttpServer {
       prim: Primitive,
       rho: Env,
       port: Int,
-      endpointsIdn: String
+      endpoints: ValueR
   ): ValueR =
-    isRecR(lookupR(rho, endpointsIdn)) match {
+    isRecR(endpoints) match {
       case Some(endpointsRec) =>
         val endpoints =
           endpointsRec.map { fld =>
@@ -548,72 +685,94 @@ trait Primitives extends Database with FileIo with HttpServer {
         errCap(primName(prim), "expected record")
     }
 
+  /** Apply a binary integer operation, using `exact` if both operands and
+    * the result fit in a Long and `op` otherwise.
+    */
   def intBinPrim(
       prim: UserPrimitive,
-      rho: Env,
-      l: String,
-      r: String,
-      op: (BigInt, BigInt) => BigInt
-  ): ValueR = {
-    val li = getIntParam(prim, rho, l)
-    val ri = getIntParam(prim, rho, r)
-    intR(op(li, ri))
-  }
+      l: ValueR,
+      r: ValueR,
+      op: (BigInt, BigInt) => BigInt,
+      exact: (Long, Long) => Long
+  ): ValueR =
+    if (isSmallIntR(l) && isSmallIntR(r))
+      try {
+        smallIntR(exact(getSmallInt(l), getSmallInt(r)))
+      } catch {
+        case _: ArithmeticException =>
+          intR(op(getSmallInt(l), getSmallInt(r)))
+      }
+    else {
+      val li = getIntParam(prim, l)
+      val ri = getIntParam(prim, r)
+      intR(op(li, ri))
+    }
 
   def intDiv(
       prim: UserPrimitive,
-      rho: Env,
-      l: String,
-      r: String,
-      func: (BigInt, BigInt) => BigInt
+      l: ValueR,
+      r: ValueR,
+      func: (BigInt, BigInt) => BigInt,
+      exact: (Long, Long) => Long
   ): ValueR = {
-    val ri = getIntParam(prim, rho, r)
-    if (ri == 0)
+    val zero =
+      if (isSmallIntR(r)) getSmallInt(r) == 0 else getIntParam(prim, r) == 0
+    if (zero)
       errPrim(primName(prim), s"division by zero")
-    else {
-      val li = getIntParam(prim, rho, l)
-      intR(func(li, ri))
-    }
+    else
+      intBinPrim(prim, l, r, func, exact)
   }
 
-  def intPow(prim: UserPrimitive, rho: Env, l: String, r: String): ValueR = {
-    val ri = getIntParam(prim, rho, r)
-    if (ri < 0)
-      errPrim(primName(prim), s"illegal negative power $ri given")
-    else {
-      val li = getIntParam(prim, rho, l)
-      intR(li.pow(ri.toInt))
-    }
+  def intPow(prim: UserPrimitive, l: ValueR, r: ValueR): ValueR = {
+    val negative =
+      if (isSmallIntR(r)) getSmallInt(r) < 0 else getIntParam(prim, r) < 0
+    if (negative)
+      errPrim(
+        primName(prim),
+        s"illegal negative power ${getIntParam(prim, r)} given"
+      )
+    else
+      intBinPrim(prim, l, r, _.pow(_.toInt), powExact)
   }
 
   def intRelPrim(
       prim: UserPrimitive,
-      rho: Env,
-      l: String,
-      r: String,
-      op: (BigInt, BigInt) => Boolean
+      l: ValueR,
+      r: ValueR,
+      op: (BigInt, BigInt) => Boolean,
+      exact: (Long, Long) => Boolean
   ): ValueR = {
-    val li = getIntParam(prim, rho, l)
-    val ri = getIntParam(prim, rho, r)
-    if (op(li, ri)) trueR else falseR
+    val result =
+      if (isSmallIntR(l) && isSmallIntR(r))
+        exact(getSmallInt(l), getSmallInt(r))
+      else
+        op(getIntParam(prim, l), getIntParam(prim, r))
+    if (result) trueR else falseR
   }
 
   def intUnPrim(
       prim: UserPrimitive,
-      rho: Env,
-      i: String,
-      op: BigInt => BigInt
-  ): ValueR = {
-    val ii = getIntParam(prim, rho, i)
-    intR(op(ii))
-  }
+      i: ValueR,
+      op: BigInt => BigInt,
+      exact: Long => Long
+  ): ValueR =
+    if (isSmallIntR(i))
+      try {
+        smallIntR(exact(getSmallInt(i)))
+      } catch {
+        case _: ArithmeticException =>
+          intR(op(getSmallInt(i)))
+      }
+    else
+      intR(op(getIntParam(prim, i)))
 
   def readerRead(prim: Primitive, filename: String): ValueR = {
     lazy val in: Try[BufferedReader] =
       Try(
         new BufferedReader(
           filename match {
-            case CoomaConstants.CONSOLEIO => new InputStreamReader(System.in)
+            case CoomaConstants.CONSOLEIO =>
+              new InputStreamReader(getConfig.input)
             case _ => new BufferedReader(new FileReader(filename))
           }
         )
@@ -624,7 +783,7 @@ trait Primitives extends Database with FileIo with HttpServer {
       result
     } match {
       case Success(s) =>
-        varR("Right", strR(escape(s)))
+        varR("Right", strR(s))
       case Failure(e: IOException) =>
         varR("Left", strR(e.toString))
       case Failure(e) =>
@@ -632,9 +791,7 @@ trait Primitives extends Database with FileIo with HttpServer {
     }
   }
 
-  def recConcat(prim: Primitive, rho: Env, l: String, r: String): ValueR = {
-    val vl = lookupR(rho, l)
-    val vr = lookupR(rho, r)
+  def recConcat(prim: Primitive, vl: ValueR, vr: ValueR): ValueR = {
     def aux(v: ValueR, side: String): Vector[FldR] =
       isRecR(v) match {
         case Some(fields) =>
@@ -642,14 +799,13 @@ trait Primitives extends Database with FileIo with HttpServer {
         case None =>
           errPrim(
             primName(prim),
-            s"$side argument $r of record concatenation is non-record"
+            s"$side argument $v of record concatenation is non-record"
           )
       }
     recR(aux(vl, "first") ++ aux(vr, "second"))
   }
 
-  def recSelect(prim: Primitive, rho: Env, r: String, f: String): ValueR = {
-    val value = lookupR(rho, r)
+  def recSelect(prim: Primitive, value: ValueR, f: String): ValueR =
     isRecR(value) match {
       case Some(fields) =>
         fields.collectFirst {
@@ -663,18 +819,15 @@ trait Primitives extends Database with FileIo with HttpServer {
       case None =>
         errPrim(
           primName(prim),
-          s"$r is non-record $value, looking for field $f"
+          s"non-record $value, looking for field $f"
         )
     }
-  }
 
   def runnerRun(
       prim: Primitive,
       filename: String,
-      rho: Env,
-      x: String
+      value: ValueR
   ): ValueR = {
-    val value = lookupR(rho, x)
     val cmdargs: Seq[String] =
       isVecR(value) match {
         case Some(vec) =>
@@ -708,67 +861,60 @@ trait Primitives extends Database with FileIo with HttpServer {
     recR(
       Vector(
         fldR("exitValue", intR(exitValue)),
-        fldR("output", strR(escape(output)))
+        fldR("output", strR(output))
       )
     )
   }
 
-  def strConcat(prim: UserPrimitive, rho: Env, x: String, y: String): ValueR = {
-    val sx = getStrParam(prim, rho, x)
-    val sy = getStrParam(prim, rho, y)
-    strR(escape(unescape(sx) + unescape(sy)))
-  }
+  def strConcat(prim: UserPrimitive, x: ValueR, y: ValueR): ValueR =
+    ropeR(getRopeParam(prim, x) ++ getRopeParam(prim, y))
 
-  def strLength(prim: UserPrimitive, rho: Env, x: String): ValueR = {
-    val sx = getStrParam(prim, rho, x)
-    intR(unescape(sx).length)
-  }
+  def strLength(prim: UserPrimitive, x: ValueR): ValueR =
+    intR(getRopeParam(prim, x).length)
 
   def strRelPrim(
       prim: UserPrimitive,
-      rho: Env,
-      l: String,
-      r: String,
+      l: ValueR,
+      r: ValueR,
       op: (String, String) => Boolean
   ): ValueR = {
-    val li = getStrParam(prim, rho, l)
-    val ri = getStrParam(prim, rho, r)
+    val li = getStrParam(prim, l)
+    val ri = getStrParam(prim, r)
     if (op(li, ri)) trueR else falseR
   }
 
-  def strSubstr(prim: UserPrimitive, rho: Env, x: String, i: String): ValueR = {
-    val sx = getStrParam(prim, rho, x)
-    val usx = unescape(sx)
-    val ii = getIntParam(prim, rho, i)
-    if ((ii < 0) || (ii > usx.length))
-      errPrim(primName(prim), s"""index $ii out of range for string "$sx"""")
+  def strSubstr(prim: UserPrimitive, x: ValueR, i: ValueR): ValueR = {
+    val rx = getRopeParam(prim, x)
+    val ii = getIntParam(prim, i)
+    if ((ii < 0) || (ii > rx.length))
+      errPrim(
+        primName(prim),
+        s"""index $ii out of range for string "${rx.show}""""
+      )
     else
-      strR(escape(usx.substring(ii.toInt)))
+      ropeR(rx.substring(ii.toInt))
   }
 
-  def lookupVector(rho: Env, name: String): Vector[ValueR] =
-    isVecR(lookupR(rho, name)) match {
-      case Some(value) =>
-        value
+  def getVector(value: ValueR): Vector[ValueR] =
+    isVecR(value) match {
+      case Some(elems) =>
+        elems
       case None =>
-        errPrim(
-          "LookupVector",
-          s"$name is ${lookupR(rho, name)}, expected Vector value"
-        )
+        errPrim("LookupVector", s"$value, expected Vector value")
     }
 
-  def vecAppend(prim: UserPrimitive, rho: Env, v: String, x: String): ValueR = {
-    val elems = lookupVector(rho, v)
-    vecR(elems :+ lookupR(rho, x))
+  def vecAppend(prim: UserPrimitive, v: ValueR, x: ValueR): ValueR = {
+    val elems = getVector(v)
+    vecR(elems :+ x)
   }
 
-  def vecConcat(prim: UserPrimitive, rho: Env, v: String, w: String): ValueR =
-    vecR(lookupVector(rho, v) ++ lookupVector(rho, w))
+  def vecConcat(prim: UserPrimitive, v: ValueR, w: ValueR): ValueR =
+    vecR(getVector(v) ++ getVector(w))
 
-  def vecGet(prim: UserPrimitive, rho: Env, v: String, i: String): ValueR =
-    isIntR(lookupR(rho, i)) match {
+  def vecGet(prim: UserPrimitive, v: ValueR, i: ValueR): ValueR =
+    isIntR(i) match {
       case Some(i) =>
-        val elems = lookupVector(rho, v)
+        val elems = getVector(v)
         val index = i.toInt
         if (elems.indices contains index)
           elems(index)
@@ -781,31 +927,25 @@ trait Primitives extends Database with FileIo with HttpServer {
         errPrim(primName(prim), s"can't find integer (index) operand $i")
     }
 
-  def vecLength(prim: UserPrimitive, rho: Env, v: String): ValueR =
-    intR(lookupVector(rho, v).length)
+  def vecLength(prim: UserPrimitive, v: ValueR): ValueR =
+    intR(getVector(v).length)
 
-  def vecPrepend(
-      prim: UserPrimitive,
-      rho: Env,
-      v: String,
-      x: String
-  ): ValueR = {
-    val elems = lookupVector(rho, v)
-    vecR(lookupR(rho, x) +: elems)
+  def vecPrepend(prim: UserPrimitive, v: ValueR, x: ValueR): ValueR = {
+    val elems = getVector(v)
+    vecR(x +: elems)
   }
 
   def vecPut(
       prim: UserPrimitive,
-      rho: Env,
-      v: String,
-      i: String,
-      x: String
+      v: ValueR,
+      i: ValueR,
+      x: ValueR
   ): ValueR = {
-    val elems = lookupVector(rho, v)
-    isIntR(lookupR(rho, i)) match {
+    val elems = getVector(v)
+    isIntR(i) match {
       case Some(idx) =>
         if (0 <= idx && idx < elems.length)
-          vecR(elems.updated(idx.intValue, lookupR(rho, x)))
+          vecR(elems.updated(idx.intValue, x))
         else
           errPrim(
             primName(prim),
@@ -819,17 +959,15 @@ trait Primitives extends Database with FileIo with HttpServer {
   def writerWrite(
       prim: Primitive,
       filename: String,
-      rho: Env,
-      x: String
+      value: ValueR
   ): ValueR = {
-    val value = lookupR(rho, x)
     val s = isIntR(value) match {
       case Some(i) =>
         i.toString
       case None =>
         isStrR(value) match {
           case Some(s) =>
-            unescape(s)
+            s
           case None =>
             errPrim(primName(prim), s"can't write $value")
         }
@@ -0,0 +1,130 @@
+/*
+ * This file is part of Cooma.
+ *
+ * Copyright (C) 2019-2023 Anthony M Sloane, Macquarie University.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.bitbucket.inkytonik.cooma
+
+/** The text of a string value. The text is raw, without escapes, and is only
+  * escaped when it is shown. Concatenation makes a node that refers to its
+  * operands instead of copying them, so a string that is built by appending
+  * pieces to it takes time that is linear in its final length. The text of a
+  * node is flattened into a single string when it is first needed.
+  *
+  * Ropes can be shared by threads. The flattened and escaped texts are each
+  * published by a single volatile write, and the operands of a node are only
+  * dropped after its text has been published, so a thread that finds them
+  * gone can use the text instead.
+  */
+final class Rope private (
+    @volatile private var text: String,
+    @volatile private var left: Rope,
+    @volatile private var right: Rope,
+    @volatile private var escaped: String,
+    val length: Int
+) extends Comparable[Rope] {
+
+  import Rope.shortLength
+
+  def ++(that: Rope): Rope =
+    if (length == 0)
+      that
+    else if (that.length == 0)
+      this
+    else if (length + that.length <= shortLength)
+      Rope(toString + that.toString)
+    else
+      new Rope(null, this, that, null, length + that.length)
+
+  def substring(begin: Int): Rope =
+    if (begin == 0) this else Rope(toString.substring(begin))
+
+  /** The escaped text, as it would be written in a string literal. A rope
+    * made from a literal shows as that literal.
+    */
+  def show: String = {
+    var result = escaped
+    if (result == null) {
+      result = Util.escape(toString)
+      escaped = result
+    }
+    result
+  }
+
+  /** Whether the text of this rope is available without flattening it. */
+  def isFlat: Boolean =
+    text != null
+
+  override def toString: String = {
+    val result = text
+    if (result == null) flatten() else result
+  }
+
+  /** Set the text of this node from the leaves below it and return it. The
+    * walk uses an explicit stack since ropes built by appending are as deep
+    * as they are long. Another thread can flatten a node during the walk, so
+    * a node whose operands are gone has its text set.
+    */
+  private def flatten(): String = {
+    val builder = new java.lang.StringBuilder(length)
+    val stack = new java.util.ArrayDeque[Rope]
+    stack.push(this)
+    while (!stack.isEmpty) {
+      val r = stack.pop()
+      val t = r.text
+      if (t != null)
+        builder.append(t)
+      else {
+        val rl = r.left
+        val rr = r.right
+        if ((rl == null) || (rr == null))
+          builder.append(r.text)
+        else {
+          stack.push(rr)
+          stack.push(rl)
+        }
+      }
+    }
+    val result = builder.toString
+    text = result
+    left = null
+    right = null
+    result
+  }
+
+  def compareTo(that: Rope): Int =
+    toString.compareTo(that.toString)
+
+  override def equals(that: Any): Boolean =
+    that match {
+      case r: Rope => (length == r.length) && (toString == r.toString)
+      case _       => false
+    }
+
+  override def hashCode: Int =
+    toString.hashCode
+
+}
+
+object Rope {
+
+  /** Concatenations whose result is at most this long are copied since a
+    * node would be no smaller than the copy.
+    */
+  val shortLength = 32
+
+  def apply(text: String): Rope =
+    new Rope(text, null, null, null, text.length)
+
+  /** A rope for the string literal `source`, which shows as `source`. */
+  def literal(source: String): Rope = {
+    val text = Util.unescape(source)
+    new Rope(text, null, null, source, text.length)
+  }
+
+}
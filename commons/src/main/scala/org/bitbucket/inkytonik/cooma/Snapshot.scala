@@ -0,0 +1,105 @@
+/*
+ * This file is part of Cooma.
+ *
+ * Copyright (C) 2019-2023 Anthony M Sloane, Macquarie University.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.bitbucket.inkytonik.cooma
+
+import java.io.{ByteArrayOutputStream, DataOutputStream}
+import java.nio.ByteBuffer
+import java.nio.charset.StandardCharsets
+
+/** Writer of the binary encodings of snapshots and IR. Numbers, strings and
+  * blocks of bytes are written here, and the formats that use it say how
+  * their data is made of them, so that reading a snapshot only makes the
+  * objects that its format names.
+  */
+class SnapshotWriter {
+
+  val bytes = new ByteArrayOutputStream
+  val out = new DataOutputStream(bytes)
+
+  def int(i: Int): Unit =
+    out.writeInt(i)
+
+  /** Write a natural number in as few bytes as it needs. */
+  def nat(n: Int): Unit = {
+    var v = n
+    while ((v & ~0x7f) != 0) {
+      out.writeByte((v & 0x7f) | 0x80)
+      v >>>= 7
+    }
+    out.writeByte(v)
+  }
+
+  def long(l: Long): Unit =
+    out.writeLong(l)
+
+  def boolean(b: Boolean): Unit =
+    out.writeBoolean(b)
+
+  def string(s: String): Unit = {
+    val b = s.getBytes(StandardCharsets.UTF_8)
+    out.writeInt(b.length)
+    out.write(b)
+  }
+
+  /** Write a block of bytes that can be read as a buffer of its own. */
+  def block(b: Array[Byte]): Unit = {
+    out.writeInt(b.length)
+    out.write(b)
+  }
+
+  def toByteArray: Array[Byte] = {
+    out.flush()
+    bytes.toByteArray
+  }
+
+}
+
+/** Reader of the binary encodings that `SnapshotWriter` writes. */
+class SnapshotReader(buffer: ByteBuffer) {
+
+  def int(): Int =
+    buffer.getInt()
+
+  def nat(): Int = {
+    var result = 0
+    var shift = 0
+    var b = 0
+    while ({
+      b = buffer.get()
+      result |= (b & 0x7f) << shift
+      shift += 7
+      (b & 0x80) != 0
+    }) ()
+    result
+  }
+
+  def long(): Long =
+    buffer.getLong()
+
+  def boolean(): Boolean =
+    buffer.get() != 0
+
+  def string(): String = {
+    val b = new Array[Byte](buffer.getInt())
+    buffer.get(b)
+    new String(b, StandardCharsets.UTF_8)
+  }
+
+  /** Read a block of bytes as a buffer of its own, without copying it. */
+  def block(): ByteBuffer = {
+    val length = buffer.getInt()
+    val b = buffer.slice()
+    b.limit(length)
+    buffer.position(buffer.position() + length)
+    b
+  }
+
+}
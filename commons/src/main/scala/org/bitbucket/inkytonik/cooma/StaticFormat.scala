@@ -0,0 +1,514 @@
+/*
+ * This file is part of Cooma.
+ *
+ * Copyright (C) 2019-2023 Anthony M Sloane, Macquarie University.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.bitbucket.inkytonik.cooma
+
+import org.bitbucket.inkytonik.cooma.CoomaParserSyntax._
+import scala.collection.mutable
+
+/** The binary format of the static entries of the prelude, which are source
+  * expressions. Like the IR format, each node is written as a tag followed
+  * by its parts, names are interned, and reading only makes the nodes that
+  * are listed here, so a snapshot can give the static environment without
+  * the static prelude being parsed.
+  */
+object StaticFormat {
+
+  // Entry tags
+  val letEntryTag = 0
+  val typedEntryTag = 1
+
+  // Expression tags
+  val funTag = 0
+  val funTTag = 1
+  val matTag = 2
+  val ifTag = 3
+  val catTag = 4
+  val orTag = 5
+  val andTag = 6
+  val eqlTag = 7
+  val relTag = 8
+  val addTag = 9
+  val mulTag = 10
+  val expTag = 11
+  val indTag = 12
+  val preTag = 13
+  val absTag = 14
+  val appTag = 15
+  val selTag = 16
+  val uniTag = 17
+  val blkTag = 18
+  val recTag = 19
+  val recTTag = 20
+  val varTag = 21
+  val varTTag = 22
+  val numTag = 23
+  val strTag = 24
+  val vecTag = 25
+  val vecNilTTag = 26
+  val vecTTag = 27
+  val prmTag = 28
+  val idnTag = 29
+
+  // Block expression tags
+  val blkDefTag = 0
+  val blkLetTag = 1
+  val returnTag = 2
+
+  // Let kind tags
+  val typeTag = 0
+  val valTag = 1
+
+  def write(
+      writer: SnapshotWriter,
+      entries: Vector[StaticPreludeEntry]
+  ): Unit = {
+
+    val names = new mutable.HashMap[String, Int]
+
+    def name(x: String): Unit =
+      names.get(x) match {
+        case Some(i) =>
+          writer.nat(i + 1)
+        case None =>
+          writer.nat(0)
+          writer.string(x)
+          names(x) = names.size
+      }
+
+    def expressions(es: Vector[Expression]): Unit = {
+      writer.nat(es.length)
+      es.foreach(expression)
+    }
+
+    def arguments(as: Vector[Argument]): Unit = {
+      writer.nat(as.length)
+      for (Argument(IdnDef(x), t, doc) <- as) {
+        name(x)
+        expression(t)
+        writer.boolean(doc.isDefined)
+        doc.foreach(writer.string)
+      }
+    }
+
+    def fieldTypes(fts: Vector[FieldType]): Unit = {
+      writer.nat(fts.length)
+      for (FieldType(f, t) <- fts) {
+        name(f)
+        expression(t)
+      }
+    }
+
+    def operator(l: Expression, op: Int, r: Expression): Unit = {
+      expression(l)
+      writer.nat(op)
+      expression(r)
+    }
+
+    def expression(e: Expression): Unit =
+      e match {
+        case Fun(Arguments(as), body) =>
+          writer.nat(funTag)
+          arguments(as)
+          expression(body)
+        case FunT(ArgumentTypes(ts), t) =>
+          writer.nat(funTTag)
+          writer.nat(ts.length)
+          for (ArgumentType(optIdn, t1) <- ts) {
+            writer.boolean(optIdn.isDefined)
+            optIdn.foreach { case IdnDef(x) => name(x) }
+            expression(t1)
+          }
+          expression(t)
+        case Mat(e1, cs) =>
+          writer.nat(matTag)
+          expression(e1)
+          writer.nat(cs.length)
+          for (Case(c, IdnDef(x), e2) <- cs) {
+            name(c)
+            name(x)
+            expression(e2)
+          }
+        case If(c, l, r) =>
+          writer.nat(ifTag)
+          expression(c)
+          expression(l)
+          expression(r)
+        case Cat(l, r) =>
+          writer.nat(catTag)
+          expression(l)
+          expression(r)
+        case Or(l, BarBar(), r) =>
+          writer.nat(orTag)
+          expression(l)
+          expression(r)
+        case And(l, AmpAmp(), r) =>
+          writer.nat(andTag)
+          expression(l)
+          expression(r)
+        case Eql(l, op, r) =>
+          writer.nat(eqlTag)
+          operator(
+            l,
+            op match {
+              case Equal()    => 0
+              case NotEqual() => 1
+            },
+            r
+          )
+        case Rel(l, op, r) =>
+          writer.nat(relTag)
+          operator(
+            l,
+            op match {
+              case Gte() => 0
+              case Gt()  => 1
+              case Lte() => 2
+              case Lt()  => 3
+            },
+            r
+          )
+        case Add(l, op, r) =>
+          writer.nat(addTag)
+          operator(
+            l,
+            op match {
+              case Concat() => 0
+              case Plus()   => 1
+              case Minus()  => 2
+            },
+            r
+          )
+        case Mul(l, op, r) =>
+          writer.nat(mulTag)
+          operator(
+            l,
+            op match {
+              case Percent() => 0
+              case Star()    => 1
+              case Slash()   => 2
+            },
+            r
+          )
+        case Exp(l, Expn(), r) =>
+          writer.nat(expTag)
+          expression(l)
+          expression(r)
+        case Ind(l, Index(), r) =>
+          writer.nat(indTag)
+          expression(l)
+          expression(r)
+        case Pre(Bang(), e1) =>
+          writer.nat(preTag)
+          expression(e1)
+        case Abs(e1) =>
+          writer.nat(absTag)
+          expression(e1)
+        case App(f, as) =>
+          writer.nat(appTag)
+          expression(f)
+          expressions(as)
+        case Sel(r, FieldUse(f)) =>
+          writer.nat(selTag)
+          expression(r)
+          name(f)
+        case Uni() =>
+          writer.nat(uniTag)
+        case Blk(b) =>
+          writer.nat(blkTag)
+          block(b)
+        case Rec(fs) =>
+          writer.nat(recTag)
+          writer.nat(fs.length)
+          for (Field(f, e1) <- fs) {
+            name(f)
+            expression(e1)
+          }
+        case RecT(fts) =>
+          writer.nat(recTTag)
+          fieldTypes(fts)
+        case Var(Field(f, e1)) =>
+          writer.nat(varTag)
+          name(f)
+          expression(e1)
+        case VarT(fts) =>
+          writer.nat(varTTag)
+          fieldTypes(fts)
+        case Num(n) =>
+          writer.nat(numTag)
+          writer.string(n.toString)
+        case Str(s) =>
+          writer.nat(strTag)
+          writer.string(s)
+        case Vec(VecElems(es)) =>
+          writer.nat(vecTag)
+          expressions(es)
+        case VecNilT() =>
+          writer.nat(vecNilTTag)
+        case VecT(t) =>
+          writer.nat(vecTTag)
+          expression(t)
+        case Prm(p, as) =>
+          writer.nat(prmTag)
+          writer.nat(IRFormat.userIndices(p.getClass))
+          expressions(as)
+        case Idn(IdnUse(x)) =>
+          writer.nat(idnTag)
+          name(x)
+      }
+
+    def block(b: BlockExp): Unit =
+      b match {
+        case BlkDef(Defs(ds), b1) =>
+          writer.nat(blkDefTag)
+          writer.nat(ds.length)
+          for (Def(IdnDef(f), Body(Arguments(as), t, e)) <- ds) {
+            name(f)
+            arguments(as)
+            expression(t)
+            expression(e)
+          }
+          block(b1)
+        case BlkLet(Let(kind, IdnDef(x), optType, e), b1) =>
+          writer.nat(blkLetTag)
+          writer.nat(kind match {
+            case Type() => typeTag
+            case Val()  => valTag
+          })
+          name(x)
+          writer.boolean(optType.isDefined)
+          optType.foreach { case LetType(t) => expression(t) }
+          expression(e)
+          block(b1)
+        case Return(e) =>
+          writer.nat(returnTag)
+          expression(e)
+      }
+
+    writer.nat(entries.length)
+    entries.foreach {
+      case StaticLetEntry(x, t, e) =>
+        writer.nat(letEntryTag)
+        name(x)
+        expression(t)
+        expression(e)
+      case StaticTypedEntry(x, t) =>
+        writer.nat(typedEntryTag)
+        name(x)
+        expression(t)
+    }
+  }
+
+  def read(reader: SnapshotReader): Vector[StaticPreludeEntry] = {
+
+    val names = new mutable.ArrayBuffer[String]
+
+    def name(): String =
+      reader.nat() match {
+        case 0 =>
+          val x = reader.string()
+          names += x
+          x
+        case i =>
+          names(i - 1)
+      }
+
+    def expressions(): Vector[Expression] =
+      Vector.fill(reader.nat())(expression())
+
+    def arguments(): Vector[Argument] =
+      Vector.fill(reader.nat()) {
+        val x = name()
+        val t = expression()
+        val doc = if (reader.boolean()) Some(reader.string()) else None
+        Argument(IdnDef(x), t, doc)
+      }
+
+    def fieldTypes(): Vector[FieldType] =
+      Vector.fill(reader.nat()) {
+        val f = name()
+        FieldType(f, expression())
+      }
+
+    def expression(): Expression =
+      reader.nat() match {
+        case `funTag` =>
+          val as = arguments()
+          Fun(Arguments(as), expression())
+        case `funTTag` =>
+          val ts =
+            Vector.fill(reader.nat()) {
+              val optIdn = if (reader.boolean()) Some(IdnDef(name())) else None
+              ArgumentType(optIdn, expression())
+            }
+          FunT(ArgumentTypes(ts), expression())
+        case `matTag` =>
+          val e = expression()
+          val cs =
+            Vector.fill(reader.nat()) {
+              val c = name()
+              val x = name()
+              Case(c, IdnDef(x), expression())
+            }
+          Mat(e, cs)
+        case `ifTag` =>
+          val c = expression()
+          val l = expression()
+          If(c, l, expression())
+        case `catTag` =>
+          val l = expression()
+          Cat(l, expression())
+        case `orTag` =>
+          val l = expression()
+          Or(l, BarBar(), expression())
+        case `andTag` =>
+          val l = expression()
+          And(l, AmpAmp(), expression())
+        case `eqlTag` =>
+          val l = expression()
+          val op =
+            reader.nat() match {
+              case 0 => Equal()
+              case 1 => NotEqual()
+              case i => errStatic(s"unknown equality operator $i")
+            }
+          Eql(l, op, expression())
+        case `relTag` =>
+          val l = expression()
+          val op =
+            reader.nat() match {
+              case 0 => Gte()
+              case 1 => Gt()
+              case 2 => Lte()
+              case 3 => Lt()
+              case i => errStatic(s"unknown relational operator $i")
+            }
+          Rel(l, op, expression())
+        case `addTag` =>
+          val l = expression()
+          val op =
+            reader.nat() match {
+              case 0 => Concat()
+              case 1 => Plus()
+              case 2 => Minus()
+              case i => errStatic(s"unknown additive operator $i")
+            }
+          Add(l, op, expression())
+        case `mulTag` =>
+          val l = expression()
+          val op =
+            reader.nat() match {
+              case 0 => Percent()
+              case 1 => Star()
+              case 2 => Slash()
+              case i => errStatic(s"unknown multiplicative operator $i")
+            }
+          Mul(l, op, expression())
+        case `expTag` =>
+          val l = expression()
+          Exp(l, Expn(), expression())
+        case `indTag` =>
+          val l = expression()
+          Ind(l, Index(), expression())
+        case `preTag` =>
+          Pre(Bang(), expression())
+        case `absTag` =>
+          Abs(expression())
+        case `appTag` =>
+          val f = expression()
+          App(f, expressions())
+        case `selTag` =>
+          val r = expression()
+          Sel(r, FieldUse(name()))
+        case `uniTag` =>
+          Uni()
+        case `blkTag` =>
+          Blk(block())
+        case `recTag` =>
+          Rec(Vector.fill(reader.nat()) {
+            val f = name()
+            Field(f, expression())
+          })
+        case `recTTag` =>
+          RecT(fieldTypes())
+        case `varTag` =>
+          val f = name()
+          Var(Field(f, expression()))
+        case `varTTag` =>
+          VarT(fieldTypes())
+        case `numTag` =>
+          Num(BigInt(reader.string()))
+        case `strTag` =>
+          Str(reader.string())
+        case `vecTag` =>
+          Vec(VecElems(expressions()))
+        case `vecNilTTag` =>
+          VecNilT()
+        case `vecTTag` =>
+          VecT(expression())
+        case `prmTag` =>
+          val i = reader.nat()
+          if (i >= IRFormat.userPrimitives.length)
+            errStatic(s"unknown user primitive $i")
+          Prm(IRFormat.userPrimitives(i)(), expressions())
+        case `idnTag` =>
+          Idn(IdnUse(name()))
+        case tag =>
+          errStatic(s"unknown expression tag $tag")
+      }
+
+    def block(): BlockExp =
+      reader.nat() match {
+        case `blkDefTag` =>
+          val ds =
+            Vector.fill(reader.nat()) {
+              val f = name()
+              val as = arguments()
+              val t = expression()
+              Def(IdnDef(f), Body(Arguments(as), t, expression()))
+            }
+          BlkDef(Defs(ds), block())
+        case `blkLetTag` =>
+          val kind =
+            reader.nat() match {
+              case `typeTag` => Type()
+              case `valTag`  => Val()
+              case i         => errStatic(s"unknown let kind $i")
+            }
+          val x = name()
+          val optType =
+            if (reader.boolean()) Some(LetType(expression())) else None
+          val let = Let(kind, IdnDef(x), optType, expression())
+          BlkLet(let, block())
+        case `returnTag` =>
+          Return(expression())
+        case tag =>
+          errStatic(s"unknown block tag $tag")
+      }
+
+    Vector.fill(reader.nat()) {
+      reader.nat() match {
+        case `letEntryTag` =>
+          val x = name()
+          val t = expression()
+          StaticLetEntry(x, t, expression())
+        case `typedEntryTag` =>
+          val x = name()
+          StaticTypedEntry(x, expression())
+        case tag =>
+          errStatic(s"unknown entry tag $tag")
+      }
+    }
+  }
+
+  def errStatic(message: String): Nothing =
+    CoomaException.errInterp("static prelude", message)
+
+}
@@ -267,15 +267,19 @@ object SymbolTable extends Environments[CoomaEntity] {
   def preludeStaticEnv(config: Config): Environment =
     if (config.noPrelude() || config.compilePrelude())
       rootenv()
-    else {
-      val path = s"${config.preludePath()}.static"
-      loadPrelude(path).left.map { case (source, positions, message) =>
-        val messaging = new Messaging(positions)
-        config.output().emitln(s"cooma: can't read static prelude '$path'")
-        messaging.report(source, Vector(message), config.output())
-        sys.exit(1)
-      }.merge
-    }
+    else
+      PreludeSnapshot.load(config.preludePath()) match {
+        case Some(snapshot) =>
+          preludeEnv(snapshot.entries)
+        case None =>
+          val path = s"${config.preludePath()}.static"
+          loadPrelude(path).left.map { case (source, positions, message) =>
+            val messaging = new Messaging(positions)
+            config.output().emitln(s"cooma: can't read static prelude '$path'")
+            messaging.report(source, Vector(message), config.output())
+            sys.exit(1)
+          }.merge
+      }
 
   def loadPrelude(
       path: String
@@ -295,14 +299,16 @@ object SymbolTable extends Environments[CoomaEntity] {
     val result = parser.pStaticPrelude(0)
     if (result.hasValue) {
       val prelude = parser.value(result).asInstanceOf[StaticPrelude]
-      val entries = prelude.optStaticPreludeEntrys
-      Right(entries.foldLeft(rootenv()) {
-        case (env, StaticTypedEntry(id, tipe)) =>
-          define(env, id, PredefTypedEntity(id, tipe))
-        case (env, StaticLetEntry(id, tipe, exp)) =>
-          define(env, id, PredefLetEntity(id, tipe, exp))
-      })
+      Right(preludeEnv(prelude.optStaticPreludeEntrys))
     } else Left((source, positions, parser.errorToMessage(result.parseError)))
   }
 
+  def preludeEnv(entries: Vector[StaticPreludeEntry]): Environment =
+    entries.foldLeft(rootenv()) {
+      case (env, StaticTypedEntry(id, tipe)) =>
+        define(env, id, PredefTypedEntity(id, tipe))
+      case (env, StaticLetEntry(id, tipe, exp)) =>
+        define(env, id, PredefLetEntity(id, tipe, exp))
+    }
+
 }
@@ -0,0 +1,93 @@
+/*
+ * This file is part of Cooma.
+ *
+ * Copyright (C) 2019-2023 Anthony M Sloane, Macquarie University.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.bitbucket.inkytonik.cooma
+
+/** The IR represented directly by the syntax from which it is printed and
+  * parsed. This is the representation used by the optimiser.
+  */
+trait SyntaxIR extends IRBuilder {
+
+  import org.bitbucket.inkytonik.cooma.CoomaParserSyntax._
+
+  type Term = CoomaParserSyntax.Term
+  type Cont = CoomaParserSyntax.Cont
+  type CaseTerm = CoomaParserSyntax.CaseTerm
+  type DefTerm = CoomaParserSyntax.DefTerm
+  type Value = CoomaParserSyntax.Value
+  type FldV = CoomaParserSyntax.FldV
+
+  override def fromIR(term: CoomaParserSyntax.Term): Term =
+    term
+
+  // Terms
+
+  def appC(k: Cont, x: String): Term =
+    AppC(k, x)
+
+  def appF(f: String, k: String, x: String): Term =
+    AppF(f, k, x)
+
+  def casV(x: String, cs: Vector[CaseTerm]): Term =
+    CasV(x, cs)
+
+  def letC(k: String, x: String, t: Term, body: Term): Term =
+    LetC(k, x, t, body)
+
+  def letF(ds: Vector[DefTerm], body: Term): Term =
+    LetF(ds, body)
+
+  // Continuations
+
+  def haltC(): Cont =
+    HaltC()
+
+  def idnC(k: String): Cont =
+    IdnC(k)
+
+  // Values
+
+  def letV(x: String, v: Value, body: Term): Term =
+    LetV(x, v, body)
+
+  def caseTerm(c: String, k: String): CaseTerm =
+    CaseTerm(c, k)
+
+  def defTerm(f: String, k: String, x: String, body: Term): DefTerm =
+    DefTerm(f, k, x, body)
+
+  def funV(k: String, x: String, body: Term): Value =
+    FunV(k, x, body)
+
+  def intV(i: BigInt): Value =
+    IntV(i)
+
+  def prmV(p: Primitive, xs: Vector[String]): Value =
+    PrmV(p, xs)
+
+  def recV(fs: Vector[FldV]): Value =
+    RecV(fs)
+
+  def strV(s: String): Value =
+    StrV(s)
+
+  def varV(field: FldV): Value =
+    VarV(field)
+
+  def vecV(es: Vector[String]): Value =
+    VecV(es)
+
+  def fldV(f: String, x: String): FldV =
+    FldV(f, x)
+
+}
+
+/** Compiler to the syntax representation of the IR, whatever the backend. */
+object SyntaxCompiler extends SyntaxIR with Compiler
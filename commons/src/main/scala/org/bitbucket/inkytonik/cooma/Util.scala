@@ -37,7 +37,6 @@ object Util {
       case '\f' => "\\f"
       case '\r' => "\\r"
       case '"'  => "\\\""
-      case '\'' => "\\\'"
       case '\\' => "\\\\"
       case _    => String.valueOf(ch)
     }
@@ -11,11 +11,13 @@ trait FileIo {
   import org.bitbucket.inkytonik.cooma.CoomaException.errCap
 
   def checkReader(path: String): Unit = {
-    val file = new File(path)
-    val cap = "Reader"
-    if (!file.exists) errCap(cap, s"'$path' does not exist")
-    if (file.isDirectory) errCap(cap, s"'$path' is a directory")
-    if (!file.canRead) errCap(cap, s"Cannot read '$path'")
+    if (path != "-") {
+      val file = new File(path)
+      val cap = "Reader"
+      if (!file.exists) errCap(cap, s"'$path' does not exist")
+      if (file.isDirectory) errCap(cap, s"'$path' is a directory")
+      if (!file.canRead) errCap(cap, s"Cannot read '$path'")
+    }
   }
 
   def checkRunner(path: String): Unit = {
@@ -5,6 +5,7 @@ import java.net.InetSocketAddress
 import com.sun.net.httpserver.{HttpExchange, HttpHandler, HttpServer => Server}
 import org.bitbucket.inkytonik.cooma.Backend
 import org.bitbucket.inkytonik.cooma.Config
+import org.bitbucket.inkytonik.cooma.Util.escape
 import java.io.ByteArrayOutputStream
 import scala.annotation.tailrec
 
@@ -53,7 +54,7 @@ trait HttpServer {
                   ),
                   letV(
                     "$hs5",
-                    strV(body),
+                    strV(escape(body)),
                     appC(idnC("$hk2"), "$hs5")
                   )
                 )
@@ -74,9 +75,10 @@ trait HttpServer {
                   case Left(message) =>
                     (message, 500)
                 }
-              xchg.sendResponseHeaders(code, response.length)
+              val bytes = response.getBytes("UTF-8")
+              xchg.sendResponseHeaders(code, bytes.length.toLong)
               val os = xchg.getResponseBody
-              os.write(response.getBytes)
+              os.write(bytes)
               os.close()
             case None =>
               xchg.sendResponseHeaders(404, 0)
@@ -20,11 +20,15 @@ class PreludeDriver extends Driver {
     typT
   }
   import org.bitbucket.inkytonik.kiama.util.{FileEmitter, Source}
+  import java.nio.file.{Files, Paths}
   import scala.collection.immutable.VectorBuilder
+  import scala.util.{Failure, Success, Try}
 
   /** Read the prelude and write the static and dynamic information files. The
     * static file contains names, types and values for prelude entities. The
-    * dynamic file contains IR code for the whole prelude.
+    * dynamic file contains IR code for the whole prelude. The snapshot file
+    * contains both of them and the environment that running the IR makes, so
+    * that runs can start without parsing or running the prelude.
     */
   override def process(
       source: Source,
@@ -32,11 +36,12 @@ class PreludeDriver extends Driver {
       config: Config
   ): Unit = {
     val analyser = analysers(source)
-    writeStaticPrelude(source, program, analyser, config)
+    val entries = writeStaticPrelude(source, program, analyser, config)
     val messages = analyser.errors
-    if (messages.length == 0)
-      writeDynamicPrelude(source, program, config)
-    else
+    if (messages.length == 0) {
+      val term = writeDynamicPrelude(source, program, config)
+      writeSnapshot(source, entries, term, config)
+    } else
       report(source, messages, config)
   }
 
@@ -45,7 +50,7 @@ class PreludeDriver extends Driver {
       program: Program,
       analyser: SemanticAnalyser,
       config: Config
-  ): Unit = {
+  ): Vector[StaticPreludeEntry] = {
 
     def entityIsType(entity: CoomaEntity): Boolean =
       analyser.entityType(entity) match {
@@ -99,16 +104,19 @@ class PreludeDriver extends Driver {
     emitter.emit(preludeText)
     emitter.close()
     config.output().emitln(s"Wrote $filename")
+    prelude.optStaticPreludeEntrys
   }
 
   def writeDynamicPrelude(
       source: Source,
       program: Program,
       config: Config
-  ): Unit = {
+  ): Term = {
     val system = new ReferenceBackend(this, source, config) with Compiler
     import system.{source => _, _}
 
+    // Not optimised, since the prelude's bindings are its exports and would
+    // otherwise be removed as dead
     val prelude = compileCommand(program, positions, getAnalyser(source))
     val preludeText = PrettyPrinter.format(prelude, 5).layout
     val filename = s"${source.name}.dynamic"
@@ -116,6 +124,25 @@ class PreludeDriver extends Driver {
     emitter.emitln(preludeText)
     emitter.close()
     config.output().emitln(s"Wrote $filename")
+    prelude
+  }
+
+  def writeSnapshot(
+      source: Source,
+      entries: Vector[StaticPreludeEntry],
+      term: Term,
+      config: Config
+  ): Unit = {
+    val system = new ReferenceBackend(this, source, config)
+    val filename = s"${source.name}.snapshot"
+    Try(system.snapshotEnv(term, filename)) match {
+      case Success(env) =>
+        PreludeSnapshot.write(filename, entries, term, env)
+        config.output().emitln(s"Wrote $filename")
+      case Failure(_) =>
+        // The prelude can't be run, which is reported when it is used
+        Files.deleteIfExists(Paths.get(filename))
+    }
   }
 
 }
@@ -36,7 +36,7 @@ class ReferenceFrontend extends Frontend {
 
 class ReferenceDriver extends REPLDriver {
 
-  import org.bitbucket.inkytonik.cooma.CoomaParserSyntax.Program
+  import org.bitbucket.inkytonik.cooma.CoomaParserSyntax.{Program, Term}
   import org.bitbucket.inkytonik.cooma.PrettyPrinter.{
     any,
     format => coomaFormat,
@@ -67,7 +67,27 @@ class ReferenceDriver extends REPLDriver {
       config: Config
   ): Unit = {
     val system = new ReferenceBackend(this, source, config) with Compiler
-    val term = system.compileCommand(program, positions, getAnalyser(source))
+    val term =
+      system.compileCommand(program, positions, getAnalyser(source), config)
+    cacheIR(source, term, config)
+    runIR(system, source, term, config)
+  }
+
+  override def processIR(
+      source: Source,
+      term: Term,
+      config: Config
+  ): Boolean = {
+    runIR(new ReferenceBackend(this, source, config), source, term, config)
+    true
+  }
+
+  def runIR(
+      system: ReferenceBackend,
+      source: Source,
+      term: Term,
+      config: Config
+  ): Unit = {
     if (config.irPrint())
       config.output().emitln(system.showTerm(term))
     if (config.irASTPrint())
@@ -37,7 +37,7 @@ trait ReferenceREPL extends REPL {
       config: Config,
       analyser: SemanticAnalyser
   ): Unit = {
-    val term = compileStandalone(program, positions, analyser)
+    val term = compileStandalone(program, positions, analyser, config)
 
     if (config.irPrint())
       config.output().emitln(showTerm(term))
@@ -52,7 +52,7 @@ trait ReferenceREPL extends REPL {
         val args = config.filenames()
         interpret(term, currentDynamicEnv, args, config) match {
           case Right(Result(_, value)) =>
-            currentDynamicEnv = ConsVE(i, value, currentDynamicEnv)
+            currentDynamicEnv = insertR(currentDynamicEnv, i, value)
             output(i, optTypeValue, optAliasedType, Some(value), config)
           case Left(msg) =>
             config.output().emitln(msg)
@@ -14,6 +14,7 @@ package backend
 import java.io.File
 import java.io.BufferedReader
 import java.io.InputStreamReader
+import java.nio.file.{Files, Paths}
 import org.bitbucket.inkytonik.kiama.util.StringSource
 import java.util.stream.Collectors
 
@@ -26,37 +27,145 @@ class Interpreter(config: Config) {
   import org.bitbucket.inkytonik.cooma.PrettyPrinter._
   import org.bitbucket.inkytonik.kiama.output.PrettyPrinterTypes.{
     Document,
-    Width,
-    emptyDocument
+    Width
   }
   import org.bitbucket.inkytonik.kiama.util.{FileSource, Messaging, Positions}
 
   import scala.annotation.tailrec
+  import scala.collection.mutable
   import scala.util.Try
 
-  sealed abstract class ValueR
-  case class ClsR(f: String, x: String, env: Env, e: Term) extends ValueR
-  case class IntR(num: BigInt) extends ValueR
-  case class RecR(fields: Vector[FldR]) extends ValueR
-  case class StrR(str: String) extends ValueR
-  case class VarR(field: FldR) extends ValueR
+  sealed abstract class ValueR {
+
+    /** The structural hash of this value, which is cached since values are
+      * immutable. Zero if it hasn't been computed yet.
+      */
+    var hash: Int = 0
+
+  }
+
+  case class ClsR(lambda: Lambda, env: Env) extends ValueR
+  case class RecR(fields: Vector[FldR])(val shape: Shape) extends ValueR
+  case class StrR(rope: Rope) extends ValueR
+  case class VarR(field: FldR)(val tag: Int) extends ValueR
   case class VecR(elems: Vector[ValueR]) extends ValueR
 
   case class FldR(f: String, x: ValueR)
 
-  case class ClsC(k: String, env: Env, e: Term)
+  /** The field names of a record, in order. Shapes are interned, so records
+    * with the same fields in the same order share a shape, and the offset of
+    * a field that was found in one of them is valid for all of them.
+    */
+  final class Shape(val names: Vector[String]) {
+
+    val offsets: Map[String, Int] = names.zipWithIndex.reverse.toMap
+
+    def offset(f: String): Int =
+      offsets.getOrElse(f, -1)
+
+  }
+
+  val shapes = new mutable.HashMap[Vector[String], Shape]
+
+  def shapeOf(names: Vector[String]): Shape =
+    shapes.getOrElseUpdate(names, new Shape(names))
+
+  def mkRecR(fields: Vector[FldR]): RecR =
+    RecR(fields)(shapeOf(fields.map(_.f)))
+
+  /** Integers. Those that fit in a Long are held as one so that arithmetic
+    * on them doesn't allocate, and the most common of them are shared. Only
+    * integers that don't fit in a Long are held as BigInts, so each integer
+    * has one representation.
+    */
+  sealed abstract class IntR extends ValueR {
+    def num: BigInt
+  }
+  case class SmallIntR(value: Long) extends IntR {
+    def num: BigInt = BigInt(value)
+  }
+  case class BigIntR(num: BigInt) extends IntR
+
+  object IntR {
+
+    def apply(num: BigInt): IntR =
+      if (num.isValidLong) small(num.toLong) else BigIntR(num)
+
+    def small(value: Long): IntR =
+      if ((value >= minCachedInt) && (value <= maxCachedInt))
+        cachedInts((value - minCachedInt).toInt)
+      else
+        SmallIntR(value)
+
+  }
+
+  val minCachedInt = -128L
+  val maxCachedInt = 1024L
+  val cachedInts =
+    Array.tabulate((maxCachedInt - minCachedInt + 1).toInt)(i =>
+      SmallIntR(minCachedInt + i)
+    )
+
+  case class ClsC(lambda: Lambda, env: Env) {
+
+    /** The profile stack that applying this continuation returns to. Only
+      * set when profiling.
+      */
+    var stack: ProfileNode = null
+
+  }
+
+  /** The names bound by a frame, in slot order, and whether each of them is
+    * a continuation.
+    */
+  final class Layout(val names: Array[String], val conts: Array[Boolean]) {
+    def size: Int = names.length
+  }
 
-  sealed abstract class Env
-  case class ConsCE(x: String, v: ClsC, env: Env) extends Env
-  case class ConsFE(ds: Vector[DefTerm], env: Env) extends Env
-  case class ConsVE(x: String, v: ValueR, env: Env) extends Env
-  case class NilE() extends Env
+  /** A frame of the run-time environment. Slots hold run-time values or
+    * continuation closures and are filled in binding order, so slots that
+    * have not been reached yet are null.
+    */
+  final class Env(val layout: Layout, val slots: Array[AnyRef], val parent: Env)
+
+  val emptyLayout = new Layout(Array(), Array())
+
+  def newFrame(layout: Layout, parent: Env): Env =
+    new Env(layout, new Array[AnyRef](layout.size), parent)
+
+  /** Make the capture frame of a closure for `lambda` created in `rho`. */
+  def captureFrame(lambda: Lambda, rho: Env): Env = {
+    val captured = newFrame(lambda.captures, null)
+    fillCaptures(lambda, captured, rho)
+    captured
+  }
+
+  def fillCaptures(lambda: Lambda, captured: Env, rho: Env): Unit = {
+    val sources = lambda.sources
+    for (i <- sources.indices)
+      captured.slots(i) = getSlot(rho, sources(i))
+  }
+
+  /** Number of terms that have been evaluated by this interpreter. */
+  var steps: Long = 0
+
+  /** The profiler of the program that is running, or null if it isn't being
+    * profiled.
+    */
+  var profiler: Profiler = null
 
   def interpret(term: Term, args: Seq[String], config: Config): Unit = {
-    if (config.server() && driver.settingBool("showTrace"))
-      driver.publishProduct(source, "trace", "IR")
-    preludeDynamicEnv(config).flatMap(
-      interpret(term, _, args, config).map(_.value)
+    preludeDynamicEnv(config).flatMap(rho =>
+      if (config.profile.isSupplied) {
+        profiler = new Profiler
+        try {
+          interpret(term, rho, args, config).map(_.value)
+        } finally {
+          profiler.report(config.profile(), config)
+          profiler = null
+        }
+      } else
+        interpret(term, rho, args, config).map(_.value)
     ) match {
       case Right(result) =>
         if (config.resultPrint())
@@ -80,176 +189,361 @@ class Interpreter(config: Config) {
       rho: Env,
       args: Seq[String],
       config: Config
-  ): Either[String, Result] = {
+  ): Either[String, Result] =
+    interpret(term, rho, args, config, false)
 
-    @tailrec
-    def interpretAux(rho: Env, term: Term): Result = {
+  /** Interpret `term` in `rho`. If `exporting` is true, the environment of
+    * the result contains all of the values in scope at the halt, otherwise it
+    * is only guaranteed to contain the result value.
+    */
+  def interpret(
+      term: Term,
+      rho: Env,
+      args: Seq[String],
+      config: Config,
+      exporting: Boolean
+  ): Either[String, Result] =
+    interpretLambda(resolveTop(term, rho, exporting), rho, args, config)
+
+  /** Interpret the body of `lambda` in a new frame whose parent is `rho`.
+    * `lambda` is only resolved once the interpretation starts, so that
+    * resolution errors are reported like run-time ones.
+    */
+  def interpretLambda(
+      lambda: => Lambda,
+      rho: Env,
+      args: Seq[String],
+      config: Config
+  ): Either[String, Result] = {
 
-      if (config.trace())
-        config.output().emit(showState(rho, term))
-      if (config.server())
-        if (driver.settingBool("showTrace"))
-          driver.publishProduct(
-            source,
-            "trace",
-            "IR",
-            formatState(rho, term),
-            true
-          )
+    val profiler = this.profiler
 
-      term match {
-        case AppC(HaltC(), x) =>
-          if (config.server()) {
-            if (driver.settingBool("showTrace")) {
-              driver.publishProduct(source, "trace", "IR", emptyDocument, true)
-            }
-          }
-          Result(rho, lookupR(rho, x))
+    val publishTrace = config.server() && driver.settingBool("showTrace")
+    val tracer =
+      if (config.trace() || config.traceFile.isSupplied || publishTrace)
+        new TraceLog(traceCapacity)
+      else
+        null
 
-        case AppC(IdnC(k), x) =>
-          lookupC(rho, k) match {
-            case ClsC(y, rho2, t) =>
-              interpretAux(ConsVE(y, lookupR(rho, x), rho2), t)
+    @tailrec
+    def interpretAux(rho: Env, code: Code): Result = {
+
+      steps += 1
+      if (profiler != null)
+        profiler.step()
+      if (tracer != null)
+        tracer.current = code.term
+
+      code match {
+        case HaltCode(term, x) =>
+          val result = getR(rho, x)
+          if (tracer != null)
+            tracer.halt(term, result)
+          Result(rho, result)
+
+        case AppCCode(term, k, x) =>
+          val cls @ ClsC(lambda, rho2) = getC(rho, k)
+          if (profiler != null)
+            profiler.applyCont(cls)
+          val rho3 = newFrame(lambda.layout, rho2)
+          rho3.slots(0) = getR(rho, x)
+          if (tracer != null)
+            tracer.enter(term, rho3, 1)
+          interpretAux(rho3, lambda.body)
+
+        case AppFCode(term, f, k, x) =>
+          getR(rho, f) match {
+            case ClsR(lambda, rho2) =>
+              val cls = getC(rho, k)
+              if (profiler != null)
+                profiler.applyFun(lambda, f.name, cls)
+              val rho3 = newFrame(lambda.layout, rho2)
+              rho3.slots(0) = cls
+              rho3.slots(1) = getR(rho, x)
+              if (tracer != null)
+                tracer.enter(term, rho3, 2)
+              interpretAux(rho3, lambda.body)
 
             case v =>
-              errInterp("AppC", s"$k is $v")
+              errInterp("AppF", s"${f.name} is $v")
           }
 
-        case AppF(f, k, x) =>
-          lookupR(rho, f) match {
-            case ClsR(j, y, rho2, t) =>
-              interpretAux(
-                ConsCE(
-                  j,
-                  lookupC(rho, k),
-                  ConsVE(y, lookupR(rho, x), rho2)
-                ),
-                t
-              )
+        case CasVCode(term, x, base, table) =>
+          getR(rho, x) match {
+            case r @ VarR(FldR(c1, v)) =>
+              val i = r.tag - base
+              val k = if ((i >= 0) && (i < table.length)) table(i) else null
+              if (k == null)
+                errInterp("CasV", s"can't find case for variant $c1")
+              val cls @ ClsC(lambda, rho2) = getC(rho, k)
+              if (profiler != null)
+                profiler.applyCont(cls)
+              val rho3 = newFrame(lambda.layout, rho2)
+              rho3.slots(0) = v
+              if (tracer != null)
+                tracer.enter(term, rho3, 1)
+              interpretAux(rho3, lambda.body)
 
             case v =>
-              errInterp("AppF", s"$f is $v")
+              errInterp("CasV", s"${x.name} is $v")
           }
 
-        case CasV(x, cs) =>
-          lookupR(rho, x) match {
-            case VarR(FldR(c1, v)) =>
-              val optSourceK =
-                cs.collectFirst {
-                  case ct @ CaseTerm(c2, k) if c2 == c1 =>
-                    (ct, k)
-                }
-              optSourceK match {
-                case Some((ct, k)) =>
-                  lookupC(rho, k) match {
-                    case ClsC(y, rho2, t) =>
-                      val rho3 = ConsVE(y, v, rho2)
-                      interpretAux(rho3, t)
-
-                    case v =>
-                      errInterp("CasV", s"$k is $v")
-                  }
-
-                case None =>
-                  errInterp("CasV", s"can't find case for variant $c1")
-              }
+        case LetCCode(term, k, lambda, body) =>
+          val cls = ClsC(lambda, captureFrame(lambda, rho))
+          if (profiler != null)
+            profiler.madeCont(cls)
+          rho.slots(k) = cls
+          if (tracer != null)
+            tracer.bind(term, rho, k)
+          interpretAux(rho, body)
+
+        case LetFCode(term, fs, body) =>
+          // Definitions can capture each other, so bind all of them before
+          // filling any of their capture frames
+          val captures =
+            for ((f, lambda) <- fs) yield {
+              val captured = newFrame(lambda.captures, null)
+              rho.slots(f) = ClsR(lambda, captured)
+              captured
+            }
+          for (((_, lambda), captured) <- fs.zip(captures))
+            fillCaptures(lambda, captured, rho)
+          if (profiler != null)
+            profiler.madeFuns(fs.length)
+          if (tracer != null)
+            tracer.bindAll(term, rho, fs.map(_._1))
+          interpretAux(rho, body)
+
+        case LetVCode(term, x, v, body) =>
+          val result = interpretValue(v, rho)
+          if (profiler != null)
+            profiler.madeValue(v, result)
+          rho.slots(x) = result
+          if (tracer != null)
+            tracer.bind(term, rho, x)
+          interpretAux(rho, body)
+      }
 
+    }
+
+    def interpretValue(value: ValueCode, rho: Env): ValueR =
+      value match {
+        case FunVCode(lambda) =>
+          ClsR(lambda, captureFrame(lambda, rho))
+
+        case IntVCode(v) =>
+          v
+
+        case PrmVCode(p, xs, as) =>
+          evalPrim(p, rho, xs, as.map(getR(rho, _)), args)
+
+        case sel @ RecSelectCode(r, f) =>
+          getR(rho, r) match {
+            case rec @ RecR(fields) =>
+              if (rec.shape ne sel.shape) {
+                sel.shape = rec.shape
+                sel.offset = rec.shape.offset(f)
+              }
+              if (sel.offset >= 0)
+                fields(sel.offset).x
+              else
+                recSelect(RecSelectP(), rec, f)
             case v =>
-              errInterp("CasV", s"$x is $v")
+              recSelect(RecSelectP(), v, f)
           }
 
-        case LetC(k, x, t1, t2) =>
-          val rho2 = ConsCE(k, ClsC(x, rho, t1), rho)
-          interpretAux(rho2, t2)
+        case RecOffsetCode(r, offset, f) =>
+          getR(rho, r) match {
+            case RecR(fields) => fields(offset).x
+            case v            => recSelect(RecSelectP(), v, f)
+          }
 
-        case LetF(ds, t) =>
-          val rho2 = ConsFE(ds, rho)
-          interpretAux(rho2, t)
+        case RecVCode(fields, shape) =>
+          RecR(fields.map { case (f, x) =>
+            FldR(f, getR(rho, x))
+          })(shape)
 
-        case LetV(x, v, t) =>
-          val rho2: Env = ConsVE(x, interpretValue(v, rho), rho)
-          interpretAux(rho2, t)
-      }
+        case StrVCode(v) =>
+          v
 
-    }
+        case VarVCode(c, tag, x) =>
+          VarR(FldR(c, getR(rho, x)))(tag)
 
-    def interpretValue(value: Value, rho: Env): ValueR =
-      value match {
-        case FunV(k, x, t) =>
-          ClsR(k, x, rho, t)
+        case VecVCode(elems) =>
+          VecR(elems.map(getR(rho, _)))
 
-        case IntV(i) =>
-          IntR(i)
+        case IntBinCode(exact, op, l, r, prm) =>
+          (getR(rho, l), getR(rho, r)) match {
+            case (SmallIntR(i), SmallIntR(j)) => intBin(exact, op, i, j)
+            case (i: IntR, j: IntR)           => IntR(op(i.num, j.num))
+            case _                            => interpretValue(prm, rho)
+          }
 
-        case PrmV(p, xs) =>
-          evalPrim(p, rho, xs, args)
+        case IntDivCode(exact, op, l, r, prm) =>
+          (getR(rho, l), getR(rho, r)) match {
+            case (SmallIntR(i), SmallIntR(j)) if j != 0 =>
+              intBin(exact, op, i, j)
+            case (i: IntR, j: IntR) if j.num != 0 =>
+              IntR(op(i.num, j.num))
+            case _ =>
+              interpretValue(prm, rho)
+          }
 
-        case RecV(fields) =>
-          RecR(fields.map { case FldV(f, v) =>
-            FldR(f, lookupR(rho, v))
-          })
+        case IntRelCode(exact, op, l, r, prm) =>
+          (getR(rho, l), getR(rho, r)) match {
+            case (SmallIntR(i), SmallIntR(j)) =>
+              if (exact(i, j)) trueR else falseR
+            case (i: IntR, j: IntR) =>
+              if (op(i.num, j.num)) trueR else falseR
+            case _ =>
+              interpretValue(prm, rho)
+          }
 
-        case StrV(s) =>
-          StrR(s)
+        case StrConcatCode(l, r, prm) =>
+          (getR(rho, l), getR(rho, r)) match {
+            case (StrR(x), StrR(y)) => StrR(x ++ y)
+            case _                  => interpretValue(prm, rho)
+          }
 
-        case VarV(FldV(c, v)) =>
-          VarR(FldR(c, lookupR(rho, v)))
+        case StrRelCode(op, l, r, prm) =>
+          (getR(rho, l), getR(rho, r)) match {
+            case (StrR(x), StrR(y)) =>
+              if (op(x.toString, y.toString)) trueR else falseR
+            case _ =>
+              interpretValue(prm, rho)
+          }
+      }
 
-        case VecV(elems) =>
-          VecR(elems.map(s => lookupR(rho, s)))
+    val result =
+      try {
+        Try {
+          val top = lambda
+          if (profiler != null)
+            profiler.nameAll(top.body)
+          interpretAux(newFrame(top.layout, rho), top.body)
+        }.toEither.left.map {
+          case e: CoomaException => e.toString
+          case e                 => getUnhandledMessage(e)
+        }
+      } catch {
+        case e: Throwable if tracer != null =>
+          // Fatal errors such as stack overflow escape the Try, so write
+          // the steps that led up to them before passing them on
+          tracer.fail()
+          writeTrace(tracer, config, publishTrace)
+          throw e
       }
+    if (tracer != null) {
+      if (result.isLeft)
+        tracer.fail()
+      writeTrace(tracer, config, publishTrace)
+    }
+    result
+  }
 
-    Try(interpretAux(rho, term)).toEither.left.map {
-      case e: CoomaException => e.toString
-      case e                 => getUnhandledMessage(e)
+  /** Write the trace of a run to the trace file, the output or the server,
+    * as the configuration asks. The states are only reconstructed here, so
+    * the run itself just logs its bindings.
+    */
+  def writeTrace(
+      tracer: TraceLog,
+      config: Config,
+      publishTrace: Boolean
+  ): Unit = {
+    val bytes = tracer.toBytes
+    if (config.traceFile.isSupplied)
+      Files.write(Paths.get(config.traceFile()), bytes)
+    if (config.trace() || publishTrace) {
+      val text = TraceDecoder.decode(bytes).map(TraceDecoder.format).mkString
+      if (config.trace())
+        config.output().emit(text)
+      if (publishTrace)
+        driver.publishProduct(source, "trace", "IR", pretty(string(text)))
     }
   }
 
-  @tailrec
-  final def lookupR(rho: Env, x: String): ValueR =
-    rho match {
-      case ConsCE(_, _, rho2) =>
-        lookupR(rho2, x)
-
-      case ConsFE(ds, rho2) =>
-        ds.collectFirst {
-          case DefTerm(f, k, y, e) if x == f =>
-            ClsR(k, y, rho, e)
-        } match {
-          case Some(v) =>
-            v
-          case None =>
-            lookupR(rho2, x)
-        }
+  /** Apply a binary integer operation to Long operands, only using BigInts
+    * if the result doesn't fit in a Long.
+    */
+  def intBin(
+      exact: (Long, Long) => Long,
+      op: (BigInt, BigInt) => BigInt,
+      i: Long,
+      j: Long
+  ): IntR =
+    try {
+      IntR.small(exact(i, j))
+    } catch {
+      case _: ArithmeticException =>
+        IntR(op(i, j))
+    }
 
-      case ConsVE(y, v, _) if x == y =>
-        v
+  /** Return the contents of the slot addressed by `a` in `rho`, or null if
+    * it is not in scope or not yet filled.
+    */
+  def getSlot(rho: Env, a: Addr): AnyRef =
+    if (a.depth < 0)
+      null
+    else {
+      @tailrec
+      def aux(rho: Env, depth: Int): Env =
+        if (depth == 0) rho else aux(rho.parent, depth - 1)
+      aux(rho, a.depth).slots(a.slot)
+    }
 
-      case ConsVE(_, _, rho2) =>
-        lookupR(rho2, x)
+  def getR(rho: Env, a: Addr): ValueR =
+    getSlot(rho, a) match {
+      case v: ValueR =>
+        v
+      case _ =>
+        errInterp("lookupR", s"can't find value ${a.name}")
+    }
 
-      case NilE() =>
-        errInterp("lookupR", s"can't find value $x")
+  def getC(rho: Env, a: Addr): ClsC =
+    getSlot(rho, a) match {
+      case v: ClsC =>
+        v
+      case _ =>
+        errInterp("lookupC", s"can't find ${a.name}")
     }
 
-  def insertR(rho: Env, x: String, value: ValueR): Env =
-    ConsVE(x, value, rho)
+  /** Search the frames of `rho` by name for a filled slot that binds `x`,
+    * returning the number of frames skipped and the slot in the frame.
+    */
+  def findSlot(rho: Env, x: String, isCont: Boolean): Option[(Int, Int)] = {
 
-  def lookupC(rho: Env, x: String): ClsC =
-    rho match {
-      case ConsCE(y, v, _) if x == y =>
-        v
+    @tailrec
+    def aux(rho: Env, depth: Int): Option[(Int, Int)] =
+      if (rho == null)
+        None
+      else {
+        val layout = rho.layout
+        val i = layout.names.lastIndexWhere(_ == x)
+        if ((i >= 0) && (layout.conts(i) == isCont) && (rho.slots(i) != null))
+          Some((depth, i))
+        else
+          aux(rho.parent, depth + 1)
+      }
 
-      case ConsCE(_, _, rho2) =>
-        lookupC(rho2, x)
+    aux(rho, 0)
+  }
 
-      case ConsFE(_, rho2) =>
-        lookupC(rho2, x)
+  def lookupR(rho: Env, x: String): ValueR =
+    findSlot(rho, x, false) match {
+      case Some((depth, slot)) =>
+        getR(rho, Addr(depth, slot, x))
+      case None =>
+        errInterp("lookupR", s"can't find value $x")
+    }
 
-      case ConsVE(_, _, rho2) =>
-        lookupC(rho2, x)
+  def insertR(rho: Env, x: String, value: ValueR): Env =
+    new Env(new Layout(Array(x), Array(false)), Array(value), rho)
 
-      case NilE() =>
+  def lookupC(rho: Env, x: String): ClsC =
+    findSlot(rho, x, true) match {
+      case Some((depth, slot)) =>
+        getC(rho, Addr(depth, slot, x))
+      case None =>
         errInterp("lookupC", s"can't find $x")
     }
 
@@ -258,7 +552,12 @@ class Interpreter(config: Config) {
       Right(emptyEnv)
     else
       Try(
-        readDynamicPrelude(s"${config.preludePath()}.dynamic", config)
+        PreludeSnapshot.load(config.preludePath()) match {
+          case Some(snapshot) =>
+            restoreEnv(snapshot)
+          case None =>
+            readDynamicPrelude(s"${config.preludePath()}.dynamic", config)
+        }
       ).toEither.left.map {
         case e: CoomaException => e.message
         case e                 => getUnhandledMessage(e)
@@ -280,12 +579,8 @@ class Interpreter(config: Config) {
     val pr = p.pDynamicPrelude(0)
     if (pr.hasValue) {
       val prelude = p.value(pr).asInstanceOf[DynamicPrelude]
-      val preludeConfig = new Config(Seq("-Q", filename))
-      preludeConfig.verify()
-      interpret(prelude.term, emptyEnv, Seq(), preludeConfig).left
-        .map(errPrelude)
-        .merge
-        .rho
+      val rho = emptyEnv
+      runPrelude(resolveTop(prelude.term, rho, true), rho, filename)
     } else {
       config.output().emitln(s"cooma: can't parse dynamic prelude '$filename'")
       val message = p.errorToMessage(pr.parseError)
@@ -295,11 +590,17 @@ class Interpreter(config: Config) {
     }
   }
 
-  def showState(rho: Env, term: Term): String =
-    formatState(rho, term).layout
-
-  def formatState(rho: Env, term: Term): Document =
-    pretty(toDocEnv(rho) <@> toDoc(term) <> line)
+  /** Run the resolved prelude `lambda` in `rho`, returning the environment
+    * that it exports.
+    */
+  def runPrelude(lambda: Lambda, rho: Env, filename: String): Env = {
+    val preludeConfig = new Config(Seq("-Q", filename))
+    preludeConfig.verify()
+    interpretLambda(lambda, rho, Seq(), preludeConfig).left
+      .map(errPrelude)
+      .merge
+      .rho
+  }
 
   def showRuntimeValue(v: ValueR): String =
     formatRuntimeValue(v).layout
@@ -315,16 +616,16 @@ class Interpreter(config: Config) {
 
   def toDocRuntimeValue(v: ValueR): Doc =
     v match {
-      case ClsR(v1, v2, v3, v4) =>
+      case ClsR(_, _) =>
         "<function>"
-      case IntR(i) =>
-        value(i)
+      case i: IntR =>
+        value(i.num)
       case RecR(Vector()) =>
         "{}"
       case RecR(v1) =>
         "{" <> nest(line <> ssep(v1.map(toDocField), "," <> line)) <@> "}"
       case StrR(v1) =>
-        "\"" <> value(v1) <> "\""
+        "\"" <> value(v1.show) <> "\""
       case VarR(FldR(v1, v2)) =>
         "<<" <+> value(v1) <+> "=" <+> toDocRuntimeValue(v2) <+> ">>"
       case VecR(elems) =>
@@ -335,15 +636,23 @@ class Interpreter(config: Config) {
     value(field.f) <+> "=" <+> toDocRuntimeValue(field.x)
 
   def toDocEnv(rho: Env): Doc =
-    rho match {
-      case ConsCE(x, ClsC(k, _, body), e) =>
-        line <> x <+> k <+> "=" <+> align(toDoc(body)) <> toDocEnv(e)
-      case ConsFE(ds, e) =>
-        hcat(ds.map(toDoc)) <> toDocEnv(e)
-      case ConsVE(x, v, e) =>
-        line <> x <+> "=" <+> align(toDocRuntimeValue(v)) <> toDocEnv(e)
-      case NilE() =>
-        line
+    if (rho == null)
+      line
+    else {
+      val names = rho.layout.names
+      val docs =
+        names.indices.reverse.map(i =>
+          rho.slots(i) match {
+            case ClsC(lambda, _) =>
+              line <> names(i) <+> lambda.layout.names(0) <+> "=" <+>
+                align(toDoc(lambda.body.term))
+            case v: ValueR =>
+              line <> names(i) <+> "=" <+> align(toDocRuntimeValue(v))
+            case _ =>
+              emptyDoc
+          }
+        )
+      hcat(docs) <> toDocEnv(rho.parent)
     }
 
 }
@@ -0,0 +1,230 @@
+/*
+ * This file is part of Cooma.
+ *
+ * Copyright (C) 2019-2023 Anthony M Sloane, Macquarie University.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.bitbucket.inkytonik.cooma
+package backend
+
+/** Profiling of the reference interpreter. The steps and wall time of a run
+  * are attributed to the source-level functions that are running, whose
+  * call stacks are kept in a tree of profile nodes. Function calls push a
+  * node for the callee onto the stack of the continuation that they return
+  * to, so tail calls replace the caller's node rather than growing the
+  * stack. Continuations remember the node that was current when they were
+  * made and restore it when they are applied.
+  */
+trait Profiling {
+
+  self: ReferenceBackend =>
+
+  import org.bitbucket.inkytonik.cooma.CoomaParserSyntax._
+  import org.bitbucket.inkytonik.cooma.PrettyPrinter.show
+  import java.io.{FileWriter, PrintWriter}
+  import java.util.IdentityHashMap
+  import scala.collection.mutable
+
+  /** The number of entries in each table of the profile summary. */
+  val profileTop = 20
+
+  /** A call stack, as a path from the root of the profile tree. The steps
+    * and time are those spent in the function at the top of this stack.
+    */
+  final class ProfileNode(val label: String, val parent: ProfileNode) {
+
+    val children = new mutable.HashMap[String, ProfileNode]
+
+    var steps: Long = 0
+    var nanos: Long = 0
+
+    def child(label: String): ProfileNode =
+      children.getOrElseUpdate(label, new ProfileNode(label, this))
+
+    def labels: List[String] = {
+      @scala.annotation.tailrec
+      def aux(node: ProfileNode, acc: List[String]): List[String] =
+        if (node == null) acc else aux(node.parent, node.label :: acc)
+      aux(this, Nil)
+    }
+
+  }
+
+  class Profiler {
+
+    val root = new ProfileNode("main", null)
+    var current = root
+    var last = System.nanoTime
+
+    val names = new IdentityHashMap[Lambda, String]
+    val labels = new IdentityHashMap[Lambda, mutable.HashMap[String, String]]
+    val primNames = new mutable.HashMap[Primitive, String]
+    val recSelect = RecSelectP()
+    val prims = new mutable.HashMap[String, Long]
+    val allocs = new mutable.HashMap[String, Long]
+
+    def count(table: mutable.HashMap[String, Long], key: String): Unit =
+      table(key) = table.getOrElse(key, 0L) + 1
+
+    def countPrim(p: Primitive): Unit =
+      count(prims, primNames.getOrElseUpdate(p, show(p)))
+
+    /** Name the functions that are defined in `code` and its nested bodies
+      * after the variables that they are bound to.
+      */
+    def nameAll(code: Code): Unit = {
+      val pending = mutable.Stack(code)
+      while (pending.nonEmpty)
+        pending.pop() match {
+          case LetCCode(_, _, lambda, body) =>
+            pending.push(lambda.body, body)
+          case LetFCode(LetF(ds, _), fs, body) =>
+            for ((DefTerm(f, _, _, _), (_, lambda)) <- ds.zip(fs)) {
+              names.put(lambda, f)
+              pending.push(lambda.body)
+            }
+            pending.push(body)
+          case LetVCode(LetV(x, _, _), _, FunVCode(lambda), body) =>
+            names.put(lambda, x)
+            pending.push(lambda.body, body)
+          case LetVCode(_, _, _, body) =>
+            pending.push(body)
+          case _ =>
+          // Do nothing
+        }
+    }
+
+    /** The label of a call to `lambda` through the variable `f`. Labels are
+      * made once for each function and variable and reused by later calls.
+      */
+    def label(lambda: Lambda, f: String): String = {
+      var byVar = labels.get(lambda)
+      if (byVar == null) {
+        byVar = new mutable.HashMap[String, String]
+        labels.put(lambda, byVar)
+      }
+      byVar.getOrElseUpdate(f, makeLabel(lambda, f))
+    }
+
+    def makeLabel(lambda: Lambda, f: String): String = {
+      val name = Option(names.get(lambda)).getOrElse(f)
+      driver.positions.getStart(lambda.body.term) match {
+        case Some(pos) =>
+          s"$name (${pos.source.name}:${pos.line})"
+        case None =>
+          name
+      }
+    }
+
+    def step(): Unit = {
+      val now = System.nanoTime
+      current.steps += 1
+      current.nanos += now - last
+      last = now
+    }
+
+    def applyCont(cls: ClsC): Unit =
+      if (cls.stack != null)
+        current = cls.stack
+
+    def applyFun(lambda: Lambda, f: String, k: ClsC): Unit = {
+      val caller = if (k.stack != null) k.stack else current
+      current = caller.child(label(lambda, f))
+    }
+
+    def madeCont(cls: ClsC): Unit = {
+      cls.stack = current
+      count(allocs, "ClsC")
+    }
+
+    def madeFuns(n: Int): Unit =
+      allocs("ClsR") = allocs.getOrElse("ClsR", 0L) + n
+
+    /** Count the primitive that `code` invokes, if any, and the value that
+      * it made, if that was a new one. Primitives may return values that
+      * they were given, which are counted too. Record selections are
+      * counted whether or not their field offsets were resolved.
+      */
+    def madeValue(code: ValueCode, value: ValueR): Unit = {
+      code match {
+        case PrmVCode(p, _, _)           => countPrim(p)
+        case IntBinCode(_, _, _, _, prm) => countPrim(prm.p)
+        case IntDivCode(_, _, _, _, prm) => countPrim(prm.p)
+        case IntRelCode(_, _, _, _, prm) => countPrim(prm.p)
+        case StrConcatCode(_, _, prm)    => countPrim(prm.p)
+        case StrRelCode(_, _, _, prm)    => countPrim(prm.p)
+        case RecOffsetCode(_, _, _) | RecSelectCode(_, _) =>
+          countPrim(recSelect)
+        case _ =>
+      }
+      code match {
+        case IntVCode(_) | StrVCode(_) | RecOffsetCode(_, _, _) |
+            RecSelectCode(_, _) =>
+        // Existing values
+        case _ =>
+          value match {
+            case SmallIntR(i) if (i >= minCachedInt) && (i <= maxCachedInt) =>
+            // Shared integers
+            case _ =>
+              count(allocs, value.getClass.getSimpleName)
+          }
+      }
+    }
+
+    def nodes: Vector[ProfileNode] = {
+      val result = Vector.newBuilder[ProfileNode]
+      val pending = mutable.Stack(root)
+      while (pending.nonEmpty) {
+        val node = pending.pop()
+        result += node
+        pending.pushAll(node.children.values)
+      }
+      result.result()
+    }
+
+    /** Write the profile as collapsed stacks weighted by microseconds to
+      * `filename`, and print a summary of the top functions, primitives and
+      * allocations.
+      */
+    def report(filename: String, config: Config): Unit = {
+      step()
+      val all = nodes
+      val out = new PrintWriter(new FileWriter(filename))
+      try {
+        for (node <- all if node.nanos >= 1000)
+          out.println(s"${node.labels.mkString(";")} ${node.nanos / 1000}")
+      } finally out.close()
+
+      val emitter = config.output()
+      val totalSteps = all.map(_.steps).sum
+      val totalNanos = all.map(_.nanos).sum
+      emitter.emitln(
+        f"profile: $totalSteps steps, ${totalNanos / 1e6}%.1f ms, " +
+          s"stacks in $filename"
+      )
+
+      emitter.emitln("functions (self steps, self ms):")
+      val functions =
+        all.groupBy(_.label).view.mapValues { ns =>
+          (ns.map(_.steps).sum, ns.map(_.nanos).sum)
+        }
+      for ((f, (s, n)) <- functions.toVector.sortBy(-_._2._2).take(profileTop))
+        emitter.emitln(f"  $s%10d ${n / 1e6}%10.1f  $f")
+
+      def table(title: String, counts: mutable.HashMap[String, Long]): Unit = {
+        emitter.emitln(s"$title:")
+        for ((k, n) <- counts.toVector.sortBy(-_._2).take(profileTop))
+          emitter.emitln(f"  $n%10d  $k")
+      }
+
+      table("primitives", prims)
+      table("allocations", allocs)
+    }
+
+  }
+
+}
@@ -10,7 +10,14 @@
 
 package org.bitbucket.inkytonik.cooma.backend
 
-import org.bitbucket.inkytonik.cooma.{Backend, Config, Driver}
+import org.bitbucket.inkytonik.cooma.{
+  Backend,
+  Config,
+  ConstructorTags,
+  Driver,
+  Rope,
+  SyntaxIR
+}
 import org.bitbucket.inkytonik.kiama.util.Source
 
 class ReferenceBackend(
@@ -18,85 +25,22 @@ class ReferenceBackend(
     val source: Source,
     config: Config
 ) extends Interpreter(config)
-    with Backend {
+    with Resolver
+    with Profiling
+    with Tracing
+    with Snapshots
+    with Backend
+    with SyntaxIR {
 
   import java.io.{StringWriter, Writer}
-  import org.bitbucket.inkytonik.cooma.CoomaParserSyntax
-  import org.bitbucket.inkytonik.cooma.CoomaParserSyntax._
+  import org.bitbucket.inkytonik.cooma.CoomaException.errInterp
   import org.bitbucket.inkytonik.cooma.PrettyPrinter._
   // import scala.collection.mutable
 
   override def backendName: String = "Reference"
 
-  type Term = CoomaParserSyntax.Term
-  type Cont = CoomaParserSyntax.Cont
-  type CaseTerm = CoomaParserSyntax.CaseTerm
-  type DefTerm = CoomaParserSyntax.DefTerm
-  type Value = CoomaParserSyntax.Value
-  type FldV = CoomaParserSyntax.FldV
-
   override type OutputValueR = ValueR
 
-  // Terms
-
-  def appC(k: Cont, x: String): Term =
-    AppC(k, x)
-
-  def appF(f: String, k: String, x: String): Term =
-    AppF(f, k, x)
-
-  def casV(x: String, cs: Vector[CaseTerm]): Term =
-    CasV(x, cs)
-
-  def letC(k: String, x: String, t: Term, body: Term): Term =
-    LetC(k, x, t, body)
-
-  def letF(ds: Vector[DefTerm], body: Term): Term =
-    LetF(ds, body)
-
-  // Continuations
-
-  def haltC(): Cont =
-    HaltC()
-
-  def idnC(k: String): Cont =
-    IdnC(k)
-
-  // Values
-
-  def letV(x: String, v: Value, body: Term): Term =
-    LetV(x, v, body)
-
-  def caseTerm(c: String, k: String): CaseTerm =
-    CaseTerm(c, k)
-
-  def defTerm(f: String, k: String, x: String, body: Term): DefTerm =
-    DefTerm(f, k, x, body)
-
-  def funV(k: String, x: String, body: Term): Value =
-    FunV(k, x, body)
-
-  def intV(i: BigInt): Value =
-    IntV(i)
-
-  def prmV(p: Primitive, xs: Vector[String]): Value =
-    PrmV(p, xs)
-
-  def recV(fs: Vector[FldV]): Value =
-    RecV(fs)
-
-  def strV(s: String): Value =
-    StrV(s)
-
-  def varV(field: FldV): Value =
-    VarV(field)
-
-  def vecV(es: Vector[String]): Value =
-    VecV(es)
-
-  def fldV(f: String, x: String): FldV =
-    FldV(f, x)
-
   def stdout: Writer =
     new StringWriter() {
       override def write(s: String): Unit = getConfig.output().emit(s)
@@ -105,19 +49,39 @@ class ReferenceBackend(
   // Runtime values
 
   def strR(str: String): ValueR =
-    StrR(str)
+    StrR(Rope(str))
+
+  def ropeR(rope: Rope): ValueR =
+    StrR(rope)
 
   def varR(c: String, v: ValueR): ValueR =
-    VarR(FldR(c, v))
+    VarR(FldR(c, v))(ConstructorTags.tagOf(c))
 
   def intR(num: BigInt): ValueR =
     IntR(num)
 
-  def clsR(f: String, x: String, env: Env, e: Term): ValueR =
-    ClsR(f, x, env, e)
+  def smallIntR(num: Long): ValueR =
+    IntR.small(num)
+
+  def isSmallIntR(value: ValueR): Boolean =
+    value match {
+      case SmallIntR(_) => true
+      case _            => false
+    }
+
+  def getSmallInt(value: ValueR): Long =
+    value match {
+      case SmallIntR(i) => i
+      case _            => errInterp("getSmallInt", s"$value is not small")
+    }
+
+  def clsR(f: String, x: String, env: Env, e: Term): ValueR = {
+    val lambda = resolveFunction(f, x, e, env)
+    ClsR(lambda, captureFrame(lambda, newFrame(emptyLayout, env)))
+  }
 
   def recR(fields: Vector[FldR]): ValueR =
-    RecR(fields)
+    mkRecR(fields)
 
   def vecR(es: Vector[ValueR]): ValueR =
     VecR(es)
@@ -126,6 +90,18 @@ class ReferenceBackend(
     FldR(x, v)
 
   def isStrR(value: ValueR): Option[String] =
+    value match {
+      case StrR(s) => Some(s.toString)
+      case _       => None
+    }
+
+  override def hashR(value: ValueR): Int = {
+    if (value.hash == 0)
+      value.hash = super.hashR(value)
+    value.hash
+  }
+
+  def isRopeR(value: ValueR): Option[Rope] =
     value match {
       case StrR(s) => Some(s)
       case _       => None
@@ -133,7 +109,7 @@ class ReferenceBackend(
 
   def isIntR(value: ValueR): Option[BigInt] =
     value match {
-      case IntR(i) => Some(i)
+      case i: IntR => Some(i.num)
       case _       => None
     }
 
@@ -172,6 +148,6 @@ class ReferenceBackend(
 
   def getConfig: Config = config
 
-  def emptyEnv: Env = NilE()
+  def emptyEnv: Env = newFrame(emptyLayout, null)
 
 }
@@ -0,0 +1,388 @@
+/*
+ * This file is part of Cooma.
+ *
+ * Copyright (C) 2019-2023 Anthony M Sloane, Macquarie University.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.bitbucket.inkytonik.cooma
+package backend
+
+/** Resolution of IR terms to code that addresses variables by position. Each
+  * function, definition or continuation body is given a frame layout with one
+  * slot per variable that it binds. Every variable use is mapped to an address
+  * consisting of the number of frames to skip and the slot in the frame that
+  * is reached, so the interpreter never has to search for names.
+  *
+  * Closures are flat. Resolving a function or continuation body also finds
+  * its free variables, which become the captures of the closure. Creating a
+  * closure copies just those values into a capture frame, which is the only
+  * parent of the frames in which the body runs, so a closure does not keep
+  * the rest of its defining environment alive.
+  */
+trait Resolver {
+
+  self: ReferenceBackend =>
+
+  import org.bitbucket.inkytonik.cooma.CoomaParserSyntax._
+  import org.bitbucket.inkytonik.cooma.Primitives.divExact
+  import scala.collection.mutable.{ArrayBuffer, HashMap}
+
+  /** Address of a variable. A negative depth marks a variable that is not in
+    * scope, which is reported as an error if the address is ever used.
+    */
+  case class Addr(depth: Int, slot: Int, name: String)
+
+  /** A resolved function, definition or continuation body. Its parameters are
+    * in the first slots of the layout: continuation then value parameter for
+    * functions, value parameter only for continuations. The free variables of
+    * the body are described by `captures` and are found at `sources` relative
+    * to the frame in which the closure is created.
+    */
+  case class Lambda(
+      layout: Layout,
+      captures: Layout,
+      sources: Vector[Addr],
+      body: Code
+  )
+
+  /** Resolved terms. Each keeps the term from which it was resolved so that
+    * tracing and error reporting can refer to the IR.
+    */
+  sealed abstract class Code {
+    def term: Term
+  }
+  case class AppCCode(term: Term, k: Addr, x: Addr) extends Code
+  case class AppFCode(term: Term, f: Addr, k: Addr, x: Addr) extends Code
+  /** A case on the variant `x`. The continuation for the constructor with
+    * tag `t` is at index `t - base` of `table`, or is null if there is no
+    * case for that constructor.
+    */
+  case class CasVCode(term: Term, x: Addr, base: Int, table: Array[Addr])
+      extends Code
+  case class HaltCode(term: Term, x: Addr) extends Code
+  case class LetCCode(term: Term, k: Int, lambda: Lambda, body: Code)
+      extends Code
+  case class LetFCode(term: Term, fs: Vector[(Int, Lambda)], body: Code)
+      extends Code
+  case class LetVCode(term: Term, x: Int, value: ValueCode, body: Code)
+      extends Code
+
+  sealed abstract class ValueCode
+  case class FunVCode(lambda: Lambda) extends ValueCode
+  case class IntVCode(value: ValueR) extends ValueCode
+  case class PrmVCode(p: Primitive, xs: Vector[String], as: Vector[Addr])
+      extends ValueCode
+  case class RecOffsetCode(r: Addr, offset: Int, f: String) extends ValueCode
+  case class RecVCode(fields: Vector[(String, Addr)], shape: Shape)
+      extends ValueCode
+
+  /** Selection of field `f` of the record at `r`, with an inline cache of the
+    * shape of the record that was last selected from and the offset of `f` in
+    * that shape. A negative offset means `f` is not in the shape.
+    */
+  case class RecSelectCode(r: Addr, f: String) extends ValueCode {
+    var shape: Shape = null
+    var offset: Int = -1
+  }
+  case class StrVCode(value: ValueR) extends ValueCode
+  case class VarVCode(c: String, tag: Int, x: Addr) extends ValueCode
+  case class VecVCode(elems: Vector[Addr]) extends ValueCode
+
+  /** Specialised forms of integer and string primitives. Each has the general
+    * form of the primitive, which is used if the operands are not of the
+    * expected types so that the usual error is reported.
+    */
+  case class IntBinCode(
+      exact: (Long, Long) => Long,
+      op: (BigInt, BigInt) => BigInt,
+      l: Addr,
+      r: Addr,
+      prm: PrmVCode
+  ) extends ValueCode
+  case class IntDivCode(
+      exact: (Long, Long) => Long,
+      op: (BigInt, BigInt) => BigInt,
+      l: Addr,
+      r: Addr,
+      prm: PrmVCode
+  ) extends ValueCode
+  case class IntRelCode(
+      exact: (Long, Long) => Boolean,
+      op: (BigInt, BigInt) => Boolean,
+      l: Addr,
+      r: Addr,
+      prm: PrmVCode
+  ) extends ValueCode
+  case class StrConcatCode(l: Addr, r: Addr, prm: PrmVCode) extends ValueCode
+  case class StrRelCode(
+      op: (String, String) => Boolean,
+      l: Addr,
+      r: Addr,
+      prm: PrmVCode
+  ) extends ValueCode
+
+  /** Compile-time counterpart of a frame. The scope of a function or
+    * continuation body has a parent scope in which its captures are found.
+    * The outermost scope of a resolution has no parent scope, but it may have
+    * a run-time environment that is searched by name for any variables that
+    * are not bound in the term being resolved. If `exporting` is true, a halt
+    * keeps every value that is in scope, not just the one that it returns.
+    */
+  class Scope(val parent: Scope, val env: Env, val exporting: Boolean) {
+
+    val names = new ArrayBuffer[String]
+    val conts = new ArrayBuffer[Boolean]
+
+    /** Shapes of the records that are built by value bindings in this
+      * scope, by slot.
+      */
+    val recordShapes = new HashMap[Int, Shape]
+
+    val captureNames = new ArrayBuffer[String]
+    val captureConts = new ArrayBuffer[Boolean]
+    val sources = new ArrayBuffer[Addr]
+
+    def bind(x: String, isCont: Boolean): Int = {
+      names.append(x)
+      conts.append(isCont)
+      names.length - 1
+    }
+
+    def capture(x: String, isCont: Boolean, source: Addr): Int = {
+      captureNames.append(x)
+      captureConts.append(isCont)
+      sources.append(source)
+      captureNames.length - 1
+    }
+
+    def child: Scope =
+      new Scope(this, null, exporting)
+
+    def layout: Layout =
+      new Layout(names.toArray, conts.toArray)
+
+    def captureLayout: Layout =
+      new Layout(captureNames.toArray, captureConts.toArray)
+
+  }
+
+  def mkLambda(scope: Scope, body: Code): Lambda =
+    Lambda(scope.layout, scope.captureLayout, scope.sources.toVector, body)
+
+  /** Resolve a term that will run in a new frame whose parent is `env`. */
+  def resolveTop(term: Term, env: Env, exporting: Boolean): Lambda = {
+    val scope = new Scope(null, env, exporting)
+    mkLambda(scope, resolveTerm(term, scope))
+  }
+
+  /** Resolve a function body with continuation parameter `k` and value
+    * parameter `x` whose closure will be created in a new frame whose parent
+    * is `env`.
+    */
+  def resolveFunction(k: String, x: String, body: Term, env: Env): Lambda =
+    resolveFunction(k, x, body, new Scope(null, env, false).child)
+
+  def resolveFunction(
+      k: String,
+      x: String,
+      body: Term,
+      scope: Scope
+  ): Lambda = {
+    scope.bind(k, true)
+    scope.bind(x, false)
+    mkLambda(scope, resolveTerm(body, scope))
+  }
+
+  def resolveContinuation(x: String, body: Term, scope: Scope): Lambda = {
+    scope.bind(x, false)
+    mkLambda(scope, resolveTerm(body, scope))
+  }
+
+  /** Find the address of `x` in `scope`. A variable that is bound outside
+    * a function or continuation body is added to the captures of the body,
+    * and so on outwards, so that every body only refers to its own frame and
+    * its capture frame.
+    */
+  def lookupAddr(scope: Scope, x: String, isCont: Boolean): Addr = {
+
+    def find(names: ArrayBuffer[String], conts: ArrayBuffer[Boolean]): Int =
+      names.indices.lastIndexWhere(i => (names(i) == x) && (conts(i) == isCont))
+
+    val i = find(scope.names, scope.conts)
+    if (i >= 0)
+      Addr(0, i, x)
+    else if (scope.parent != null) {
+      val j = find(scope.captureNames, scope.captureConts)
+      if (j >= 0)
+        Addr(1, j, x)
+      else {
+        val source = lookupAddr(scope.parent, x, isCont)
+        if (source.depth < 0)
+          source
+        else
+          Addr(1, scope.capture(x, isCont, source), x)
+      }
+    } else if (scope.env != null)
+      findSlot(scope.env, x, isCont) match {
+        case Some((depth, slot)) =>
+          Addr(1 + depth, slot, x)
+        case None =>
+          Addr(-1, -1, x)
+      }
+    else
+      Addr(-1, -1, x)
+  }
+
+  /** Make every value that is in scope reachable from the frame of `scope`,
+    * so that a halt there keeps them in its result environment. Used for the
+    * prelude, whose result environment is the environment of user programs.
+    */
+  def exportAll(scope: Scope): Unit = {
+    var s = scope
+    while (s != null) {
+      for (i <- s.names.indices)
+        if (!s.conts(i))
+          lookupAddr(scope, s.names(i), false)
+      s = s.parent
+    }
+  }
+
+  def resolveTerm(term: Term, scope: Scope): Code =
+    term match {
+      case AppC(HaltC(), x) =>
+        if (scope.exporting)
+          exportAll(scope)
+        HaltCode(term, lookupAddr(scope, x, false))
+
+      case AppC(IdnC(k), x) =>
+        AppCCode(term, lookupAddr(scope, k, true), lookupAddr(scope, x, false))
+
+      case AppF(f, k, x) =>
+        AppFCode(
+          term,
+          lookupAddr(scope, f, false),
+          lookupAddr(scope, k, true),
+          lookupAddr(scope, x, false)
+        )
+
+      case CasV(x, cs) =>
+        val (base, table) =
+          ConstructorTags.table(
+            cs.map { case CaseTerm(c, _) => c },
+            cs.map { case CaseTerm(_, k) => lookupAddr(scope, k, true) }
+          )
+        CasVCode(term, lookupAddr(scope, x, false), base, table)
+
+      case LetC(k, x, t1, t2) =>
+        val lambda = resolveContinuation(x, t1, scope.child)
+        val slot = scope.bind(k, true)
+        LetCCode(term, slot, lambda, resolveTerm(t2, scope))
+
+      case LetF(ds, t) =>
+        val slots = ds.map { case DefTerm(f, _, _, _) => scope.bind(f, false) }
+        val lambdas =
+          ds.map { case DefTerm(_, k, x, body) =>
+            resolveFunction(k, x, body, scope.child)
+          }
+        LetFCode(term, slots.zip(lambdas), resolveTerm(t, scope))
+
+      case LetV(x, v, t) =>
+        val value = resolveValue(v, scope)
+        val slot = scope.bind(x, false)
+        value match {
+          case RecVCode(_, shape) =>
+            scope.recordShapes(slot) = shape
+          case _ =>
+            ()
+        }
+        LetVCode(term, slot, value, resolveTerm(t, scope))
+    }
+
+  def resolveValue(value: Value, scope: Scope): ValueCode =
+    value match {
+      case FunV(k, x, t) =>
+        FunVCode(resolveFunction(k, x, t, scope.child))
+
+      case IntV(i) =>
+        IntVCode(IntR(i))
+
+      case PrmV(RecSelectP(), Vector(r, f)) =>
+        val addr = lookupAddr(scope, r, false)
+        val offset =
+          if (addr.depth == 0)
+            scope.recordShapes.get(addr.slot).map(_.offset(f)).getOrElse(-1)
+          else
+            -1
+        if (offset >= 0)
+          RecOffsetCode(addr, offset, f)
+        else
+          RecSelectCode(addr, f)
+
+      case PrmV(p, xs) =>
+        specialise(PrmVCode(p, xs, xs.map(lookupAddr(scope, _, false))))
+
+      case RecV(fields) =>
+        RecVCode(
+          fields.map { case FldV(f, x) => (f, lookupAddr(scope, x, false)) },
+          shapeOf(fields.map { case FldV(f, _) => f })
+        )
+
+      case StrV(s) =>
+        StrVCode(StrR(Rope.literal(s)))
+
+      case VarV(FldV(c, x)) =>
+        VarVCode(c, ConstructorTags.tagOf(c), lookupAddr(scope, x, false))
+
+      case VecV(elems) =>
+        VecVCode(elems.map(lookupAddr(scope, _, false)))
+    }
+
+  /** Replace a binary integer or string primitive by its specialised form.
+    * These primitives only accept operands of one type, which the type
+    * checker guarantees, so the interpreter can go straight to the operation
+    * instead of through the general primitive dispatch.
+    */
+  def specialise(prm: PrmVCode): ValueCode =
+    (prm.p, prm.as) match {
+      case (UserP(p), Vector(l, r)) =>
+        p match {
+          case IntAddP() =>
+            IntBinCode(Math.addExact(_, _), _ + _, l, r, prm)
+          case IntMulP() =>
+            IntBinCode(Math.multiplyExact(_, _), _ * _, l, r, prm)
+          case IntSubP() =>
+            IntBinCode(Math.subtractExact(_, _), _ - _, l, r, prm)
+          case IntDivP() =>
+            IntDivCode(divExact, _ / _, l, r, prm)
+          case IntModP() =>
+            IntDivCode(_ % _, _ % _, l, r, prm)
+          case IntGtP() =>
+            IntRelCode(_ > _, _ > _, l, r, prm)
+          case IntGteP() =>
+            IntRelCode(_ >= _, _ >= _, l, r, prm)
+          case IntLtP() =>
+            IntRelCode(_ < _, _ < _, l, r, prm)
+          case IntLteP() =>
+            IntRelCode(_ <= _, _ <= _, l, r, prm)
+          case StrConcatP() =>
+            StrConcatCode(l, r, prm)
+          case StrGtP() =>
+            StrRelCode(_ > _, l, r, prm)
+          case StrGteP() =>
+            StrRelCode(_ >= _, l, r, prm)
+          case StrLtP() =>
+            StrRelCode(_ < _, l, r, prm)
+          case StrLteP() =>
+            StrRelCode(_ <= _, l, r, prm)
+          case _ =>
+            prm
+        }
+      case _ =>
+        prm
+    }
+
+}
@@ -0,0 +1,261 @@
+/*
+ * This file is part of Cooma.
+ *
+ * Copyright (C) 2019-2023 Anthony M Sloane, Macquarie University.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.bitbucket.inkytonik.cooma
+package backend
+
+/** Snapshots of the environment that the prelude makes. The environment is
+  * a graph of frames and closures, so it is written as tables of layouts,
+  * frames and closures followed by the contents of the frames, which refer
+  * to closures by number. Closures refer to their code by the number of
+  * their lambda in a walk of the resolved prelude. Resolution is
+  * deterministic, so resolving the prelude again when the snapshot is read
+  * gives the same lambdas in the same order.
+  */
+trait Snapshots {
+
+  self: ReferenceBackend =>
+
+  import org.bitbucket.inkytonik.cooma.CoomaException.errInterp
+  import org.bitbucket.inkytonik.cooma.CoomaParserSyntax.Term
+  import java.util.IdentityHashMap
+  import scala.collection.mutable.ArrayBuffer
+
+  // Slot tags
+  val emptySlot = 0
+  val smallIntSlot = 1
+  val bigIntSlot = 2
+  val strSlot = 3
+  val recSlot = 4
+  val varSlot = 5
+  val vecSlot = 6
+  val closureSlot = 7
+
+  /** The lambdas of `top` in a fixed order: each lambda before the lambdas
+    * that are nested in it.
+    */
+  def lambdasOf(top: Lambda): Vector[Lambda] = {
+    val lambdas = Vector.newBuilder[Lambda]
+
+    def lambda(l: Lambda): Unit = {
+      lambdas += l
+      code(l.body)
+    }
+
+    def code(c: Code): Unit =
+      c match {
+        case LetCCode(_, _, l, body) =>
+          lambda(l)
+          code(body)
+        case LetFCode(_, fs, body) =>
+          fs.foreach { case (_, l) => lambda(l) }
+          code(body)
+        case LetVCode(_, _, FunVCode(l), body) =>
+          lambda(l)
+          code(body)
+        case LetVCode(_, _, _, body) =>
+          code(body)
+        case _ =>
+          ()
+      }
+
+    lambda(top)
+    lambdas.result()
+  }
+
+  /** Run the prelude `term` and return the encoding of the environment that
+    * it exports.
+    */
+  def snapshotEnv(term: Term, filename: String): Array[Byte] = {
+    val rho = emptyEnv
+    val top = resolveTop(term, rho, true)
+    val lambdaIds = new IdentityHashMap[Lambda, Integer]
+    for ((l, i) <- lambdasOf(top).zipWithIndex)
+      lambdaIds.put(l, i)
+    writeEnv(runPrelude(top, rho, filename), lambdaIds)
+  }
+
+  def writeEnv(
+      rho: Env,
+      lambdaIds: IdentityHashMap[Lambda, Integer]
+  ): Array[Byte] = {
+    val layoutIds = new IdentityHashMap[Layout, Integer]
+    val layouts = new ArrayBuffer[Layout]
+    val envIds = new IdentityHashMap[Env, Integer]
+    val envs = new ArrayBuffer[Env]
+    val closureIds = new IdentityHashMap[AnyRef, Integer]
+    val closures = new ArrayBuffer[AnyRef]
+
+    def visitEnv(env: Env): Unit =
+      if ((env != null) && !envIds.containsKey(env)) {
+        envIds.put(env, envs.length)
+        envs += env
+        if (!layoutIds.containsKey(env.layout)) {
+          layoutIds.put(env.layout, layouts.length)
+          layouts += env.layout
+        }
+        visitEnv(env.parent)
+        env.slots.foreach(visitSlot)
+      }
+
+    def visitClosure(cls: AnyRef, lambda: Lambda, env: Env): Unit =
+      if (!closureIds.containsKey(cls)) {
+        if (!lambdaIds.containsKey(lambda))
+          errInterp("snapshot", "closure is not from the prelude")
+        closureIds.put(cls, closures.length)
+        closures += cls
+        visitEnv(env)
+      }
+
+    def visitSlot(v: AnyRef): Unit =
+      v match {
+        case cls @ ClsR(lambda, env) => visitClosure(cls, lambda, env)
+        case cls @ ClsC(lambda, env) => visitClosure(cls, lambda, env)
+        case RecR(fields)            => fields.foreach(f => visitSlot(f.x))
+        case VarR(FldR(_, x))        => visitSlot(x)
+        case VecR(elems)             => elems.foreach(visitSlot)
+        case _                       => ()
+      }
+
+    visitEnv(rho)
+
+    // Frames are created in order when they are read, so put each one after
+    // its parent
+    def depth(env: Env): Int =
+      if (env == null) 0 else 1 + depth(env.parent)
+    val ordered = envs.sortBy(depth)
+    for ((env, i) <- ordered.zipWithIndex)
+      envIds.put(env, i)
+
+    val writer = new SnapshotWriter
+
+    def writeSlot(v: AnyRef): Unit =
+      v match {
+        case null =>
+          writer.int(emptySlot)
+        case SmallIntR(i) =>
+          writer.int(smallIntSlot)
+          writer.long(i)
+        case BigIntR(i) =>
+          writer.int(bigIntSlot)
+          writer.string(i.toString)
+        case StrR(rope) =>
+          writer.int(strSlot)
+          writer.string(rope.toString)
+        case RecR(fields) =>
+          writer.int(recSlot)
+          writer.int(fields.length)
+          for (FldR(f, x) <- fields) {
+            writer.string(f)
+            writeSlot(x)
+          }
+        case VarR(FldR(c, x)) =>
+          writer.int(varSlot)
+          writer.string(c)
+          writeSlot(x)
+        case VecR(elems) =>
+          writer.int(vecSlot)
+          writer.int(elems.length)
+          elems.foreach(writeSlot)
+        case _ =>
+          writer.int(closureSlot)
+          writer.int(closureIds.get(v))
+      }
+
+    writer.int(layouts.length)
+    for (layout <- layouts) {
+      writer.int(layout.size)
+      layout.names.foreach(writer.string)
+      layout.conts.foreach(writer.boolean)
+    }
+    writer.int(ordered.length)
+    for (env <- ordered) {
+      writer.int(layoutIds.get(env.layout))
+      writer.int(if (env.parent == null) -1 else envIds.get(env.parent))
+    }
+    writer.int(closures.length)
+    for (cls <- closures)
+      cls match {
+        case ClsR(lambda, env) =>
+          writer.boolean(false)
+          writer.int(lambdaIds.get(lambda))
+          writer.int(envIds.get(env))
+        case ClsC(lambda, env) =>
+          writer.boolean(true)
+          writer.int(lambdaIds.get(lambda))
+          writer.int(envIds.get(env))
+      }
+    for (env <- ordered)
+      env.slots.foreach(writeSlot)
+    writer.int(envIds.get(rho))
+    writer.toByteArray
+  }
+
+  /** Rebuild the environment of a prelude snapshot. */
+  def restoreEnv(snapshot: PreludeSnapshot): Env = {
+    val lambdas = lambdasOf(resolveTop(snapshot.term, emptyEnv, true))
+    val reader = new SnapshotReader(snapshot.env.duplicate())
+
+    val layouts =
+      Vector.fill(reader.int()) {
+        val n = reader.int()
+        val names = Array.fill(n)(reader.string())
+        val conts = Array.fill(n)(reader.boolean())
+        new Layout(names, conts)
+      }
+    val envs = new ArrayBuffer[Env]
+    for (_ <- 0 until reader.int()) {
+      val layout = layouts(reader.int())
+      val parent = reader.int()
+      envs += newFrame(layout, if (parent < 0) null else envs(parent))
+    }
+    val closures =
+      Vector.fill[AnyRef](reader.int()) {
+        val isCont = reader.boolean()
+        val lambda = lambdas(reader.int())
+        val env = envs(reader.int())
+        if (isCont) ClsC(lambda, env) else ClsR(lambda, env)
+      }
+
+    def readSlot(): AnyRef =
+      reader.int() match {
+        case `emptySlot` =>
+          null
+        case `smallIntSlot` =>
+          IntR.small(reader.long())
+        case `bigIntSlot` =>
+          IntR(BigInt(reader.string()))
+        case `strSlot` =>
+          StrR(Rope(reader.string()))
+        case `recSlot` =>
+          val n = reader.int()
+          mkRecR(Vector.fill(n)(FldR(reader.string(), readValue())))
+        case `varSlot` =>
+          varR(reader.string(), readValue())
+        case `vecSlot` =>
+          VecR(Vector.fill(reader.int())(readValue()))
+        case `closureSlot` =>
+          closures(reader.int())
+        case tag =>
+          errInterp("snapshot", s"unknown slot tag $tag")
+      }
+
+    def readValue(): ValueR =
+      readSlot() match {
+        case v: ValueR => v
+        case v         => errInterp("snapshot", s"$v is not a value")
+      }
+
+    for (env <- envs; i <- env.slots.indices)
+      env.slots(i) = readSlot()
+    envs(reader.int())
+  }
+
+}
@@ -0,0 +1,182 @@
+/*
+ * This file is part of Cooma.
+ *
+ * Copyright (C) 2019-2023 Anthony M Sloane, Macquarie University.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.bitbucket.inkytonik.cooma
+package backend
+
+import java.io.{ByteArrayInputStream, DataInputStream}
+import java.nio.charset.StandardCharsets
+
+/** The state of a traced program before one of its steps: the term that the
+  * step runs and the bindings of the frame that it runs in. Values are shown
+  * as they were logged, so large ones are abbreviated.
+  */
+case class TraceState(
+    step: Long,
+    term: String,
+    bindings: Vector[(String, String)]
+)
+
+/** The binary trace format and its decoder. A trace is a header holding the
+  * strings and term heads that the records refer to, followed by records
+  * for the last steps that were run. Each record holds the id of the term of
+  * a step, its kind and the bindings that it made. The bindings of a step
+  * that enters a function or continuation body start a new frame, the others
+  * add to the current one, which is how the decoder reconstructs the frames.
+  *
+  * Run with a trace file to print all of the states in it, or with a trace
+  * file and a step number to print just that state.
+  */
+object TraceDecoder {
+
+  val magic = 0x43545243
+  val version = 1
+
+  // Record kinds
+  val enterKind = 0
+  val bindKind = 1
+  val haltKind = 2
+
+  // Value tags
+  val noneTag = 0
+  val intTag = 1
+  val bigIntTag = 2
+  val strTag = 3
+  val recTag = 4
+  val varTag = 5
+  val vecTag = 6
+  val funTag = 7
+  val contTag = 8
+  val elidedTag = 9
+
+  /** Decode the trace in `bytes` into the states before each of its steps.
+    * Bindings made before the oldest step in the trace are not known, so
+    * the frames of the first states may be incomplete.
+    */
+  def decode(bytes: Array[Byte]): Vector[TraceState] = {
+    val in = new DataInputStream(new ByteArrayInputStream(bytes))
+    if ((in.readInt() != magic) || (in.readInt() != version))
+      CoomaException.errInterp("trace", "not a Cooma trace")
+
+    def readText(): String = {
+      val buf = new Array[Byte](in.readInt())
+      in.readFully(buf)
+      new String(buf, StandardCharsets.UTF_8)
+    }
+
+    val strings = Vector.fill(in.readInt())(readText())
+    val terms = Vector.fill(in.readInt())(readText())
+    val firstStep = in.readLong()
+    val numRecords = in.readLong()
+
+    def varint(): Long = {
+      var result = 0L
+      var shift = 0
+      var b = 0
+      while ({
+        b = in.readByte()
+        result |= (b & 0x7fL) << shift
+        shift += 7
+        (b & 0x80) != 0
+      }) ()
+      (result >>> 1) ^ -(result & 1)
+    }
+
+    def text(): String = {
+      val buf = new Array[Byte](varint().toInt)
+      in.readFully(buf)
+      new String(buf, StandardCharsets.UTF_8)
+    }
+
+    def name(): String =
+      strings(varint().toInt)
+
+    def value(): String =
+      in.readByte().toInt match {
+        case `intTag` =>
+          varint().toString
+        case `bigIntTag` =>
+          text()
+        case `strTag` =>
+          val length = varint()
+          val prefix = text()
+          if (prefix.length < length)
+            "\"" + prefix + "...\" (" + length + " chars)"
+          else
+            "\"" + prefix + "\""
+        case `recTag` =>
+          val n = varint()
+          val fields = Vector.fill(varint().toInt)(s"${name()} = ${value()}")
+          val more = if (fields.length < n) Vector("...") else Vector()
+          (fields ++ more).mkString("{", ", ", "}")
+        case `varTag` =>
+          s"<<${name()} = ${value()}>>"
+        case `vecTag` =>
+          val n = varint()
+          val elems = Vector.fill(varint().toInt)(value())
+          val more = if (elems.length < n) Vector("...") else Vector()
+          (elems ++ more).mkString("[", ", ", "]")
+        case `funTag` =>
+          "<function>"
+        case `contTag` =>
+          "<continuation>"
+        case `elidedTag` =>
+          "..."
+        case _ =>
+          "?"
+      }
+
+    val states = Vector.newBuilder[TraceState]
+    var frame = Vector[(String, String)]()
+    for (i <- 0L until numRecords) {
+      val term = terms(varint().toInt)
+      val kind = in.readByte().toInt
+      val bindings = Vector.fill(varint().toInt)((name(), value()))
+      states += TraceState(firstStep + i, term, frame)
+      if (kind == enterKind)
+        frame = bindings
+      else if (kind == bindKind)
+        frame = frame.filterNot(b => bindings.exists(_._1 == b._1)) ++ bindings
+    }
+    states.result()
+  }
+
+  /** The state before step `step` of the trace in `bytes`, if the trace
+    * still holds that step.
+    */
+  def state(bytes: Array[Byte], step: Long): Option[TraceState] =
+    decode(bytes).find(_.step == step)
+
+  def format(state: TraceState): String = {
+    val bindings =
+      state.bindings.map { case (x, v) => s"  $x = $v\n" }.mkString
+    s"step ${state.step}: ${state.term}\n$bindings"
+  }
+
+  def main(args: Array[String]): Unit = {
+    import java.nio.file.{Files, Paths}
+    args.toSeq match {
+      case Seq(filename) =>
+        decode(Files.readAllBytes(Paths.get(filename))).foreach { state =>
+          print(format(state))
+        }
+      case Seq(filename, step) =>
+        state(Files.readAllBytes(Paths.get(filename)), step.toLong) match {
+          case Some(state) =>
+            print(format(state))
+          case None =>
+            println(s"step $step is not in the trace")
+        }
+      case _ =>
+        println("usage: TraceDecoder trace-file [step]")
+    }
+  }
+
+}
@@ -0,0 +1,243 @@
+/*
+ * This file is part of Cooma.
+ *
+ * Copyright (C) 2019-2023 Anthony M Sloane, Macquarie University.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.bitbucket.inkytonik.cooma
+package backend
+
+/** Tracing of the reference interpreter. Each step appends a compact binary
+  * record to a ring buffer, so the cost of a step doesn't depend on the size
+  * of the environment and only the most recent steps are kept. The format is
+  * described by `TraceDecoder`, which turns a trace back into states.
+  */
+trait Tracing {
+
+  self: ReferenceBackend =>
+
+  import org.bitbucket.inkytonik.cooma.CoomaParserSyntax._
+  import org.bitbucket.inkytonik.cooma.PrettyPrinter.show
+  import org.bitbucket.inkytonik.cooma.backend.TraceDecoder._
+  import java.io.{ByteArrayOutputStream, DataOutputStream}
+  import java.nio.charset.StandardCharsets
+  import java.util.IdentityHashMap
+  import scala.collection.mutable
+
+  /** The number of bytes of records that a trace keeps. */
+  val traceCapacity = 1 << 22
+
+  /** The longest string prefix and the most record fields or vector
+    * elements that are logged for a value, and how deeply values are logged.
+    */
+  val traceText = 64
+  val traceWidth = 8
+  val traceDepth = 2
+
+  class TraceLog(capacity: Int) {
+
+    val data = new Array[Byte](capacity)
+
+    /** The number of bytes that have been written, including overwritten
+      * ones.
+      */
+    var written = 0L
+
+    /** The positions at which the most recent records start. */
+    val starts = new Array[Long](capacity / 4)
+    var records = 0L
+
+    /** The term of the step that is running, so that a step that fails can
+      * be logged.
+      */
+    var current: Term = null
+
+    val strings = new mutable.HashMap[String, Int]
+    val stringList = new mutable.ArrayBuffer[String]
+    val terms = new IdentityHashMap[Term, Integer]
+    val termList = new mutable.ArrayBuffer[Term]
+
+    def byte(b: Int): Unit = {
+      data((written % capacity).toInt) = b.toByte
+      written += 1
+    }
+
+    def varint(n: Long): Unit = {
+      var v = (n << 1) ^ (n >> 63)
+      while ((v & ~0x7fL) != 0) {
+        byte(((v & 0x7f) | 0x80).toInt)
+        v >>>= 7
+      }
+      byte(v.toInt)
+    }
+
+    def text(s: String): Unit = {
+      val bytes = s.getBytes(StandardCharsets.UTF_8)
+      varint(bytes.length)
+      bytes.foreach(byte(_))
+    }
+
+    def name(s: String): Unit =
+      varint(strings.getOrElseUpdate(s, {
+        stringList += s
+        stringList.length - 1
+      }))
+
+    def termId(term: Term): Int = {
+      val id = terms.get(term)
+      if (id == null) {
+        terms.put(term, termList.length)
+        termList += term
+        termList.length - 1
+      } else
+        id
+    }
+
+    /** Start the record of a step that runs `term` and makes `n` bindings. */
+    def begin(term: Term, kind: Int, n: Int): Unit = {
+      starts((records % starts.length).toInt) = written
+      records += 1
+      varint(termId(term))
+      byte(kind)
+      varint(n)
+    }
+
+    def binding(x: String, v: AnyRef): Unit = {
+      name(x)
+      value(v, traceDepth)
+    }
+
+    def value(v: AnyRef, depth: Int): Unit =
+      v match {
+        case SmallIntR(i) =>
+          byte(intTag)
+          varint(i)
+        case BigIntR(i) =>
+          byte(bigIntTag)
+          text(i.toString)
+        case StrR(rope) =>
+          byte(strTag)
+          varint(rope.length)
+          if (rope.isFlat || (rope.length <= 2 * traceText))
+            text(rope.toString.take(traceText))
+          else
+            text("")
+        case RecR(fields) =>
+          byte(recTag)
+          varint(fields.length)
+          val shown = if (depth > 0) fields.take(traceWidth) else Vector()
+          varint(shown.length)
+          for (FldR(f, x) <- shown) {
+            name(f)
+            value(x, depth - 1)
+          }
+        case VarR(FldR(c, x)) =>
+          byte(varTag)
+          name(c)
+          if (depth > 0) value(x, depth - 1) else byte(elidedTag)
+        case VecR(elems) =>
+          byte(vecTag)
+          varint(elems.length)
+          val shown = if (depth > 0) elems.take(traceWidth) else Vector()
+          varint(shown.length)
+          shown.foreach(value(_, depth - 1))
+        case ClsR(_, _) =>
+          byte(funTag)
+        case ClsC(_, _) =>
+          byte(contTag)
+        case _ =>
+          byte(noneTag)
+      }
+
+    /** Log a step that runs `term` and enters a body whose frame is `rho`,
+      * binding the first `n` slots of the frame.
+      */
+    def enter(term: Term, rho: Env, n: Int): Unit = {
+      begin(term, enterKind, n)
+      for (i <- 0 until n)
+        binding(rho.layout.names(i), rho.slots(i))
+    }
+
+    /** Log a step that runs `term` and binds `slot` in `rho`. */
+    def bind(term: Term, rho: Env, slot: Int): Unit = {
+      begin(term, bindKind, 1)
+      binding(rho.layout.names(slot), rho.slots(slot))
+    }
+
+    /** Log a step that runs `term` and binds `slots` in `rho`. */
+    def bindAll(term: Term, rho: Env, slots: Seq[Int]): Unit = {
+      begin(term, bindKind, slots.length)
+      for (slot <- slots)
+        binding(rho.layout.names(slot), rho.slots(slot))
+    }
+
+    def halt(term: Term, v: ValueR): Unit = {
+      begin(term, haltKind, 1)
+      binding("result", v)
+    }
+
+    /** Log the step that is running as the last one, since it failed. */
+    def fail(): Unit =
+      if (current != null)
+        begin(current, haltKind, 0)
+
+    /** The head of `term`, without the terms nested in it. */
+    def termHead(term: Term): String =
+      term match {
+        case LetC(k, x, _, _) =>
+          s"%letc $k $x = ..."
+        case LetF(ds, _) =>
+          ds.map { case DefTerm(f, k, x, _) => s"%def $f $k $x = ..." }
+            .mkString("%letf ", " ", "")
+        case LetV(x, FunV(k, y, _), _) =>
+          s"%letv $x = %fun $k $y = ..."
+        case LetV(x, v, _) =>
+          s"%letv $x = ${show(v)}"
+        case _ =>
+          show(term)
+      }
+
+    /** The trace in the format that `TraceDecoder` reads, holding the
+      * records that are still in the buffer.
+      */
+    def toBytes: Array[Byte] = {
+      val bytes = new ByteArrayOutputStream
+      val out = new DataOutputStream(bytes)
+
+      def writeText(s: String): Unit = {
+        val b = s.getBytes(StandardCharsets.UTF_8)
+        out.writeInt(b.length)
+        out.write(b)
+      }
+
+      out.writeInt(magic)
+      out.writeInt(version)
+      out.writeInt(stringList.length)
+      stringList.foreach(writeText)
+      out.writeInt(termList.length)
+      termList.foreach(t => writeText(termHead(t)))
+
+      var first = math.max(0L, records - starts.length)
+      while ((first < records) &&
+             (starts((first % starts.length).toInt) < written - capacity))
+        first += 1
+      out.writeLong(first)
+      out.writeLong(records - first)
+      if (first < records) {
+        var i = starts((first % starts.length).toInt)
+        while (i < written) {
+          out.writeByte(data((i % capacity).toInt))
+          i += 1
+        }
+      }
+      out.flush()
+      bytes.toByteArray
+    }
+
+  }
+
+}
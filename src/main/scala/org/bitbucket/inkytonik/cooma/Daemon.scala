@@ -0,0 +1,307 @@
+/*
+ * This file is part of Cooma.
+ *
+ * Copyright (C) 2019-2023 Anthony M Sloane, Macquarie University.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.bitbucket.inkytonik.cooma
+
+/** A daemon that runs programs for clients, so that the cost of starting the
+  * JVM, loading classes and reading the prelude is paid once instead of for
+  * every run. The daemon keeps the JIT, the prelude and the compile cache
+  * warm, but each run has its own configuration, driver and environment, so
+  * runs don't share state or capabilities.
+  *
+  * A client connects to the daemon on the loopback interface and sends the
+  * daemon's secret, its working directory and its arguments, followed by its
+  * standard input. The daemon replies with the output of the run and then
+  * its exit code. The secret is written to a file that only the user who
+  * started the daemon can read, so other users on the machine can't run
+  * programs as that user. Runs are served one at a time since the compiler
+  * isn't thread-safe.
+  */
+object Daemon {
+
+  import java.io._
+  import java.net.{InetAddress, ServerSocket, Socket}
+  import java.nio.charset.StandardCharsets
+  import java.nio.file.attribute.{FileAttribute, PosixFilePermissions}
+  import java.nio.file.{FileSystems, Files, Path, Paths, StandardCopyOption}
+  import java.security.{MessageDigest, SecureRandom}
+  import org.rogach.scallop.exceptions.{Help, UnknownOption, Version}
+  import org.rogach.scallop.throwError
+  import scala.util.{Failure, Success, Try}
+
+  /** The tag of a reply that has output. */
+  val outputTag = 1
+
+  /** The tag of a reply that has the exit code. */
+  val exitTag = 0
+
+  /** How long a client has to send its secret, directory and arguments, in
+    * milliseconds. Runs are served one at a time, so a client that connects
+    * and sends nothing would otherwise stop the daemon serving anyone.
+    */
+  val handshakeTimeout = 5000
+
+  def workingDir: String =
+    Paths.get("").toAbsolutePath.toString
+
+  /** The file that holds the secret of the daemon on `port`. */
+  def tokenFile(port: Int): Path =
+    Paths.get(System.getProperty("user.home"), ".cooma", s"daemon-$port.token")
+
+  def newToken(): String = {
+    val bytes = new Array[Byte](32)
+    new SecureRandom().nextBytes(bytes)
+    bytes.map(b => f"${b & 0xff}%02x").mkString
+  }
+
+  /** Attributes that give only the owner of a new file the permissions in
+    * `perms`, where the file system has POSIX permissions.
+    */
+  def ownerOnly(perms: String): Seq[FileAttribute[_]] =
+    if (FileSystems.getDefault.supportedFileAttributeViews.contains("posix"))
+      Seq(
+        PosixFilePermissions.asFileAttribute(
+          PosixFilePermissions.fromString(perms)
+        )
+      )
+    else
+      Seq()
+
+  /** Write `token` to `file`. The file is made with owner-only permissions
+    * before the token is written to it, and then moved into place.
+    */
+  def writeToken(file: Path, token: String): Unit = {
+    val dir = file.getParent
+    if (!Files.isDirectory(dir))
+      Files.createDirectories(dir, ownerOnly("rwx------"): _*)
+    val temp =
+      Files.createTempFile(dir, "daemon", ".token", ownerOnly("rw-------"): _*)
+    Files.write(temp, token.getBytes(StandardCharsets.UTF_8))
+    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING)
+  }
+
+  def readToken(file: Path): String =
+    new String(Files.readAllBytes(file), StandardCharsets.UTF_8)
+
+  def sameToken(token: String, expected: String): Boolean =
+    MessageDigest.isEqual(
+      token.getBytes(StandardCharsets.UTF_8),
+      expected.getBytes(StandardCharsets.UTF_8)
+    )
+
+  /** Serve runs on the daemon port until the process is stopped. */
+  def serve(config: Config): Unit = {
+    val server =
+      new ServerSocket(config.daemonPort(), 50, InetAddress.getLoopbackAddress)
+    val cacheDir =
+      if (config.cacheDir.isSupplied)
+        config.cacheDir()
+      else
+        Files.createTempDirectory("cooma").toString
+    val token = newToken()
+    val file = tokenFile(server.getLocalPort)
+    writeToken(file, token)
+    file.toFile.deleteOnExit()
+    config.output().emitln(s"cooma: daemon on port ${server.getLocalPort}")
+    serve(server, cacheDir, token)
+  }
+
+  /** Serve runs on `server` until it is closed, for clients that send
+    * `token` within `timeout` milliseconds. Runs that don't give a cache
+    * directory use `cacheDir`.
+    */
+  def serve(
+      server: ServerSocket,
+      cacheDir: String,
+      token: String,
+      timeout: Int = handshakeTimeout
+  ): Unit =
+    while (!server.isClosed)
+      Try(server.accept()).foreach { socket =>
+        try {
+          socket.setSoTimeout(timeout)
+          respond(socket, cacheDir, token)
+        } catch {
+          case _: IOException =>
+        } finally {
+          socket.close()
+        }
+      }
+
+  def respond(socket: Socket, cacheDir: String, token: String): Unit = {
+    val in = new DataInputStream(new BufferedInputStream(socket.getInputStream))
+    val out =
+      new DataOutputStream(new BufferedOutputStream(socket.getOutputStream))
+    val (output, code) =
+      if (sameToken(in.readUTF(), token)) {
+        val dir = in.readUTF()
+        val args = Vector.fill(in.readInt())(in.readUTF())
+        socket.setSoTimeout(0)
+        val stdin = new FilterInputStream(in) {
+          override def close(): Unit = ()
+        }
+        if (dir == workingDir)
+          run(args, stdin, cacheDir)
+        else
+          (s"cooma: the daemon runs in $workingDir, not $dir\n", 1)
+      } else
+        ("cooma: the client doesn't have the daemon's secret\n", 1)
+    val bytes = output.getBytes(StandardCharsets.UTF_8)
+    out.writeByte(outputTag)
+    out.writeInt(bytes.length)
+    out.write(bytes)
+    out.writeByte(exitTag)
+    out.writeInt(code)
+    out.flush()
+  }
+
+  /** Run with `args` as the command line, returning the output of the run and
+    * its exit code.
+    */
+  def run(
+      args: Seq[String],
+      stdin: InputStream,
+      cacheDir: String
+  ): (String, Int) = {
+
+    def configure(options: Seq[String]): Config = {
+      val config = new Config(Seq("--Koutput", "string") ++ options ++ args) {
+        override def input: InputStream = stdin
+      }
+      throwError.withValue(true)(config.verify())
+      config
+    }
+
+    Try {
+      val config = configure(Seq())
+      if (config.cacheDir.isSupplied)
+        config
+      else
+        configure(Seq("--cacheDir", cacheDir))
+    } match {
+      case Success(config) =>
+        if (config.daemon() || config.client() || config.server())
+          ("cooma: the daemon only runs programs and preludes\n", 1)
+        else if (config.filenames().isEmpty && !config.compilePrelude())
+          ("cooma: the daemon doesn't run the REPL\n", 1)
+        else {
+          val truffleOut = new ByteArrayOutputStream
+          val result = Try(Main.run(config, new PrintStream(truffleOut, true)))
+          val output = config.stringEmitter.result() + truffleOut.toString
+          result match {
+            case Success(()) =>
+              (output, 0)
+            case Failure(e) =>
+              (s"${output}cooma: $e\n", 1)
+          }
+        }
+      case Failure(_: Help) =>
+        val config = new Config(args)
+        val help = new ByteArrayOutputStream
+        Console.withOut(help) {
+          Try(throwError.withValue(true)(config.verify()))
+          config.printHelp()
+        }
+        (help.toString, 0)
+      case Failure(Version) =>
+        (s"${BuildInfo.name} ${BuildInfo.version}\n", 0)
+      case Failure(e: UnknownOption) =>
+        (s"cooma: ${e.getMessage()}, use --help for options\n", 1)
+      case Failure(e) =>
+        (s"cooma: ${e.getMessage()}\n", 1)
+    }
+  }
+
+  /** Send the run in `config` to the daemon, returning its exit code. */
+  def client(config: Config): Int = {
+    val args = forwardedArgs(config.args)
+    val port = config.daemonPort()
+    Try {
+      val token = readToken(tokenFile(port))
+      request(port, token, args, System.in, System.out)
+    } match {
+      case Success(code) =>
+        code
+      case Failure(e) =>
+        config.output().emitln(s"cooma: can't reach daemon on port $port: $e")
+        1
+    }
+  }
+
+  /** The arguments of a client run without the options that only concern
+    * the client.
+    */
+  def forwardedArgs(args: Seq[String]): Seq[String] =
+    args match {
+      case "--client" +: rest =>
+        forwardedArgs(rest)
+      case "--daemonPort" +: _ +: rest =>
+        forwardedArgs(rest)
+      case arg +: rest if arg.startsWith("--daemonPort=") =>
+        forwardedArgs(rest)
+      case arg +: rest =>
+        arg +: forwardedArgs(rest)
+      case _ =>
+        args
+    }
+
+  /** Send a run to the daemon on `port` whose secret is `token`, copying
+    * `stdin` to the run and its output to `stdout`, and return its exit code.
+    */
+  def request(
+      port: Int,
+      token: String,
+      args: Seq[String],
+      stdin: InputStream,
+      stdout: OutputStream
+  ): Int = {
+    val socket = new Socket(InetAddress.getLoopbackAddress, port)
+    try {
+      val out =
+        new DataOutputStream(new BufferedOutputStream(socket.getOutputStream))
+      out.writeUTF(token)
+      out.writeUTF(workingDir)
+      out.writeInt(args.length)
+      args.foreach(out.writeUTF)
+      out.flush()
+
+      // Input is copied in the background since the run might not read it
+      val copier = new Thread(() =>
+        Try {
+          val buffer = new Array[Byte](8192)
+          var count = stdin.read(buffer)
+          while (count != -1) {
+            out.write(buffer, 0, count)
+            out.flush()
+            count = stdin.read(buffer)
+          }
+          socket.shutdownOutput()
+        }
+      )
+      copier.setDaemon(true)
+      copier.start()
+
+      val in =
+        new DataInputStream(new BufferedInputStream(socket.getInputStream))
+      var tag = in.readByte().toInt
+      while (tag == outputTag) {
+        val bytes = new Array[Byte](in.readInt())
+        in.readFully(bytes)
+        stdout.write(bytes)
+        stdout.flush()
+        tag = in.readByte().toInt
+      }
+      in.readInt()
+    } finally {
+      socket.close()
+    }
+  }
+
+}
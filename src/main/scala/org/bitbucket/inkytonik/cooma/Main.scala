@@ -12,6 +12,8 @@ package org.bitbucket.inkytonik.cooma
 
 object Main {
 
+  import java.io.PrintStream
+
   import org.bitbucket.inkytonik.cooma.PreludeDriver
   import org.bitbucket.inkytonik.cooma.truffle.TruffleFrontend
   import org.rogach.scallop.exceptions.UnknownOption
@@ -24,15 +26,26 @@ object Main {
   def runMain(config: Config): Unit =
     try {
       config.verify()
-      if (config.compilePrelude())
-        new PreludeDriver().run(config)
-      else if (config.graalVM())
-        new TruffleFrontend().interpret(config)
+      if (config.daemon())
+        Daemon.serve(config)
+      else if (config.client())
+        sys.exit(Daemon.client(config))
       else
-        new ReferenceFrontend().interpret(config)
+        run(config)
     } catch {
       case e: UnknownOption =>
         println(s"cooma: ${e.getMessage()}, use --help for options")
     }
 
+  /** Run with a verified configuration. The output of the Graal VM backend
+    * goes to `out`.
+    */
+  def run(config: Config, out: PrintStream = System.out): Unit =
+    if (config.compilePrelude())
+      new PreludeDriver().run(config)
+    else if (config.graalVM())
+      new TruffleFrontend(config.input, out).interpret(config)
+    else
+      new ReferenceFrontend().interpret(config)
+
 }
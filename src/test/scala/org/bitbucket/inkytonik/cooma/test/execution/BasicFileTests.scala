@@ -15,6 +15,13 @@ class BasicFileTests extends FileTests {
       ".out",
       argslist = List(bc.options ++ List("-r"))
     )
+    filetests(
+      s"${bc.name} optimised file",
+      s"${resourcesPath}/basic",
+      ".cooma",
+      ".out",
+      argslist = List(bc.options ++ List("-O", "-r"))
+    )
     filetests(
       s"${bc.name} file",
       s"${resourcesPath}/bad",
@@ -0,0 +1,114 @@
+package org.bitbucket.inkytonik.cooma.test.execution
+
+import org.bitbucket.inkytonik.cooma.{Config, ReferenceDriver}
+import org.bitbucket.inkytonik.cooma.backend.ReferenceBackend
+import org.bitbucket.inkytonik.kiama.util.StringSource
+import org.scalatest.funsuite.AnyFunSuite
+import org.scalatest.matchers.should
+
+import scala.collection.mutable
+
+class ClosureTests extends AnyFunSuite with should.Matchers {
+
+  val config = new Config(Seq("-Q", "test.cooma"))
+  config.verify()
+
+  val backend = new ReferenceBackend(new ReferenceDriver, StringSource(""), config)
+
+  import backend._
+
+  val bigSize = 10000
+
+  // {
+  //   val n = 0
+  //   val big = [n, n, ..., n]
+  //   val keep = fun (x : Int) x
+  //   val use = fun (x : Int) big
+  //   val loop = fun (x : Int) loop(x)
+  //   { keep = keep, use = use, loop = loop }
+  // }
+  val term =
+    letV(
+      "n",
+      intV(0),
+      letV(
+        "big",
+        vecV(Vector.fill(bigSize)("n")),
+        letV(
+          "keep",
+          funV("k1", "x1", appC(idnC("k1"), "x1")),
+          letV(
+            "use",
+            funV("k2", "x2", appC(idnC("k2"), "big")),
+            letF(
+              Vector(defTerm("loop", "k3", "x3", appF("loop", "k3", "x3"))),
+              letV(
+                "r",
+                recV(
+                  Vector(
+                    fldV("keep", "keep"),
+                    fldV("use", "use"),
+                    fldV("loop", "loop")
+                  )
+                ),
+                appC(haltC(), "r")
+              )
+            )
+          )
+        )
+      )
+    )
+
+  /** Count the run-time values that are reachable from `value`, including
+    * the values captured by closures. Each frame is only visited once so that
+    * recursive closures don't loop.
+    */
+  def retained(value: AnyRef, seen: mutable.Set[Env] = mutable.Set()): Int = {
+
+    def frame(env: Env): Int =
+      if ((env == null) || seen.contains(env))
+        0
+      else {
+        seen += env
+        env.slots.map(retained(_, seen)).sum + frame(env.parent)
+      }
+
+    value match {
+      case ClsR(_, env) =>
+        1 + frame(env)
+      case ClsC(_, env) =>
+        1 + frame(env)
+      case RecR(fields) =>
+        1 + fields.map(f => retained(f.x, seen)).sum
+      case VarR(FldR(_, v)) =>
+        1 + retained(v, seen)
+      case VecR(elems) =>
+        1 + elems.map(retained(_, seen)).sum
+      case null =>
+        0
+      case _ =>
+        1
+    }
+  }
+
+  def field(f: String): ValueR =
+    interpret(term, emptyEnv, Seq(), config) match {
+      case Right(Result(_, RecR(fields))) =>
+        fields.collectFirst { case FldR(g, v) if f == g => v }.get
+      case result =>
+        fail(s"unexpected result $result")
+    }
+
+  test("a closure doesn't retain values that it doesn't use") {
+    retained(field("keep")) shouldBe 1
+  }
+
+  test("a closure retains the values that it uses") {
+    retained(field("use")) shouldBe 2 + bigSize
+  }
+
+  test("a recursive closure only retains itself") {
+    retained(field("loop")) shouldBe 2
+  }
+
+}
@@ -0,0 +1,138 @@
+package org.bitbucket.inkytonik.cooma.test.execution
+
+import java.nio.ByteBuffer
+import java.nio.file.{Files, Path}
+
+import org.bitbucket.inkytonik.cooma.CoomaParserSyntax._
+import org.bitbucket.inkytonik.cooma.test.ExecutionTests
+import org.bitbucket.inkytonik.cooma.{
+  CoomaParser,
+  IRFormat,
+  SnapshotReader,
+  SnapshotWriter,
+  StaticFormat
+}
+import org.bitbucket.inkytonik.kiama.util.{FileSource, Positions, StringSource}
+
+import scala.jdk.CollectionConverters._
+
+class CompileCacheTests extends ExecutionTests {
+
+  def entries(dir: Path): Vector[Path] =
+    Files.list(dir).iterator.asScala.toVector
+
+  test("IR is unchanged by a round trip through the binary format") {
+    implicit bc =>
+      assume(bc.name == "Reference", "the format doesn't depend on backend")
+      val source = FileSource("prelude/prelude.cooma.dynamic")
+      val parser = new CoomaParser(source, new Positions)
+      val result = parser.pDynamicPrelude(0)
+      val term = parser.value(result).asInstanceOf[DynamicPrelude].term
+      val bytes = IRFormat.toBytes(term)
+      IRFormat.fromBytes(ByteBuffer.wrap(bytes)) shouldBe term
+  }
+
+  def roundTrip(
+      entries: Vector[StaticPreludeEntry]
+  ): Vector[StaticPreludeEntry] = {
+    val writer = new SnapshotWriter
+    StaticFormat.write(writer, entries)
+    StaticFormat.read(new SnapshotReader(ByteBuffer.wrap(writer.toByteArray)))
+  }
+
+  test("static prelude entries are unchanged by a round trip") {
+    implicit bc =>
+      assume(bc.name == "Reference", "the format doesn't depend on backend")
+      val source = FileSource("prelude/prelude.cooma.static")
+      val parser = new CoomaParser(source, new Positions)
+      val result = parser.pStaticPrelude(0)
+      val entries =
+        parser.value(result).asInstanceOf[StaticPrelude].optStaticPreludeEntrys
+      roundTrip(entries) shouldBe entries
+  }
+
+  test("all kinds of expression are unchanged by a round trip") {
+    implicit bc =>
+      assume(bc.name == "Reference", "the format doesn't depend on backend")
+      val program =
+        """{
+          |  type T = {a : Int, b : String}
+          |  val r : T = {a = 1, b = "x\n"}
+          |  def f(x : Int "an int", y : Vector(Int)) Int =
+          |    if (x >= 0) && !(y == []) || (x != 1) then |x| * y!0
+          |    else (x ** 2) % 3 - (x / 2) + prim IntAdd(x, 1)
+          |  def g(h : (Int) Int, u : <<A : Int, B : Vector()>>) String =
+          |    r.b ++ "y"
+          |  val v = <<A = r.a>>
+          |  val s = {c = 1} & {d = fun (z : Int) z}
+          |  v match {
+          |    case A(n) => f(n, [1, 2]) + (if n < 1 then 0 else 1)
+          |    case B(m) => 0
+          |  }
+          |}""".stripMargin
+      val parser = new CoomaParser(StringSource(program), new Positions)
+      val result = parser.pProgram(0)
+      result.hasValue shouldBe true
+      val e = parser.value(result).asInstanceOf[Program].expression
+      val entries =
+        Vector(StaticLetEntry("p", Uni(), e), StaticTypedEntry("q", e))
+      roundTrip(entries) shouldBe entries
+  }
+
+  test("primitives with fields are unchanged by a round trip") {
+    implicit bc =>
+      assume(bc.name == "Reference", "the format doesn't depend on backend")
+      val primitives =
+        Vector(
+          ArgumentP(2),
+          ArgumentCheckP(3),
+          CapabilityP("Writer"),
+          DbTableAllP(1, "users"),
+          DbTableDeleteP(1, "users"),
+          DbTableGetByIdP(1, "users"),
+          DbTableInsertP(1, "users"),
+          DbTableUpdateP(1, "users"),
+          FolderReaderReadP("dir"),
+          FolderRunnerRunP("dir"),
+          FolderWriterWriteP("dir"),
+          HttpClientP("Get", "http://localhost"),
+          HttpServerP(8080),
+          ReaderReadP("in.txt"),
+          RecConcatP(),
+          RecSelectP(),
+          RunnerRunP("ls"),
+          WriterWriteP("out.txt"),
+          UserP(VecPutP())
+        )
+      val term =
+        primitives.foldRight[Term](AppC(HaltC(), "x")) { (p, body) =>
+          LetV("x", PrmV(p, Vector("x")), body)
+        }
+      val bytes = IRFormat.toBytes(term)
+      IRFormat.fromBytes(ByteBuffer.wrap(bytes)) shouldBe term
+  }
+
+  test("a program runs the same from the compile cache") { implicit bc =>
+    val dir = Files.createTempDirectory("cooma")
+    val program = "src/test/resources/boolean/factorial.cooma"
+    val options = Seq("--cacheDir", dir.toString, "-r")
+    runFile(program, options, Seq()) shouldBe "5040\n"
+    val cached = entries(dir)
+    cached.map(_.getFileName.toString.endsWith(".ir")) shouldBe Vector(true)
+    runFile(program, options, Seq()) shouldBe "5040\n"
+    entries(dir) shouldBe cached
+    cached.foreach(Files.delete)
+    Files.delete(dir)
+  }
+
+  test("options that need the frontend don't use the compile cache") {
+    implicit bc =>
+      val dir = Files.createTempDirectory("cooma")
+      val program = "src/test/resources/boolean/factorial.cooma"
+      runFile(program, Seq("--cacheDir", dir.toString, "-t"), Seq()) shouldBe
+        "Int\n"
+      entries(dir) shouldBe empty
+      Files.delete(dir)
+  }
+
+}
@@ -0,0 +1,120 @@
+package org.bitbucket.inkytonik.cooma.test.execution
+
+import java.io.{ByteArrayInputStream, ByteArrayOutputStream}
+import java.net.{InetAddress, ServerSocket, Socket}
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.nio.file.attribute.PosixFilePermission.{OWNER_READ, OWNER_WRITE}
+
+import org.bitbucket.inkytonik.cooma.Daemon
+import org.bitbucket.inkytonik.cooma.test.ExecutionTests
+
+import scala.jdk.CollectionConverters._
+
+class DaemonTests extends ExecutionTests {
+
+  val cacheDir = Files.createTempDirectory("cooma")
+
+  val server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress)
+
+  val token = Daemon.newToken()
+
+  val thread =
+    new Thread(() => Daemon.serve(server, cacheDir.toString, token, 500))
+
+  override def beforeAll(): Unit = {
+    thread.setDaemon(true)
+    thread.start()
+  }
+
+  override protected def afterAll(): Unit = {
+    server.close()
+    thread.join()
+    Files.list(cacheDir).iterator.asScala.foreach(Files.delete)
+    Files.delete(cacheDir)
+  }
+
+  def request(
+      args: Seq[String],
+      input: String,
+      secret: String = token
+  ): (String, Int) = {
+    val stdin = new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8))
+    val stdout = new ByteArrayOutputStream
+    val code = Daemon.request(server.getLocalPort, secret, args, stdin, stdout)
+    (stdout.toString("UTF-8"), code)
+  }
+
+  test("a program runs the same each time in the daemon") { implicit bc =>
+    assume(bc.name == "Reference", "the daemon chooses its own backend")
+    val program = "src/test/resources/boolean/factorial.cooma"
+    request(Seq("-r", program), "") shouldBe (("5040\n", 0))
+    request(Seq("-r", program), "") shouldBe (("5040\n", 0))
+  }
+
+  test("a run in the daemon reads the client's standard input") {
+    implicit bc =>
+      assume(bc.name == "Reference", "the daemon chooses its own backend")
+      val program = "src/test/resources/capability/readerCmdArg.cooma"
+      request(Seq("-r", program, "-"), "Hello\n") shouldBe
+        (("<< Right = \"Hello\\n\" >>\n", 0))
+  }
+
+  test("runs in the daemon have their own options") { implicit bc =>
+    assume(bc.name == "Reference", "the daemon chooses its own backend")
+    val program = "src/test/resources/boolean/factorial.cooma"
+    request(Seq("-t", program), "") shouldBe (("Int\n", 0))
+    request(Seq(program), "") shouldBe (("", 0))
+  }
+
+  test("the daemon doesn't run the REPL") { implicit bc =>
+    assume(bc.name == "Reference", "the daemon chooses its own backend")
+    request(Seq("-r"), "") shouldBe
+      (("cooma: the daemon doesn't run the REPL\n", 1))
+  }
+
+  test("the daemon rejects clients that don't have its secret") {
+    implicit bc =>
+      assume(bc.name == "Reference", "the daemon chooses its own backend")
+      val program = "src/test/resources/boolean/factorial.cooma"
+      request(Seq("-r", program), "", Daemon.newToken()) shouldBe
+        (("cooma: the client doesn't have the daemon's secret\n", 1))
+  }
+
+  test("a client that sends nothing doesn't stop the daemon") { implicit bc =>
+    assume(bc.name == "Reference", "the daemon chooses its own backend")
+    val silent = new Socket(InetAddress.getLoopbackAddress, server.getLocalPort)
+    try {
+      val program = "src/test/resources/boolean/factorial.cooma"
+      request(Seq("-r", program), "") shouldBe (("5040\n", 0))
+      silent.getInputStream.read() shouldBe -1
+    } finally {
+      silent.close()
+    }
+  }
+
+  test("only the owner can read the daemon's secret") { implicit bc =>
+    assume(bc.name == "Reference", "the secret doesn't depend on backend")
+    val file = cacheDir.resolve("test.token")
+    Daemon.writeToken(file, token)
+    Daemon.readToken(file) shouldBe token
+    if (Files.getFileStore(file).supportsFileAttributeView("posix"))
+      Files.getPosixFilePermissions(file).asScala shouldBe
+        Set(OWNER_READ, OWNER_WRITE)
+    Files.delete(file)
+  }
+
+  test("unknown options fail in the daemon") { implicit bc =>
+    assume(bc.name == "Reference", "the daemon chooses its own backend")
+    val (output, code) = request(Seq("--notAnOption"), "")
+    output should include("use --help for options")
+    code shouldBe 1
+  }
+
+  test("client options aren't sent to the daemon") { implicit bc =>
+    assume(bc.name == "Reference", "the options don't depend on backend")
+    val args = Seq("--client", "--daemonPort", "7000", "-r", "x.cooma", "y")
+    Daemon.forwardedArgs(args) shouldBe Seq("-r", "x.cooma", "y")
+  }
+
+}
@@ -109,6 +109,24 @@ class OperatorTests extends ExecutionTests with ScalaCheckDrivenPropertyChecks {
     }
   }
 
+  test(s"run: Int operators at the limits of Long") { implicit bc =>
+    val max = BigInt(Long.MaxValue)
+    val min = BigInt(Long.MinValue)
+    for (
+      (code, answer) <- Vector(
+        (s"$max + 1", max + 1),
+        (s"$min - 1", min - 1),
+        (s"$max * $max", max * max),
+        (s"$min / -1", min / -1),
+        (s"$min % -1", min % -1),
+        (s"|$min|", min.abs),
+        (s"2 ** 64", BigInt(2).pow(64)),
+        (s"-1 ** 65", BigInt(-1).pow(65)),
+        (s"${max + 1} - 1", max)
+      )
+    ) runExprTest(code, intReplType, answer.toString)
+  }
+
   test(s"run: binary Int operator >") { implicit bc =>
     forAll { (l: BigInt, r: BigInt) =>
       runExprTest(s"$l > $r", boolReplType, toCoomaString(l > r))
@@ -0,0 +1,296 @@
+package org.bitbucket.inkytonik.cooma.test.execution
+
+import org.bitbucket.inkytonik.cooma.CoomaParserSyntax._
+import org.bitbucket.inkytonik.cooma.backend.ReferenceBackend
+import org.bitbucket.inkytonik.cooma.{
+  Compiler,
+  Config,
+  Optimiser,
+  ReferenceDriver,
+  SyntaxCompiler
+}
+import org.bitbucket.inkytonik.kiama.util.{FileSource, StringSource}
+import org.scalatest.funsuite.AnyFunSuite
+import org.scalatest.matchers.should
+
+import java.io.File
+
+class OptimiserTests extends AnyFunSuite with should.Matchers {
+
+  def optimise(term: Term): Term =
+    Optimiser.optimise(term)
+
+  test("a dead pure value binding is removed") {
+    optimise(LetV("x", IntV(1), AppC(HaltC(), "y"))) shouldBe
+      AppC(HaltC(), "y")
+  }
+
+  test("a dead value binding that might fail is kept") {
+    val term =
+      LetV("x", PrmV(UserP(IntDivP()), Vector("a", "b")), AppC(HaltC(), "y"))
+    optimise(term) shouldBe term
+  }
+
+  test("a dead continuation binding is removed") {
+    optimise(LetC("k", "x", AppC(HaltC(), "x"), AppC(HaltC(), "y"))) shouldBe
+      AppC(HaltC(), "y")
+  }
+
+  test("a continuation that is applied once is inlined") {
+    optimise(
+      LetC(
+        "k",
+        "x",
+        AppC(HaltC(), "x"),
+        LetV("y", IntV(1), AppC(IdnC("k"), "y"))
+      )
+    ) shouldBe LetV("y", IntV(1), AppC(HaltC(), "y"))
+  }
+
+  test("a continuation that just passes its argument on is eta-reduced") {
+    optimise(LetC("k", "x", AppC(IdnC("j"), "x"), AppF("f", "k", "z"))) shouldBe
+      AppF("f", "j", "z")
+  }
+
+  test("a function that just passes its argument on is eta-reduced") {
+    optimise(
+      LetV("g", FunV("k", "x", AppF("f", "k", "x")), AppF("h", "j", "g"))
+    ) shouldBe AppF("h", "j", "f")
+  }
+
+  test("a function that is called once is inlined") {
+    optimise(
+      LetV(
+        "f",
+        FunV(
+          "k",
+          "x",
+          LetV(
+            "y",
+            PrmV(UserP(IntAddP()), Vector("x", "x")),
+            AppC(IdnC("k"), "y")
+          )
+        ),
+        AppF("f", "j", "a")
+      )
+    ) shouldBe
+      LetV("y", PrmV(UserP(IntAddP()), Vector("a", "a")), AppC(IdnC("j"), "y"))
+  }
+
+  test("a function that escapes is not inlined") {
+    val term =
+      LetV(
+        "f",
+        FunV("k", "x", AppC(IdnC("k"), "x")),
+        LetV("r", RecV(Vector(FldV("f", "f"))), AppC(HaltC(), "r"))
+      )
+    optimise(term) shouldBe term
+  }
+
+  test("integer primitives on literals are folded") {
+    optimise(
+      LetV(
+        "a",
+        IntV(6),
+        LetV(
+          "b",
+          IntV(7),
+          LetV(
+            "c",
+            PrmV(UserP(IntMulP()), Vector("a", "b")),
+            LetV(
+              "d",
+              PrmV(UserP(IntSubP()), Vector("c", "a")),
+              AppC(HaltC(), "d")
+            )
+          )
+        )
+      )
+    ) shouldBe LetV("d", IntV(36), AppC(HaltC(), "d"))
+  }
+
+  test("string primitives on literals are folded") {
+    optimise(
+      LetV(
+        "a",
+        StrV("hello "),
+        LetV(
+          "b",
+          StrV("world"),
+          LetV(
+            "c",
+            PrmV(UserP(StrConcatP()), Vector("a", "b")),
+            LetV(
+              "d",
+              PrmV(UserP(StrLengthP()), Vector("c")),
+              AppC(HaltC(), "d")
+            )
+          )
+        )
+      )
+    ) shouldBe LetV("d", IntV(11), AppC(HaltC(), "d"))
+  }
+
+  def evaluate(term: Term): String = {
+    val driver = new ReferenceDriver
+    val config = new Config(Seq("--Koutput", "string", "-Q", "test.cooma"))
+    config.verify()
+    val system = new ReferenceBackend(driver, StringSource(""), config)
+    system.interpret(term, system.emptyEnv, Seq(), config) match {
+      case Right(system.Result(_, value)) =>
+        system.showRuntimeValue(value)
+      case Left(msg) =>
+        msg
+    }
+  }
+
+  test("string comparisons fold to the same result as they run to") {
+    for (p <- Vector(StrGtP(), StrGteP(), StrLtP(), StrLteP())) {
+      val term =
+        LetV(
+          "a",
+          StrV("\\n"),
+          LetV(
+            "b",
+            StrV("A"),
+            LetV("c", PrmV(UserP(p), Vector("a", "b")), AppC(HaltC(), "c"))
+          )
+        )
+      val folded = optimise(term)
+      folded should not be term
+      evaluate(folded) shouldBe evaluate(term)
+    }
+  }
+
+  test("division by a literal zero is not folded") {
+    val term =
+      LetV(
+        "a",
+        IntV(1),
+        LetV(
+          "b",
+          IntV(0),
+          LetV(
+            "c",
+            PrmV(UserP(IntDivP()), Vector("a", "b")),
+            AppC(HaltC(), "c")
+          )
+        )
+      )
+    optimise(term) shouldBe term
+  }
+
+  test("a case on a folded comparison selects its branch") {
+    optimise(
+      LetV(
+        "a",
+        IntV(1),
+        LetV(
+          "b",
+          IntV(2),
+          LetV(
+            "c",
+            PrmV(UserP(IntLtP()), Vector("a", "b")),
+            LetC(
+              "k1",
+              "x",
+              AppF("f", "j", "a"),
+              LetC(
+                "k2",
+                "y",
+                AppF("f", "j", "b"),
+                CasV(
+                  "c",
+                  Vector(CaseTerm("False", "k1"), CaseTerm("True", "k2"))
+                )
+              )
+            )
+          )
+        )
+      )
+    ) shouldBe LetV("b", IntV(2), AppF("f", "j", "b"))
+  }
+
+  // Effect on the basic test corpus
+
+  case class Measurement(
+      name: String,
+      nodesBefore: Int,
+      nodesAfter: Int,
+      stepsBefore: Long,
+      stepsAfter: Long
+  )
+
+  def measure(filename: String): Measurement = {
+    val driver = new ReferenceDriver
+    val config = new Config(Seq("--Koutput", "string", filename))
+    config.verify()
+    val source = FileSource(filename)
+    driver.makeast(source, config) match {
+      case Left(program) =>
+        val system = new ReferenceBackend(driver, source, config) with Compiler
+        val analyser = driver.getAnalyser(source)
+        val term = system.compileCommand(program, driver.positions, analyser)
+        val (optimised, stats) =
+          Optimiser.shrink(
+            SyntaxCompiler.compileCommand(program, driver.positions, analyser)
+          )
+        val rho =
+          system.preludeDynamicEnv(config) match {
+            case Right(rho) => rho
+            case Left(msg)  => fail(msg)
+          }
+
+        def run(term: Term): (String, Long) = {
+          val start = system.steps
+          val result =
+            system.interpret(term, rho, Seq(), config) match {
+              case Right(system.Result(_, value)) =>
+                system.showRuntimeValue(value)
+              case Left(msg) =>
+                msg
+            }
+          (result, system.steps - start)
+        }
+
+        val (result, stepsBefore) = run(term)
+        val (optimisedResult, stepsAfter) = run(optimised)
+        optimisedResult shouldBe result
+        Measurement(
+          filename,
+          stats.nodesBefore,
+          stats.nodesAfter,
+          stepsBefore,
+          stepsAfter
+        )
+
+      case Right(messages) =>
+        fail(s"$filename: ${messages.mkString("\n")}")
+    }
+  }
+
+  test("optimisation removes IR nodes and interpreter steps from the corpus") {
+    val filenames =
+      new File("src/test/resources/basic")
+        .list()
+        .filter(_.endsWith(".cooma"))
+        .sorted
+        .map(f => s"src/test/resources/basic/$f")
+        .toVector
+    val measurements = filenames.map(measure)
+    for (m <- measurements)
+      info(
+        f"${m.name}%-45s nodes ${m.nodesBefore}%5d -> ${m.nodesAfter}%5d  " +
+          f"steps ${m.stepsBefore}%6d -> ${m.stepsAfter}%6d"
+      )
+    val nodesBefore = measurements.map(_.nodesBefore).sum
+    val nodesAfter = measurements.map(_.nodesAfter).sum
+    val stepsBefore = measurements.map(_.stepsBefore).sum
+    val stepsAfter = measurements.map(_.stepsAfter).sum
+    info(s"total nodes $nodesBefore -> $nodesAfter")
+    info(s"total steps $stepsBefore -> $stepsAfter")
+    nodesAfter should be < nodesBefore
+    stepsAfter should be < stepsBefore
+  }
+
+}
@@ -0,0 +1,239 @@
+package org.bitbucket.inkytonik.cooma.test.execution
+
+import java.io.File
+import java.lang.management.ManagementFactory
+import java.nio.charset.StandardCharsets
+import java.nio.file.{Files, Paths}
+
+import org.bitbucket.inkytonik.cooma.backend.ReferenceBackend
+import org.bitbucket.inkytonik.cooma.test.{BackendConfig, ExecutionTests}
+import org.bitbucket.inkytonik.cooma.{Compiler, ReferenceDriver}
+import org.bitbucket.inkytonik.kiama.util.FileSource
+import org.bitbucket.inkytonik.kiama.util.IO.deleteFile
+import play.api.libs.json.{JsObject, Json}
+
+/** Macro-level performance regression tests, which run the programs of the
+  * test corpus on each backend with the arguments that their tests use and
+  * compare their wall time, interpreter steps and heap with a baseline that
+  * was recorded on the same machine. They only run if the property
+  * `cooma.perf` is set, since timings depend on the machine:
+  *
+  *   sbt -Dcooma.perf=record "testOnly *PerformanceTests"
+  *
+  * records a baseline for the current machine, while `-Dcooma.perf=check`
+  * checks against it and fails if a program has slowed down by more than
+  * `cooma.perf.threshold` (default 2.0) times or has no baseline. A check
+  * is cancelled for a backend that has no baseline.
+  */
+class PerformanceTests extends ExecutionTests {
+
+  val mode = sys.props.get("cooma.perf")
+
+  val baselineFilename = "src/test/perf/baseline.json"
+
+  val resourcesPath = "src/test/resources"
+
+  /** The prelude that `prelude/ok-prelude-test.cooma` runs with, which is
+    * built before the programs are measured.
+    */
+  val okPrelude = s"$resourcesPath/prelude/ok-prelude.cooma"
+
+  val runs = sys.props.get("cooma.perf.runs").fold(5)(_.toInt)
+
+  val threshold = sys.props.get("cooma.perf.threshold").fold(2.0)(_.toDouble)
+
+  /** Times and heap sizes below these are too noisy to compare. */
+  val minMillis = 10.0
+  val minHeap = 64L * 1024 * 1024
+
+  case class Measurement(millis: Double, steps: Option[Long], heap: Long)
+
+  def corpus(dir: File): Vector[String] =
+    dir.listFiles.toVector.sortBy(_.getName).flatMap { file =>
+      if (file.isDirectory)
+        corpus(file)
+      else if (file.getName.endsWith(".cooma"))
+        Vector(file.getPath)
+      else
+        Vector()
+    }
+
+  /** A program that is measured, with the options and arguments that its
+    * tests run it with.
+    */
+  case class Program(filename: String, options: Seq[String], args: Seq[String])
+
+  /** The programs that are measured. The bad programs and programs that need
+    * a server, a database or an executable are left out, since they would
+    * only time error handling. `scratch` is a file that programs can read
+    * and write.
+    */
+  def programs(scratch: String): Vector[Program] =
+    corpus(new File(s"$resourcesPath/basic")).map(Program(_, Seq(), Seq())) ++
+      Vector(
+        ("boolean/and-or.cooma", Seq(), Seq("-", "", "")),
+        ("boolean/factorial.cooma", Seq(), Seq()),
+        ("boolean/if-then-else.cooma", Seq(), Seq("-", "")),
+        ("capability/multiStringCmdArg.cooma", Seq(), Seq("hello", "there")),
+        ("capability/readerCmdArg.cooma", Seq(), Seq(scratch)),
+        ("capability/readerWriterCmdArg.cooma", Seq(), Seq(scratch)),
+        ("capability/stringCmdArg.cooma", Seq(), Seq("hello")),
+        (
+          "capability/writerAndReaderCmdArg.cooma",
+          Seq(),
+          Seq("/dev/null", scratch)
+        ),
+        ("capability/writerCmdArg.cooma", Seq(), Seq("/dev/null")),
+        ("prelude/ok-prelude-test.cooma", Seq("-p", okPrelude), Seq()),
+        ("primitives/intAdd.cooma", Seq(), Seq())
+      ).map { case (f, options, args) =>
+        Program(s"$resourcesPath/$f", options, args)
+      }
+
+  /** The heap in use, measured as a whole since the pools of the heap
+    * reach their peaks at different times.
+    */
+  def heapUsed(): Long =
+    ManagementFactory.getMemoryMXBean.getHeapMemoryUsage.getUsed
+
+  /** The number of steps that the reference interpreter takes to run
+    * `program`, or `None` if it doesn't compile.
+    */
+  def steps(program: Program): Option[Long] = {
+    val driver = new ReferenceDriver
+    val config =
+      createConfig(
+        Seq("--Koutput", "string") ++ program.options :+ program.filename
+      )
+    val source = FileSource(program.filename)
+    driver.makeast(source, config) match {
+      case Left(ast) =>
+        val system = new ReferenceBackend(driver, source, config) with Compiler
+        val analyser = driver.getAnalyser(source)
+        val term = system.compileCommand(ast, driver.positions, analyser)
+        system.preludeDynamicEnv(config).toOption.map { rho =>
+          val start = system.steps
+          system.interpret(term, rho, program.args, config)
+          system.steps - start
+        }
+      case Right(_) =>
+        None
+    }
+  }
+
+  /** Run `program` `runs` times after a warm-up run and measure its median
+    * wall time and the most heap in use at the end of a run.
+    */
+  def measure(program: Program)(implicit bc: BackendConfig): Measurement = {
+    def run(): String = runFile(program.filename, program.options, program.args)
+    run()
+    System.gc()
+    val samples =
+      (1 to runs).map { _ =>
+        val start = System.nanoTime
+        run()
+        ((System.nanoTime - start) / 1e6, heapUsed())
+      }
+    val times = samples.map(_._1).sorted
+    val heap = samples.map(_._2).max
+    val programSteps =
+      if (bc.name == "Reference") steps(program) else None
+    Measurement(times(times.length / 2), programSteps, heap)
+  }
+
+  def toJson(m: Measurement): JsObject =
+    Json.obj("millis" -> m.millis, "heap" -> m.heap) ++
+      m.steps.fold(Json.obj())(s => Json.obj("steps" -> s))
+
+  def fromJson(js: JsObject): Measurement =
+    Measurement(
+      (js \ "millis").as[Double],
+      (js \ "steps").asOpt[Long],
+      (js \ "heap").as[Long]
+    )
+
+  def readBaseline(): JsObject =
+    if (Files.exists(Paths.get(baselineFilename)))
+      Json.parse(Files.readAllBytes(Paths.get(baselineFilename))).as[JsObject]
+    else
+      Json.obj()
+
+  def writeBaseline(baseline: JsObject): Unit = {
+    val path = Paths.get(baselineFilename)
+    Files.createDirectories(path.getParent)
+    Files.write(
+      path,
+      (Json.prettyPrint(baseline) + "\n").getBytes(StandardCharsets.UTF_8)
+    )
+  }
+
+  /** The ways in which `now` is worse than `base` by more than the
+    * threshold.
+    */
+  def regressions(base: Measurement, now: Measurement): Vector[String] = {
+    def worse(what: String, b: Double, n: Double, min: Double): Vector[String] =
+      if ((n > min) && (n > b * threshold))
+        Vector(f"$what $b%.1f -> $n%.1f")
+      else
+        Vector()
+
+    worse("millis", base.millis, now.millis, minMillis) ++
+      worse("heap", base.heap.toDouble, now.heap.toDouble, minHeap.toDouble) ++
+      base.steps.zip(now.steps).toVector.flatMap { case (b, n) =>
+        worse("steps", b.toDouble, n.toDouble, 0)
+      }
+  }
+
+  test("programs in the test corpus don't regress") { implicit bc =>
+    assume(mode.isDefined, "set -Dcooma.perf=check or record to run")
+
+    val baseline = readBaseline()
+    val backendBaseline = (baseline \ bc.name).asOpt[JsObject]
+    assume(
+      mode.contains("record") || backendBaseline.isDefined,
+      s"no ${bc.name} baseline in $baselineFilename, " +
+        "record one with -Dcooma.perf=record"
+    )
+
+    val scratch = Files.createTempFile("cooma", ".txt")
+    Files.write(scratch, "The file contents\n".getBytes(StandardCharsets.UTF_8))
+    runMain(okPrelude, Seq("-P"), Seq())
+    val measurements =
+      try {
+        programs(scratch.toString).map(p => (p.filename, measure(p)))
+      } finally {
+        Files.delete(scratch)
+        for (suffix <- Seq("static", "dynamic", "snapshot"))
+          deleteFile(s"$okPrelude.$suffix")
+      }
+
+    for ((filename, m) <- measurements)
+      info(
+        f"$filename%-60s ${m.millis}%8.1f ms  ${m.heap / 1024 / 1024}%5d MB  " +
+          m.steps.fold("")(s => s"$s steps")
+      )
+
+    mode match {
+      case Some("record") =>
+        val results =
+          JsObject(measurements.map { case (f, m) => (f, toJson(m)) })
+        writeBaseline(baseline + (bc.name -> results))
+      case _ =>
+        def base(filename: String): Option[JsObject] =
+          backendBaseline.flatMap(b => (b \ filename).asOpt[JsObject])
+
+        val failures =
+          for {
+            (filename, now) <- measurements
+            failure <- base(filename) match {
+              case Some(js) =>
+                regressions(fromJson(js), now)
+              case None =>
+                Vector(s"no baseline for ${bc.name} in $baselineFilename")
+            }
+          } yield s"$filename: $failure"
+        failures shouldBe empty
+    }
+  }
+
+}
@@ -14,6 +14,7 @@ class PreludeTests extends ExecutionTests {
     val prelude = s"$prefix/ok-prelude.cooma"
     val staticFilename = s"${prelude}.static"
     val dynamicFilename = s"${prelude}.dynamic"
+    val snapshotFilename = s"${prelude}.snapshot"
     val staticFilenameOut = s"${staticFilename}.out"
     val dynamicFilenameOut = s"${dynamicFilename}.out"
     val testFilename = s"$prefix/ok-prelude-test.cooma"
@@ -27,9 +28,11 @@ class PreludeTests extends ExecutionTests {
       FileSource(dynamicFilename).content shouldBe FileSource(
         dynamicFilenameOut
       ).content
-      result shouldBe s"Wrote $staticFilename\nWrote $dynamicFilename\n"
+      result shouldBe s"Wrote $staticFilename\nWrote $dynamicFilename\n" +
+        s"Wrote $snapshotFilename\n"
       deleteFile(staticFilename)
       deleteFile(dynamicFilename)
+      deleteFile(snapshotFilename)
     }
 
     test(s"use ok prelude : $testFilename") { implicit bc =>
@@ -38,6 +41,16 @@ class PreludeTests extends ExecutionTests {
       result shouldBe FileSource(testFilenameOut).content
       deleteFile(staticFilename)
       deleteFile(dynamicFilename)
+      deleteFile(snapshotFilename)
+    }
+
+    test(s"use ok prelude without snapshot : $testFilename") { implicit bc =>
+      runMain(prelude, Seq("-P"), Seq())
+      deleteFile(snapshotFilename)
+      val result = runFile(testFilename, Seq("-p", prelude, "-r"), Seq())
+      result shouldBe FileSource(testFilenameOut).content
+      deleteFile(staticFilename)
+      deleteFile(dynamicFilename)
     }
   }
 
@@ -100,15 +113,18 @@ class PreludeTests extends ExecutionTests {
     val staticTest = "./prelude/prelude.test.cooma.static"
     val dynamic = "./prelude/prelude.cooma.dynamic"
     val dynamicTest = "./prelude/prelude.test.cooma.dynamic"
+    val snapshotTest = "./prelude/prelude.test.cooma.snapshot"
     test("prelude should compile") { implicit bc =>
       Files.copy(Paths.get(prelude), Paths.get(preludeTest))
       val result = runMain(preludeTest, Seq("-P"), Seq())
-      result shouldBe s"Wrote $staticTest\nWrote $dynamicTest\n"
+      result shouldBe
+        s"Wrote $staticTest\nWrote $dynamicTest\nWrote $snapshotTest\n"
       FileSource(staticTest).content shouldBe FileSource(static).content
       FileSource(dynamicTest).content shouldBe FileSource(dynamic).content
       deleteFile(preludeTest)
       deleteFile(staticTest)
       deleteFile(dynamicTest)
+      deleteFile(snapshotTest)
     }
   }
 
@@ -0,0 +1,47 @@
+package org.bitbucket.inkytonik.cooma.test.execution
+
+import java.nio.file.Files
+
+import org.bitbucket.inkytonik.cooma.test.ExecutionTests
+
+import scala.jdk.CollectionConverters._
+
+class ProfilerTests extends ExecutionTests {
+
+  test("profiling writes stacks and prints a summary") { implicit bc =>
+    assume(bc.name == "Reference", "only the reference backend has a profiler")
+    val stacks = Files.createTempFile("cooma", ".stacks")
+    val result =
+      runFile(
+        "src/test/resources/boolean/factorial.cooma",
+        Seq("--profile", stacks.toString),
+        Seq()
+      )
+    val lines = result.linesIterator.toVector
+    lines.head should startWith("profile: ")
+    lines should contain allOf (
+      "functions (self steps, self ms):",
+      "primitives:",
+      "allocations:"
+    )
+    all(Files.readAllLines(stacks).asScala) should startWith("main")
+    Files.delete(stacks)
+  }
+
+  test("profiling counts record selections as primitives") { implicit bc =>
+    assume(bc.name == "Reference", "only the reference backend has a profiler")
+    val stacks = Files.createTempFile("cooma", ".stacks")
+    val result =
+      runString(
+        "select",
+        "{ val r = {x = 1, y = 2} r.x }",
+        Seq("--profile", stacks.toString)
+      )
+    val lines = result.linesIterator.toVector
+    val prims =
+      lines.dropWhile(_ != "primitives:").drop(1).takeWhile(_.startsWith(" "))
+    prims.exists(_.endsWith("  RecSelect")) shouldBe true
+    Files.delete(stacks)
+  }
+
+}
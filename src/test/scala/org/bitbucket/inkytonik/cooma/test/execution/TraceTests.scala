@@ -0,0 +1,34 @@
+package org.bitbucket.inkytonik.cooma.test.execution
+
+import java.nio.file.Files
+
+import org.bitbucket.inkytonik.cooma.backend.TraceDecoder
+import org.bitbucket.inkytonik.cooma.test.ExecutionTests
+
+class TraceTests extends ExecutionTests {
+
+  test("a trace file can be decoded into states") { implicit bc =>
+    assume(bc.name == "Reference", "only the reference backend has traces")
+    val trace = Files.createTempFile("cooma", ".trace")
+    runFile(
+      "src/test/resources/boolean/factorial.cooma",
+      Seq("--traceFile", trace.toString),
+      Seq()
+    ) shouldBe ""
+    val states = TraceDecoder.decode(Files.readAllBytes(trace))
+    states should not be empty
+    states.map(_.step) shouldBe (0L until states.length.toLong)
+    states.last.term should startWith("%halt")
+    TraceDecoder.state(Files.readAllBytes(trace), 1) shouldBe Some(states(1))
+    Files.delete(trace)
+  }
+
+  test("tracing prints the states at the end of the run") { implicit bc =>
+    assume(bc.name == "Reference", "only the reference backend has traces")
+    val result =
+      runFile("src/test/resources/basic/blockVal.cooma", Seq("-T"), Seq())
+    result should startWith("step 0: ")
+    result should include(" = 20\n")
+  }
+
+}
@@ -0,0 +1,197 @@
+package org.bitbucket.inkytonik.cooma.test.execution
+
+import java.io.{ByteArrayOutputStream, PrintStream}
+import java.nio.charset.StandardCharsets.UTF_8
+import java.nio.file.StandardCopyOption.REPLACE_EXISTING
+import java.nio.file.{Files, Paths}
+import java.util.concurrent.ConcurrentHashMap
+
+import org.bitbucket.inkytonik.cooma.truffle.TruffleFrontend
+import org.bitbucket.inkytonik.cooma.{Config, CoomaConstants}
+import org.graalvm.polyglot.{Context, Engine, Source}
+import org.scalatest.funsuite.AnyFunSuite
+import org.scalatest.matchers.should
+
+import scala.jdk.CollectionConverters._
+
+class TruffleTests extends AnyFunSuite with should.Matchers {
+
+  def output(config: Config, run: TruffleFrontend => Unit): String = {
+    val out = new ByteArrayOutputStream
+    config.verify()
+    run(new TruffleFrontend(out = new PrintStream(out, true)))
+    config.stringEmitter.result() + out.toString
+  }
+
+  def runString(program: String): String = {
+    val config = new Config(Seq("--Koutput", "string", "-g", "-r", "test"))
+    output(config, _.interpret("test", program, config))
+  }
+
+  def runFile(program: String, args: Seq[String]): String = {
+    val config =
+      new Config(Seq("--Koutput", "string", "-g", "-r", program) ++ args)
+    output(config, _.interpret(config))
+  }
+
+  def arguments(program: String, args: Seq[String]): Array[String] =
+    (Seq("--Koutput", "string", program) ++ args).toArray
+
+  test("a long-running tail call loop runs on the Graal VM backend") {
+    val program =
+      """{
+        |    def f(s : Int, x : Int) Int =
+        |        equal(Int, x, 0) match {
+        |            case True(_)  => s
+        |            case False(_) => f(Ints.add(s, 1), Ints.sub(x, 1))
+        |        }
+        |    f(0, 200000)
+        |}""".stripMargin
+    runString(program) shouldBe "200000\n"
+  }
+
+  test("a recursive program file runs on the Graal VM backend") {
+    runFile("src/test/resources/boolean/factorial.cooma", Seq()) shouldBe
+      "5040\n"
+  }
+
+  test("the fields of a record can be read through interop") {
+    val context =
+      Context
+        .newBuilder(CoomaConstants.ID)
+        .arguments(CoomaConstants.ID, arguments("test", Seq()))
+        .build()
+    try {
+      val value = context.eval(CoomaConstants.ID, """{x = 1, y = "two"}""")
+      value.hasMembers shouldBe true
+      value.getMemberKeys.asScala.toSet shouldBe Set("x", "y")
+      value.getMember("x").asLong shouldBe 1L
+      value.hasMember("z") shouldBe false
+    } finally {
+      context.close()
+    }
+  }
+
+  test("entries run correctly in one context from several threads") {
+    val context =
+      Context
+        .newBuilder(CoomaConstants.ID)
+        .arguments(CoomaConstants.ID, arguments("test", Seq()))
+        .build()
+    try {
+      val results = new ConcurrentHashMap[Int, String]
+      val threads =
+        (1 to 8).map(i =>
+          new Thread(() =>
+            for (j <- 1 to 20) {
+              val n = (i * 100) + j
+              val program = s"{ val x = $n Ints.mul(x, x) }"
+              results.put(n, context.eval(CoomaConstants.ID, program).toString)
+            }
+          )
+        )
+      threads.foreach(_.start())
+      threads.foreach(_.join())
+      results.size shouldBe 160
+      for ((n, result) <- results.asScala)
+        result shouldBe (n * n).toString
+    } finally {
+      context.close()
+    }
+  }
+
+  test("an entry can be run again after other entries have run") {
+    val context =
+      Context
+        .newBuilder(CoomaConstants.ID)
+        .arguments(CoomaConstants.ID, arguments("test", Seq()))
+        .build()
+    try {
+      val entry = Source.create(CoomaConstants.ID, "Ints.mul(6, 7)")
+      context.eval(entry).toString shouldBe "42"
+      context.eval(entry).toString shouldBe "42"
+      context.eval(CoomaConstants.ID, "{ val x = 1 x }").toString shouldBe "1"
+      context.eval(entry).toString shouldBe "42"
+    } finally {
+      context.close()
+    }
+  }
+
+  test("contexts that share an engine each run a program with their args") {
+    val program = "src/test/resources/capability/stringCmdArg.cooma"
+    val engine = Engine.create()
+
+    def run(arg: String): String = {
+      val context =
+        Context
+          .newBuilder(CoomaConstants.ID)
+          .engine(engine)
+          .arguments(CoomaConstants.ID, arguments(program, Seq(arg)))
+          .build()
+      try {
+        context.eval(CoomaConstants.ID, "").toString
+      } finally {
+        context.close()
+      }
+    }
+
+    try {
+      run("hello") should include("hello")
+      run("there") should include("there")
+    } finally {
+      engine.close()
+    }
+  }
+
+  test("a cached program is compiled again when the prelude is rebuilt") {
+    val dir = Files.createTempDirectory("cooma")
+    val prelude = dir.resolve("prelude.cooma").toString
+    val program = "src/test/resources/boolean/factorial.cooma"
+    val engine = Engine.create()
+
+    // Padding at the start of the dynamic prelude moves its globals to
+    // other slots
+    def build(padding: String): Unit = {
+      Files.copy(
+        Paths.get("prelude/prelude.cooma.static"),
+        Paths.get(s"$prelude.static"),
+        REPLACE_EXISTING
+      )
+      val dynamic =
+        Files.readAllBytes(Paths.get("prelude/prelude.cooma.dynamic"))
+      Files.write(
+        Paths.get(s"$prelude.dynamic"),
+        padding.getBytes(UTF_8) ++ dynamic
+      )
+    }
+
+    def run(): String = {
+      val args =
+        Array("--Koutput", "string", "--preludePath", prelude, program)
+      val context =
+        Context
+          .newBuilder(CoomaConstants.ID)
+          .engine(engine)
+          .arguments(CoomaConstants.ID, args)
+          .build()
+      try {
+        context.eval(CoomaConstants.ID, "").toString
+      } finally {
+        context.close()
+      }
+    }
+
+    try {
+      build("")
+      run() shouldBe "5040"
+      build("%letv $pad1 =\n  {\n  }\n%in %letv $pad2 =\n  {\n  }\n%in ")
+      run() shouldBe "5040"
+    } finally {
+      engine.close()
+      for (suffix <- Seq("static", "dynamic"))
+        Files.delete(Paths.get(s"$prelude.$suffix"))
+      Files.delete(dir)
+    }
+  }
+
+}
@@ -146,6 +146,20 @@ class BlockTests extends ExpressionTests {
     "Int"
   )
 
+  test(
+    "def block (long-running tail call loop)",
+    """{
+            def f(s : Int, x : Int) Int =
+                equal(Int, x, 0) match {
+                    case True(_)  => s
+                    case False(_) => f(Ints.add(s, 1), Ints.sub(x, 1))
+                }
+            f(0, 200000)
+        }""",
+    "200000",
+    "Int"
+  )
+
   test(
     "def block (multi forward reference)",
     """{
@@ -313,6 +313,20 @@ class PredefTests extends ExpressionTests {
     "<< False : Unit, True : Unit >>"
   )
 
+  test(
+    "equality of records (equal, same record)",
+    "{ val r = {x = 0, y = {a = 1}} equal({x : Int, y : {a : Int}}, r, r) }",
+    "<< True = {} >>",
+    "<< False : Unit, True : Unit >>"
+  )
+
+  test(
+    "equality of records (unequal, same record with a function)",
+    "{ val r = {x = 0, f = fun (y : Int) y} equal({x : Int, f : (Int) Int}, r, r) }",
+    "<< False = {} >>",
+    "<< False : Unit, True : Unit >>"
+  )
+
   test(
     "equality of records (unequal, flat)",
     "equal({x : Int, y : Int}, {x = 0, y = 0}, {y = 1, x = 0})",
@@ -411,6 +425,32 @@ class PredefTests extends ExpressionTests {
     "(i : Int) String"
   )
 
+  {
+    val l = """"a\tb\"c\\d0123456789""""
+    val r = """"0123456789012345678901234\n""""
+
+    test(
+      "Strings.concat of long strings with escapes",
+      s"Strings.concat($l, $r)",
+      """"a\tb\"c\\d01234567890123456789012345678901234\n"""",
+      "String"
+    )
+
+    test(
+      "Strings.length of a concatenation counts characters, not escapes",
+      s"Strings.length(Strings.concat($l, $r))",
+      "43",
+      "Int"
+    )
+
+    test(
+      "Strings.substr of a concatenation",
+      s"Strings.substr(Strings.concat($l, $r), 7)",
+      """"01234567890123456789012345678901234\n"""",
+      "String"
+    )
+  }
+
   for (op <- allInt1PrimBinOps)
     test(
       s"pre-defined Ints.${primFunName(op)} has the correct type",
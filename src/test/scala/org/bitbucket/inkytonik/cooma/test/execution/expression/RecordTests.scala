@@ -124,4 +124,18 @@ class RecordTests extends ExpressionTests {
     "String"
   )
 
+  test(
+    "select at one site from records of different shapes",
+    """{
+           def get(r : { x : Int }) Int = r.x
+           val a = get({ x = 1 })
+           val b = get({ y = 2, x = 3 })
+           val c = get({ x = 4, z = 5 })
+           val d = get({ x = 6 })
+           a + b + c + d
+       }""",
+    "14",
+    "Int"
+  )
+
 }
@@ -121,6 +121,24 @@ class VariantTests extends ExpressionTests {
     "Int"
   )
 
+  test(
+    "many-case match (variant made at a narrower type)",
+    """{
+            def f (n : Int) << c : Int >> = << c = n >>
+            def g (v : << a : Int, b : Int, c : Int, d : Int, e : Int >>) Int =
+                v match {
+                    case e(x) => 5
+                    case d(x) => 4
+                    case c(x) => x
+                    case b(x) => 2
+                    case a(x) => 1
+                }
+            g(f(3))
+        }""",
+    "3",
+    "Int"
+  )
+
   test(
     "Boolean match",
     """{
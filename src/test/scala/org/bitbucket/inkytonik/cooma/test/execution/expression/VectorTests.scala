@@ -39,6 +39,27 @@ class VectorTests extends ExpressionTests {
     "<< False : Unit, True : Unit >>"
   )
 
+  test(
+    "equality of vectors (equal, nested, different field orders)",
+    """equal(Vector({a : Int, b : String}), [{a = 1, b = "x"}, {a = 2, b = "y"}], [{b = "x", a = 1}, {a = 2, b = "y"}])""",
+    "<< True = {} >>",
+    "<< False : Unit, True : Unit >>"
+  )
+
+  test(
+    "equality of vectors (unequal, nested, different field orders)",
+    """equal(Vector({a : Int, b : String}), [{a = 1, b = "x"}, {a = 2, b = "y"}], [{b = "x", a = 1}, {a = 2, b = "z"}])""",
+    "<< False = {} >>",
+    "<< False : Unit, True : Unit >>"
+  )
+
+  test(
+    "equality of vectors (equal, same vector)",
+    "{ val v = [{a = 1}, {a = 2}] equal(Vector({a : Int}), v, v) }",
+    "<< True = {} >>",
+    "<< False : Unit, True : Unit >>"
+  )
+
   test(
     s"nil vector literal",
     "[]",
@@ -0,0 +1,45 @@
+/*
+ * This file is part of Cooma.
+ *
+ * Copyright (C) 2019-2023 Anthony M Sloane, Macquarie University.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.bitbucket.inkytonik.cooma.truffle.nodes;
+
+import com.oracle.truffle.api.dsl.Cached;
+import com.oracle.truffle.api.dsl.Specialization;
+import com.oracle.truffle.api.nodes.DirectCallNode;
+import com.oracle.truffle.api.nodes.IndirectCallNode;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.environment.Lambda;
+
+/**
+ * Calls the body of a function or continuation. The call targets of the
+ * bodies that are seen first are cached with direct calls, which Graal can
+ * inline, and other bodies are called indirectly.
+ */
+public abstract class CoomaDispatchNode extends CoomaNode {
+
+	public static final int INLINE_CACHE_SIZE = 3;
+
+	public abstract Object executeDispatch(Lambda lambda, Object[] arguments);
+
+	@Specialization(limit = "INLINE_CACHE_SIZE", guards = "lambda == cachedLambda")
+	protected Object doDirect(Lambda lambda, Object[] arguments, @Cached("lambda") Lambda cachedLambda,
+			@Cached("createDirectCall(cachedLambda)") DirectCallNode callNode) {
+		return callNode.call(arguments);
+	}
+
+	@Specialization(replaces = "doDirect")
+	protected Object doIndirect(Lambda lambda, Object[] arguments, @Cached("create()") IndirectCallNode callNode) {
+		return callNode.call(getCallTarget(lambda), arguments);
+	}
+
+	protected DirectCallNode createDirectCall(Lambda lambda) {
+		return DirectCallNode.create(getCallTarget(lambda));
+	}
+
+}
@@ -0,0 +1,58 @@
+/*
+ * This file is part of Cooma.
+ *
+ * Copyright (C) 2019-2023 Anthony M Sloane, Macquarie University.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.bitbucket.inkytonik.cooma.truffle.nodes;
+
+import com.oracle.truffle.api.TruffleLanguage;
+import com.oracle.truffle.api.frame.FrameSlot;
+import com.oracle.truffle.api.frame.VirtualFrame;
+import com.oracle.truffle.api.nodes.ExplodeLoop;
+import com.oracle.truffle.api.nodes.NodeInfo;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.environment.Lambda;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.term.CoomaLoopTermNode;
+import org.bitbucket.inkytonik.cooma.truffle.runtime.CoomaContext;
+
+/**
+ * The root of the body of a function or continuation, which is called with
+ * the arguments made by {@link Lambda#arguments}. The body of a function is
+ * run in a {@link CoomaLoopTermNode} so that it can call itself in place.
+ */
+@NodeInfo(language = "cooma", description = "The root Node of a function or continuation body")
+public final class CoomaLambdaRootNode extends CoomaRootNode {
+
+	private final Lambda lambda;
+
+	public CoomaLambdaRootNode(TruffleLanguage<CoomaContext> language, Lambda lambda) {
+		super(language, lambda.getDescriptor(),
+				lambda.isFunction() ? new CoomaLoopTermNode(lambda) : lambda.getBody());
+		this.lambda = lambda;
+	}
+
+	@Override
+	@ExplodeLoop
+	public Object execute(VirtualFrame frame) {
+		Object[] arguments = frame.getArguments();
+		FrameSlot[] params = lambda.getParams();
+		for (int i = 0; i < params.length; i++) {
+			frame.setObject(params[i], arguments[Lambda.PARAMS + i]);
+		}
+		return getTermNode().executeGeneric(frame);
+	}
+
+	public Lambda getLambda() {
+		return lambda;
+	}
+
+	@Override
+	public String getName() {
+		return lambda.getName();
+	}
+
+}
@@ -10,35 +10,43 @@
 
 package org.bitbucket.inkytonik.cooma.truffle.nodes;
 
-import com.oracle.truffle.api.TruffleLanguage;
+import com.oracle.truffle.api.RootCallTarget;
+import com.oracle.truffle.api.frame.Frame;
 import com.oracle.truffle.api.nodes.Node;
-import org.bitbucket.inkytonik.cooma.Utils;
-import org.bitbucket.inkytonik.cooma.truffle.nodes.environment.Rho;
+import org.bitbucket.inkytonik.cooma.CoomaException;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.environment.Addr;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.environment.Lambda;
+import org.bitbucket.inkytonik.cooma.truffle.runtime.ContinuationClosure;
 import org.bitbucket.inkytonik.cooma.truffle.runtime.CoomaContext;
 import org.bitbucket.inkytonik.cooma.truffle.runtime.RuntimeValue;
 
 public class CoomaNode extends Node {
 
-	protected Rho obtainRho() {
-		return getContext().getRho();
+	protected RuntimeValue getR(Frame frame, Addr a) {
+		Object value = a.get(frame);
+		if (!(value instanceof RuntimeValue)) {
+			CoomaException.errInterp("lookupR", String.format("can't find value %s", a.getName()));
+		}
+		return (RuntimeValue) value;
 	}
 
-	protected RuntimeValue obtainFromRho(String key) {
-		return Utils.obtainFromRho(getContext(), key);
-	}
-
-	protected void extendRho(String key, RuntimeValue value) {
-		Utils.extendRho(getContext(), key, value);
-	}
-
-	protected void replaceRho(Rho newRho) {
-		Utils.replaceRho(getContext(), newRho);
+	protected ContinuationClosure getC(Frame frame, Addr a) {
+		Object value = a.get(frame);
+		if (!(value instanceof ContinuationClosure)) {
+			CoomaException.errInterp("lookupC", String.format("can't find %s", a.getName()));
+		}
+		return (ContinuationClosure) value;
 	}
 
 	protected CoomaContext getContext() {
 		return ((CoomaRootNode) getRootNode()).getContext();
 	}
 
+	protected RootCallTarget getCallTarget(Lambda lambda) {
+		CoomaRootNode root = (CoomaRootNode) getRootNode();
+		return lambda.getCallTarget(root.getCoomaLanguage());
+	}
+
 	protected String[] getArgs() {
 		return getContext().getApplicationArguments();
 	}
@@ -10,16 +10,19 @@
 
 package org.bitbucket.inkytonik.cooma.truffle.nodes;
 
+import com.oracle.truffle.api.Truffle;
 import com.oracle.truffle.api.TruffleLanguage;
-import com.oracle.truffle.api.frame.FrameSlot;
-import com.oracle.truffle.api.frame.FrameSlotKind;
+import com.oracle.truffle.api.TruffleLanguage.ContextReference;
+import com.oracle.truffle.api.frame.FrameDescriptor;
 import com.oracle.truffle.api.frame.VirtualFrame;
 import com.oracle.truffle.api.nodes.NodeInfo;
 import com.oracle.truffle.api.nodes.RootNode;
-import org.bitbucket.inkytonik.cooma.CoomaConstants;
+import com.oracle.truffle.api.source.SourceSection;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.environment.Lambda;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.environment.Scope;
 import org.bitbucket.inkytonik.cooma.truffle.nodes.term.CoomaTermNode;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.term.TailCallException;
 import org.bitbucket.inkytonik.cooma.truffle.runtime.CoomaContext;
-import org.bitbucket.inkytonik.cooma.truffle.runtime.RuntimeValue;
 
 /**
  * The root of all CoomaIR execution trees. It is a Truffle requirement that the
@@ -31,25 +34,113 @@ public class CoomaRootNode extends RootNode {
 
 	@Child
 	private CoomaTermNode termNode;
-	private CoomaContext context;
+	private final TruffleLanguage<CoomaContext> language;
+
+	/**
+	 * The context that the term runs in. Trees are shared by the contexts of
+	 * an engine, so the context is looked up when it is needed rather than
+	 * being kept in the tree.
+	 */
+	private final ContextReference<CoomaContext> contextReference;
+
+	/**
+	 * Calls to the targets of the jumps that are trampolined to here.
+	 */
+	@Child
+	private CoomaDispatchNode dispatch;
+
+	/**
+	 * The source of the term, which is kept here since the term may be
+	 * replaced by an instrumentation wrapper.
+	 */
+	private final SourceSection sourceSection;
 
 	public CoomaContext getContext() {
-		return context;
+		return contextReference.get();
+	}
+
+	public TruffleLanguage<CoomaContext> getCoomaLanguage() {
+		return language;
+	}
+
+	/**
+	 * Make a root for `termNode` and resolve its variables against the
+	 * current globals of `coomaContext`. The term runs in the globals that
+	 * are passed as the first argument of the call, or in the globals of the
+	 * context that it is called in if there are no arguments. Either way they
+	 * must have the same layout. If `exporting` is true, the values that are
+	 * in scope when the term halts are added to the globals.
+	 */
+	public CoomaRootNode(TruffleLanguage<CoomaContext> language, CoomaContext coomaContext, CoomaTermNode termNode,
+			boolean exporting) {
+		this(language, termNode, Scope.top(coomaContext.getGlobals(), exporting));
 	}
 
-	public CoomaRootNode(TruffleLanguage<CoomaContext> language, CoomaContext coomaContext, CoomaTermNode termNode) {
-		super(language);
-		this.context = coomaContext;
+	private CoomaRootNode(TruffleLanguage<CoomaContext> language, CoomaTermNode termNode, Scope scope) {
+		super(language, resolve(termNode, scope));
+		this.language = language;
+		this.contextReference = language.getContextReference();
 		this.termNode = termNode;
+		this.sourceSection = termNode.getSourceSection();
+		termNode.setRootBody();
+		this.dispatch = CoomaDispatchNodeGen.create();
+	}
+
+	/**
+	 * Make a root for a term that has already been resolved to run in frames
+	 * with the layout `descriptor`.
+	 */
+	protected CoomaRootNode(TruffleLanguage<CoomaContext> language, FrameDescriptor descriptor,
+			CoomaTermNode termNode) {
+		super(language, descriptor);
+		this.language = language;
+		this.contextReference = language.getContextReference();
+		this.termNode = termNode;
+		this.sourceSection = termNode.getSourceSection();
+		termNode.setRootBody();
+	}
+
+	private static FrameDescriptor resolve(CoomaTermNode termNode, Scope scope) {
+		termNode.resolve(scope);
+		return scope.getDescriptor();
 	}
 
 	public CoomaTermNode getTermNode() {
 		return termNode;
 	}
 
+	@Override
+	public SourceSection getSourceSection() {
+		return sourceSection;
+	}
+
+	/**
+	 * Run the term, and then the targets of the jumps that it makes until one
+	 * of them halts. Jumps that are too deep in a chain of direct calls are
+	 * thrown out to here rather than being called where they are made, so the
+	 * Java stack depth doesn't depend on how long the program runs.
+	 */
 	@Override
 	public Object execute(VirtualFrame frame) {
-		return termNode.executeGeneric(frame);
+		Object[] callArguments = frame.getArguments();
+		Object globals = (callArguments.length > 0) ? callArguments[0] : getContext().getGlobals();
+		VirtualFrame rho = Truffle.getRuntime().createVirtualFrame(new Object[] { globals, 0 }, getFrameDescriptor());
+		Lambda target;
+		Object[] arguments;
+		try {
+			return termNode.executeGeneric(rho);
+		} catch (TailCallException jump) {
+			target = jump.getTarget();
+			arguments = jump.getArguments();
+		}
+		while (true) {
+			try {
+				return dispatch.executeDispatch(target, arguments);
+			} catch (TailCallException jump) {
+				target = jump.getTarget();
+				arguments = jump.getArguments();
+			}
+		}
 	}
 
 }
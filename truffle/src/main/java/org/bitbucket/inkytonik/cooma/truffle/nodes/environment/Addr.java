@@ -0,0 +1,60 @@
+/*
+ * This file is part of Cooma.
+ *
+ * Copyright (C) 2019-2023 Anthony M Sloane, Macquarie University.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.bitbucket.inkytonik.cooma.truffle.nodes.environment;
+
+import com.oracle.truffle.api.frame.Frame;
+import com.oracle.truffle.api.frame.FrameSlot;
+import com.oracle.truffle.api.nodes.ExplodeLoop;
+import lombok.Getter;
+
+/**
+ * Address of a variable, given by the number of parent frames to skip and
+ * the slot in the frame that is reached. The parent of a frame is its first
+ * argument. A negative depth marks a variable that is not in scope.
+ */
+@Getter
+public final class Addr {
+
+	private final int depth;
+	private final FrameSlot slot;
+	private final String name;
+
+	public Addr(int depth, FrameSlot slot, String name) {
+		this.depth = depth;
+		this.slot = slot;
+		this.name = name;
+	}
+
+	public static Addr missing(String name) {
+		return new Addr(-1, null, name);
+	}
+
+	public static Frame parent(Frame frame) {
+		return (Frame) frame.getArguments()[0];
+	}
+
+	/**
+	 * Return the contents of the addressed slot starting at `frame`, or null
+	 * if it is not in scope or not yet filled.
+	 */
+	@ExplodeLoop
+	public Object get(Frame frame) {
+		if (depth < 0) {
+			return null;
+		}
+		Frame rho = frame;
+		for (int i = 0; i < depth; i++) {
+			rho = parent(rho);
+		}
+		return rho.getValue(slot);
+	}
+
+}
@@ -0,0 +1,36 @@
+/*
+ * This file is part of Cooma.
+ *
+ * Copyright (C) 2019-2023 Anthony M Sloane, Macquarie University.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.bitbucket.inkytonik.cooma.truffle.nodes.environment;
+
+import lombok.Getter;
+
+/**
+ * The identifier of a frame slot. Every binding of a name gets its own
+ * identifier, so a frame can have more than one slot for the same name.
+ * Continuations and values are in different name spaces.
+ */
+@Getter
+public final class Binding {
+
+	private final String name;
+	private final boolean cont;
+
+	public Binding(String name, boolean cont) {
+		this.name = name;
+		this.cont = cont;
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+
+}
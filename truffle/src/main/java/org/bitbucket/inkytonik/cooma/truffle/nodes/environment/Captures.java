@@ -0,0 +1,98 @@
+/*
+ * This file is part of Cooma.
+ *
+ * Copyright (C) 2019-2023 Anthony M Sloane, Macquarie University.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.bitbucket.inkytonik.cooma.truffle.nodes.environment;
+
+import com.oracle.truffle.api.CompilerDirectives.CompilationFinal;
+import com.oracle.truffle.api.Truffle;
+import com.oracle.truffle.api.frame.Frame;
+import com.oracle.truffle.api.frame.FrameDescriptor;
+import com.oracle.truffle.api.frame.FrameSlot;
+import com.oracle.truffle.api.frame.MaterializedFrame;
+import com.oracle.truffle.api.nodes.ExplodeLoop;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The layout of a frame that is filled by copying values out of another
+ * frame, such as the capture frame of a closure. Slot i is copied from
+ * source i.
+ */
+public final class Captures {
+
+	private final FrameDescriptor descriptor = new FrameDescriptor();
+	private final List<FrameSlot> slotList = new ArrayList<>();
+	private final List<Addr> sourceList = new ArrayList<>();
+
+	@CompilationFinal(dimensions = 1)
+	private FrameSlot[] slots = new FrameSlot[0];
+	@CompilationFinal(dimensions = 1)
+	private Addr[] sources = new Addr[0];
+
+	/**
+	 * Add a slot that is copied from `source`, returning its address
+	 * relative to a frame whose parent is the capture frame.
+	 */
+	Addr add(String x, boolean isCont, Addr source) {
+		FrameSlot slot = descriptor.addFrameSlot(new Binding(x, isCont));
+		slotList.add(slot);
+		sourceList.add(source);
+		return new Addr(1, slot, x);
+	}
+
+	/**
+	 * Return the address of the slot for `x`, relative to a frame whose
+	 * parent is the capture frame, or null if there isn't one.
+	 */
+	Addr find(String x, boolean isCont) {
+		for (FrameSlot slot : slotList) {
+			Binding binding = (Binding) slot.getIdentifier();
+			if (binding.getName().equals(x) && binding.isCont() == isCont) {
+				return new Addr(1, slot, x);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Fix the slots once the scope that they belong to has been resolved.
+	 */
+	Captures freeze() {
+		slots = slotList.toArray(new FrameSlot[0]);
+		sources = sourceList.toArray(new Addr[0]);
+		return this;
+	}
+
+	/**
+	 * Make a frame with this layout whose parent is `parent`. Its slots
+	 * are empty until it is filled.
+	 */
+	public MaterializedFrame create(Frame parent) {
+		return Truffle.getRuntime().createMaterializedFrame(new Object[] { parent }, descriptor);
+	}
+
+	/**
+	 * Copy the sources of this layout from `frame` into `captured`.
+	 */
+	@ExplodeLoop
+	public void fill(MaterializedFrame captured, Frame frame) {
+		for (int i = 0; i < slots.length; i++) {
+			captured.setObject(slots[i], sources[i].get(frame));
+		}
+	}
+
+	public MaterializedFrame capture(Frame frame, Frame parent) {
+		MaterializedFrame captured = create(parent);
+		fill(captured, frame);
+		return captured;
+	}
+
+}
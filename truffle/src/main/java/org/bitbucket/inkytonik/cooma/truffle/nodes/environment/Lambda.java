@@ -0,0 +1,92 @@
+/*
+ * This file is part of Cooma.
+ *
+ * Copyright (C) 2019-2023 Anthony M Sloane, Macquarie University.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.bitbucket.inkytonik.cooma.truffle.nodes.environment;
+
+import com.oracle.truffle.api.CompilerDirectives.CompilationFinal;
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.api.RootCallTarget;
+import com.oracle.truffle.api.Truffle;
+import com.oracle.truffle.api.TruffleLanguage;
+import com.oracle.truffle.api.frame.FrameDescriptor;
+import com.oracle.truffle.api.frame.FrameSlot;
+import com.oracle.truffle.api.frame.MaterializedFrame;
+import lombok.AccessLevel;
+import lombok.Getter;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.CoomaLambdaRootNode;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.term.CoomaTermNode;
+import org.bitbucket.inkytonik.cooma.truffle.runtime.CoomaContext;
+
+/**
+ * A resolved function or continuation body. The body runs in a frame with
+ * the layout `descriptor` whose parameters are in `params`. The arguments
+ * of the frame are the capture frame of the closure, which is the parent
+ * of the frame, the number of direct calls that enclose the run, and then
+ * the parameter values.
+ */
+@Getter
+public final class Lambda {
+
+	public static final int PARENT = 0;
+	public static final int DEPTH = 1;
+	public static final int PARAMS = 2;
+
+	private final String name;
+	private final FrameDescriptor descriptor;
+	@CompilationFinal(dimensions = 1)
+	private final FrameSlot[] params;
+	private final Captures captures;
+	private final CoomaTermNode body;
+
+	/**
+	 * The call target of the body, made when the body is first called.
+	 */
+	@Getter(AccessLevel.NONE)
+	private volatile RootCallTarget callTarget;
+
+	public Lambda(String name, FrameDescriptor descriptor, FrameSlot[] params, Captures captures,
+			CoomaTermNode body) {
+		this.name = name;
+		this.descriptor = descriptor;
+		this.params = params;
+		this.captures = captures;
+		this.body = body;
+	}
+
+	public static Object[] arguments(MaterializedFrame captured, Object x) {
+		return new Object[] { captured, 0, x };
+	}
+
+	public static Object[] arguments(MaterializedFrame captured, Object k, Object x) {
+		return new Object[] { captured, 0, k, x };
+	}
+
+	/**
+	 * Functions have a continuation parameter and an argument parameter,
+	 * whereas continuations only have an argument parameter.
+	 */
+	public boolean isFunction() {
+		return params.length == 2;
+	}
+
+	public RootCallTarget getCallTarget(TruffleLanguage<CoomaContext> language) {
+		RootCallTarget target = callTarget;
+		return (target == null) ? createCallTarget(language) : target;
+	}
+
+	@TruffleBoundary
+	private synchronized RootCallTarget createCallTarget(TruffleLanguage<CoomaContext> language) {
+		if (callTarget == null) {
+			callTarget = Truffle.getRuntime().createCallTarget(new CoomaLambdaRootNode(language, this));
+		}
+		return callTarget;
+	}
+
+}
@@ -0,0 +1,148 @@
+/*
+ * This file is part of Cooma.
+ *
+ * Copyright (C) 2019-2023 Anthony M Sloane, Macquarie University.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.bitbucket.inkytonik.cooma.truffle.nodes.environment;
+
+import com.oracle.truffle.api.frame.Frame;
+import com.oracle.truffle.api.frame.FrameDescriptor;
+import com.oracle.truffle.api.frame.FrameSlot;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.term.CoomaTermNode;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Compile-time counterpart of a frame, used to resolve names to frame slots
+ * before a term is run. The scope of a function or continuation body has a
+ * parent scope in which its captures are found. The outermost scope of a
+ * resolution has no parent scope, but it may have a run-time environment
+ * that is searched by name for any variables that are not bound in the term
+ * being resolved. If `exporting` is true, a halt keeps every value that is
+ * in scope, not just the one that it returns.
+ */
+public final class Scope {
+
+	private final Scope parent;
+	private final Frame env;
+	private final boolean exporting;
+	private final FrameDescriptor descriptor = new FrameDescriptor();
+	private final Captures captures = new Captures();
+
+	private Scope(Scope parent, Frame env, boolean exporting) {
+		this.parent = parent;
+		this.env = env;
+		this.exporting = exporting;
+	}
+
+	/**
+	 * The scope of a term that will run in a new frame whose parent is `env`.
+	 */
+	public static Scope top(Frame env, boolean exporting) {
+		return new Scope(null, env, exporting);
+	}
+
+	public Scope child() {
+		return new Scope(this, null, exporting);
+	}
+
+	public boolean isExporting() {
+		return exporting;
+	}
+
+	public FrameDescriptor getDescriptor() {
+		return descriptor;
+	}
+
+	public FrameSlot bind(String x, boolean isCont) {
+		return descriptor.addFrameSlot(new Binding(x, isCont));
+	}
+
+	/**
+	 * Finish a function or continuation body whose parameters are `params`
+	 * and whose lookups have all been resolved in this scope.
+	 */
+	public Lambda lambda(String name, FrameSlot[] params, CoomaTermNode body) {
+		return new Lambda(name, descriptor, params, captures.freeze(), body);
+	}
+
+	/**
+	 * Find the address of `x` in this scope. A variable that is bound outside
+	 * a function or continuation body is added to the captures of the body,
+	 * and so on outwards, so that every body only refers to its own frame and
+	 * its capture frame.
+	 */
+	public Addr lookup(String x, boolean isCont) {
+		FrameSlot slot = findSlot(descriptor, x, isCont);
+		if (slot != null) {
+			return new Addr(0, slot, x);
+		} else if (parent != null) {
+			Addr captured = captures.find(x, isCont);
+			if (captured != null) {
+				return captured;
+			}
+			Addr source = parent.lookup(x, isCont);
+			return source.getDepth() < 0 ? source : captures.add(x, isCont, source);
+		} else if (env != null) {
+			Addr found = find(env, x, isCont);
+			return found == null ? Addr.missing(x) : new Addr(1 + found.getDepth(), found.getSlot(), x);
+		} else {
+			return Addr.missing(x);
+		}
+	}
+
+	/**
+	 * The layout of a frame holding every value that is in scope here, for
+	 * a halt that keeps them in the environment of later runs. Used for the
+	 * prelude, whose result environment is the environment of user programs.
+	 */
+	public Captures exportAll() {
+		Captures exports = new Captures();
+		Set<String> seen = new HashSet<>();
+		for (Scope s = this; s != null; s = s.parent) {
+			List<? extends FrameSlot> slots = s.descriptor.getSlots();
+			for (int i = slots.size() - 1; i >= 0; i--) {
+				Binding binding = (Binding) slots.get(i).getIdentifier();
+				if (!binding.isCont() && seen.add(binding.getName())) {
+					exports.add(binding.getName(), false, lookup(binding.getName(), false));
+				}
+			}
+		}
+		return exports.freeze();
+	}
+
+	private static FrameSlot findSlot(FrameDescriptor descriptor, String x, boolean isCont) {
+		List<? extends FrameSlot> slots = descriptor.getSlots();
+		for (int i = slots.size() - 1; i >= 0; i--) {
+			Binding binding = (Binding) slots.get(i).getIdentifier();
+			if (binding.getName().equals(x) && binding.isCont() == isCont) {
+				return slots.get(i);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Search the frames of `rho` by name for a filled slot that binds `x`,
+	 * returning its address relative to `rho`, or null if there isn't one.
+	 */
+	public static Addr find(Frame rho, String x, boolean isCont) {
+		int depth = 0;
+		for (Frame frame = rho; frame != null; frame = Addr.parent(frame)) {
+			FrameSlot slot = findSlot(frame.getFrameDescriptor(), x, isCont);
+			if (slot != null && frame.getValue(slot) != null) {
+				return new Addr(depth, slot, x);
+			}
+			depth++;
+		}
+		return null;
+	}
+
+}
@@ -0,0 +1,36 @@
+/*
+ * This file is part of Cooma.
+ *
+ * Copyright (C) 2019-2023 Anthony M Sloane, Macquarie University.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.bitbucket.inkytonik.cooma.truffle.nodes.primitive;
+
+import com.oracle.truffle.api.frame.VirtualFrame;
+import org.bitbucket.inkytonik.cooma.Backend;
+import org.bitbucket.inkytonik.cooma.CoomaParserSyntax.UserPrimitive;
+import org.bitbucket.inkytonik.cooma.truffle.runtime.RuntimeValue;
+
+public abstract class CoomaBinaryPrimitiveNode extends CoomaPrimitiveNode {
+
+	protected CoomaBinaryPrimitiveNode(Backend backend, UserPrimitive p, String[] xs) {
+		super(backend, p, xs);
+	}
+
+	@Override
+	protected int arity() {
+		return 2;
+	}
+
+	@Override
+	public RuntimeValue evaluate(VirtualFrame frame) {
+		return executeBinary(getR(frame, addrs[0]), getR(frame, addrs[1]));
+	}
+
+	public abstract RuntimeValue executeBinary(RuntimeValue l, RuntimeValue r);
+
+}
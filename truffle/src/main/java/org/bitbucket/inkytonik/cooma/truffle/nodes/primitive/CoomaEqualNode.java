@@ -0,0 +1,47 @@
+/*
+ * This file is part of Cooma.
+ *
+ * Copyright (C) 2019-2023 Anthony M Sloane, Macquarie University.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.bitbucket.inkytonik.cooma.truffle.nodes.primitive;
+
+import com.oracle.truffle.api.dsl.Fallback;
+import com.oracle.truffle.api.dsl.Specialization;
+import com.oracle.truffle.api.nodes.NodeInfo;
+import org.bitbucket.inkytonik.cooma.Backend;
+import org.bitbucket.inkytonik.cooma.CoomaParserSyntax.UserPrimitive;
+import org.bitbucket.inkytonik.cooma.truffle.runtime.IntRuntimeValue;
+import org.bitbucket.inkytonik.cooma.truffle.runtime.RuntimeValue;
+
+/**
+ * Equality of two values. Identical values and small integers are handled
+ * here. Other values are compared structurally by the backend.
+ */
+@NodeInfo(shortName = "Equal", description = "Equality")
+public abstract class CoomaEqualNode extends CoomaBinaryPrimitiveNode {
+
+	protected CoomaEqualNode(Backend backend, UserPrimitive p, String[] xs) {
+		super(backend, p, xs);
+	}
+
+	@Specialization(guards = "l == r")
+	protected RuntimeValue doIdentical(RuntimeValue l, RuntimeValue r) {
+		return bool(true);
+	}
+
+	@Specialization(guards = { "l.isSmall()", "r.isSmall()" })
+	protected RuntimeValue doLong(IntRuntimeValue l, IntRuntimeValue r) {
+		return bool(l.getSmallValue() == r.getSmallValue());
+	}
+
+	@Fallback
+	protected RuntimeValue doOther(RuntimeValue l, RuntimeValue r) {
+		return generic(l, r);
+	}
+
+}
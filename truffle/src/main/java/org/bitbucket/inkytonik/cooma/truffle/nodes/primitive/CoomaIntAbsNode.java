@@ -0,0 +1,55 @@
+/*
+ * This file is part of Cooma.
+ *
+ * Copyright (C) 2019-2023 Anthony M Sloane, Macquarie University.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.bitbucket.inkytonik.cooma.truffle.nodes.primitive;
+
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.api.dsl.Fallback;
+import com.oracle.truffle.api.dsl.Specialization;
+import com.oracle.truffle.api.nodes.NodeInfo;
+import org.bitbucket.inkytonik.cooma.Backend;
+import org.bitbucket.inkytonik.cooma.CoomaParserSyntax.UserPrimitive;
+import org.bitbucket.inkytonik.cooma.truffle.runtime.IntRuntimeValue;
+import org.bitbucket.inkytonik.cooma.truffle.runtime.RuntimeValue;
+
+import java.math.BigInteger;
+
+@NodeInfo(shortName = "IntAbs", description = "Integer absolute value")
+public abstract class CoomaIntAbsNode extends CoomaUnaryPrimitiveNode {
+
+	protected CoomaIntAbsNode(Backend backend, UserPrimitive p, String[] xs) {
+		super(backend, p, xs);
+	}
+
+	@Specialization(guards = "x.isSmall()", rewriteOn = ArithmeticException.class)
+	protected RuntimeValue doLong(IntRuntimeValue x) {
+		long v = x.getSmallValue();
+		if (v == Long.MIN_VALUE) {
+			throw new ArithmeticException("long overflow");
+		}
+		return IntRuntimeValue.valueOf(Math.abs(v));
+	}
+
+	@Specialization(replaces = "doLong")
+	protected RuntimeValue doBigInteger(IntRuntimeValue x) {
+		return IntRuntimeValue.valueOf(abs(x.getInnerValue()));
+	}
+
+	@Fallback
+	protected RuntimeValue doOther(RuntimeValue x) {
+		return generic(x);
+	}
+
+	@TruffleBoundary
+	private static BigInteger abs(BigInteger x) {
+		return x.abs();
+	}
+
+}
@@ -0,0 +1,48 @@
+/*
+ * This file is part of Cooma.
+ *
+ * Copyright (C) 2019-2023 Anthony M Sloane, Macquarie University.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.bitbucket.inkytonik.cooma.truffle.nodes.primitive;
+
+import com.oracle.truffle.api.dsl.Fallback;
+import com.oracle.truffle.api.dsl.Specialization;
+import com.oracle.truffle.api.nodes.NodeInfo;
+import org.bitbucket.inkytonik.cooma.Backend;
+import org.bitbucket.inkytonik.cooma.CoomaParserSyntax.UserPrimitive;
+import org.bitbucket.inkytonik.cooma.truffle.runtime.IntRuntimeValue;
+import org.bitbucket.inkytonik.cooma.truffle.runtime.RuntimeValue;
+
+/**
+ * Division of small integers. Division by zero and big integers go through
+ * the backend, which reports the error or falls back to BigInt.
+ */
+@NodeInfo(shortName = "IntDiv", description = "Integer division")
+public abstract class CoomaIntDivNode extends CoomaBinaryPrimitiveNode {
+
+	protected CoomaIntDivNode(Backend backend, UserPrimitive p, String[] xs) {
+		super(backend, p, xs);
+	}
+
+	@Specialization(guards = { "l.isSmall()", "r.isSmall()", "r.getSmallValue() != 0" },
+			rewriteOn = ArithmeticException.class)
+	protected RuntimeValue doLong(IntRuntimeValue l, IntRuntimeValue r) {
+		long lv = l.getSmallValue();
+		long rv = r.getSmallValue();
+		if ((lv == Long.MIN_VALUE) && (rv == -1)) {
+			throw new ArithmeticException("long overflow");
+		}
+		return IntRuntimeValue.valueOf(lv / rv);
+	}
+
+	@Fallback
+	protected RuntimeValue doOther(RuntimeValue l, RuntimeValue r) {
+		return generic(l, r);
+	}
+
+}
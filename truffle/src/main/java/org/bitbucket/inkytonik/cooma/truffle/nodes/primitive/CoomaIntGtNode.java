@@ -0,0 +1,49 @@
+/*
+ * This file is part of Cooma.
+ *
+ * Copyright (C) 2019-2023 Anthony M Sloane, Macquarie University.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.bitbucket.inkytonik.cooma.truffle.nodes.primitive;
+
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.api.dsl.Fallback;
+import com.oracle.truffle.api.dsl.Specialization;
+import com.oracle.truffle.api.nodes.NodeInfo;
+import org.bitbucket.inkytonik.cooma.Backend;
+import org.bitbucket.inkytonik.cooma.CoomaParserSyntax.UserPrimitive;
+import org.bitbucket.inkytonik.cooma.truffle.runtime.IntRuntimeValue;
+import org.bitbucket.inkytonik.cooma.truffle.runtime.RuntimeValue;
+
+@NodeInfo(shortName = "IntGt", description = "Integer greater than")
+public abstract class CoomaIntGtNode extends CoomaBinaryPrimitiveNode {
+
+	protected CoomaIntGtNode(Backend backend, UserPrimitive p, String[] xs) {
+		super(backend, p, xs);
+	}
+
+	@Specialization(guards = { "l.isSmall()", "r.isSmall()" })
+	protected RuntimeValue doLong(IntRuntimeValue l, IntRuntimeValue r) {
+		return bool(l.getSmallValue() > r.getSmallValue());
+	}
+
+	@Specialization(replaces = "doLong")
+	protected RuntimeValue doBigInteger(IntRuntimeValue l, IntRuntimeValue r) {
+		return bool(compare(l, r) > 0);
+	}
+
+	@Fallback
+	protected RuntimeValue doOther(RuntimeValue l, RuntimeValue r) {
+		return generic(l, r);
+	}
+
+	@TruffleBoundary
+	private static int compare(IntRuntimeValue l, IntRuntimeValue r) {
+		return l.compareTo(r);
+	}
+
+}
@@ -0,0 +1,51 @@
+/*
+ * This file is part of Cooma.
+ *
+ * Copyright (C) 2019-2023 Anthony M Sloane, Macquarie University.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.bitbucket.inkytonik.cooma.truffle.nodes.primitive;
+
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.api.dsl.Fallback;
+import com.oracle.truffle.api.dsl.Specialization;
+import com.oracle.truffle.api.nodes.NodeInfo;
+import org.bitbucket.inkytonik.cooma.Backend;
+import org.bitbucket.inkytonik.cooma.CoomaParserSyntax.UserPrimitive;
+import org.bitbucket.inkytonik.cooma.truffle.runtime.IntRuntimeValue;
+import org.bitbucket.inkytonik.cooma.truffle.runtime.RuntimeValue;
+
+import java.math.BigInteger;
+
+@NodeInfo(shortName = "IntMul", description = "Integer multiplication")
+public abstract class CoomaIntMulNode extends CoomaBinaryPrimitiveNode {
+
+	protected CoomaIntMulNode(Backend backend, UserPrimitive p, String[] xs) {
+		super(backend, p, xs);
+	}
+
+	@Specialization(guards = { "l.isSmall()", "r.isSmall()" }, rewriteOn = ArithmeticException.class)
+	protected RuntimeValue doLong(IntRuntimeValue l, IntRuntimeValue r) {
+		return IntRuntimeValue.valueOf(Math.multiplyExact(l.getSmallValue(), r.getSmallValue()));
+	}
+
+	@Specialization(replaces = "doLong")
+	protected RuntimeValue doBigInteger(IntRuntimeValue l, IntRuntimeValue r) {
+		return IntRuntimeValue.valueOf(multiply(l.getInnerValue(), r.getInnerValue()));
+	}
+
+	@Fallback
+	protected RuntimeValue doOther(RuntimeValue l, RuntimeValue r) {
+		return generic(l, r);
+	}
+
+	@TruffleBoundary
+	private static BigInteger multiply(BigInteger l, BigInteger r) {
+		return l.multiply(r);
+	}
+
+}
@@ -0,0 +1,76 @@
+/*
+ * This file is part of Cooma.
+ *
+ * Copyright (C) 2019-2023 Anthony M Sloane, Macquarie University.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.bitbucket.inkytonik.cooma.truffle.nodes.primitive;
+
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.api.dsl.Fallback;
+import com.oracle.truffle.api.dsl.Specialization;
+import com.oracle.truffle.api.nodes.NodeInfo;
+import org.bitbucket.inkytonik.cooma.Backend;
+import org.bitbucket.inkytonik.cooma.CoomaParserSyntax.UserPrimitive;
+import org.bitbucket.inkytonik.cooma.truffle.runtime.IntRuntimeValue;
+import org.bitbucket.inkytonik.cooma.truffle.runtime.RuntimeValue;
+
+import java.math.BigInteger;
+
+/**
+ * Integer power. Negative and very large powers go through the backend,
+ * which reports the error or computes the result as before.
+ */
+@NodeInfo(shortName = "IntPow", description = "Integer power")
+public abstract class CoomaIntPowNode extends CoomaBinaryPrimitiveNode {
+
+	protected CoomaIntPowNode(Backend backend, UserPrimitive p, String[] xs) {
+		super(backend, p, xs);
+	}
+
+	@Specialization(guards = { "l.isSmall()", "isIntPower(r)" }, rewriteOn = ArithmeticException.class)
+	protected RuntimeValue doLong(IntRuntimeValue l, IntRuntimeValue r) {
+		return IntRuntimeValue.valueOf(powExact(l.getSmallValue(), r.getSmallValue()));
+	}
+
+	@Specialization(guards = "isIntPower(r)", replaces = "doLong")
+	protected RuntimeValue doBigInteger(IntRuntimeValue l, IntRuntimeValue r) {
+		return IntRuntimeValue.valueOf(pow(l.getInnerValue(), (int) r.getSmallValue()));
+	}
+
+	@Fallback
+	protected RuntimeValue doOther(RuntimeValue l, RuntimeValue r) {
+		return generic(l, r);
+	}
+
+	protected static boolean isIntPower(IntRuntimeValue r) {
+		return r.isSmall() && (r.getSmallValue() >= 0) && (r.getSmallValue() <= Integer.MAX_VALUE);
+	}
+
+	private static long powExact(long l, long r) {
+		if (r >= 64) {
+			if ((l == 0) || (l == 1)) {
+				return l;
+			} else if (l == -1) {
+				return (r % 2 == 0) ? 1 : -1;
+			} else {
+				throw new ArithmeticException("long overflow");
+			}
+		}
+		long result = 1;
+		for (long n = r; n > 0; n--) {
+			result = Math.multiplyExact(result, l);
+		}
+		return result;
+	}
+
+	@TruffleBoundary
+	private static BigInteger pow(BigInteger l, int r) {
+		return l.pow(r);
+	}
+
+}
@@ -0,0 +1,76 @@
+/*
+ * This file is part of Cooma.
+ *
+ * Copyright (C) 2019-2023 Anthony M Sloane, Macquarie University.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.bitbucket.inkytonik.cooma.truffle.nodes.primitive;
+
+import com.oracle.truffle.api.CompilerDirectives.CompilationFinal;
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import org.bitbucket.inkytonik.cooma.Backend;
+import org.bitbucket.inkytonik.cooma.CoomaParserSyntax.UserP;
+import org.bitbucket.inkytonik.cooma.CoomaParserSyntax.UserPrimitive;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.environment.Addr;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.environment.Scope;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.value.CoomaValueNode;
+import org.bitbucket.inkytonik.cooma.truffle.runtime.RuntimeValue;
+import scala.collection.immutable.Vector;
+import scala.jdk.javaapi.CollectionConverters;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * A user primitive whose common cases are specialised in a subclass. Any
+ * leading type operands are not needed at run time, so only the last
+ * `arity()` operands are looked up and passed to the specialisations.
+ * Operand values that no specialisation handles are passed to the backend,
+ * which also reports any errors.
+ */
+public abstract class CoomaPrimitiveNode extends CoomaValueNode {
+
+	private final Backend backend;
+	private final UserPrimitive p;
+	private final String[] xs;
+	private final Vector<String> names;
+
+	@CompilationFinal(dimensions = 1)
+	protected Addr[] addrs;
+
+	protected CoomaPrimitiveNode(Backend backend, UserPrimitive p, String[] xs) {
+		this.backend = backend;
+		this.p = p;
+		this.xs = xs;
+		this.names = CollectionConverters.asScala(Arrays.asList(xs)).toVector();
+	}
+
+	protected abstract int arity();
+
+	@Override
+	public void resolve(Scope scope) {
+		addrs = new Addr[arity()];
+		int offset = xs.length - addrs.length;
+		for (int i = 0; i < addrs.length; i++) {
+			addrs[i] = scope.lookup(xs[offset + i], false);
+		}
+	}
+
+	protected RuntimeValue bool(boolean b) {
+		return (RuntimeValue) (b ? backend.trueR() : backend.falseR());
+	}
+
+	@TruffleBoundary
+	protected RuntimeValue generic(RuntimeValue... operands) {
+		RuntimeValue[] vs = new RuntimeValue[xs.length];
+		System.arraycopy(operands, 0, vs, xs.length - operands.length, operands.length);
+		return (RuntimeValue) backend.evalPrim(new UserP(p), getContext().getGlobals(), names,
+				CollectionConverters.asScala(Arrays.asList(vs)).toVector(),
+				CollectionConverters.asScala(Collections.<String>emptyList()).toVector());
+	}
+
+}
@@ -0,0 +1,108 @@
+/*
+ * This file is part of Cooma.
+ *
+ * Copyright (C) 2019-2023 Anthony M Sloane, Macquarie University.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.bitbucket.inkytonik.cooma.truffle.nodes.primitive;
+
+import com.oracle.truffle.api.CompilerDirectives.CompilationFinal;
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.api.dsl.Cached;
+import com.oracle.truffle.api.dsl.Fallback;
+import com.oracle.truffle.api.dsl.Specialization;
+import com.oracle.truffle.api.frame.VirtualFrame;
+import com.oracle.truffle.api.nodes.NodeInfo;
+import com.oracle.truffle.api.object.Location;
+import com.oracle.truffle.api.object.Property;
+import com.oracle.truffle.api.object.Shape;
+import org.bitbucket.inkytonik.cooma.Backend;
+import org.bitbucket.inkytonik.cooma.CoomaParserSyntax.Primitive;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.environment.Addr;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.environment.Scope;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.value.CoomaValueNode;
+import org.bitbucket.inkytonik.cooma.truffle.runtime.RecRuntimeValue;
+import org.bitbucket.inkytonik.cooma.truffle.runtime.RuntimeValue;
+import org.bitbucket.inkytonik.cooma.truffle.runtime.StringRuntimeValue;
+import scala.collection.immutable.Vector;
+import scala.jdk.javaapi.CollectionConverters;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Selection of the field `f` from the record `r`. The location of the
+ * field is cached for the shapes of the records that are seen here. A
+ * missing field or a non-record goes through the backend, which reports
+ * the error.
+ */
+@NodeInfo(shortName = "RecSelect", description = "Record field selection")
+public abstract class CoomaRecSelectNode extends CoomaValueNode {
+
+	public static final int CACHE_LIMIT = 3;
+
+	private final Backend backend;
+	private final Primitive p;
+	private final String r;
+	private final String f;
+	private final Vector<String> names;
+
+	@CompilationFinal
+	private Addr addr;
+
+	protected CoomaRecSelectNode(Backend backend, Primitive p, String r, String f) {
+		this.backend = backend;
+		this.p = p;
+		this.r = r;
+		this.f = f;
+		this.names = CollectionConverters.asScala(Arrays.asList(r, f)).toVector();
+	}
+
+	@Override
+	public void resolve(Scope scope) {
+		addr = scope.lookup(r, false);
+	}
+
+	@Override
+	public RuntimeValue evaluate(VirtualFrame frame) {
+		return executeSelect(getR(frame, addr));
+	}
+
+	public abstract RuntimeValue executeSelect(RuntimeValue rec);
+
+	@Specialization(limit = "CACHE_LIMIT", guards = { "rec.getShape() == cachedShape",
+			"location != null" }, assumptions = "cachedShape.getValidAssumption()")
+	protected RuntimeValue doCached(RecRuntimeValue rec, @Cached("rec.getShape()") Shape cachedShape,
+			@Cached("lookup(cachedShape)") Location location) {
+		return (RuntimeValue) location.get(rec.getStore(), cachedShape);
+	}
+
+	@Specialization(replaces = "doCached")
+	protected RuntimeValue doUncached(RecRuntimeValue rec) {
+		RuntimeValue value = rec.get(f);
+		return (value == null) ? generic(rec) : value;
+	}
+
+	@Fallback
+	protected RuntimeValue doOther(RuntimeValue rec) {
+		return generic(rec);
+	}
+
+	protected Location lookup(Shape shape) {
+		Property property = shape.getProperty(f);
+		return (property == null) ? null : property.getLocation();
+	}
+
+	@TruffleBoundary
+	private RuntimeValue generic(RuntimeValue rec) {
+		RuntimeValue[] vs = new RuntimeValue[] { rec, new StringRuntimeValue(f) };
+		return (RuntimeValue) backend.evalPrim(p, getContext().getGlobals(), names,
+				CollectionConverters.asScala(Arrays.asList(vs)).toVector(),
+				CollectionConverters.asScala(Collections.<String>emptyList()).toVector());
+	}
+
+}
@@ -0,0 +1,45 @@
+/*
+ * This file is part of Cooma.
+ *
+ * Copyright (C) 2019-2023 Anthony M Sloane, Macquarie University.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.bitbucket.inkytonik.cooma.truffle.nodes.primitive;
+
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.api.dsl.Fallback;
+import com.oracle.truffle.api.dsl.Specialization;
+import com.oracle.truffle.api.nodes.NodeInfo;
+import org.bitbucket.inkytonik.cooma.Backend;
+import org.bitbucket.inkytonik.cooma.CoomaParserSyntax.UserPrimitive;
+import org.bitbucket.inkytonik.cooma.Rope;
+import org.bitbucket.inkytonik.cooma.truffle.runtime.RuntimeValue;
+import org.bitbucket.inkytonik.cooma.truffle.runtime.StringRuntimeValue;
+
+@NodeInfo(shortName = "StrConcat", description = "String concatenation")
+public abstract class CoomaStrConcatNode extends CoomaBinaryPrimitiveNode {
+
+	protected CoomaStrConcatNode(Backend backend, UserPrimitive p, String[] xs) {
+		super(backend, p, xs);
+	}
+
+	@Specialization
+	protected RuntimeValue doString(StringRuntimeValue l, StringRuntimeValue r) {
+		return new StringRuntimeValue(concat(l.getRope(), r.getRope()));
+	}
+
+	@Fallback
+	protected RuntimeValue doOther(RuntimeValue l, RuntimeValue r) {
+		return generic(l, r);
+	}
+
+	@TruffleBoundary
+	private static Rope concat(Rope l, Rope r) {
+		return l.$plus$plus(r);
+	}
+
+}
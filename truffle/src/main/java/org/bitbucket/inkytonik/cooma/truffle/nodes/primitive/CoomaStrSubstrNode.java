@@ -0,0 +1,54 @@
+/*
+ * This file is part of Cooma.
+ *
+ * Copyright (C) 2019-2023 Anthony M Sloane, Macquarie University.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.bitbucket.inkytonik.cooma.truffle.nodes.primitive;
+
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.api.dsl.Fallback;
+import com.oracle.truffle.api.dsl.Specialization;
+import com.oracle.truffle.api.nodes.NodeInfo;
+import org.bitbucket.inkytonik.cooma.Backend;
+import org.bitbucket.inkytonik.cooma.CoomaParserSyntax.UserPrimitive;
+import org.bitbucket.inkytonik.cooma.Rope;
+import org.bitbucket.inkytonik.cooma.truffle.runtime.IntRuntimeValue;
+import org.bitbucket.inkytonik.cooma.truffle.runtime.RuntimeValue;
+import org.bitbucket.inkytonik.cooma.truffle.runtime.StringRuntimeValue;
+
+/**
+ * Suffix of a string from an index. An index that is out of range goes
+ * through the backend, which reports the error.
+ */
+@NodeInfo(shortName = "StrSubstr", description = "String suffix")
+public abstract class CoomaStrSubstrNode extends CoomaBinaryPrimitiveNode {
+
+	protected CoomaStrSubstrNode(Backend backend, UserPrimitive p, String[] xs) {
+		super(backend, p, xs);
+	}
+
+	@Specialization(guards = "inRange(x, i)")
+	protected RuntimeValue doString(StringRuntimeValue x, IntRuntimeValue i) {
+		return new StringRuntimeValue(substring(x.getRope(), (int) i.getSmallValue()));
+	}
+
+	@Fallback
+	protected RuntimeValue doOther(RuntimeValue x, RuntimeValue i) {
+		return generic(x, i);
+	}
+
+	protected static boolean inRange(StringRuntimeValue x, IntRuntimeValue i) {
+		return i.isSmall() && (i.getSmallValue() >= 0) && (i.getSmallValue() <= x.getRope().length());
+	}
+
+	@TruffleBoundary
+	private static Rope substring(Rope x, int i) {
+		return x.substring(i);
+	}
+
+}
@@ -0,0 +1,38 @@
+/*
+ * This file is part of Cooma.
+ *
+ * Copyright (C) 2019-2023 Anthony M Sloane, Macquarie University.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.bitbucket.inkytonik.cooma.truffle.nodes.primitive;
+
+import com.oracle.truffle.api.dsl.Fallback;
+import com.oracle.truffle.api.dsl.Specialization;
+import com.oracle.truffle.api.nodes.NodeInfo;
+import org.bitbucket.inkytonik.cooma.Backend;
+import org.bitbucket.inkytonik.cooma.CoomaParserSyntax.UserPrimitive;
+import org.bitbucket.inkytonik.cooma.truffle.runtime.RuntimeValue;
+import org.bitbucket.inkytonik.cooma.truffle.runtime.VecRuntimeValue;
+
+@NodeInfo(shortName = "VecConcat", description = "Vector concatenation")
+public abstract class CoomaVecConcatNode extends CoomaBinaryPrimitiveNode {
+
+	protected CoomaVecConcatNode(Backend backend, UserPrimitive p, String[] xs) {
+		super(backend, p, xs);
+	}
+
+	@Specialization
+	protected RuntimeValue doVector(VecRuntimeValue v, VecRuntimeValue w) {
+		return v.concat(w);
+	}
+
+	@Fallback
+	protected RuntimeValue doOther(RuntimeValue v, RuntimeValue w) {
+		return generic(v, w);
+	}
+
+}
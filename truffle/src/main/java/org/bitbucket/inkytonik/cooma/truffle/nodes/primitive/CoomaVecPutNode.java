@@ -0,0 +1,47 @@
+/*
+ * This file is part of Cooma.
+ *
+ * Copyright (C) 2019-2023 Anthony M Sloane, Macquarie University.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.bitbucket.inkytonik.cooma.truffle.nodes.primitive;
+
+import com.oracle.truffle.api.dsl.Fallback;
+import com.oracle.truffle.api.dsl.Specialization;
+import com.oracle.truffle.api.nodes.NodeInfo;
+import org.bitbucket.inkytonik.cooma.Backend;
+import org.bitbucket.inkytonik.cooma.CoomaParserSyntax.UserPrimitive;
+import org.bitbucket.inkytonik.cooma.truffle.runtime.IntRuntimeValue;
+import org.bitbucket.inkytonik.cooma.truffle.runtime.RuntimeValue;
+import org.bitbucket.inkytonik.cooma.truffle.runtime.VecRuntimeValue;
+
+/**
+ * Vector with one element replaced. An index that is out of bounds goes
+ * through the backend, which reports the error.
+ */
+@NodeInfo(shortName = "VecPut", description = "Vector update")
+public abstract class CoomaVecPutNode extends CoomaTernaryPrimitiveNode {
+
+	protected CoomaVecPutNode(Backend backend, UserPrimitive p, String[] xs) {
+		super(backend, p, xs);
+	}
+
+	@Specialization(guards = "inBounds(v, i)")
+	protected RuntimeValue doVector(VecRuntimeValue v, IntRuntimeValue i, RuntimeValue x) {
+		return v.updated((int) i.getSmallValue(), x);
+	}
+
+	@Fallback
+	protected RuntimeValue doOther(RuntimeValue v, RuntimeValue i, RuntimeValue x) {
+		return generic(v, i, x);
+	}
+
+	protected static boolean inBounds(VecRuntimeValue v, IntRuntimeValue i) {
+		return i.isSmall() && (i.getSmallValue() >= 0) && (i.getSmallValue() < v.length());
+	}
+
+}
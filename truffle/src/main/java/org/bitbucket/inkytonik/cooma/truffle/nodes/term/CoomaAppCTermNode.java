@@ -10,11 +10,17 @@
 
 package org.bitbucket.inkytonik.cooma.truffle.nodes.term;
 
+import com.oracle.truffle.api.CompilerDirectives.CompilationFinal;
 import com.oracle.truffle.api.dsl.Specialization;
 import com.oracle.truffle.api.frame.VirtualFrame;
 import com.oracle.truffle.api.nodes.NodeInfo;
 import org.bitbucket.inkytonik.cooma.CoomaException;
-import org.bitbucket.inkytonik.cooma.truffle.nodes.environment.Rho;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.CoomaDispatchNode;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.CoomaDispatchNodeGen;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.environment.Addr;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.environment.Captures;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.environment.Lambda;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.environment.Scope;
 import org.bitbucket.inkytonik.cooma.truffle.runtime.ContinuationClosure;
 import org.bitbucket.inkytonik.cooma.truffle.runtime.RuntimeValue;
 
@@ -31,28 +37,48 @@ public abstract class CoomaAppCTermNode extends CoomaTermNode {
 	 */
 	private final String x;
 
+	@CompilationFinal
+	private Addr kAddr;
+	@CompilationFinal
+	private Addr xAddr;
+
+	/**
+	 * Layout of the environment that a halt keeps for later runs, or null
+	 * if it only returns its value.
+	 */
+	@CompilationFinal
+	private Captures exports;
+
+	@Child
+	private CoomaDispatchNode dispatch = CoomaDispatchNodeGen.create();
+
 	public CoomaAppCTermNode(CoomaCont cont, String x) {
 		this.cont = cont;
 		this.x = x;
 	}
 
+	@Override
+	public void resolve(Scope scope) {
+		if (this.cont instanceof CoomaIdnC) {
+			kAddr = scope.lookup(((CoomaIdnC) this.cont).getName(), true);
+		} else if (scope.isExporting()) {
+			exports = scope.exportAll();
+		}
+		xAddr = scope.lookup(x, false);
+	}
+
 	@Specialization
 	public Object execute(VirtualFrame frame) {
 		if (this.cont instanceof CoomaHaltC) {
-			return obtainFromRho(this.x);
-		} else if (this.cont instanceof CoomaIdnC) {
-			CoomaIdnC cont = (CoomaIdnC) this.cont;
-			String k = cont.getName();
-			RuntimeValue value = obtainFromRho(k);
-			if (value instanceof ContinuationClosure) {
-				ContinuationClosure closure = (ContinuationClosure) value;
-				Rho p1 = closure.getRho().extend(closure.getX(), obtainFromRho(this.x));
-				replaceRho(p1);
-				return closure.getZ().executeGeneric(frame);
-			} else {
-				return CoomaException.errInterp("AppC",
-						String.format("non-continuation closure: %s is %s", k, value.print()));
+			RuntimeValue value = getR(frame, xAddr);
+			if (exports != null) {
+				getContext().export(exports.capture(frame, null));
 			}
+			return value;
+		} else if (this.cont instanceof CoomaIdnC) {
+			ContinuationClosure closure = getC(frame, kAddr);
+			Object[] arguments = Lambda.arguments(closure.getCaptured(), getR(frame, xAddr));
+			return jump(frame, dispatch, closure.getLambda(), arguments);
 		} else {
 			return CoomaException.errInterp("AppC", String.format("unknown continuation kind: %s", this.cont));
 		}
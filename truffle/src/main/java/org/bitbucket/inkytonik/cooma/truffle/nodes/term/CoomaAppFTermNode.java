@@ -10,13 +10,21 @@
 
 package org.bitbucket.inkytonik.cooma.truffle.nodes.term;
 
+import com.oracle.truffle.api.CompilerDirectives.CompilationFinal;
 import com.oracle.truffle.api.dsl.Specialization;
 import com.oracle.truffle.api.frame.VirtualFrame;
+import com.oracle.truffle.api.instrumentation.StandardTags.CallTag;
+import com.oracle.truffle.api.instrumentation.Tag;
 import com.oracle.truffle.api.nodes.NodeInfo;
+import com.oracle.truffle.api.nodes.RootNode;
 import org.bitbucket.inkytonik.cooma.CoomaException;
-import org.bitbucket.inkytonik.cooma.truffle.nodes.environment.Rho;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.CoomaDispatchNode;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.CoomaDispatchNodeGen;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.CoomaLambdaRootNode;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.environment.Addr;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.environment.Lambda;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.environment.Scope;
 import org.bitbucket.inkytonik.cooma.truffle.runtime.FunctionClosure;
-import org.bitbucket.inkytonik.cooma.truffle.runtime.FunctionClosureHolder;
 import org.bitbucket.inkytonik.cooma.truffle.runtime.RuntimeValue;
 
 @NodeInfo(shortName = "appF", description = "Function application")
@@ -37,28 +45,64 @@ public abstract class CoomaAppFTermNode extends CoomaTermNode {
 	 */
 	private final String x;
 
+	@CompilationFinal
+	private Addr fAddr;
+	@CompilationFinal
+	private Addr kAddr;
+	@CompilationFinal
+	private Addr xAddr;
+
+	@Child
+	private CoomaDispatchNode dispatch = CoomaDispatchNodeGen.create();
+
 	public CoomaAppFTermNode(String identifier, String k, String x) {
 		this.f = identifier;
 		this.k = k;
 		this.x = x;
 	}
 
+	@Override
+	public boolean hasTag(Class<? extends Tag> tag) {
+		return tag == CallTag.class || super.hasTag(tag);
+	}
+
+	@Override
+	public void resolve(Scope scope) {
+		fAddr = scope.lookup(f, false);
+		kAddr = scope.lookup(k, true);
+		xAddr = scope.lookup(x, false);
+	}
+
 	@Specialization
 	Object execute(VirtualFrame frame) {
-		RuntimeValue value = obtainFromRho(f);
-		if (value instanceof FunctionClosureHolder) {
-			FunctionClosure closure = ((FunctionClosureHolder) value).get(f);
-			Rho p1 = closure.getRho().extend(closure.getK(), obtainFromRho(this.k)).extend(closure.getX(),
-					obtainFromRho(this.x));
-			replaceRho(p1);
-			if (closure.getZ().getParent() == null) {
-				this.insert(closure.getZ());
+		RuntimeValue value = getR(frame, fAddr);
+		if (value instanceof FunctionClosure) {
+			FunctionClosure closure = (FunctionClosure) value;
+			if (isSelfTailCall(frame, closure)) {
+				frame.setObject(closure.getLambda().getParams()[1], getR(frame, xAddr));
+				throw SelfTailCallException.INSTANCE;
 			}
-			return closure.getZ().executeGeneric(frame);
-
+			Object[] arguments = Lambda.arguments(closure.getCaptured(), getC(frame, kAddr), getR(frame, xAddr));
+			return jump(frame, dispatch, closure.getLambda(), arguments);
 		} else {
 			return CoomaException.errInterp("AppF", String.format("%s is %s", f, value.print()));
 		}
 	}
 
+	/**
+	 * Is this a call of the function whose body we are in, with the same
+	 * captures and with the function's own continuation? If so, the call can
+	 * be made by looping in the current frame.
+	 */
+	private boolean isSelfTailCall(VirtualFrame frame, FunctionClosure closure) {
+		RootNode root = getRootNode();
+		if (root instanceof CoomaLambdaRootNode) {
+			Lambda lambda = ((CoomaLambdaRootNode) root).getLambda();
+			return (closure.getLambda() == lambda) && (kAddr.getDepth() == 0)
+					&& (kAddr.getSlot() == lambda.getParams()[0])
+					&& (closure.getCaptured() == frame.getArguments()[Lambda.PARENT]);
+		}
+		return false;
+	}
+
 }
@@ -10,10 +10,16 @@
 
 package org.bitbucket.inkytonik.cooma.truffle.nodes.term;
 
+import com.oracle.truffle.api.CompilerDirectives.CompilationFinal;
 import com.oracle.truffle.api.frame.VirtualFrame;
 import com.oracle.truffle.api.nodes.NodeInfo;
+import org.bitbucket.inkytonik.cooma.ConstructorTags;
 import org.bitbucket.inkytonik.cooma.CoomaException;
-import org.bitbucket.inkytonik.cooma.truffle.nodes.environment.Rho;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.CoomaDispatchNode;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.CoomaDispatchNodeGen;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.environment.Addr;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.environment.Lambda;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.environment.Scope;
 import org.bitbucket.inkytonik.cooma.truffle.nodes.value.CoomaCaseTerm;
 import org.bitbucket.inkytonik.cooma.truffle.runtime.ContinuationClosure;
 import org.bitbucket.inkytonik.cooma.truffle.runtime.RuntimeValue;
@@ -25,32 +31,65 @@ public class CoomaCasVTermNode extends CoomaTermNode {
 	private final String x;
 	private final CoomaCaseTerm[] cs;
 
+	/**
+	 * The continuation for the constructor with tag t is at index t - base
+	 * of table, or is null if there is no case for that constructor.
+	 */
+	private final int base;
+	private final String[] table;
+
+	@CompilationFinal
+	private Addr xAddr;
+	@CompilationFinal(dimensions = 1)
+	private Addr[] addrs;
+
+	@Child
+	private CoomaDispatchNode dispatch = CoomaDispatchNodeGen.create();
+
 	public CoomaCasVTermNode(String x, CoomaCaseTerm[] cs) {
 		this.x = x;
 		this.cs = cs;
+		int[] tags = new int[cs.length];
+		int min = Integer.MAX_VALUE;
+		int max = Integer.MIN_VALUE;
+		for (int i = 0; i < cs.length; i++) {
+			tags[i] = ConstructorTags.tagOf(cs[i].getC());
+			min = Math.min(min, tags[i]);
+			max = Math.max(max, tags[i]);
+		}
+		this.base = cs.length == 0 ? 0 : min;
+		this.table = new String[cs.length == 0 ? 0 : max - min + 1];
+		for (int i = 0; i < cs.length; i++) {
+			if (table[tags[i] - base] == null) {
+				table[tags[i] - base] = cs[i].getK();
+			}
+		}
+	}
+
+	@Override
+	public void resolve(Scope scope) {
+		xAddr = scope.lookup(x, false);
+		addrs = new Addr[table.length];
+		for (int i = 0; i < table.length; i++) {
+			if (table[i] != null) {
+				addrs[i] = scope.lookup(table[i], true);
+			}
+		}
 	}
 
 	@Override
 	public Object executeGeneric(VirtualFrame frame) {
-		RuntimeValue value = obtainFromRho(x);
+		RuntimeValue value = getR(frame, xAddr);
 		if (value instanceof VarRuntimeValue) {
 			VarRuntimeValue var = (VarRuntimeValue) value;
-			String c1 = var.getC();
-			for (CoomaCaseTerm kase : cs) {
-				if (c1.equals(kase.getC())) {
-					String k = kase.getK();
-					RuntimeValue cont = obtainFromRho(k);
-					if (cont instanceof ContinuationClosure) {
-						ContinuationClosure closure = (ContinuationClosure) cont;
-						Rho p1 = closure.getRho().extend(closure.getX(), var.getV());
-						replaceRho(p1);
-						return closure.getZ().executeGeneric(frame);
-					} else {
-						return CoomaException.errInterp("CasV", String.format("%s is %s", k, cont.print()));
-					}
-				}
+			int i = var.getTag() - base;
+			Addr k = (i >= 0 && i < addrs.length) ? addrs[i] : null;
+			if (k == null) {
+				return CoomaException.errInterp("CasV", String.format("can't find case for variant %s", var.getC()));
 			}
-			return CoomaException.errInterp("CasV", String.format("can't find case for variant %s", c1));
+			ContinuationClosure closure = getC(frame, k);
+			Object[] arguments = Lambda.arguments(closure.getCaptured(), var.getV());
+			return jump(frame, dispatch, closure.getLambda(), arguments);
 		} else {
 			return CoomaException.errInterp("CasV", String.format("CasV: %s is %s", x, value.print()));
 		}
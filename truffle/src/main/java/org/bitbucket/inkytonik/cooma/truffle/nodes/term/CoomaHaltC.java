@@ -11,5 +11,4 @@
 package org.bitbucket.inkytonik.cooma.truffle.nodes.term;
 
 public class CoomaHaltC extends CoomaCont {
-
 }
@@ -10,9 +10,13 @@
 
 package org.bitbucket.inkytonik.cooma.truffle.nodes.term;
 
+import com.oracle.truffle.api.CompilerDirectives.CompilationFinal;
+import com.oracle.truffle.api.frame.FrameSlot;
 import com.oracle.truffle.api.frame.VirtualFrame;
 import com.oracle.truffle.api.nodes.Node;
 import com.oracle.truffle.api.nodes.NodeInfo;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.environment.Lambda;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.environment.Scope;
 import org.bitbucket.inkytonik.cooma.truffle.runtime.ContinuationClosure;
 
 @NodeInfo(shortName = "letC", description = "Continuation binding")
@@ -22,12 +26,19 @@ public class CoomaLetCTermNode extends CoomaTermNode {
 
 	private final String parameter;
 
-	@Node.Child
-	private CoomaTermNode t;
+	/**
+	 * Continuation body, which runs under its own root node
+	 */
+	private final CoomaTermNode t;
 
 	@Node.Child
 	private CoomaTermNode body;
 
+	@CompilationFinal
+	private FrameSlot slot;
+	@CompilationFinal
+	private Lambda lambda;
+
 	public CoomaLetCTermNode(String identifier, String parameter, CoomaTermNode t, CoomaTermNode body) {
 		this.identifier = identifier;
 		this.parameter = parameter;
@@ -35,10 +46,20 @@ public class CoomaLetCTermNode extends CoomaTermNode {
 		this.body = body;
 	}
 
+	@Override
+	public void resolve(Scope scope) {
+		Scope inner = scope.child();
+		FrameSlot x = inner.bind(parameter, false);
+		t.resolve(inner);
+		lambda = inner.lambda(identifier, new FrameSlot[] { x }, t);
+		slot = scope.bind(identifier, true);
+		body.resolve(scope);
+	}
+
 	@Override
 	public Object executeGeneric(VirtualFrame frame) {
-		ContinuationClosure val = new ContinuationClosure(obtainRho(), this.parameter, this.t);
-		extendRho(identifier, val);
+		ContinuationClosure val = new ContinuationClosure(lambda, lambda.getCaptures().capture(frame, null));
+		frame.setObject(slot, val);
 		return body.executeGeneric(frame);
 
 	}
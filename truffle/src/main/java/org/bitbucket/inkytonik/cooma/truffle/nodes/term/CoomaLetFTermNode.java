@@ -10,12 +10,16 @@
 
 package org.bitbucket.inkytonik.cooma.truffle.nodes.term;
 
+import com.oracle.truffle.api.CompilerDirectives.CompilationFinal;
+import com.oracle.truffle.api.frame.FrameSlot;
+import com.oracle.truffle.api.frame.MaterializedFrame;
 import com.oracle.truffle.api.frame.VirtualFrame;
+import com.oracle.truffle.api.nodes.ExplodeLoop;
 import com.oracle.truffle.api.nodes.NodeInfo;
-import org.bitbucket.inkytonik.cooma.truffle.nodes.environment.Lazy;
-import org.bitbucket.inkytonik.cooma.truffle.nodes.environment.Rho;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.environment.Lambda;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.environment.Scope;
 import org.bitbucket.inkytonik.cooma.truffle.nodes.value.CoomaDefTerm;
-import org.bitbucket.inkytonik.cooma.truffle.runtime.FuncDefs;
+import org.bitbucket.inkytonik.cooma.truffle.runtime.FunctionClosure;
 
 @NodeInfo(shortName = "letF", description = "Function bindings")
 public class CoomaLetFTermNode extends CoomaTermNode {
@@ -26,25 +30,42 @@ public class CoomaLetFTermNode extends CoomaTermNode {
 	@Child
 	private CoomaTermNode body;
 
+	@CompilationFinal(dimensions = 1)
+	private FrameSlot[] slots;
+	@CompilationFinal(dimensions = 1)
+	private Lambda[] lambdas;
+
 	public CoomaLetFTermNode(CoomaDefTerm[] defTerms, CoomaTermNode body) {
 		this.defTerms = defTerms;
 		this.body = body;
 	}
 
 	@Override
-	public Object executeGeneric(VirtualFrame frame) {
-		Rho p = obtainRho();
-		FuncDefs defs = new FuncDefs();
-
-		for (CoomaDefTerm tmp : defTerms) {
-			defs.getDefs().put(tmp.getF(), tmp);
-			p = p.extend(tmp.getF(), defs);
+	public void resolve(Scope scope) {
+		slots = new FrameSlot[defTerms.length];
+		lambdas = new Lambda[defTerms.length];
+		for (int i = 0; i < defTerms.length; i++) {
+			slots[i] = scope.bind(defTerms[i].getF(), false);
 		}
+		for (int i = 0; i < defTerms.length; i++) {
+			lambdas[i] = defTerms[i].resolve(scope.child());
+		}
+		body.resolve(scope);
+	}
 
-		final Rho finalP = p;
-		defs.setP2(Lazy.of(() -> finalP));
-		replaceRho(finalP);
-
+	@Override
+	@ExplodeLoop
+	public Object executeGeneric(VirtualFrame frame) {
+		// Definitions can capture each other, so bind all of them before
+		// filling any of their capture frames
+		MaterializedFrame[] captured = new MaterializedFrame[lambdas.length];
+		for (int i = 0; i < lambdas.length; i++) {
+			captured[i] = lambdas[i].getCaptures().create(null);
+			frame.setObject(slots[i], new FunctionClosure(lambdas[i], captured[i]));
+		}
+		for (int i = 0; i < lambdas.length; i++) {
+			lambdas[i].getCaptures().fill(captured[i], frame);
+		}
 		return body.executeGeneric(frame);
 	}
 }
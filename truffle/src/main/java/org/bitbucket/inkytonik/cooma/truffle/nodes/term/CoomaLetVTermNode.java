@@ -10,9 +10,12 @@
 
 package org.bitbucket.inkytonik.cooma.truffle.nodes.term;
 
+import com.oracle.truffle.api.CompilerDirectives.CompilationFinal;
+import com.oracle.truffle.api.frame.FrameSlot;
 import com.oracle.truffle.api.frame.VirtualFrame;
 import com.oracle.truffle.api.nodes.Node;
 import com.oracle.truffle.api.nodes.NodeInfo;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.environment.Scope;
 import org.bitbucket.inkytonik.cooma.truffle.nodes.value.CoomaValueNode;
 import org.bitbucket.inkytonik.cooma.truffle.runtime.RuntimeValue;
 
@@ -24,6 +27,8 @@ public final class CoomaLetVTermNode extends CoomaTermNode {
 	private CoomaValueNode value;
 	@Node.Child
 	private CoomaTermNode body;
+	@CompilationFinal
+	private FrameSlot slot;
 
 	public CoomaLetVTermNode(String identifier, CoomaValueNode value, CoomaTermNode body) {
 		this.identifier = identifier;
@@ -31,10 +36,17 @@ public final class CoomaLetVTermNode extends CoomaTermNode {
 		this.body = body;
 	}
 
+	@Override
+	public void resolve(Scope scope) {
+		value.resolve(scope);
+		slot = scope.bind(identifier, false);
+		body.resolve(scope);
+	}
+
 	@Override
 	public Object executeGeneric(VirtualFrame frame) {
 		RuntimeValue val = value.evaluate(frame);
-		extendRho(identifier, val);
+		frame.setObject(slot, val);
 		return body.executeGeneric(frame);
 	}
 }
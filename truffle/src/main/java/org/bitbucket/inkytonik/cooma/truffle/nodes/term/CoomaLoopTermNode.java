@@ -0,0 +1,100 @@
+/*
+ * This file is part of Cooma.
+ *
+ * Copyright (C) 2019-2023 Anthony M Sloane, Macquarie University.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.bitbucket.inkytonik.cooma.truffle.nodes.term;
+
+import com.oracle.truffle.api.Truffle;
+import com.oracle.truffle.api.frame.FrameSlot;
+import com.oracle.truffle.api.frame.VirtualFrame;
+import com.oracle.truffle.api.nodes.LoopNode;
+import com.oracle.truffle.api.nodes.Node;
+import com.oracle.truffle.api.nodes.NodeInfo;
+import com.oracle.truffle.api.nodes.RepeatingNode;
+import com.oracle.truffle.api.source.SourceSection;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.environment.Binding;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.environment.Lambda;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.environment.Scope;
+
+/**
+ * The body of a function, run by a Truffle loop. Cooma has no loops, so
+ * iteration is written as tail calls of a function to itself. When such a
+ * call also passes on the function's own continuation it is a jump back to
+ * the start of the body with a new argument, which is made here by running
+ * the body again in the same frame. Long-running iterations are then loops
+ * that Graal can compile with on-stack replacement.
+ */
+@NodeInfo(shortName = "loop", description = "Function body loop")
+public final class CoomaLoopTermNode extends CoomaTermNode {
+
+	@Child
+	private LoopNode loop;
+
+	/**
+	 * The slot that holds the value of the body when it doesn't loop.
+	 */
+	private final FrameSlot result;
+
+	/**
+	 * The source of the body, which is also the source of the loop.
+	 */
+	private final SourceSection sourceSection;
+
+	public CoomaLoopTermNode(Lambda lambda) {
+		this.result = lambda.getDescriptor().addFrameSlot(new Binding("$result", true));
+		this.loop = Truffle.getRuntime().createLoopNode(new Body(lambda.getBody(), result));
+		this.sourceSection = lambda.getBody().getSourceSection();
+	}
+
+	@Override
+	public SourceSection getSourceSection() {
+		return sourceSection;
+	}
+
+	@Override
+	protected boolean isStatement() {
+		return false;
+	}
+
+	@Override
+	public void resolve(Scope scope) {
+		// The body has already been resolved when its lambda was made
+	}
+
+	@Override
+	public Object executeGeneric(VirtualFrame frame) {
+		loop.executeLoop(frame);
+		return frame.getValue(result);
+	}
+
+	private static final class Body extends Node implements RepeatingNode {
+
+		@Child
+		private CoomaTermNode body;
+
+		private final FrameSlot result;
+
+		Body(CoomaTermNode body, FrameSlot result) {
+			this.body = body;
+			this.result = result;
+		}
+
+		@Override
+		public boolean executeRepeating(VirtualFrame frame) {
+			try {
+				frame.setObject(result, body.executeGeneric(frame));
+				return false;
+			} catch (SelfTailCallException jump) {
+				return true;
+			}
+		}
+
+	}
+
+}
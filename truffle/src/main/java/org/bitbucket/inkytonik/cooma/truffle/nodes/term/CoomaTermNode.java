@@ -11,13 +11,98 @@
 package org.bitbucket.inkytonik.cooma.truffle.nodes.term;
 
 import com.oracle.truffle.api.frame.VirtualFrame;
+import com.oracle.truffle.api.instrumentation.GenerateWrapper;
+import com.oracle.truffle.api.instrumentation.InstrumentableNode;
+import com.oracle.truffle.api.instrumentation.ProbeNode;
+import com.oracle.truffle.api.instrumentation.StandardTags.RootTag;
+import com.oracle.truffle.api.instrumentation.StandardTags.StatementTag;
+import com.oracle.truffle.api.instrumentation.Tag;
+import com.oracle.truffle.api.source.SourceSection;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.CoomaDispatchNode;
 import org.bitbucket.inkytonik.cooma.truffle.nodes.CoomaNode;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.environment.Lambda;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.environment.Scope;
 
-public abstract class CoomaTermNode extends CoomaNode {
+/**
+ * A term of the IR. Terms that come from source code have the section of the
+ * code that they were compiled from, so that they can be instrumented by tools
+ * such as profilers, coverage and debuggers. Every such term is a statement,
+ * and the body of a root is also tagged as the root.
+ */
+@GenerateWrapper
+public abstract class CoomaTermNode extends CoomaNode implements InstrumentableNode {
+
+	/**
+	 * The number of direct calls that can be nested before a jump is thrown
+	 * out to the trampoline in the root node.
+	 */
+	public static final int MAX_DIRECT_CALLS = 64;
 
 	/**
 	 * The execute method when no specialization is possible.
 	 */
 	public abstract Object executeGeneric(VirtualFrame frame);
 
+	private SourceSection sourceSection;
+
+	private boolean rootBody;
+
+	@Override
+	public SourceSection getSourceSection() {
+		return sourceSection;
+	}
+
+	public void setSourceSection(SourceSection sourceSection) {
+		this.sourceSection = sourceSection;
+	}
+
+	/**
+	 * Record that this term is the body of a root node.
+	 */
+	public void setRootBody() {
+		this.rootBody = true;
+	}
+
+	@Override
+	public boolean isInstrumentable() {
+		return getSourceSection() != null;
+	}
+
+	@Override
+	public WrapperNode createWrapper(ProbeNode probe) {
+		return new CoomaTermNodeWrapper(this, probe);
+	}
+
+	@Override
+	public boolean hasTag(Class<? extends Tag> tag) {
+		return (tag == RootTag.class && rootBody) || (tag == StatementTag.class && isStatement());
+	}
+
+	/**
+	 * Whether this term is a statement of the source program.
+	 */
+	protected boolean isStatement() {
+		return true;
+	}
+
+	/**
+	 * Resolve the variables and continuations of this term to the frame slots
+	 * of `scope`, binding the ones that the term defines.
+	 */
+	public abstract void resolve(Scope scope);
+
+	/**
+	 * Jump to the body of `lambda` with `arguments`, by calling it through
+	 * `dispatch` unless the call would be nested too deeply.
+	 */
+	protected Object jump(VirtualFrame frame, CoomaDispatchNode dispatch, Lambda lambda, Object[] arguments) {
+		int depth = (Integer) frame.getArguments()[Lambda.DEPTH];
+		if (depth < MAX_DIRECT_CALLS) {
+			arguments[Lambda.DEPTH] = depth + 1;
+			return dispatch.executeDispatch(lambda, arguments);
+		} else {
+			throw new TailCallException(lambda, arguments);
+		}
+	}
+
 }
@@ -0,0 +1,30 @@
+/*
+ * This file is part of Cooma.
+ *
+ * Copyright (C) 2019-2023 Anthony M Sloane, Macquarie University.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.bitbucket.inkytonik.cooma.truffle.nodes.term;
+
+import com.oracle.truffle.api.nodes.ControlFlowException;
+
+/**
+ * A tail call of a function to itself with its own continuation, whose new
+ * argument has already been written to the parameter slot of the current
+ * frame. It is caught by the {@link CoomaLoopTermNode} around the body of
+ * the function, which runs the body again.
+ */
+public final class SelfTailCallException extends ControlFlowException {
+
+	private static final long serialVersionUID = 1L;
+
+	public static final SelfTailCallException INSTANCE = new SelfTailCallException();
+
+	private SelfTailCallException() {
+	}
+
+}
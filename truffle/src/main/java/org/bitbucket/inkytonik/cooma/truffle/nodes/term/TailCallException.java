@@ -0,0 +1,43 @@
+/*
+ * This file is part of Cooma.
+ *
+ * Copyright (C) 2019-2023 Anthony M Sloane, Macquarie University.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.bitbucket.inkytonik.cooma.truffle.nodes.term;
+
+import com.oracle.truffle.api.nodes.ControlFlowException;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.environment.Lambda;
+
+/**
+ * A jump to a continuation or function body that is too deep in a chain
+ * of direct calls to be called where it is made. The jump is thrown out to
+ * the root node, which calls the target, so that the Java stack doesn't
+ * grow with the length of the execution.
+ */
+public final class TailCallException extends ControlFlowException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final Lambda target;
+	private final Object[] arguments;
+
+	public TailCallException(Lambda target, Object[] arguments) {
+		this.target = target;
+		this.arguments = arguments;
+		arguments[Lambda.DEPTH] = 0;
+	}
+
+	public Lambda getTarget() {
+		return target;
+	}
+
+	public Object[] getArguments() {
+		return arguments;
+	}
+
+}
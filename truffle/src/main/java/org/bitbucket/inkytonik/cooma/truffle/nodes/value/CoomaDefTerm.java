@@ -10,9 +10,12 @@
 
 package org.bitbucket.inkytonik.cooma.truffle.nodes.value;
 
+import com.oracle.truffle.api.frame.FrameSlot;
 import com.oracle.truffle.api.nodes.NodeInfo;
 import lombok.Getter;
 import org.bitbucket.inkytonik.cooma.truffle.nodes.CoomaNode;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.environment.Lambda;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.environment.Scope;
 import org.bitbucket.inkytonik.cooma.truffle.nodes.term.CoomaTermNode;
 
 @Getter
@@ -23,8 +26,10 @@ public class CoomaDefTerm extends CoomaNode {
 	private final String k;
 	private final String x;
 
-	@Child
-	private CoomaTermNode body;
+	/**
+	 * Function body, which runs under its own root node
+	 */
+	private final CoomaTermNode body;
 
 	public CoomaDefTerm(String f, String k, String x, CoomaTermNode body) {
 		this.f = f;
@@ -33,4 +38,14 @@ public class CoomaDefTerm extends CoomaNode {
 		this.body = body;
 	}
 
+	/**
+	 * Resolve the body of this definition in `scope`, which should be a new
+	 * child of the scope of the definition.
+	 */
+	public Lambda resolve(Scope scope) {
+		FrameSlot[] params = { scope.bind(k, true), scope.bind(x, false) };
+		body.resolve(scope);
+		return scope.lambda(f, params, body);
+	}
+
 }
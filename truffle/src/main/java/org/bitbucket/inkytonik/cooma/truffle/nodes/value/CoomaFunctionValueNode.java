@@ -10,8 +10,12 @@
 
 package org.bitbucket.inkytonik.cooma.truffle.nodes.value;
 
+import com.oracle.truffle.api.CompilerDirectives.CompilationFinal;
+import com.oracle.truffle.api.frame.FrameSlot;
 import com.oracle.truffle.api.frame.VirtualFrame;
 import com.oracle.truffle.api.nodes.NodeInfo;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.environment.Lambda;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.environment.Scope;
 import org.bitbucket.inkytonik.cooma.truffle.nodes.term.CoomaTermNode;
 import org.bitbucket.inkytonik.cooma.truffle.runtime.FunctionClosure;
 
@@ -28,8 +32,13 @@ public class CoomaFunctionValueNode extends CoomaValueNode {
 	 */
 	private final String x;
 
-	@Child
-	private CoomaTermNode body;
+	/**
+	 * Function body, which runs under its own root node
+	 */
+	private final CoomaTermNode body;
+
+	@CompilationFinal
+	private Lambda lambda;
 
 	public CoomaFunctionValueNode(String k, String x, CoomaTermNode body) {
 		this.k = k;
@@ -37,8 +46,16 @@ public class CoomaFunctionValueNode extends CoomaValueNode {
 		this.body = body;
 	}
 
+	@Override
+	public void resolve(Scope scope) {
+		Scope inner = scope.child();
+		FrameSlot[] params = { inner.bind(k, true), inner.bind(x, false) };
+		body.resolve(inner);
+		lambda = inner.lambda("fun", params, body);
+	}
+
 	@Override
 	public FunctionClosure evaluate(VirtualFrame frame) {
-		return new FunctionClosure(obtainRho(), k, x, body);
+		return new FunctionClosure(lambda, lambda.getCaptures().capture(frame, null));
 	}
 }
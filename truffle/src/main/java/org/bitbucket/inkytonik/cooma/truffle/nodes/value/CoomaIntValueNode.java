@@ -13,19 +13,24 @@ package org.bitbucket.inkytonik.cooma.truffle.nodes.value;
 import com.oracle.truffle.api.frame.VirtualFrame;
 import com.oracle.truffle.api.nodes.NodeInfo;
 import java.math.BigInteger;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.environment.Scope;
 import org.bitbucket.inkytonik.cooma.truffle.runtime.IntRuntimeValue;
 
 @NodeInfo(shortName = "intV", description = "Integer value")
 public class CoomaIntValueNode extends CoomaValueNode {
 
-	private final BigInteger value;
+	private final IntRuntimeValue value;
 
 	public CoomaIntValueNode(BigInteger value) {
-		this.value = value;
+		this.value = IntRuntimeValue.valueOf(value);
+	}
+
+	@Override
+	public void resolve(Scope scope) {
 	}
 
 	@Override
 	public IntRuntimeValue evaluate(VirtualFrame frame) {
-		return new IntRuntimeValue(value);
+		return value;
 	}
 }
@@ -10,32 +10,78 @@
 
 package org.bitbucket.inkytonik.cooma.truffle.nodes.value;
 
+import com.oracle.truffle.api.CompilerDirectives.CompilationFinal;
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
 import com.oracle.truffle.api.frame.VirtualFrame;
+import com.oracle.truffle.api.nodes.ExplodeLoop;
 import com.oracle.truffle.api.nodes.NodeInfo;
 import lombok.Getter;
-import lombok.RequiredArgsConstructor;
 import org.bitbucket.inkytonik.cooma.Backend;
 import org.bitbucket.inkytonik.cooma.CoomaParserSyntax.Primitive;
-import org.bitbucket.inkytonik.cooma.Primitives;
+import org.bitbucket.inkytonik.cooma.CoomaParserSyntax.RecSelectP;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.environment.Addr;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.environment.Scope;
 import org.bitbucket.inkytonik.cooma.truffle.runtime.RuntimeValue;
+import org.bitbucket.inkytonik.cooma.truffle.runtime.StringRuntimeValue;
+import scala.collection.immutable.Vector;
 import scala.jdk.javaapi.CollectionConverters;
 
 import java.util.Arrays;
 
+/**
+ * A primitive that has no specialised node, such as a capability operation.
+ * These do I/O or build records, so they are run by the backend behind a
+ * boundary.
+ */
 @Getter
-@RequiredArgsConstructor
 @NodeInfo(shortName = "prmV", description = "Primitive value")
 public class CoomaPrimitiveValue extends CoomaValueNode {
 
 	private final Backend backend;
 	private final Primitive p;
 	private final String[] xs;
+	private final Vector<String> names;
+
+	/**
+	 * Addresses of the operands, or null for an operand that is not a
+	 * variable
+	 */
+	@CompilationFinal(dimensions = 1)
+	private Addr[] addrs;
+
+	public CoomaPrimitiveValue(Backend backend, Primitive p, String[] xs) {
+		this.backend = backend;
+		this.p = p;
+		this.xs = xs;
+		this.names = CollectionConverters.asScala(Arrays.asList(xs)).toVector();
+	}
 
 	@Override
+	public void resolve(Scope scope) {
+		addrs = new Addr[xs.length];
+		for (int i = 0; i < xs.length; i++) {
+			// The second operand of a selection is a field name, not a variable
+			if (!(p instanceof RecSelectP && i == 1)) {
+				addrs[i] = scope.lookup(xs[i], false);
+			}
+		}
+	}
+
+	@Override
+	@ExplodeLoop
 	public RuntimeValue evaluate(VirtualFrame frame) {
-		return (RuntimeValue) backend.evalPrim(p, obtainRho(),
-				CollectionConverters.asScala(Arrays.asList(xs)).toVector(),
-				CollectionConverters.asScala(Arrays.asList(getArgs()).iterator()).toVector());
+		RuntimeValue[] vs = new RuntimeValue[xs.length];
+		for (int i = 0; i < xs.length; i++) {
+			vs[i] = (addrs[i] == null) ? new StringRuntimeValue(xs[i]) : getR(frame, addrs[i]);
+		}
+		return run(getContext().getGlobals(), vs, getArgs());
+	}
+
+	@TruffleBoundary
+	private RuntimeValue run(Object rho, RuntimeValue[] vs, String[] args) {
+		return (RuntimeValue) backend.evalPrim(p, rho, names,
+				CollectionConverters.asScala(Arrays.asList(vs)).toVector(),
+				CollectionConverters.asScala(Arrays.asList(args)).toVector());
 	}
 
 }
@@ -10,15 +10,15 @@
 
 package org.bitbucket.inkytonik.cooma.truffle.nodes.value;
 
+import com.oracle.truffle.api.CompilerDirectives.CompilationFinal;
 import com.oracle.truffle.api.frame.VirtualFrame;
-import org.bitbucket.inkytonik.cooma.truffle.runtime.FieldValueRuntime;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.environment.Addr;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.environment.Scope;
 import org.bitbucket.inkytonik.cooma.truffle.runtime.RecRuntimeValue;
 import org.bitbucket.inkytonik.cooma.truffle.runtime.RuntimeValue;
 
+import com.oracle.truffle.api.nodes.ExplodeLoop;
 import com.oracle.truffle.api.nodes.NodeInfo;
-import java.util.Arrays;
-import java.util.List;
-import java.util.stream.Collectors;
 import lombok.Getter;
 
 @Getter
@@ -26,17 +26,35 @@ import lombok.Getter;
 public class CoomaRecValueNode extends CoomaValueNode {
 
 	private final CoomaFldV[] fields;
+	@CompilationFinal(dimensions = 1)
+	private final String[] names;
+	@CompilationFinal(dimensions = 1)
+	private Addr[] addrs;
 
 	public CoomaRecValueNode(CoomaFldV[] fields) {
 		this.fields = fields;
+		this.names = new String[fields.length];
+		for (int i = 0; i < fields.length; i++) {
+			names[i] = fields[i].getF();
+		}
 	}
 
 	@Override
+	public void resolve(Scope scope) {
+		addrs = new Addr[fields.length];
+		for (int i = 0; i < fields.length; i++) {
+			addrs[i] = scope.lookup(fields[i].getX(), false);
+		}
+	}
+
+	@Override
+	@ExplodeLoop
 	public RuntimeValue evaluate(VirtualFrame frame) {
-		List<FieldValueRuntime> fieldRL = Arrays.stream(fields)
-				.map((CoomaFldV field) -> new FieldValueRuntime(field.getF(), obtainFromRho(field.getX())))
-				.collect(Collectors.toList());
-		return new RecRuntimeValue(fieldRL.toArray(new FieldValueRuntime[fields.length]));
+		RuntimeValue[] values = new RuntimeValue[fields.length];
+		for (int i = 0; i < fields.length; i++) {
+			values[i] = getR(frame, addrs[i]);
+		}
+		return RecRuntimeValue.of(names, values);
 	}
 
 }
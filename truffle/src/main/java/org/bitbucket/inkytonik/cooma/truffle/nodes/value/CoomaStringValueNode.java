@@ -13,6 +13,8 @@ package org.bitbucket.inkytonik.cooma.truffle.nodes.value;
 import com.oracle.truffle.api.frame.VirtualFrame;
 import com.oracle.truffle.api.nodes.NodeInfo;
 import lombok.Getter;
+import org.bitbucket.inkytonik.cooma.Rope;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.environment.Scope;
 import org.bitbucket.inkytonik.cooma.truffle.runtime.StringRuntimeValue;
 
 @Getter
@@ -20,13 +22,19 @@ import org.bitbucket.inkytonik.cooma.truffle.runtime.StringRuntimeValue;
 public class CoomaStringValueNode extends CoomaValueNode {
 
 	private final String value;
+	private final Rope rope;
 
 	public CoomaStringValueNode(String value) {
 		this.value = value;
+		this.rope = Rope.literal(value);
+	}
+
+	@Override
+	public void resolve(Scope scope) {
 	}
 
 	@Override
 	public StringRuntimeValue evaluate(VirtualFrame frame) {
-		return new StringRuntimeValue(value);
+		return new StringRuntimeValue(rope);
 	}
 }
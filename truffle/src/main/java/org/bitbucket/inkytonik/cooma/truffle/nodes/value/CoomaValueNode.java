@@ -12,10 +12,17 @@ package org.bitbucket.inkytonik.cooma.truffle.nodes.value;
 
 import com.oracle.truffle.api.frame.VirtualFrame;
 import org.bitbucket.inkytonik.cooma.truffle.nodes.CoomaNode;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.environment.Scope;
 import org.bitbucket.inkytonik.cooma.truffle.runtime.RuntimeValue;
 
 public abstract class CoomaValueNode extends CoomaNode {
 
 	public abstract RuntimeValue evaluate(VirtualFrame frame);
 
+	/**
+	 * Resolve the variables that are used by this value to the frame slots
+	 * of `scope`.
+	 */
+	public abstract void resolve(Scope scope);
+
 }
@@ -10,13 +10,13 @@
 
 package org.bitbucket.inkytonik.cooma.truffle.nodes.value;
 
+import com.oracle.truffle.api.CompilerDirectives.CompilationFinal;
 import com.oracle.truffle.api.frame.VirtualFrame;
 import com.oracle.truffle.api.nodes.NodeInfo;
-import java.util.Arrays;
-import java.util.List;
-import java.util.stream.Collectors;
 import lombok.Getter;
-import org.bitbucket.inkytonik.cooma.truffle.runtime.FieldValueRuntime;
+import org.bitbucket.inkytonik.cooma.ConstructorTags;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.environment.Addr;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.environment.Scope;
 import org.bitbucket.inkytonik.cooma.truffle.runtime.VarRuntimeValue;
 import org.bitbucket.inkytonik.cooma.truffle.runtime.RuntimeValue;
 
@@ -25,14 +25,23 @@ import org.bitbucket.inkytonik.cooma.truffle.runtime.RuntimeValue;
 public class CoomaVarValueNode extends CoomaValueNode {
 
 	private final CoomaFldV fldV;
+	private final int tag;
+	@CompilationFinal
+	private Addr xAddr;
 
 	public CoomaVarValueNode(CoomaFldV fldV) {
 		this.fldV = fldV;
+		this.tag = ConstructorTags.tagOf(fldV.getF());
+	}
+
+	@Override
+	public void resolve(Scope scope) {
+		xAddr = scope.lookup(fldV.getX(), false);
 	}
 
 	@Override
 	public RuntimeValue evaluate(VirtualFrame frame) {
-		return new VarRuntimeValue(fldV.getF(), obtainFromRho(fldV.getX()));
+		return new VarRuntimeValue(fldV.getF(), tag, getR(frame, xAddr));
 	}
 
 }
@@ -10,15 +10,18 @@
 
 package org.bitbucket.inkytonik.cooma.truffle.nodes.value;
 
+import com.oracle.truffle.api.CompilerDirectives.CompilationFinal;
 import com.oracle.truffle.api.frame.VirtualFrame;
+import com.oracle.truffle.api.nodes.ExplodeLoop;
 import com.oracle.truffle.api.nodes.NodeInfo;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.environment.Addr;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.environment.Scope;
 import org.bitbucket.inkytonik.cooma.truffle.runtime.RuntimeValue;
 import org.bitbucket.inkytonik.cooma.truffle.runtime.VecRuntimeValue;
 import scala.collection.Iterator;
 import scala.collection.immutable.Vector;
-import scala.collection.immutable.VectorBuilder;
 
 @Getter
 @RequiredArgsConstructor
@@ -26,16 +29,26 @@ import scala.collection.immutable.VectorBuilder;
 public class CoomaVecValueNode extends CoomaValueNode {
 
 	private final Vector<String> vector;
+	@CompilationFinal(dimensions = 1)
+	private Addr[] addrs;
 
 	@Override
-	public RuntimeValue evaluate(VirtualFrame frame) {
-		VectorBuilder<RuntimeValue> values = new VectorBuilder<RuntimeValue>();
+	public void resolve(Scope scope) {
+		addrs = new Addr[vector.length()];
 		Iterator<String> iter = vector.iterator();
-		while (iter.hasNext()) {
-			RuntimeValue value = obtainFromRho(iter.next());
-			values.addOne(value);
+		for (int i = 0; iter.hasNext(); i++) {
+			addrs[i] = scope.lookup(iter.next(), false);
+		}
+	}
+
+	@Override
+	@ExplodeLoop
+	public RuntimeValue evaluate(VirtualFrame frame) {
+		RuntimeValue[] values = new RuntimeValue[addrs.length];
+		for (int i = 0; i < addrs.length; i++) {
+			values[i] = getR(frame, addrs[i]);
 		}
-		return new VecRuntimeValue(values.result());
+		return VecRuntimeValue.of(values);
 	}
 
 }
@@ -10,19 +10,17 @@
 
 package org.bitbucket.inkytonik.cooma.truffle.runtime;
 
+import com.oracle.truffle.api.frame.MaterializedFrame;
 import de.uka.ilkd.pp.DataLayouter;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
-import org.bitbucket.inkytonik.cooma.truffle.nodes.environment.Rho;
-import org.bitbucket.inkytonik.cooma.truffle.nodes.term.CoomaTermNode;
-import java.util.Comparator;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.environment.Lambda;
 
 @Getter
 @RequiredArgsConstructor
-public class ContinuationClosure extends RuntimeValue implements Comparable<ContinuationClosure> {
-	private final Rho rho;
-	private final String x;
-	private final CoomaTermNode z;
+public class ContinuationClosure extends RuntimeValue {
+	private final Lambda lambda;
+	private final MaterializedFrame captured;
 
 	@Override
 	public String toString() {
@@ -34,9 +32,4 @@ public class ContinuationClosure extends RuntimeValue implements Comparable<Cont
 		l.print(this.toString());
 	}
 
-	@Override
-	public int compareTo(ContinuationClosure continuationClosure) {
-		return Comparator.comparing(ContinuationClosure::getX).compare(this, continuationClosure);
-	}
-
 }
@@ -10,12 +10,14 @@
 
 package org.bitbucket.inkytonik.cooma.truffle.runtime;
 
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.api.Truffle;
 import com.oracle.truffle.api.TruffleLanguage;
+import com.oracle.truffle.api.frame.MaterializedFrame;
 import lombok.val;
 import org.bitbucket.inkytonik.cooma.Backend;
 import org.bitbucket.inkytonik.cooma.Config;
 import org.bitbucket.inkytonik.cooma.Primitives;
-import org.bitbucket.inkytonik.cooma.truffle.nodes.environment.Rho;
 import scala.collection.JavaConverters;
 
 import java.io.PrintStream;
@@ -32,8 +34,32 @@ import java.util.Map;
 public final class CoomaContext {
 
 	private final TruffleLanguage.Env env;
-	private Rho rho;
-	private String[] applicationArguments;
+
+	/**
+	 * The environment of the programs that are run in this context, made
+	 * by the prelude and extended by REPL entries. Frames are chained
+	 * through their first argument. Threads that run in this context only
+	 * share state through this field and the application arguments, which
+	 * are replaced rather than changed. The globals are only replaced by
+	 * the halts of the prelude and REPL entries, while holding the lock of
+	 * the context.
+	 */
+	private volatile MaterializedFrame globals;
+
+	/**
+	 * Whether the globals have been made by running the prelude. Only used
+	 * while holding the lock of the context.
+	 */
+	private boolean initialised;
+
+	/**
+	 * The version of the dynamic prelude that made the globals, or null if
+	 * they weren't made by a prelude. Programs are resolved against the slots
+	 * of the globals, so a program compiled in one context can only be reused
+	 * by contexts whose globals come from the same version.
+	 */
+	private volatile String preludeVersion;
+	private volatile String[] applicationArguments;
 	private PrintStream originalSout;
 	private Backend truffleBackend;
 	private Config config;
@@ -46,19 +72,50 @@ public final class CoomaContext {
 		this.config = config;
 		this.config.verify();
 		System.setOut(new PrintStream(env.out()));
-		this.rho = new Rho();
+		this.globals = emptyFrame();
 	}
 
 	public TruffleLanguage.Env getEnv() {
 		return env;
 	}
 
-	public Rho getRho() {
-		return rho;
+	public static MaterializedFrame emptyFrame() {
+		return Truffle.getRuntime().createMaterializedFrame(new Object[] { null });
+	}
+
+	public MaterializedFrame getGlobals() {
+		return globals;
+	}
+
+	public void setGlobals(MaterializedFrame globals) {
+		this.globals = globals;
+	}
+
+	/**
+	 * Make `exported` the globals, with the current globals as its parent.
+	 * Entries that halt at the same time each add their definitions, even
+	 * if they started with the same globals.
+	 */
+	@TruffleBoundary
+	public synchronized void export(MaterializedFrame exported) {
+		exported.getArguments()[0] = globals;
+		globals = exported;
+	}
+
+	public boolean isInitialised() {
+		return initialised;
+	}
+
+	public void setInitialised(boolean initialised) {
+		this.initialised = initialised;
+	}
+
+	public String getPreludeVersion() {
+		return preludeVersion;
 	}
 
-	public void setRho(Rho rho) {
-		this.rho = rho;
+	public void setPreludeVersion(String preludeVersion) {
+		this.preludeVersion = preludeVersion;
 	}
 
 	public String[] getApplicationArguments() {
@@ -10,26 +10,17 @@
 
 package org.bitbucket.inkytonik.cooma.truffle.runtime;
 
+import com.oracle.truffle.api.frame.MaterializedFrame;
 import de.uka.ilkd.pp.DataLayouter;
 import lombok.Getter;
-import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
-import org.bitbucket.inkytonik.cooma.truffle.nodes.environment.Rho;
-import org.bitbucket.inkytonik.cooma.truffle.nodes.term.CoomaTermNode;
-import java.util.Comparator;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.environment.Lambda;
 
 @Getter
 @RequiredArgsConstructor
-public final class FunctionClosure extends FunctionClosureHolder implements Comparable<FunctionClosure> {
-	private final Rho rho;
-	private final String k;
-	private final String x;
-	private final CoomaTermNode z;
-
-	@Override
-	public FunctionClosure get(String key) {
-		return this;
-	}
+public final class FunctionClosure extends RuntimeValue {
+	private final Lambda lambda;
+	private final MaterializedFrame captured;
 
 	@Override
 	public String toString() {
@@ -41,9 +32,4 @@ public final class FunctionClosure extends FunctionClosureHolder implements Comp
 		l.print(this.toString());
 	}
 
-	@Override
-	public int compareTo(FunctionClosure functionClosure) {
-		return Comparator.comparing(FunctionClosure::getX).compare(this, functionClosure);
-	}
-
 }
@@ -1,21 +0,0 @@
-/*
- * This file is part of Cooma.
- *
- * Copyright (C) 2019-2023 Anthony M Sloane, Macquarie University.
- *
- * This Source Code Form is subject to the terms of the Mozilla Public
- * License, v. 2.0. If a copy of the MPL was not distributed with this
- * file, You can obtain one at http://mozilla.org/MPL/2.0/.
- */
-
-package org.bitbucket.inkytonik.cooma.truffle.runtime;
-
-public abstract class FunctionClosureHolder extends RuntimeValue {
-	public abstract FunctionClosure get(String key);
-
-	@Override
-	public String print() {
-		return "<function>";
-	}
-
-}
@@ -17,23 +17,78 @@ import de.uka.ilkd.pp.DataLayouter;
 import java.math.BigInteger;
 import java.util.Comparator;
 
-import lombok.Getter;
-import lombok.RequiredArgsConstructor;
-
-@Getter
-@RequiredArgsConstructor
 @ExportLibrary(InteropLibrary.class)
 public class IntRuntimeValue extends RuntimeValue implements TruffleObject, Comparable<IntRuntimeValue> {
-	private final BigInteger innerValue;
+
+	private static final int MIN_CACHED = -128;
+	private static final int MAX_CACHED = 1024;
+	private static final IntRuntimeValue[] CACHE = new IntRuntimeValue[MAX_CACHED - MIN_CACHED + 1];
+
+	static {
+		for (int i = 0; i < CACHE.length; i++) {
+			CACHE[i] = new IntRuntimeValue(MIN_CACHED + i, null);
+		}
+	}
+
+	/**
+	 * An integer that fits in a long is held in smallValue and has a null
+	 * bigValue, so arithmetic on it doesn't need a BigInteger. Only integers
+	 * that don't fit in a long are held in bigValue.
+	 */
+	private final long smallValue;
+	private final BigInteger bigValue;
+
+	private IntRuntimeValue(long smallValue, BigInteger bigValue) {
+		this.smallValue = smallValue;
+		this.bigValue = bigValue;
+	}
+
+	public static IntRuntimeValue valueOf(long value) {
+		if ((value >= MIN_CACHED) && (value <= MAX_CACHED)) {
+			return CACHE[(int) (value - MIN_CACHED)];
+		}
+		return new IntRuntimeValue(value, null);
+	}
+
+	public static IntRuntimeValue valueOf(BigInteger value) {
+		if (value.bitLength() < 64) {
+			return valueOf(value.longValue());
+		}
+		return new IntRuntimeValue(0, value);
+	}
+
+	public boolean isSmall() {
+		return bigValue == null;
+	}
+
+	public long getSmallValue() {
+		return smallValue;
+	}
+
+	public BigInteger getInnerValue() {
+		return isSmall() ? BigInteger.valueOf(smallValue) : bigValue;
+	}
 
 	@Override
 	public String toString() {
-		return String.valueOf(innerValue);
+		return isSmall() ? String.valueOf(smallValue) : String.valueOf(bigValue);
+	}
+
+	/**
+	 * Equal integers have the same representation, so the hash of a small
+	 * integer never has to agree with that of a big one.
+	 */
+	@Override
+	public int hashCode() {
+		return isSmall() ? Long.hashCode(smallValue) : bigValue.hashCode();
 	}
 
 	@Override
 	public int compareTo(IntRuntimeValue intRuntimeValue) {
-		return this.innerValue.compareTo(intRuntimeValue.getInnerValue());
+		if (isSmall() && intRuntimeValue.isSmall()) {
+			return Long.compare(smallValue, intRuntimeValue.getSmallValue());
+		}
+		return getInnerValue().compareTo(intRuntimeValue.getInnerValue());
 	}
 
 	@Override
@@ -49,12 +104,12 @@ public class IntRuntimeValue extends RuntimeValue implements TruffleObject, Comp
 
 	@ExportMessage
 	boolean fitsInByte() {
-		return innerValue.bitLength() < 8;
+		return isSmall() && (smallValue == (byte) smallValue);
 	}
 
 	@ExportMessage
 	boolean fitsInShort() {
-		return innerValue.bitLength() < 16;
+		return isSmall() && (smallValue == (short) smallValue);
 	}
 
 	@ExportMessage
@@ -64,12 +119,12 @@ public class IntRuntimeValue extends RuntimeValue implements TruffleObject, Comp
 
 	@ExportMessage
 	boolean fitsInLong() {
-		return innerValue.bitLength() < 64;
+		return isSmall();
 	}
 
 	@ExportMessage
 	boolean fitsInInt() {
-		return innerValue.bitLength() < 32;
+		return isSmall() && (smallValue == (int) smallValue);
 	}
 
 	@ExportMessage
@@ -84,17 +139,17 @@ public class IntRuntimeValue extends RuntimeValue implements TruffleObject, Comp
 
 	@ExportMessage
 	long asLong() throws UnsupportedMessageException {
-		return innerValue.longValue();
+		return isSmall() ? smallValue : bigValue.longValue();
 	}
 
 	@ExportMessage
 	byte asByte() throws UnsupportedMessageException {
-		return innerValue.byteValue();
+		return isSmall() ? (byte) smallValue : bigValue.byteValue();
 	}
 
 	@ExportMessage
 	int asInt() throws UnsupportedMessageException {
-		return innerValue.intValue();
+		return isSmall() ? (int) smallValue : bigValue.intValue();
 	}
 
 	@ExportMessage
@@ -104,7 +159,7 @@ public class IntRuntimeValue extends RuntimeValue implements TruffleObject, Comp
 
 	@ExportMessage
 	short asShort() throws UnsupportedMessageException {
-		return innerValue.shortValue();
+		return isSmall() ? (short) smallValue : bigValue.shortValue();
 	}
 
 	@ExportMessage
@@ -10,27 +10,154 @@
 
 package org.bitbucket.inkytonik.cooma.truffle.runtime;
 
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.api.interop.InteropLibrary;
+import com.oracle.truffle.api.interop.InvalidArrayIndexException;
 import com.oracle.truffle.api.interop.TruffleObject;
+import com.oracle.truffle.api.interop.UnknownIdentifierException;
+import com.oracle.truffle.api.library.ExportLibrary;
+import com.oracle.truffle.api.library.ExportMessage;
+import com.oracle.truffle.api.object.DynamicObject;
+import com.oracle.truffle.api.object.Layout;
+import com.oracle.truffle.api.object.ObjectType;
+import com.oracle.truffle.api.object.Property;
+import com.oracle.truffle.api.object.Shape;
 import de.uka.ilkd.pp.DataLayouter;
-import lombok.EqualsAndHashCode;
-import lombok.Value;
-import lombok.val;
-import java.util.Arrays;
-import java.util.Comparator;
+import java.util.List;
 
-@Value
-@EqualsAndHashCode(callSuper = false)
-public class RecRuntimeValue extends RuntimeValue implements TruffleObject, Comparable<RecRuntimeValue> {
+/**
+ * A record, whose fields are the properties of a dynamic object. Records
+ * that are made by the same code with the same fields share a shape, so
+ * a field can be read through a location that is cached for the shape.
+ * The order of the properties is the order of the fields.
+ */
+@ExportLibrary(InteropLibrary.class)
+public final class RecRuntimeValue extends RuntimeValue implements TruffleObject, Comparable<RecRuntimeValue> {
+
+	private static final Layout LAYOUT = Layout.createLayout();
+	private static final Shape EMPTY_SHAPE = LAYOUT.createShape(new ObjectType());
 
-	private final FieldValueRuntime[] fields;
+	private final DynamicObject store;
 
 	public RecRuntimeValue(FieldValueRuntime[] fields) {
-		this.fields = fields;
+		this(create(fields));
+	}
+
+	private RecRuntimeValue(DynamicObject store) {
+		this.store = store;
+	}
+
+	@TruffleBoundary
+	private static DynamicObject create(FieldValueRuntime[] fields) {
+		DynamicObject store = EMPTY_SHAPE.newInstance();
+		for (FieldValueRuntime field : fields) {
+			store.define(field.getX(), field.getV());
+		}
+		return store;
+	}
+
+	/**
+	 * Make a record whose fields are called `names` and have `values`.
+	 */
+	@TruffleBoundary
+	public static RecRuntimeValue of(String[] names, RuntimeValue[] values) {
+		DynamicObject store = EMPTY_SHAPE.newInstance();
+		for (int i = 0; i < names.length; i++) {
+			store.define(names[i], values[i]);
+		}
+		return new RecRuntimeValue(store);
+	}
+
+	public static RecRuntimeValue empty() {
+		return new RecRuntimeValue(EMPTY_SHAPE.newInstance());
+	}
+
+	public DynamicObject getStore() {
+		return store;
+	}
+
+	public Shape getShape() {
+		return store.getShape();
+	}
+
+	/**
+	 * The value of the field `f`, or null if there is no such field.
+	 */
+	@TruffleBoundary
+	public RuntimeValue get(String f) {
+		return (RuntimeValue) store.get(f);
+	}
+
+	@TruffleBoundary
+	public FieldValueRuntime[] getFields() {
+		List<Property> properties = store.getShape().getPropertyList();
+		FieldValueRuntime[] fields = new FieldValueRuntime[properties.size()];
+		for (int i = 0; i < fields.length; i++) {
+			String x = (String) properties.get(i).getKey();
+			fields[i] = new FieldValueRuntime(x, (RuntimeValue) store.get(x));
+		}
+		return fields;
 	}
 
 	@Override
 	public int compareTo(RecRuntimeValue recRuntimeValue) {
-		return Arrays.deepEquals(fields, recRuntimeValue.getFields()) ? 0 : -1;
+		return equals(recRuntimeValue) ? 0 : -1;
+	}
+
+	/**
+	 * Records are equal if they have the same fields, in any order, with
+	 * equal values. The cached hashes are compared first so that most
+	 * unequal records are told apart without looking at their fields.
+	 */
+	@Override
+	public boolean equals(Object other) {
+		if (this == other) {
+			return true;
+		} else if (!(other instanceof RecRuntimeValue)) {
+			return false;
+		}
+		RecRuntimeValue that = (RecRuntimeValue) other;
+		return (hashCode() == that.hashCode()) && sameFields(that);
+	}
+
+	@TruffleBoundary
+	private boolean sameFields(RecRuntimeValue that) {
+		Shape shape = store.getShape();
+		if (shape.getPropertyCount() != that.getShape().getPropertyCount()) {
+			return false;
+		}
+		for (Property property : shape.getProperties()) {
+			Object key = property.getKey();
+			if (!store.get(key).equals(that.store.get(key))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * The structural hash of the record, which doesn't depend on the order
+	 * of the fields. It is cached in the value and is also the hash that
+	 * the backend uses when comparing values.
+	 */
+	@Override
+	public int hashCode() {
+		int hash = getHash();
+		if (hash == 0) {
+			hash = fieldsHash();
+			setHash(hash);
+		}
+		return hash;
+	}
+
+	@TruffleBoundary
+	private int fieldsHash() {
+		int hash = 0;
+		for (Property property : store.getShape().getProperties()) {
+			Object key = property.getKey();
+			hash += (31 * key.hashCode()) ^ store.get(key).hashCode();
+		}
+		return hash;
 	}
 
 	@Override
@@ -40,6 +167,7 @@ public class RecRuntimeValue extends RuntimeValue implements TruffleObject, Comp
 
 	@Override
 	public <Exc extends java.lang.Exception> void prettyPrint(DataLayouter<Exc> l) throws Exc {
+		FieldValueRuntime[] fields = getFields();
 		if (fields.length == 0)
 			l.print("{}");
 		else {
@@ -55,8 +183,74 @@ public class RecRuntimeValue extends RuntimeValue implements TruffleObject, Comp
 		}
 	}
 
-	public static RecRuntimeValue empty() {
-		return new RecRuntimeValue(new FieldValueRuntime[] {});
+	@SuppressWarnings("static-method")
+	@ExportMessage
+	boolean hasMembers() {
+		return true;
+	}
+
+	@ExportMessage
+	@TruffleBoundary
+	Object getMembers(@SuppressWarnings("unused") boolean includeInternal) {
+		List<Property> properties = store.getShape().getPropertyList();
+		String[] names = new String[properties.size()];
+		for (int i = 0; i < names.length; i++) {
+			names[i] = (String) properties.get(i).getKey();
+		}
+		return new FieldNames(names);
+	}
+
+	@ExportMessage
+	@TruffleBoundary
+	boolean isMemberReadable(String member) {
+		return store.containsKey(member);
+	}
+
+	@ExportMessage
+	Object readMember(String member) throws UnknownIdentifierException {
+		RuntimeValue value = get(member);
+		if (value == null) {
+			throw UnknownIdentifierException.create(member);
+		}
+		return value;
+	}
+
+	/**
+	 * The field names of a record, as an interop array.
+	 */
+	@ExportLibrary(InteropLibrary.class)
+	static final class FieldNames implements TruffleObject {
+
+		private final String[] names;
+
+		FieldNames(String[] names) {
+			this.names = names;
+		}
+
+		@SuppressWarnings("static-method")
+		@ExportMessage
+		boolean hasArrayElements() {
+			return true;
+		}
+
+		@ExportMessage
+		long getArraySize() {
+			return names.length;
+		}
+
+		@ExportMessage
+		boolean isArrayElementReadable(long index) {
+			return (index >= 0) && (index < names.length);
+		}
+
+		@ExportMessage
+		Object readArrayElement(long index) throws InvalidArrayIndexException {
+			if (!isArrayElementReadable(index)) {
+				throw InvalidArrayIndexException.create(index);
+			}
+			return names[(int) index];
+		}
+
 	}
 
 }
@@ -15,6 +15,20 @@ import de.uka.ilkd.pp.*;
 
 public abstract class RuntimeValue implements TruffleObject, PrettyPrintable {
 
+	/**
+	 * The structural hash of this value, which is cached since values are
+	 * immutable. Zero if it hasn't been computed yet.
+	 */
+	private int hash;
+
+	public int getHash() {
+		return hash;
+	}
+
+	public void setHash(int hash) {
+		this.hash = hash;
+	}
+
 	public Boolean isHostObject() {
 		return true;
 	}
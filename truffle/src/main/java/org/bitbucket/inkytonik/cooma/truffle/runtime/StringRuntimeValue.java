@@ -10,25 +10,49 @@
 
 package org.bitbucket.inkytonik.cooma.truffle.runtime;
 
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.api.interop.InteropLibrary;
 import com.oracle.truffle.api.interop.TruffleObject;
+import com.oracle.truffle.api.library.ExportLibrary;
+import com.oracle.truffle.api.library.ExportMessage;
 import de.uka.ilkd.pp.DataLayouter;
 import lombok.Getter;
-import lombok.RequiredArgsConstructor;
-import org.bitbucket.inkytonik.cooma.Util;
+import org.bitbucket.inkytonik.cooma.Rope;
 
+/**
+ * A string value. The text is held raw in a rope and is only escaped when
+ * it is printed.
+ */
 @Getter
-@RequiredArgsConstructor
+@ExportLibrary(InteropLibrary.class)
 public class StringRuntimeValue extends RuntimeValue implements TruffleObject, Comparable<StringRuntimeValue> {
-	private final String innerValue;
+	private final Rope rope;
+
+	public StringRuntimeValue(String innerValue) {
+		this(Rope.apply(innerValue));
+	}
+
+	public StringRuntimeValue(Rope rope) {
+		this.rope = rope;
+	}
+
+	public String getInnerValue() {
+		return rope.toString();
+	}
 
 	@Override
 	public String toString() {
-		return String.format("\"%s\"", innerValue);
+		return String.format("\"%s\"", rope.show());
+	}
+
+	@Override
+	public int hashCode() {
+		return rope.hashCode();
 	}
 
 	@Override
 	public int compareTo(StringRuntimeValue stringRuntimeValue) {
-		return innerValue.compareTo(stringRuntimeValue.getInnerValue());
+		return rope.compareTo(stringRuntimeValue.getRope());
 	}
 
 	@Override
@@ -36,4 +60,16 @@ public class StringRuntimeValue extends RuntimeValue implements TruffleObject, C
 		l.print(this.toString());
 	}
 
+	@SuppressWarnings("static-method")
+	@ExportMessage
+	boolean isString() {
+		return true;
+	}
+
+	@ExportMessage
+	@TruffleBoundary
+	String asString() {
+		return getInnerValue();
+	}
+
 }
@@ -16,16 +16,23 @@ import java.util.Comparator;
 import lombok.EqualsAndHashCode;
 import lombok.Value;
 import lombok.val;
+import org.bitbucket.inkytonik.cooma.ConstructorTags;
 
 @Value
 @EqualsAndHashCode(callSuper = false)
 public class VarRuntimeValue extends RuntimeValue implements TruffleObject, Comparable<VarRuntimeValue> {
 
 	private final String c;
+	private final int tag;
 	private final RuntimeValue v;
 
 	public VarRuntimeValue(String c, RuntimeValue v) {
+		this(c, ConstructorTags.tagOf(c), v);
+	}
+
+	public VarRuntimeValue(String c, int tag, RuntimeValue v) {
 		this.c = c;
+		this.tag = tag;
 		this.v = v;
 	}
 
@@ -10,26 +10,200 @@
 
 package org.bitbucket.inkytonik.cooma.truffle.runtime;
 
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.api.interop.InteropLibrary;
+import com.oracle.truffle.api.interop.InvalidArrayIndexException;
 import com.oracle.truffle.api.interop.TruffleObject;
+import com.oracle.truffle.api.library.ExportLibrary;
+import com.oracle.truffle.api.library.ExportMessage;
 import de.uka.ilkd.pp.DataLayouter;
-import lombok.EqualsAndHashCode;
-import lombok.Value;
+import java.util.Arrays;
+import java.util.StringJoiner;
+import scala.collection.Iterator;
 import scala.collection.immutable.Vector;
+import scala.collection.immutable.VectorBuilder;
 
-@Value
-@EqualsAndHashCode(callSuper = false)
-public class VecRuntimeValue extends RuntimeValue implements TruffleObject, Comparable<VecRuntimeValue> {
+/**
+ * A vector, whose elements are held in an array. If all of the elements
+ * are integers that fit in a long they are held in a long[], otherwise in a
+ * RuntimeValue[]. Vectors are immutable, so an array is never changed once
+ * its vector has been made, and the operations that make a new vector copy
+ * the elements.
+ */
+@ExportLibrary(InteropLibrary.class)
+public final class VecRuntimeValue extends RuntimeValue implements TruffleObject, Comparable<VecRuntimeValue> {
+
+	/**
+	 * Either a long[] or a RuntimeValue[]. A RuntimeValue[] always has at
+	 * least one element that isn't a small integer, so equal vectors have
+	 * the same kind of store.
+	 */
+	private final Object store;
+
+	private VecRuntimeValue(Object store) {
+		this.store = store;
+	}
+
+	public static VecRuntimeValue of(RuntimeValue[] elems) {
+		long[] longs = new long[elems.length];
+		for (int i = 0; i < elems.length; i++) {
+			if (isSmallInt(elems[i])) {
+				longs[i] = ((IntRuntimeValue) elems[i]).getSmallValue();
+			} else {
+				return new VecRuntimeValue(elems);
+			}
+		}
+		return new VecRuntimeValue(longs);
+	}
 
-	private final Vector<RuntimeValue> vector;
+	@TruffleBoundary
+	public static VecRuntimeValue of(Vector<RuntimeValue> vector) {
+		RuntimeValue[] elems = new RuntimeValue[vector.length()];
+		Iterator<RuntimeValue> iter = vector.iterator();
+		for (int i = 0; iter.hasNext(); i++) {
+			elems[i] = iter.next();
+		}
+		return of(elems);
+	}
+
+	private static boolean isSmallInt(RuntimeValue value) {
+		return (value instanceof IntRuntimeValue) && ((IntRuntimeValue) value).isSmall();
+	}
+
+	public int length() {
+		return (store instanceof long[]) ? ((long[]) store).length : ((RuntimeValue[]) store).length;
+	}
+
+	public RuntimeValue get(int i) {
+		if (store instanceof long[]) {
+			return IntRuntimeValue.valueOf(((long[]) store)[i]);
+		} else {
+			return ((RuntimeValue[]) store)[i];
+		}
+	}
+
+	/**
+	 * Copy the elements into `elems` starting at `offset`.
+	 */
+	private void copyInto(RuntimeValue[] elems, int offset) {
+		if (store instanceof long[]) {
+			long[] longs = (long[]) store;
+			for (int i = 0; i < longs.length; i++) {
+				elems[offset + i] = IntRuntimeValue.valueOf(longs[i]);
+			}
+		} else {
+			RuntimeValue[] values = (RuntimeValue[]) store;
+			System.arraycopy(values, 0, elems, offset, values.length);
+		}
+	}
+
+	public RuntimeValue[] toArray() {
+		RuntimeValue[] elems = new RuntimeValue[length()];
+		copyInto(elems, 0);
+		return elems;
+	}
+
+	public VecRuntimeValue appended(RuntimeValue x) {
+		int n = length();
+		if ((store instanceof long[]) && isSmallInt(x)) {
+			long[] longs = Arrays.copyOf((long[]) store, n + 1);
+			longs[n] = ((IntRuntimeValue) x).getSmallValue();
+			return new VecRuntimeValue(longs);
+		}
+		RuntimeValue[] elems = new RuntimeValue[n + 1];
+		copyInto(elems, 0);
+		elems[n] = x;
+		return new VecRuntimeValue(elems);
+	}
+
+	public VecRuntimeValue prepended(RuntimeValue x) {
+		int n = length();
+		if ((store instanceof long[]) && isSmallInt(x)) {
+			long[] longs = new long[n + 1];
+			longs[0] = ((IntRuntimeValue) x).getSmallValue();
+			System.arraycopy(store, 0, longs, 1, n);
+			return new VecRuntimeValue(longs);
+		}
+		RuntimeValue[] elems = new RuntimeValue[n + 1];
+		elems[0] = x;
+		copyInto(elems, 1);
+		return new VecRuntimeValue(elems);
+	}
+
+	public VecRuntimeValue concat(VecRuntimeValue w) {
+		int n = length();
+		int m = w.length();
+		if ((store instanceof long[]) && (w.store instanceof long[])) {
+			long[] longs = Arrays.copyOf((long[]) store, n + m);
+			System.arraycopy(w.store, 0, longs, n, m);
+			return new VecRuntimeValue(longs);
+		}
+		RuntimeValue[] elems = new RuntimeValue[n + m];
+		copyInto(elems, 0);
+		w.copyInto(elems, n);
+		return new VecRuntimeValue(elems);
+	}
+
+	public VecRuntimeValue updated(int i, RuntimeValue x) {
+		if ((store instanceof long[]) && isSmallInt(x)) {
+			long[] longs = ((long[]) store).clone();
+			longs[i] = ((IntRuntimeValue) x).getSmallValue();
+			return new VecRuntimeValue(longs);
+		}
+		RuntimeValue[] elems = toArray();
+		elems[i] = x;
+		return of(elems);
+	}
+
+	@TruffleBoundary
+	public Vector<RuntimeValue> getVector() {
+		VectorBuilder<RuntimeValue> builder = new VectorBuilder<RuntimeValue>();
+		for (int i = 0; i < length(); i++) {
+			builder.addOne(get(i));
+		}
+		return builder.result();
+	}
 
 	@Override
 	public int compareTo(VecRuntimeValue vecRuntimeValue) {
-		return vector.sameElements(vecRuntimeValue.vector) ? 0 : -1;
+		return equals(vecRuntimeValue) ? 0 : -1;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (this == other) {
+			return true;
+		} else if (!(other instanceof VecRuntimeValue)) {
+			return false;
+		}
+		Object otherStore = ((VecRuntimeValue) other).store;
+		if ((store instanceof long[]) && (otherStore instanceof long[])) {
+			return Arrays.equals((long[]) store, (long[]) otherStore);
+		} else if ((store instanceof RuntimeValue[]) && (otherStore instanceof RuntimeValue[])) {
+			return Arrays.equals((RuntimeValue[]) store, (RuntimeValue[]) otherStore);
+		} else {
+			return false;
+		}
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = getHash();
+		if (hash == 0) {
+			hash = (store instanceof long[]) ? Arrays.hashCode((long[]) store) : Arrays.hashCode((RuntimeValue[]) store);
+			setHash(hash);
+		}
+		return hash;
 	}
 
 	@Override
+	@TruffleBoundary
 	public String toString() {
-		return vector.mkString("[", ", ", "]");
+		StringJoiner joiner = new StringJoiner(", ", "[", "]");
+		for (int i = 0; i < length(); i++) {
+			joiner.add(String.valueOf(get(i)));
+		}
+		return joiner.toString();
 	}
 
 	@Override
@@ -37,4 +211,28 @@ public class VecRuntimeValue extends RuntimeValue implements TruffleObject, Comp
 		l.print(this.toString());
 	}
 
+	@SuppressWarnings("static-method")
+	@ExportMessage
+	boolean hasArrayElements() {
+		return true;
+	}
+
+	@ExportMessage
+	long getArraySize() {
+		return length();
+	}
+
+	@ExportMessage
+	boolean isArrayElementReadable(long index) {
+		return (index >= 0) && (index < length());
+	}
+
+	@ExportMessage
+	Object readArrayElement(long index) throws InvalidArrayIndexException {
+		if (!isArrayElementReadable(index)) {
+			throw InvalidArrayIndexException.create(index);
+		}
+		return get((int) index);
+	}
+
 }
@@ -0,0 +1,95 @@
+/*
+ * This file is part of Cooma.
+ *
+ * Copyright (C) 2019-2023 Anthony M Sloane, Macquarie University.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.bitbucket.inkytonik.cooma.truffle;
+
+import com.oracle.truffle.api.CallTarget;
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.api.Truffle;
+import com.oracle.truffle.api.TruffleLanguage;
+import com.oracle.truffle.api.TruffleLanguage.ContextReference;
+import com.oracle.truffle.api.frame.MaterializedFrame;
+import com.oracle.truffle.api.frame.VirtualFrame;
+import com.oracle.truffle.api.nodes.NodeInfo;
+import com.oracle.truffle.api.nodes.RootNode;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.CoomaRootNode;
+import org.bitbucket.inkytonik.cooma.truffle.nodes.term.CoomaTermNode;
+import org.bitbucket.inkytonik.cooma.truffle.runtime.CoomaContext;
+
+/**
+ * The root of a REPL entry. An entry is resolved against the globals of its
+ * context and its halt adds its definitions to them. The entry runs in the
+ * globals that it was resolved against, since the addresses of its variables
+ * depend on their layout, so it only holds the lock of the context while it
+ * is resolved. Its halt holds the lock while it publishes its definitions,
+ * so entries that run at the same time don't lose each other's definitions.
+ * The target of the entry is kept until the globals change.
+ */
+@NodeInfo(language = "cooma", description = "The root of a REPL entry")
+public final class CoomaEntryRootNode extends RootNode {
+
+	private final TruffleLanguage<CoomaContext> language;
+	private final ContextReference<CoomaContext> contextReference;
+	private final String source;
+
+	/**
+	 * The globals that the entry was last resolved against and its target.
+	 */
+	private static final class Resolved {
+		final MaterializedFrame globals;
+		final CallTarget target;
+
+		Resolved(MaterializedFrame globals, CallTarget target) {
+			this.globals = globals;
+			this.target = target;
+		}
+	}
+
+	private volatile Resolved resolved;
+
+	public CoomaEntryRootNode(TruffleLanguage<CoomaContext> language, String source) {
+		super(language);
+		this.language = language;
+		this.contextReference = language.getContextReference();
+		this.source = source;
+	}
+
+	@Override
+	public Object execute(VirtualFrame frame) {
+		return run(contextReference.get());
+	}
+
+	@TruffleBoundary
+	private Object run(CoomaContext context) {
+		Resolved current = resolved;
+		if ((current == null) || (current.globals != context.getGlobals())) {
+			current = resolve(context);
+			resolved = current;
+		}
+		return current.target.call(current.globals);
+	}
+
+	/**
+	 * Compile the entry and resolve it against the current globals of
+	 * `context`. The frontend keeps state while it compiles, so each
+	 * compilation has its own driver.
+	 */
+	private Resolved resolve(CoomaContext context) {
+		TruffleDriver truffleDriver = new TruffleDriver();
+		truffleDriver.compileString("string source", source, context.getConfig());
+		CoomaTermNode term = truffleDriver.getCurrentCompiledNode();
+		synchronized (context) {
+			MaterializedFrame globals = context.getGlobals();
+			RootNode root = new CoomaRootNode(language, context, term, true);
+			return new Resolved(globals, Truffle.getRuntime().createCallTarget(root));
+		}
+	}
+
+}
@@ -14,12 +14,14 @@ import com.oracle.truffle.api.CallTarget;
 import com.oracle.truffle.api.CompilerDirectives;
 import com.oracle.truffle.api.Truffle;
 import com.oracle.truffle.api.TruffleLanguage;
+import com.oracle.truffle.api.frame.MaterializedFrame;
+import com.oracle.truffle.api.instrumentation.ProvidedTags;
+import com.oracle.truffle.api.instrumentation.StandardTags;
 import com.oracle.truffle.api.interop.InteropLibrary;
 import com.oracle.truffle.api.interop.TruffleObject;
 import com.oracle.truffle.api.interop.UnsupportedMessageException;
 import com.oracle.truffle.api.nodes.RootNode;
 import org.bitbucket.inkytonik.cooma.CoomaException;
-import org.bitbucket.inkytonik.cooma.truffle.nodes.environment.Rho;
 import org.bitbucket.inkytonik.cooma.Config;
 import org.bitbucket.inkytonik.cooma.CoomaConstants;
 import org.bitbucket.inkytonik.cooma.Util;
@@ -34,7 +36,14 @@ import org.bitbucket.inkytonik.kiama.util.StringEmitter;
 import java.io.FileReader;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import xtc.parser.Column;
 import xtc.parser.ParseError;
@@ -43,12 +52,37 @@ import xtc.parser.ParseException;
 
 import static scala.collection.JavaConverters.collectionAsScalaIterableConverter;
 
+@ProvidedTags({ StandardTags.RootTag.class, StandardTags.CallTag.class, StandardTags.StatementTag.class })
 @TruffleLanguage.Registration(id = CoomaConstants.ID, name = "cooma", defaultMimeType = CoomaConstants.MIME_TYPE, characterMimeTypes = CoomaConstants.MIME_TYPE, contextPolicy = TruffleLanguage.ContextPolicy.SHARED, fileTypeDetectors = CoomaFileDetector.class, interactive = true)
 public class CoomaLanguage extends TruffleLanguage<CoomaContext> {
 
-	private TruffleDriver truffleDriver = new TruffleDriver();
-	private CoomaContext context;
-	private Boolean setInitialRho = true;
+	/**
+	 * The programs that have been compiled from files, keyed by the version of
+	 * the prelude that they were resolved against, the options that they were
+	 * compiled with and the contents of the file. The
+	 * language is shared by the contexts of an engine, so a context that runs
+	 * a program that another context has run doesn't compile it again.
+	 */
+	private final Map<String, CallTarget> programs = new ConcurrentHashMap<>();
+
+	/**
+	 * The dynamic prelude and the version of the file that it was read from,
+	 * which is made from the file's name, modification time and size. Its
+	 * tree is built once for each version and run by each context to make
+	 * that context's globals.
+	 */
+	private CallTarget prelude;
+	private String preludeVersion;
+
+	/**
+	 * A context can be used by more than one thread at a time. Execution
+	 * state is in frames, the trees are only changed through the DSL and the
+	 * state that is shared by a context is only changed when it is set up.
+	 */
+	@Override
+	protected boolean isThreadAccessAllowed(Thread thread, boolean singleThreaded) {
+		return true;
+	}
 
 	@Override
 	protected void finalizeContext(CoomaContext context) {
@@ -108,31 +142,120 @@ public class CoomaLanguage extends TruffleLanguage<CoomaContext> {
 		CoomaContext context = getCurrentContext(this.getClass());
 		Config config = context.getConfig();
 		String source = request.getSource().getCharacters().toString();
-		if (source.isEmpty()) {
-			compileFile(config);
-		} else {
-			truffleDriver.compileString("string source", source, config);
+
+		synchronized (context) {
+			if (!context.isInitialised()) {
+				context.setGlobals(preludeDynamicEnv(context, config));
+				context.setInitialised(true);
+			}
 		}
 
-		if (setInitialRho) {
-			Rho preludeRho = preludeDynamicEnv(context, config);
-			context.setRho(preludeRho);
-			setInitialRho = false;
+		String key = source.isEmpty() && !hasFrontendOutput(config) ? programKey(context, config) : null;
+		CallTarget cached = (key == null) ? null : programs.get(key);
+
+		// The frontend keeps state while it compiles, so each parse has its
+		// own driver. String sources are REPL entries, which are compiled
+		// when they run.
+		TruffleDriver truffleDriver = new TruffleDriver();
+		if (source.isEmpty() && (cached == null)) {
+			compileFile(truffleDriver, config);
 		}
 
 		context.setApplicationArguments(Util.getConfigFilenamesTail(config));
-		RootNode evalMain = new CoomaRootNode(this, context, truffleDriver.getCurrentCompiledNode());
-		return Truffle.getRuntime().createCallTarget(evalMain);
+		if (!source.isEmpty()) {
+			return Truffle.getRuntime().createCallTarget(new CoomaEntryRootNode(this, source));
+		} else if (cached != null) {
+			return cached;
+		}
+
+		RootNode evalMain = new CoomaRootNode(this, context, truffleDriver.getCurrentCompiledNode(), false);
+		CallTarget target = Truffle.getRuntime().createCallTarget(evalMain);
+		if (key != null) {
+			programs.put(key, target);
+		}
+		return target;
+	}
+
+	/**
+	 * Whether the frontend prints anything while it compiles a program with
+	 * `config`. Such programs aren't cached, since a cached program doesn't go
+	 * through the frontend.
+	 */
+	private static boolean hasFrontendOutput(Config config) {
+		return config.coomaASTPrint().isSupplied() || config.desugaredASTPrint().isSupplied()
+				|| config.irPrint().isSupplied() || config.irASTPrint().isSupplied() || config.typePrint().isSupplied()
+				|| config.usage().isSupplied();
+	}
+
+	/**
+	 * The key of the program that a context with `config` runs from a file,
+	 * which is made from the version of the prelude that made the context's
+	 * globals, the options before the file name and the contents of the file.
+	 * The arguments after the file name are not part of the key, since they
+	 * are only used at run time. Null if there is no file or it can't be
+	 * read, in which case the program is compiled as usual.
+	 */
+	private static String programKey(CoomaContext context, Config config) {
+		String[] args = context.getEnv().getApplicationArguments();
+		int numOptions = args.length - Util.getConfigFilenamesTail(config).length - 1;
+		if (config.filenames().isEmpty() || numOptions < 0) {
+			return null;
+		}
+		try {
+			String contents = new String(Files.readAllBytes(Paths.get(args[numOptions])), StandardCharsets.UTF_8);
+			return context.getPreludeVersion() + "\0" + String.join("\0", Arrays.asList(args).subList(0, numOptions + 1))
+					+ "\0" + contents;
+		} catch (IOException | InvalidPathException e) {
+			return null;
+		}
 	}
 
-	private Rho preludeDynamicEnv(CoomaContext context, Config config) {
+	private MaterializedFrame preludeDynamicEnv(CoomaContext context, Config config) {
 		if (config.noPrelude().isSupplied() || config.compilePrelude().isSupplied())
-			return new Rho();
+			return CoomaContext.emptyFrame();
 		else
 			return readDynamicPrelude(config.preludePath().apply() + ".dynamic", context, config);
 	}
 
-	private Rho readDynamicPrelude(String filename, CoomaContext context, Config config) {
+	/**
+	 * Run the dynamic prelude from `filename` in `context` and return the
+	 * globals that it makes. The prelude is only parsed by the first context
+	 * that needs it.
+	 */
+	private MaterializedFrame readDynamicPrelude(String filename, CoomaContext context, Config config) {
+		try {
+			CallTarget callTarget = preludeTarget(filename, context, config);
+			if (callTarget != null) {
+				context.setGlobals(CoomaContext.emptyFrame());
+				callTarget.call();
+				return context.getGlobals();
+			}
+		} catch (CoomaException e) {
+			CoomaException.errPrelude(e);
+		}
+		return CoomaContext.emptyFrame();
+	}
+
+	private synchronized CallTarget preludeTarget(String filename, CoomaContext context, Config config) {
+		String version = fileVersion(filename);
+		if ((prelude == null) || !version.equals(preludeVersion)) {
+			prelude = parseDynamicPrelude(filename, context, config);
+			preludeVersion = version;
+		}
+		context.setPreludeVersion(preludeVersion);
+		return prelude;
+	}
+
+	private static String fileVersion(String filename) {
+		try {
+			Path path = Paths.get(filename);
+			return filename + "\0" + Files.getLastModifiedTime(path).toMillis() + "\0" + Files.size(path);
+		} catch (IOException | InvalidPathException e) {
+			return filename;
+		}
+	}
+
+	private CallTarget parseDynamicPrelude(String filename, CoomaContext context, Config config) {
 		try {
 			FileReader reader = new FileReader(filename);
 			CoomaTermParser p = new CoomaTermParser(reader, filename);
@@ -140,11 +263,9 @@ public class CoomaLanguage extends TruffleLanguage<CoomaContext> {
 			Result pr = p.pDynamicPrelude(0);
 			if (pr.hasValue()) {
 				CoomaTermNode prelude = (CoomaTermNode) p.value(pr);
-				context.setRho(new Rho());
-				RootNode preludeRoot = new CoomaRootNode(this, context, prelude);
-				CallTarget callTarget = Truffle.getRuntime().createCallTarget(preludeRoot);
-				Object result = callTarget.call();
-				return context.getRho();
+				context.setGlobals(CoomaContext.emptyFrame());
+				RootNode preludeRoot = new CoomaRootNode(this, context, prelude, true);
+				return Truffle.getRuntime().createCallTarget(preludeRoot);
 			} else {
 				ParseError error = pr.parseError();
 				Column col = p.errorColumn(error);
@@ -161,17 +282,15 @@ public class CoomaLanguage extends TruffleLanguage<CoomaContext> {
 		} catch (ParseException e) {
 			output(config, "cooma: xtc parse exception reading dynamic prelude '" + filename + "'");
 			output(config, e.getMessage());
-		} catch (CoomaException e) {
-			CoomaException.errPrelude(e);
 		}
-		return new Rho();
+		return null;
 	}
 
 	private void output(Config config, String s) {
 		config.output().apply().emitln(s);
 	}
 
-	protected void compileFile(Config config) throws CoomaFrontendException {
+	protected void compileFile(TruffleDriver truffleDriver, Config config) throws CoomaFrontendException {
 		truffleDriver.setCurrentCompiledNode(null);
 
 		truffleDriver.compileFiles(config);
@@ -10,7 +10,9 @@
 
 package org.bitbucket.inkytonik.cooma.truffle;
 
+import org.bitbucket.inkytonik.cooma.CompileCache;
 import org.bitbucket.inkytonik.cooma.Config;
+import org.bitbucket.inkytonik.cooma.CoomaParserSyntax;
 import org.bitbucket.inkytonik.cooma.CoomaParserSyntax.Program;
 import org.bitbucket.inkytonik.cooma.REPLDriver;
 import org.bitbucket.inkytonik.cooma.REPL;
@@ -33,7 +35,14 @@ public class TruffleDriver extends REPLDriver {
 		try {
 			if (!config.usage().isSupplied()) {
 				TruffleCompiler compiler = new TruffleCompiler(config, analyser);
-				setCurrentCompiledNode(compiler.compileCommand(program));
+				if (CompileCache.canCache(config)) {
+					// Compile once to the IR that is cached and build the nodes from it
+					CoomaParserSyntax.Term term = compiler.compileIR(program, positions());
+					cacheIR(source, term, config);
+					setCurrentCompiledNode(compiler.fromIR(term, positions(), source));
+				} else {
+					setCurrentCompiledNode(compiler.compileCommand(program, positions(), source));
+				}
 			}
 		} catch (RuntimeException e) {
 			e.printStackTrace();
@@ -41,6 +50,17 @@ public class TruffleDriver extends REPLDriver {
 		}
 	}
 
+	/**
+	 * Build the nodes of a program whose IR came from the compile cache. The
+	 * nodes have no source sections, since the source isn't parsed.
+	 */
+	@Override
+	public boolean processIR(Source source, CoomaParserSyntax.Term term, Config config) {
+		TruffleCompiler compiler = new TruffleCompiler(config, analyser);
+		setCurrentCompiledNode(compiler.fromIR(term));
+		return true;
+	}
+
 	public CoomaTermNode getCurrentCompiledNode() {
 		return currentCompiledNode;
 	}
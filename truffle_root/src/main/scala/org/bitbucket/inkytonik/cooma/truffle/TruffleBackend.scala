@@ -10,17 +10,53 @@
 
 package org.bitbucket.inkytonik.cooma.truffle
 
-import org.bitbucket.inkytonik.cooma.{Backend, Config}
+import org.bitbucket.inkytonik.cooma.{Backend, Config, Rope}
 
 class TruffleBackend(
     config: Config
 ) extends Backend {
 
+  import com.oracle.truffle.api.Truffle
+  import com.oracle.truffle.api.frame.{FrameDescriptor, MaterializedFrame}
   import java.io.{PrintWriter, Writer}
-  import java.math.BigInteger
-  import org.bitbucket.inkytonik.cooma.CoomaParserSyntax.Primitive
-
-  import org.bitbucket.inkytonik.cooma.truffle.nodes.environment.Rho
+  import org.bitbucket.inkytonik.cooma.CoomaException.errInterp
+  import org.bitbucket.inkytonik.cooma.CoomaParserSyntax.{
+    EqualP,
+    IntAbsP,
+    IntAddP,
+    IntDivP,
+    IntGtP,
+    IntGteP,
+    IntLtP,
+    IntLteP,
+    IntModP,
+    IntMulP,
+    IntPowP,
+    IntSubP,
+    Primitive,
+    RecSelectP,
+    StrConcatP,
+    StrGtP,
+    StrGteP,
+    StrLengthP,
+    StrLtP,
+    StrLteP,
+    StrSubstrP,
+    UserP,
+    UserPrimitive,
+    VecAppendP,
+    VecConcatP,
+    VecGetP,
+    VecLengthP,
+    VecPrependP,
+    VecPutP
+  }
+
+  import org.bitbucket.inkytonik.cooma.truffle.nodes.environment.{
+    Binding,
+    Scope
+  }
+  import org.bitbucket.inkytonik.cooma.truffle.nodes.primitive._
   import org.bitbucket.inkytonik.cooma.truffle.nodes.term._
   import org.bitbucket.inkytonik.cooma.truffle.nodes.value._
   import org.bitbucket.inkytonik.cooma.truffle.runtime._
@@ -80,7 +116,68 @@ class TruffleBackend(
     new CoomaIntValueNode(i.bigInteger)
 
   def prmV(p: Primitive, xs: Vector[String]): Value =
-    new CoomaPrimitiveValue(this, p, xs.toArray)
+    p match {
+      case RecSelectP() if xs.length == 2 =>
+        CoomaRecSelectNodeGen.create(this, p, xs(0), xs(1))
+      case UserP(u) =>
+        userPrmV(u, xs.toArray)
+      case _ =>
+        new CoomaPrimitiveValue(this, p, xs.toArray)
+    }
+
+  def userPrmV(p: UserPrimitive, xs: Array[String]): Value =
+    p match {
+      case EqualP() =>
+        CoomaEqualNodeGen.create(this, p, xs)
+      case IntAbsP() =>
+        CoomaIntAbsNodeGen.create(this, p, xs)
+      case IntAddP() =>
+        CoomaIntAddNodeGen.create(this, p, xs)
+      case IntDivP() =>
+        CoomaIntDivNodeGen.create(this, p, xs)
+      case IntGtP() =>
+        CoomaIntGtNodeGen.create(this, p, xs)
+      case IntGteP() =>
+        CoomaIntGteNodeGen.create(this, p, xs)
+      case IntLtP() =>
+        CoomaIntLtNodeGen.create(this, p, xs)
+      case IntLteP() =>
+        CoomaIntLteNodeGen.create(this, p, xs)
+      case IntModP() =>
+        CoomaIntModNodeGen.create(this, p, xs)
+      case IntMulP() =>
+        CoomaIntMulNodeGen.create(this, p, xs)
+      case IntPowP() =>
+        CoomaIntPowNodeGen.create(this, p, xs)
+      case IntSubP() =>
+        CoomaIntSubNodeGen.create(this, p, xs)
+      case StrConcatP() =>
+        CoomaStrConcatNodeGen.create(this, p, xs)
+      case StrGtP() =>
+        CoomaStrGtNodeGen.create(this, p, xs)
+      case StrGteP() =>
+        CoomaStrGteNodeGen.create(this, p, xs)
+      case StrLengthP() =>
+        CoomaStrLengthNodeGen.create(this, p, xs)
+      case StrLtP() =>
+        CoomaStrLtNodeGen.create(this, p, xs)
+      case StrLteP() =>
+        CoomaStrLteNodeGen.create(this, p, xs)
+      case StrSubstrP() =>
+        CoomaStrSubstrNodeGen.create(this, p, xs)
+      case VecAppendP() =>
+        CoomaVecAppendNodeGen.create(this, p, xs)
+      case VecConcatP() =>
+        CoomaVecConcatNodeGen.create(this, p, xs)
+      case VecGetP() =>
+        CoomaVecGetNodeGen.create(this, p, xs)
+      case VecLengthP() =>
+        CoomaVecLengthNodeGen.create(this, p, xs)
+      case VecPrependP() =>
+        CoomaVecPrependNodeGen.create(this, p, xs)
+      case VecPutP() =>
+        CoomaVecPutNodeGen.create(this, p, xs)
+    }
 
   def recV(fs: Vector[CoomaFldV]): Value =
     new CoomaRecValueNode(fs.toArray)
@@ -109,7 +206,7 @@ class TruffleBackend(
 
   override type ValueR = RuntimeValue
   override type OutputValueR = org.graalvm.polyglot.Value
-  override type Env = Rho
+  override type Env = MaterializedFrame
   override type FldR = FieldValueRuntime
 
   def showRuntimeValue(v: OutputValueR): String =
@@ -118,23 +215,50 @@ class TruffleBackend(
   def strR(str: String): ValueR =
     new StringRuntimeValue(str)
 
+  def ropeR(rope: Rope): ValueR =
+    new StringRuntimeValue(rope)
+
   def varR(c: String, v: ValueR): ValueR =
     new VarRuntimeValue(c, v)
 
-  def clsR(f: String, x: String, env: Env, e: Term): ValueR =
-    new FunctionClosure(env, f, x, e)
+  def clsR(f: String, x: String, env: Env, e: Term): ValueR = {
+    val top = Scope.top(env, false)
+    val scope = top.child()
+    val params = Array(scope.bind(f, true), scope.bind(x, false))
+    e.resolve(scope)
+    val lambda = scope.lambda("fun", params, e)
+    val rho = newFrame(env, top.getDescriptor)
+    new FunctionClosure(lambda, lambda.getCaptures.capture(rho, null))
+  }
 
   def recR(fields: Vector[FldR]): ValueR =
     new RecRuntimeValue(fields.toArray)
 
   def vecR(es: Vector[ValueR]): ValueR =
-    new VecRuntimeValue(es)
+    VecRuntimeValue.of(es)
 
   def fldR(x: String, v: ValueR): FldR =
     new FieldValueRuntime(x, v)
 
   def intR(num: BigInt): ValueR =
-    new IntRuntimeValue(new BigInteger(num.toByteArray))
+    IntRuntimeValue.valueOf(num.bigInteger)
+
+  def smallIntR(num: Long): ValueR =
+    IntRuntimeValue.valueOf(num)
+
+  def isSmallIntR(value: ValueR): Boolean =
+    value match {
+      case int: IntRuntimeValue => int.isSmall
+      case _                    => false
+    }
+
+  def getSmallInt(value: ValueR): Long =
+    value match {
+      case int: IntRuntimeValue =>
+        int.getSmallValue
+      case _ =>
+        errInterp("getSmallInt", s"$value is not small")
+    }
 
   def isStrR(value: RuntimeValue): Option[String] =
     value match {
@@ -142,6 +266,18 @@ class TruffleBackend(
       case _                          => None
     }
 
+  /** Runtime values hash structurally through their own hash codes, which
+    * records and vectors cache.
+    */
+  override def hashR(value: RuntimeValue): Int =
+    value.hashCode
+
+  def isRopeR(value: RuntimeValue): Option[Rope] =
+    value match {
+      case string: StringRuntimeValue => Some(string.getRope)
+      case _                          => None
+    }
+
   def isIntR(value: RuntimeValue): Option[BigInt] =
     value match {
       case int: IntRuntimeValue => Some(int.getInnerValue)
@@ -178,21 +314,32 @@ class TruffleBackend(
   def getFieldValue(value: FldR): ValueR =
     value.getV
 
-  def emptyEnv: Env = new Rho
+  def emptyEnv: Env = CoomaContext.emptyFrame()
 
-  def defineVar(rho: Env, i: String, value: ValueR): Env =
-    rho.extend(i, value)
+  def newFrame(parent: Env, descriptor: FrameDescriptor): Env =
+    Truffle.getRuntime.createMaterializedFrame(Array[AnyRef](parent), descriptor)
 
-  def lookupR(rho: Env, x: String): RuntimeValue = rho.get(x)
+  def lookupR(rho: Env, x: String): RuntimeValue =
+    Option(Scope.find(rho, x, false)) match {
+      case Some(addr) =>
+        addr.get(rho).asInstanceOf[RuntimeValue]
+      case None =>
+        errInterp("lookupR", s"can't find value $x")
+    }
 
-  def insertR(rho: Env, x: String, value: ValueR): Env =
-    defineVar(rho, x, value)
+  def insertR(rho: Env, x: String, value: ValueR): Env = {
+    val descriptor = new FrameDescriptor
+    val slot = descriptor.addFrameSlot(new Binding(x, false))
+    val frame = newFrame(rho, descriptor)
+    frame.setObject(slot, value)
+    frame
+  }
 
   def getConfig: Config = config
 
   override def interpret(
       term: CoomaTermNode,
-      rho: Rho,
+      rho: Env,
       args: Seq[String],
       config: Config
   ): Either[String, Result] =
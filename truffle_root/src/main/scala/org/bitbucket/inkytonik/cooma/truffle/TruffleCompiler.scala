@@ -10,24 +10,87 @@
 
 package org.bitbucket.inkytonik.cooma.truffle
 
+import com.oracle.truffle.api.source.{Source => TruffleSource, SourceSection}
 import org.bitbucket.inkytonik.cooma.truffle.nodes.term.CoomaTermNode
 import org.bitbucket.inkytonik.cooma.{
   Config,
+  CoomaConstants,
   CoomaParserSyntax,
-  SemanticAnalyser
+  SemanticAnalyser,
+  SyntaxCompiler
 }
+import org.bitbucket.inkytonik.kiama.util.{Positions, Source}
 
 class TruffleCompiler(val config: Config, analyser: SemanticAnalyser) {
 
   import org.bitbucket.inkytonik.cooma.Compiler
-  import org.bitbucket.inkytonik.kiama.util.Positions
 
   val backendMixin = new TruffleBackend(config) with Compiler
 
-  def compileCommand(prog: CoomaParserSyntax.Program): CoomaTermNode = {
-    backendMixin.compileCommand(prog, new Positions, analyser)
+  /** Compile `prog`, which was parsed from `source` with positions recorded
+    * in `positions`. The terms are given the sections of `source` that they
+    * come from so that Truffle tools can instrument them.
+    */
+  def compileCommand(
+      prog: CoomaParserSyntax.Program,
+      positions: Positions,
+      source: Source
+  ): CoomaTermNode = {
+    val sections = new SectionPositions(positions, source)
+    backendMixin.compileCommand(prog, sections, analyser, config)
   }
 
+  /** Compile `prog` to the syntax form of the IR, which can be cached. */
+  def compileIR(
+      prog: CoomaParserSyntax.Program,
+      positions: Positions
+  ): CoomaParserSyntax.Term =
+    SyntaxCompiler.compileCommand(prog, positions, analyser, config)
+
+  /** Build the nodes of IR that is held as syntax. */
+  def fromIR(term: CoomaParserSyntax.Term): CoomaTermNode =
+    backendMixin.fromIR(term)
+
+  /** Build the nodes of `term`, which was compiled from syntax that was
+    * parsed from `source` with positions recorded in `positions`. The nodes
+    * are given sections of `source` as they are by `compileCommand`.
+    */
+  def fromIR(
+      term: CoomaParserSyntax.Term,
+      positions: Positions,
+      source: Source
+  ): CoomaTermNode =
+    backendMixin.fromIR(term, new SectionPositions(positions, source))
+
   def showTerm(t: CoomaTermNode): String = backendMixin.showTerm(t)
 
 }
+
+/** Positions for the compiler that give each term the section of `source`
+  * that `positions` records for the syntax that it is compiled from.
+  */
+class SectionPositions(positions: Positions, source: Source)
+    extends Positions {
+
+  lazy val truffleSource: TruffleSource =
+    TruffleSource
+      .newBuilder(CoomaConstants.ID, source.content, source.name)
+      .build()
+
+  override def dupPos[T](a: Any, b: T): T = {
+    b match {
+      case term: CoomaTermNode =>
+        section(a).foreach(term.setSourceSection)
+      case _ =>
+    }
+    b
+  }
+
+  def section(a: Any): Option[SourceSection] =
+    for {
+      start <- positions.getStart(a).flatMap(_.optOffset)
+      finish <- positions.getFinish(a).flatMap(_.optOffset)
+      if (start <= finish) && (finish <= truffleSource.getLength)
+    } yield truffleSource.createSection(start, finish - start)
+
+}